@@ -0,0 +1,79 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.benchmark;
+
+import org.noise_planet.noisemodelling.pathfinder.Orientation;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
+import org.noise_planet.noisemodelling.propagation.EvaluateAttenuationCnossos;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attenuation of the propagation paths of the synthetic city, each invocation evaluates the paths of
+ * {@link CityPathState#PAIR_COUNT} source-receiver pairs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AttenuationBenchmark {
+    /** Propagation paths of each source-receiver pair */
+    List<List<PropagationPath>> pairPaths = new ArrayList<>();
+    /** Paths diffracted over the roofs, the only ones supported by {@link EvaluateAttenuationCnossos#evaluate} */
+    List<PropagationPath> diffractedPaths = new ArrayList<>();
+    PropagationProcessPathData pathData;
+    EvaluateAttenuationCnossos evaluator;
+    ComputeRaysOutAttenuation computeRaysOut;
+    double[] aGlobal;
+
+    @Setup
+    public void setUp(CityPathState city) {
+        Orientation orientation = new Orientation();
+        for(int pair = 0; pair < CityPathState.PAIR_COUNT; pair++) {
+            List<PropagationPath> paths = city.computeRays.directPath(city.sources[pair], pair, orientation,
+                    city.receivers[pair], pair, true, true, false);
+            pairPaths.add(paths);
+            for(PropagationPath path : paths) {
+                if(path.difHPoints.size() > 0 && path.difVPoints.isEmpty() && path.getSegmentList().size() > 1) {
+                    diffractedPaths.add(path);
+                }
+            }
+        }
+        pathData = new PropagationProcessPathData();
+        evaluator = new EvaluateAttenuationCnossos(pathData);
+        computeRaysOut = new ComputeRaysOutAttenuation(false, pathData, city.data);
+        aGlobal = new double[pathData.freq_lvl.size()];
+    }
+
+    @Benchmark
+    public void evaluate(Blackhole blackhole) {
+        for(PropagationPath path : diffractedPaths) {
+            blackhole.consume(evaluator.evaluate(path, aGlobal));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CityPathState.PAIR_COUNT)
+    public void computeAttenuation(Blackhole blackhole) {
+        for(int pair = 0; pair < CityPathState.PAIR_COUNT; pair++) {
+            blackhole.consume(computeRaysOut.computeAttenuation(pathData, pair, 1.0, pair, pairPaths.get(pair)));
+        }
+    }
+}
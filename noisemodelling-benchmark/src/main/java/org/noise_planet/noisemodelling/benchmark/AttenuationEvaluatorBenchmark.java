@@ -0,0 +1,87 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.benchmark;
+
+import org.noise_planet.noisemodelling.pathfinder.Orientation;
+import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
+import org.noise_planet.noisemodelling.propagation.EvaluateAttenuationCnossos;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attenuation of the diffracted paths of the synthetic city with the static methods of
+ * {@link EvaluateAttenuationCnossos}, which allocate the result arrays of each term, and with a single evaluator
+ * instance writing in the arrays given by the caller. The paths counter is the throughput in paths per second, run
+ * with -prof gc to compare the allocated memory.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AttenuationEvaluatorBenchmark {
+    /** Paths diffracted over the roofs, the only ones supported by {@link EvaluateAttenuationCnossos#evaluate} */
+    List<PropagationPath> diffractedPaths = new ArrayList<>();
+    PropagationProcessPathData pathData;
+    EvaluateAttenuationCnossos evaluator;
+    double[] aGlobal;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class PathCounter {
+        /** Number of evaluated paths */
+        public long paths;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            paths = 0;
+        }
+    }
+
+    @Setup
+    public void setUp(CityPathState city) {
+        Orientation orientation = new Orientation();
+        for(int pair = 0; pair < CityPathState.PAIR_COUNT; pair++) {
+            for(PropagationPath path : city.computeRays.directPath(city.sources[pair], pair, orientation,
+                    city.receivers[pair], pair, true, true, false)) {
+                if(path.difHPoints.size() > 0 && path.difVPoints.isEmpty() && path.getSegmentList().size() > 1) {
+                    diffractedPaths.add(path);
+                }
+            }
+        }
+        pathData = new PropagationProcessPathData();
+        evaluator = new EvaluateAttenuationCnossos(pathData);
+        aGlobal = new double[evaluator.getFrequencyCount()];
+    }
+
+    @Benchmark
+    public void staticMethods(PathCounter counter, Blackhole blackhole) {
+        for(PropagationPath path : diffractedPaths) {
+            blackhole.consume(EvaluateAttenuationCnossos.evaluate(path, pathData));
+        }
+        counter.paths += diffractedPaths.size();
+    }
+
+    @Benchmark
+    public void evaluatorInstance(PathCounter counter, Blackhole blackhole) {
+        for(PropagationPath path : diffractedPaths) {
+            blackhole.consume(evaluator.evaluate(path, aGlobal));
+        }
+        counter.paths += diffractedPaths.size();
+    }
+}
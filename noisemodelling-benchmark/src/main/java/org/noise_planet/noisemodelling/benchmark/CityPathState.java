@@ -0,0 +1,94 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.benchmark;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.LineString;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Synthetic city with source-receiver pairs shared by the path finding benchmarks.
+ * Pairs are randomly drawn among the receivers and the road centres within the propagation distance.
+ */
+@State(Scope.Benchmark)
+public class CityPathState {
+    /** Number of source-receiver pairs evaluated by each benchmark invocation */
+    public static final int PAIR_COUNT = 256;
+
+    @Param({"10"})
+    public int blockCount;
+
+    @Param({"250"})
+    public double maximumPropagationDistance;
+
+    public SyntheticCity city;
+    public ProfileBuilder profileBuilder;
+    public CnossosPropagationData data;
+    public ComputeCnossosRays computeRays;
+    /** Source and receiver of each pair */
+    public Coordinate[] sources;
+    public Coordinate[] receivers;
+    /** Pairs with at least one building between the source and the receiver */
+    public List<Integer> obstructedPairs = new ArrayList<>();
+
+    @Setup
+    public void setUp() {
+        city = new SyntheticCity(blockCount, 42);
+        profileBuilder = city.createProfileBuilder();
+        data = city.createPropagationData(profileBuilder, 2, maximumPropagationDistance);
+        computeRays = new ComputeCnossosRays(data);
+        List<Coordinate> roadCentres = new ArrayList<>();
+        for(LineString road : city.getRoads()) {
+            Coordinate centre = road.getEnvelopeInternal().centre();
+            roadCentres.add(new Coordinate(centre.x, centre.y, SyntheticCity.SOURCE_HEIGHT));
+        }
+        Random random = new Random(42);
+        sources = new Coordinate[PAIR_COUNT];
+        receivers = new Coordinate[PAIR_COUNT];
+        List<Coordinate> cityReceivers = city.getReceivers();
+        int pair = 0;
+        while(pair < PAIR_COUNT) {
+            Coordinate receiver = cityReceivers.get(random.nextInt(cityReceivers.size()));
+            Coordinate source = roadCentres.get(random.nextInt(roadCentres.size()));
+            if(receiver.distance(source) > maximumPropagationDistance) {
+                continue;
+            }
+            receivers[pair] = receiver;
+            sources[pair] = source;
+            if(!profileBuilder.getProfile(source, receiver, data.gS).isFreeField()) {
+                obstructedPairs.add(pair);
+            }
+            pair++;
+        }
+    }
+
+    /**
+     * @param receiver Receiver position
+     * @return Walls of the buildings within the propagation distance of the receiver
+     */
+    public List<ProfileBuilder.Wall> getReceiverWalls(Coordinate receiver) {
+        Envelope receiverPropagationEnvelope = new Envelope(receiver);
+        receiverPropagationEnvelope.expandBy(data.maxSrcDist);
+        return profileBuilder.getWallsIn(receiverPropagationEnvelope);
+    }
+}
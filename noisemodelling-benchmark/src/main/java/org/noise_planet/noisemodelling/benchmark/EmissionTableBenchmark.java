@@ -0,0 +1,107 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.benchmark;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.noise_planet.noisemodelling.jdbc.LDENConfig;
+import org.noise_planet.noisemodelling.jdbc.utils.MakeLWTable;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+import org.openjdk.jmh.annotations.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generation of the road emission table (LW_ROADS) from a road traffic table stored in a H2GIS database, with the
+ * day, evening and night traffic of the five vehicle categories. The rows counter is the throughput in road
+ * segments per second, compare the thread counts with ex: -p threadCount=1,2,4,8
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EmissionTableBenchmark {
+    /** Number of road segments */
+    @Param({"1000000"})
+    public int rowCount;
+
+    @Param({"1", "4"})
+    public int threadCount;
+
+    Connection connection;
+    LDENConfig ldenConfig;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class RowCounter {
+        /** Number of road segments written */
+        public long rows;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rows = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws SQLException, ClassNotFoundException {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                EmissionTableBenchmark.class.getSimpleName(), true));
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS ROADS");
+            // Segments of 20 m on a grid, various speeds, flows and pavements
+            st.execute("CREATE TABLE ROADS(PK INTEGER PRIMARY KEY, THE_GEOM GEOMETRY(LINESTRING), " +
+                    "LV_D DOUBLE, LV_E DOUBLE, LV_N DOUBLE, MV_D DOUBLE, MV_E DOUBLE, MV_N DOUBLE, " +
+                    "HGV_D DOUBLE, HGV_E DOUBLE, HGV_N DOUBLE, WAV_D DOUBLE, WAV_E DOUBLE, WAV_N DOUBLE, " +
+                    "WBV_D DOUBLE, WBV_E DOUBLE, WBV_N DOUBLE, LV_SPD_D DOUBLE, LV_SPD_E DOUBLE, LV_SPD_N DOUBLE, " +
+                    "MV_SPD_D DOUBLE, MV_SPD_E DOUBLE, MV_SPD_N DOUBLE, HGV_SPD_D DOUBLE, HGV_SPD_E DOUBLE, " +
+                    "HGV_SPD_N DOUBLE, WAV_SPD_D DOUBLE, WAV_SPD_E DOUBLE, WAV_SPD_N DOUBLE, WBV_SPD_D DOUBLE, " +
+                    "WBV_SPD_E DOUBLE, WBV_SPD_N DOUBLE, PVMT VARCHAR, TEMP_D DOUBLE, TEMP_E DOUBLE, TEMP_N DOUBLE, " +
+                    "JUNC_DIST DOUBLE, JUNC_TYPE INTEGER, WAY INTEGER)");
+            st.execute("INSERT INTO ROADS SELECT X, ST_MakeLine(ST_MakePoint(MOD(X, 1000) * 20, X / 1000 * 20), " +
+                    "ST_MakePoint(MOD(X, 1000) * 20 + 20, X / 1000 * 20)), " +
+                    "MOD(X, 1500), MOD(X, 1500) / 4, MOD(X, 1500) / 10, " +
+                    "MOD(X, 80), MOD(X, 80) / 4, MOD(X, 80) / 10, " +
+                    "MOD(X, 120), MOD(X, 120) / 4, MOD(X, 120) / 10, " +
+                    "MOD(X, 20), MOD(X, 20) / 4, MOD(X, 20) / 10, " +
+                    "MOD(X, 30), MOD(X, 30) / 4, MOD(X, 30) / 10, " +
+                    "30 + MOD(X, 101), 30 + MOD(X, 101), 30 + MOD(X, 101), " +
+                    "30 + MOD(X, 61), 30 + MOD(X, 61), 30 + MOD(X, 61), " +
+                    "30 + MOD(X, 61), 30 + MOD(X, 61), 30 + MOD(X, 61), " +
+                    "30 + MOD(X, 21), 30 + MOD(X, 21), 30 + MOD(X, 21), " +
+                    "30 + MOD(X, 101), 30 + MOD(X, 101), 30 + MOD(X, 101), " +
+                    "CASEWHEN(MOD(X, 3) = 0, 'NL05', 'NL01'), 20, 15, 10, " +
+                    "MOD(X, 250), 1 + MOD(X, 2), 3 FROM SYSTEM_RANGE(1, " + rowCount + ")");
+        }
+        ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setCoefficientVersion(2);
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.DAY, new PropagationProcessPathData(false));
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.EVENING, new PropagationProcessPathData(false));
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.NIGHT, new PropagationProcessPathData(false));
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void makeRoadLWTable(RowCounter counter) throws SQLException {
+        MakeLWTable.makeRoadLWTable(connection, "ROADS", "LW_ROADS", ldenConfig, threadCount);
+        counter.rows += rowCount;
+    }
+}
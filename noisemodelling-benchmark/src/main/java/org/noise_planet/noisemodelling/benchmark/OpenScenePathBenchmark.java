@@ -0,0 +1,120 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.benchmark;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.Orientation;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.TopographicRaster;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Direct path in a rural area: a few scattered buildings, fields with different ground factors and an optional
+ * topographic raster. Most of the source-receiver lines do not cross any building.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OpenScenePathBenchmark {
+    /** Number of source-receiver pairs evaluated by each benchmark invocation */
+    public static final int PAIR_COUNT = 256;
+    /** Side of the area in meters */
+    public static final double SIDE = 2000;
+
+    @State(Scope.Benchmark)
+    public static class OpenSceneState {
+        /** FLAT without topography, HILLS with a topographic raster */
+        @Param({"FLAT", "HILLS"})
+        public String terrain;
+
+        @Param({"12"})
+        public int buildingCount;
+
+        @Param({"500"})
+        public double maximumPropagationDistance;
+
+        ProfileBuilder profileBuilder;
+        ComputeCnossosRays computeRays;
+        Coordinate[] sources = new Coordinate[PAIR_COUNT];
+        Coordinate[] receivers = new Coordinate[PAIR_COUNT];
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(42);
+            profileBuilder = new ProfileBuilder();
+            if("HILLS".equals(terrain)) {
+                final int sampleCount = 201;
+                final double cellSize = SIDE / (sampleCount - 1);
+                float[] heights = new float[sampleCount * sampleCount];
+                for(int row = 0; row < sampleCount; row++) {
+                    for(int column = 0; column < sampleCount; column++) {
+                        heights[row * sampleCount + column] = (float) (15 * Math.sin(column / 30.0) *
+                                Math.cos(row / 45.0));
+                    }
+                }
+                profileBuilder.setTopographicRaster(new TopographicRaster(0, 0, cellSize, sampleCount, sampleCount,
+                        heights));
+            }
+            for(int i = 0; i < buildingCount; i++) {
+                double x = random.nextDouble() * (SIDE - 20);
+                double y = random.nextDouble() * (SIDE - 20);
+                profileBuilder.addBuilding(new Coordinate[]{new Coordinate(x, y), new Coordinate(x + 15, y),
+                        new Coordinate(x + 15, y + 10), new Coordinate(x, y + 10), new Coordinate(x, y)}, 8, i + 1);
+            }
+            // Fields of 250 m alternating ploughed and grass ground
+            for(int i = 0; i < 8; i++) {
+                for(int j = 0; j < 8; j++) {
+                    profileBuilder.addGroundEffect(i * 250, (i + 1) * 250, j * 250, (j + 1) * 250,
+                            (i + j) % 2 == 0 ? 0.7 : 1);
+                }
+            }
+            profileBuilder.finishFeeding();
+            CnossosPropagationData data = new CnossosPropagationData(profileBuilder);
+            data.maxSrcDist = maximumPropagationDistance;
+            computeRays = new ComputeCnossosRays(data);
+            int pair = 0;
+            while(pair < PAIR_COUNT) {
+                Coordinate source = new Coordinate(random.nextDouble() * SIDE, random.nextDouble() * SIDE);
+                Coordinate receiver = new Coordinate(random.nextDouble() * SIDE, random.nextDouble() * SIDE);
+                if(source.distance(receiver) > maximumPropagationDistance) {
+                    continue;
+                }
+                source.z = profileBuilder.getZGround(source) + SyntheticCity.SOURCE_HEIGHT;
+                receiver.z = profileBuilder.getZGround(receiver) + SyntheticCity.RECEIVER_HEIGHT;
+                sources[pair] = source;
+                receivers[pair] = receiver;
+                pair++;
+            }
+        }
+    }
+
+    /**
+     * Direct path without the diffraction, ie the cutting profile and the free field path
+     */
+    @Benchmark
+    @OperationsPerInvocation(PAIR_COUNT)
+    public void directPath(OpenSceneState scene, Blackhole blackhole) {
+        Orientation orientation = new Orientation();
+        for(int pair = 0; pair < PAIR_COUNT; pair++) {
+            blackhole.consume(scene.computeRays.directPath(scene.sources[pair], pair, orientation,
+                    scene.receivers[pair], pair, false, false, false));
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.benchmark;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.CompactCutProfile;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.MirrorReceiverResultIndex;
+import org.noise_planet.noisemodelling.pathfinder.Orientation;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Path finding hot paths, each invocation processes {@link CityPathState#PAIR_COUNT} source-receiver pairs
+ * (or only the obstructed pairs for the diffraction benchmarks).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathFinderBenchmark {
+
+    /**
+     * Cut profiles and mirror receivers computed once, in order to measure only the benchmarked method
+     */
+    @State(Scope.Benchmark)
+    public static class PreparedState {
+        List<ProfileBuilder.CutProfile> obstructedProfiles = new ArrayList<>();
+        List<List<ProfileBuilder.Wall>> receiverWalls = new ArrayList<>();
+        List<MirrorReceiverResultIndex> mirrorReceiverIndexes = new ArrayList<>();
+
+        @Setup
+        public void setUp(CityPathState city) {
+            for(int pair : city.obstructedPairs) {
+                obstructedProfiles.add(city.profileBuilder.getProfile(city.sources[pair], city.receivers[pair],
+                        city.data.gS));
+            }
+            for(Coordinate receiver : city.receivers) {
+                List<ProfileBuilder.Wall> walls = city.getReceiverWalls(receiver);
+                receiverWalls.add(walls);
+                mirrorReceiverIndexes.add(new MirrorReceiverResultIndex(walls, receiver, city.data.reflexionOrder,
+                        city.data.maxSrcDist, city.data.maxRefDist));
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CityPathState.PAIR_COUNT)
+    public void getProfile(CityPathState city, Blackhole blackhole) {
+        for(int pair = 0; pair < CityPathState.PAIR_COUNT; pair++) {
+            blackhole.consume(city.profileBuilder.getProfile(city.sources[pair], city.receivers[pair], city.data.gS));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CityPathState.PAIR_COUNT)
+    public void getCompactProfile(CityPathState city, Blackhole blackhole) {
+        CompactCutProfile profile = new CompactCutProfile();
+        for(int pair = 0; pair < CityPathState.PAIR_COUNT; pair++) {
+            city.profileBuilder.getProfile(city.sources[pair], city.receivers[pair], city.data.gS, profile);
+            blackhole.consume(profile.isFreeField());
+        }
+    }
+
+    /**
+     * Direct path without the diffraction, ie the cutting profile and the free field path
+     */
+    @Benchmark
+    @OperationsPerInvocation(CityPathState.PAIR_COUNT)
+    public void directPath(CityPathState city, Blackhole blackhole) {
+        Orientation orientation = new Orientation();
+        for(int pair = 0; pair < CityPathState.PAIR_COUNT; pair++) {
+            blackhole.consume(city.computeRays.directPath(city.sources[pair], pair, orientation, city.receivers[pair],
+                    pair, false, false, false));
+        }
+    }
+
+    @Benchmark
+    public void computeHEdgeDiffraction(CityPathState city, PreparedState prepared, Blackhole blackhole) {
+        for(ProfileBuilder.CutProfile profile : prepared.obstructedProfiles) {
+            blackhole.consume(city.computeRays.computeHEdgeDiffraction(profile, false));
+        }
+    }
+
+    @Benchmark
+    public void computeVEdgeDiffraction(CityPathState city, Blackhole blackhole) {
+        Orientation orientation = new Orientation();
+        for(int pair : city.obstructedPairs) {
+            blackhole.consume(city.computeRays.computeVEdgeDiffraction(city.sources[pair], city.receivers[pair],
+                    city.data, ComputeCnossosRays.ComputationSide.LEFT, orientation));
+            blackhole.consume(city.computeRays.computeVEdgeDiffraction(city.sources[pair], city.receivers[pair],
+                    city.data, ComputeCnossosRays.ComputationSide.RIGHT, orientation));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CityPathState.PAIR_COUNT)
+    public void mirrorReceiverResultIndex(CityPathState city, PreparedState prepared, Blackhole blackhole) {
+        for(int pair = 0; pair < CityPathState.PAIR_COUNT; pair++) {
+            blackhole.consume(new MirrorReceiverResultIndex(prepared.receiverWalls.get(pair), city.receivers[pair],
+                    city.data.reflexionOrder, city.data.maxSrcDist, city.data.maxRefDist));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CityPathState.PAIR_COUNT)
+    public void computeReflexion(CityPathState city, PreparedState prepared, Blackhole blackhole) {
+        Orientation orientation = new Orientation();
+        for(int pair = 0; pair < CityPathState.PAIR_COUNT; pair++) {
+            blackhole.consume(city.computeRays.computeReflexion(city.receivers[pair], city.sources[pair], false,
+                    orientation, prepared.mirrorReceiverIndexes.get(pair)));
+        }
+    }
+}
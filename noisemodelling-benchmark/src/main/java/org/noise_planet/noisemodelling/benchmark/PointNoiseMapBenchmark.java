@@ -0,0 +1,88 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.benchmark;
+
+import org.h2gis.api.EmptyProgressVisitor;
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.noise_planet.noisemodelling.jdbc.PointNoiseMap;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Complete computation of all the cells of a synthetic city stored in a H2GIS database: fetch of the cell data and
+ * propagation of all the receivers of the cell. The city size is set with the blockCount parameter
+ * (ex: -p blockCount=5,20).
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PointNoiseMapBenchmark {
+    @Param({"5", "10"})
+    public int blockCount;
+
+    @Param({"250"})
+    public double maximumPropagationDistance;
+
+    @Param({"1"})
+    public int reflectionOrder;
+
+    Connection connection;
+    PointNoiseMap pointNoiseMap;
+    List<PointNoiseMap.CellIndex> cells;
+
+    @Setup
+    public void setUp() throws SQLException, ClassNotFoundException {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(
+                PointNoiseMapBenchmark.class.getSimpleName(), true));
+        SyntheticCity city = new SyntheticCity(blockCount, 42);
+        city.createTables(connection);
+        pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS", "RECEIVERS");
+        pointNoiseMap.setMaximumPropagationDistance(maximumPropagationDistance);
+        pointNoiseMap.setMaximumReflectionDistance(Math.min(maximumPropagationDistance,
+                pointNoiseMap.getMaximumReflectionDistance()));
+        pointNoiseMap.setSoundReflectionOrder(reflectionOrder);
+        pointNoiseMap.setComputeHorizontalDiffraction(true);
+        pointNoiseMap.setComputeVerticalDiffraction(true);
+        pointNoiseMap.setHeightField("HEIGHT");
+        pointNoiseMap.setVerbose(false);
+        pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+        cells = new ArrayList<>(new TreeSet<>(pointNoiseMap.searchPopulatedCells(connection).keySet()));
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public void evaluateCell(Blackhole blackhole) throws SQLException, IOException {
+        Set<Long> processedReceivers = new HashSet<>();
+        for(PointNoiseMap.CellIndex cellIndex : cells) {
+            blackhole.consume(pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(),
+                    cellIndex.getLongitudeIndex(), new EmptyProgressVisitor(), processedReceivers));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.benchmark;
+
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
+import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRaysOut;
+import org.noise_planet.noisemodelling.pathfinder.SkewedScene;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ComputeCnossosRays#run} on the {@link SkewedScene}, the receivers near the dense part are far more
+ * expensive than the others.
+ * The static scheduler reproduces the previous partition (one contiguous chunk of receivers per thread), the
+ * cost ordered scheduler evaluates the expensive receivers first and lets the idle threads steal small batches.
+ * The sample time mode reports the percentiles of the run duration, the slowest thread sets the end of the run.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReceiverSchedulerBenchmark {
+    @Param({"static", "costOrdered"})
+    public String scheduler;
+
+    @Param({"4"})
+    public int threadCount;
+
+    CnossosPropagationData data;
+
+    @Setup
+    public void setUp() {
+        data = SkewedScene.create();
+    }
+
+    @Benchmark
+    public long run() {
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(threadCount);
+        if("static".equals(scheduler)) {
+            computeRays.setReceiverBatchSize((int) Math.ceil(data.receivers.size() / (double) threadCount));
+            computeRays.setSortReceiversByCost(false);
+        }
+        ComputeCnossosRaysOut out = new ComputeCnossosRaysOut(false);
+        computeRays.run(out);
+        return out.rayCount.get();
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.benchmark;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.noise_planet.noisemodelling.pathfinder.QueryGeometryStructure;
+import org.noise_planet.noisemodelling.pathfinder.QueryPackedRTree;
+import org.noise_planet.noisemodelling.pathfinder.QueryRTree;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query of the sources around the receivers, JTS STRtree versus packed R-tree.
+ * Run with {@code -prof gc} in order to compare the allocated memory of the queries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SourceIndexBenchmark {
+    /** Number of queries of a benchmark invocation */
+    public static final int QUERY_COUNT = 256;
+
+    @State(Scope.Benchmark)
+    public static class SourceState {
+        @Param({"STRTREE", "PACKED"})
+        public String index;
+
+        @Param({"100000"})
+        public int sourceCount;
+
+        /** Side of the square area */
+        @Param({"10000"})
+        public double side;
+
+        @Param({"250"})
+        public double maximumPropagationDistance;
+
+        QueryGeometryStructure sourcesIndex;
+        Envelope[] queries = new Envelope[QUERY_COUNT];
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(42);
+            GeometryFactory factory = new GeometryFactory();
+            sourcesIndex = "PACKED".equals(index) ? new QueryPackedRTree() : new QueryRTree();
+            for(int i = 0; i < sourceCount; i++) {
+                sourcesIndex.appendGeometry(factory.createPoint(new Coordinate(random.nextDouble() * side,
+                        random.nextDouble() * side, 0.05)), i);
+            }
+            for(int i = 0; i < QUERY_COUNT; i++) {
+                queries[i] = new Envelope(new Coordinate(random.nextDouble() * side, random.nextDouble() * side));
+                queries[i].expandBy(maximumPropagationDistance);
+            }
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERY_COUNT)
+    public void query(SourceState state, Blackhole blackhole) {
+        for(Envelope query : state.queries) {
+            state.sourcesIndex.query(query, blackhole::consume);
+        }
+    }
+}
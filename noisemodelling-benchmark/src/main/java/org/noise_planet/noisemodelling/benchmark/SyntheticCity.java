@@ -0,0 +1,208 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.benchmark;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.geom.Polygon;
+import org.locationtech.jts.io.WKTWriter;
+import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generate a reproducible city made of square blocks separated by streets.
+ * Each block contains 4 buildings of random height and footprint, a road source is located on the centre line of
+ * each street segment and a receiver is located in front of each side of the blocks.
+ */
+public class SyntheticCity {
+    public static final double BLOCK_SIZE = 60;
+    public static final double STREET_WIDTH = 20;
+    public static final double RECEIVER_HEIGHT = 4;
+    public static final double SOURCE_HEIGHT = 0.05;
+    /** Road emission in dB for each octave band from 63 Hz to 8 kHz */
+    public static final double[] ROAD_EMISSION = new double[] {75, 78, 80, 82, 85, 82, 78, 72};
+
+    private final GeometryFactory factory = new GeometryFactory();
+    private final List<Polygon> buildings = new ArrayList<>();
+    private final List<Double> buildingHeights = new ArrayList<>();
+    private final List<LineString> roads = new ArrayList<>();
+    private final List<Coordinate> receivers = new ArrayList<>();
+    private final int blockCount;
+
+    /**
+     * @param blockCount Number of blocks on each side of the city
+     * @param seed Random seed
+     */
+    public SyntheticCity(int blockCount, long seed) {
+        this.blockCount = blockCount;
+        Random random = new Random(seed);
+        double step = BLOCK_SIZE + STREET_WIDTH;
+        double halfBuilding = BLOCK_SIZE / 2;
+        for(int i = 0; i < blockCount; i++) {
+            for(int j = 0; j < blockCount; j++) {
+                double blockX = STREET_WIDTH + i * step;
+                double blockY = STREET_WIDTH + j * step;
+                // 4 buildings per block with a random backyard
+                for(int k = 0; k < 4; k++) {
+                    double minX = blockX + (k % 2) * halfBuilding;
+                    double minY = blockY + (k / 2) * halfBuilding;
+                    double maxX = minX + halfBuilding - 2 - random.nextDouble() * 8;
+                    double maxY = minY + halfBuilding - 2 - random.nextDouble() * 8;
+                    if(k % 2 == 1) {
+                        minX = blockX + BLOCK_SIZE - (maxX - minX);
+                        maxX = blockX + BLOCK_SIZE;
+                    }
+                    if(k / 2 == 1) {
+                        minY = blockY + BLOCK_SIZE - (maxY - minY);
+                        maxY = blockY + BLOCK_SIZE;
+                    }
+                    buildings.add(factory.createPolygon(new Coordinate[] {new Coordinate(minX, minY),
+                            new Coordinate(maxX, minY), new Coordinate(maxX, maxY), new Coordinate(minX, maxY),
+                            new Coordinate(minX, minY)}));
+                    buildingHeights.add(6 + random.nextDouble() * 24);
+                }
+                receivers.add(new Coordinate(blockX + BLOCK_SIZE / 2, blockY - 2, RECEIVER_HEIGHT));
+                receivers.add(new Coordinate(blockX + BLOCK_SIZE + 2, blockY + BLOCK_SIZE / 2, RECEIVER_HEIGHT));
+                receivers.add(new Coordinate(blockX + BLOCK_SIZE / 2, blockY + BLOCK_SIZE + 2, RECEIVER_HEIGHT));
+                receivers.add(new Coordinate(blockX - 2, blockY + BLOCK_SIZE / 2, RECEIVER_HEIGHT));
+            }
+        }
+        // Streets centre lines, one road per street segment between two crossroads
+        for(int line = 0; line <= blockCount; line++) {
+            double position = STREET_WIDTH / 2 + line * step;
+            for(int segment = 0; segment < blockCount; segment++) {
+                double start = STREET_WIDTH / 2 + segment * step;
+                roads.add(factory.createLineString(new Coordinate[] {new Coordinate(start, position, SOURCE_HEIGHT),
+                        new Coordinate(start + step, position, SOURCE_HEIGHT)}));
+                roads.add(factory.createLineString(new Coordinate[] {new Coordinate(position, start, SOURCE_HEIGHT),
+                        new Coordinate(position, start + step, SOURCE_HEIGHT)}));
+            }
+        }
+    }
+
+    /**
+     * @return Side length of the city in meters
+     */
+    public double getSideLength() {
+        return blockCount * (BLOCK_SIZE + STREET_WIDTH) + STREET_WIDTH;
+    }
+
+    public List<Polygon> getBuildings() {
+        return buildings;
+    }
+
+    public List<Double> getBuildingHeights() {
+        return buildingHeights;
+    }
+
+    public List<LineString> getRoads() {
+        return roads;
+    }
+
+    public List<Coordinate> getReceivers() {
+        return receivers;
+    }
+
+    /**
+     * @return Profile builder fed with the buildings of the city
+     */
+    public ProfileBuilder createProfileBuilder() {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        for(int i = 0; i < buildings.size(); i++) {
+            profileBuilder.addBuilding(buildings.get(i), buildingHeights.get(i), i + 1);
+        }
+        profileBuilder.finishFeeding();
+        return profileBuilder;
+    }
+
+    /**
+     * @param profileBuilder Profile builder given by {@link #createProfileBuilder()}
+     * @param reflectionOrder Reflection order
+     * @param maximumPropagationDistance Maximum propagation distance in meters
+     * @return Propagation data with the roads as sources and all the receivers
+     */
+    public CnossosPropagationData createPropagationData(ProfileBuilder profileBuilder, int reflectionOrder,
+                                                        double maximumPropagationDistance) {
+        CnossosPropagationData data = new CnossosPropagationData(profileBuilder);
+        for(int i = 0; i < roads.size(); i++) {
+            data.addSource((long) i + 1, roads.get(i));
+        }
+        for(int i = 0; i < receivers.size(); i++) {
+            data.addReceiver(i + 1, receivers.get(i));
+        }
+        data.reflexionOrder = reflectionOrder;
+        data.maxSrcDist = maximumPropagationDistance;
+        data.maxRefDist = Math.min(data.maxRefDist, maximumPropagationDistance);
+        return data;
+    }
+
+    /**
+     * Create the BUILDINGS(PK, THE_GEOM, HEIGHT), ROADS(PK, THE_GEOM, DB_M63..DB_M8000) and
+     * RECEIVERS(PK, THE_GEOM) tables
+     * @param connection Database connection
+     * @throws SQLException
+     */
+    public void createTables(Connection connection) throws SQLException {
+        WKTWriter wktWriter = new WKTWriter(3);
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS BUILDINGS, ROADS, RECEIVERS");
+            st.execute("CREATE TABLE BUILDINGS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY(POLYGON), HEIGHT DOUBLE)");
+            st.execute("CREATE TABLE ROADS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY(LINESTRINGZ), DB_M63 DOUBLE," +
+                    " DB_M125 DOUBLE, DB_M250 DOUBLE, DB_M500 DOUBLE, DB_M1000 DOUBLE, DB_M2000 DOUBLE," +
+                    " DB_M4000 DOUBLE, DB_M8000 DOUBLE)");
+            st.execute("CREATE TABLE RECEIVERS(PK SERIAL PRIMARY KEY, THE_GEOM GEOMETRY(POINTZ))");
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO BUILDINGS(THE_GEOM, HEIGHT)" +
+                " VALUES (ST_GeomFromText(?), ?)")) {
+            for(int i = 0; i < buildings.size(); i++) {
+                ps.setString(1, buildings.get(i).toText());
+                ps.setDouble(2, buildingHeights.get(i));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO ROADS(THE_GEOM, DB_M63, DB_M125," +
+                " DB_M250, DB_M500, DB_M1000, DB_M2000, DB_M4000, DB_M8000) VALUES (ST_GeomFromText(?)," +
+                " ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            for(LineString road : roads) {
+                ps.setString(1, wktWriter.write(road));
+                for(int i = 0; i < ROAD_EMISSION.length; i++) {
+                    ps.setDouble(i + 2, ROAD_EMISSION[i]);
+                }
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO RECEIVERS(THE_GEOM)" +
+                " VALUES (ST_GeomFromText(?))")) {
+            for(Coordinate receiver : receivers) {
+                ps.setString(1, wktWriter.write(factory.createPoint(receiver)));
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE SPATIAL INDEX ON BUILDINGS(THE_GEOM)");
+            st.execute("CREATE SPATIAL INDEX ON ROADS(THE_GEOM)");
+            st.execute("CREATE SPATIAL INDEX ON RECEIVERS(THE_GEOM)");
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.benchmark;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.TopographicRaster;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Triangulated topography versus topographic raster, on a regular grid of heights like an imported ASC file.
+ * Run with {@code -prof gc} in order to compare the allocated memory of {@link ProfileBuilder#finishFeeding()}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TopographyBenchmark {
+    /** Number of profiles evaluated by the profile benchmark invocation */
+    public static final int PROFILE_COUNT = 256;
+
+    @State(Scope.Benchmark)
+    public static class DemState {
+        @Param({"TIN", "RASTER"})
+        public String mode;
+
+        /** Number of samples on each side of the grid */
+        @Param({"200"})
+        public int sampleCount;
+
+        @Param({"2"})
+        public double cellSize;
+
+        float[] heights;
+        ProfileBuilder profileBuilder;
+        Coordinate[] profileStarts = new Coordinate[PROFILE_COUNT];
+        Coordinate[] profileEnds = new Coordinate[PROFILE_COUNT];
+
+        @Setup
+        public void setUp() {
+            Random random = new Random(42);
+            heights = new float[sampleCount * sampleCount];
+            for(int row = 0; row < sampleCount; row++) {
+                for(int column = 0; column < sampleCount; column++) {
+                    // Smooth hills with some measurement noise
+                    heights[row * sampleCount + column] = (float) (20 * Math.sin(column / 25.0) * Math.cos(row / 40.0)
+                            + random.nextDouble() * 0.2);
+                }
+            }
+            profileBuilder = createProfileBuilder(this);
+            double side = (sampleCount - 1) * cellSize;
+            for(int i = 0; i < PROFILE_COUNT; i++) {
+                profileStarts[i] = new Coordinate(random.nextDouble() * side, random.nextDouble() * side, 0.05);
+                profileEnds[i] = new Coordinate(random.nextDouble() * side, random.nextDouble() * side, 4);
+            }
+        }
+    }
+
+    static ProfileBuilder createProfileBuilder(DemState state) {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        if("RASTER".equals(state.mode)) {
+            profileBuilder.setTopographicRaster(new TopographicRaster(0, 0, state.cellSize, state.sampleCount,
+                    state.sampleCount, state.heights));
+        } else {
+            for(int row = 0; row < state.sampleCount; row++) {
+                for(int column = 0; column < state.sampleCount; column++) {
+                    profileBuilder.addTopographicPoint(new Coordinate(column * state.cellSize, row * state.cellSize,
+                            state.heights[row * state.sampleCount + column]));
+                }
+            }
+        }
+        return profileBuilder.finishFeeding();
+    }
+
+    @Benchmark
+    public void finishFeeding(DemState state, Blackhole blackhole) {
+        blackhole.consume(createProfileBuilder(state));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @OperationsPerInvocation(PROFILE_COUNT)
+    public void getProfile(DemState state, Blackhole blackhole) {
+        for(int i = 0; i < PROFILE_COUNT; i++) {
+            blackhole.consume(state.profileBuilder.getProfile(state.profileStarts[i], state.profileEnds[i], 0));
+        }
+    }
+}
@@ -31,6 +31,8 @@ import static org.noise_planet.noisemodelling.emission.utils.Utils.*;
 public class RoadCnossos {
     private static JsonNode RoadCnossos_2015 = parse(RoadCnossos.class.getResourceAsStream("RoadCnossos_2015.json")); // old coefficients in 2015 amendments
     private static JsonNode cnossosData2020 =parse(RoadCnossos.class.getResourceAsStream("RoadCnossos_2020.json")); // new coefficients in 2020 amendments
+    private static final RoadCnossosCoefficients coefficients2015 = new RoadCnossosCoefficients(RoadCnossos_2015);
+    private static final RoadCnossosCoefficients coefficients2020 = new RoadCnossosCoefficients(cnossosData2020);
 
     private static JsonNode parse(InputStream inputStream) {
         try {
@@ -54,6 +56,28 @@ public class RoadCnossos {
         }
     }
 
+    /**
+     * Get the CNOSSOS coefficients tables from a specific file version.
+     * @param fileVersion 1=RoadCnossos_2015.json; other = RoadCnossos_2020.json
+     * @return Coefficients compiled from the file
+     */
+    static RoadCnossosCoefficients getCoefficients(int fileVersion) {
+        return fileVersion == 1 ? coefficients2015 : coefficients2020;
+    }
+
+    /**
+     * @param roadSurface Road surface identifier
+     * @return Road surface ordinal in the coefficient tables
+     * @throws IOException if the pavement does not exist
+     */
+    private static int getSurfaceIndex(RoadCnossosCoefficients coefficients, String roadSurface) throws IOException {
+        int surface = coefficients.getSurfaceIndex(roadSurface);
+        if (surface < 0) {
+            throw new IOException("Error : the pavement "+roadSurface + " doesn't exist in the database.");
+        }
+        return surface;
+    }
+
     /**
      * Get "a" road surface coefficient (also called spectrum) for a frequency value
      * @param Freq Frequency in Hz (octave band)
@@ -64,37 +88,9 @@ public class RoadCnossos {
      * @return a Road Coeff
      */
     public static Double getA_RoadSurfaceCoeff(int Freq, String vehCat, String roadSurface, int fileVersion) throws IOException {
-        int Freq_ind;
-        switch (Freq) {
-            case 63:
-                Freq_ind = 0;
-                break;
-            case 125:
-                Freq_ind = 1;
-                break;
-            case 250:
-                Freq_ind = 2;
-                break;
-            case 500:
-                Freq_ind = 3;
-                break;
-            case 1000:
-                Freq_ind = 4;
-                break;
-            case 2000:
-                Freq_ind = 5;
-                break;
-            case 4000:
-                Freq_ind = 6;
-                break;
-            case 8000:
-                Freq_ind = 7;
-                break;
-            default:
-                Freq_ind = 0;
-        }
-        if (getCnossosData(fileVersion).get("roads").get(roadSurface)==null)  throw new IOException("Error : the pavement "+roadSurface + " doesn't exist in the database.");
-        return getCnossosData(fileVersion).get("roads").get(roadSurface).get("ref").get(vehCat).get("spectrum").get(Freq_ind).doubleValue();
+        RoadCnossosCoefficients coefficients = getCoefficients(fileVersion);
+        return coefficients.surfaceSpectrum[getSurfaceIndex(coefficients, roadSurface)]
+                [RoadCnossosCoefficients.getCategoryIndex(vehCat)][RoadCnossosCoefficients.getBandIndex(Freq)];
     }
 
     /**
@@ -106,7 +102,8 @@ public class RoadCnossos {
      * @return a Road Coeff
      */
     public static Double getB_RoadSurfaceCoeff(String vehCat, String roadSurface, int fileVersion) { //CNOSSOS-EU_Road_Catalogue_Final - 01April2014.xlsx - https://circabc.europa.eu/webdav/CircaBC/env/noisedir/Library/Public/cnossos-eu/Final_methods%26software
-        return getCnossosData(fileVersion).get("roads").get(roadSurface).get("ref").get(vehCat).get("ßm").doubleValue();
+        RoadCnossosCoefficients coefficients = getCoefficients(fileVersion);
+        return coefficients.surfaceBeta[coefficients.getSurfaceIndex(roadSurface)][RoadCnossosCoefficients.getCategoryIndex(vehCat)];
     }
 
     /**
@@ -117,7 +114,7 @@ public class RoadCnossos {
      * @return Cr coefficient
      */
     public static double getCr(String vehCat, int k, int fileVersion) {
-        return getCnossosData(fileVersion).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cr").doubleValue();
+        return getCoefficients(fileVersion).cr[RoadCnossosCoefficients.getCategoryIndex(vehCat)][RoadCnossosCoefficients.getJunctionIndex(k)];
     }
 
     /**
@@ -128,7 +125,7 @@ public class RoadCnossos {
      * @return Cp coefficient
      */
     public static double getCp(String vehCat, int k, int fileVersion) {
-        return getCnossosData(fileVersion).get("vehicles").get(vehCat).get(k == 1 ? "crossing" : "roundabout").get("cp").doubleValue();
+        return getCoefficients(fileVersion).cp[RoadCnossosCoefficients.getCategoryIndex(vehCat)][RoadCnossosCoefficients.getJunctionIndex(k)];
     }
 
     /**
@@ -139,36 +136,31 @@ public class RoadCnossos {
      * @return Vehicle emission values coefficients
      */
     public static Double getCoeff(String coeff, int freq, String vehicleCategory, int coeffVer) {
-        int Freq_ind;
-        switch (freq) {
-            case 63:
-                Freq_ind = 0;
-                break;
-            case 125:
-                Freq_ind = 1;
-                break;
-            case 250:
-                Freq_ind = 2;
+        RoadCnossosCoefficients coefficients = getCoefficients(coeffVer);
+        double[][] table;
+        switch (coeff) {
+            case "ar":
+                table = coefficients.ar;
                 break;
-            case 500:
-                Freq_ind = 3;
+            case "br":
+                table = coefficients.br;
                 break;
-            case 1000:
-                Freq_ind = 4;
+            case "ap":
+                table = coefficients.ap;
                 break;
-            case 2000:
-                Freq_ind = 5;
+            case "bp":
+                table = coefficients.bp;
                 break;
-            case 4000:
-                Freq_ind = 6;
+            case "a":
+                table = coefficients.a;
                 break;
-            case 8000:
-                Freq_ind = 7;
+            case "b":
+                table = coefficients.b;
                 break;
             default:
-                Freq_ind = 0;
+                throw new IllegalArgumentException("Unknown coefficient " + coeff);
         }
-        return getCnossosData(coeffVer).get("vehicles").get(vehicleCategory).get(coeff).get(Freq_ind).doubleValue();
+        return table[RoadCnossosCoefficients.getCategoryIndex(vehicleCategory)][RoadCnossosCoefficients.getBandIndex(freq)];
     }
 
     /**
@@ -184,28 +176,6 @@ public class RoadCnossos {
         return base + adj * Math.log10(speed / speedBase);
     }
 
-    /**
-     * Correction for studded tyres - Eq. 2.2.6
-     * only for light vehicles
-     * if speed is over 50 km/h or below 90 km/h the correction is limited.
-     * @param roadCnossosParameters every others parameters linked to RoadCnossosParameters class (e.g. speed on the road segment)
-     * @param Pm_stud proportion of vehicle equipped of studded tyres
-     * @param Ts_stud number of months they are equipped with studded tires
-     * @param freq Frequency in Hz (octave band)
-     * @param fileVersion
-     * @return
-     */
-    private static Double getDeltaStuddedTyres(RoadCnossosParameters roadCnossosParameters, double Pm_stud, double Ts_stud,
-                                               int freq, int fileVersion, double vRef) throws IOException {
-        double speed = roadCnossosParameters.getSpeedLv();
-        double ps = Pm_stud * Ts_stud / 12;  // Eq. 2.2.7 yearly average proportion of vehicles equipped with studded tyres
-        speed = (speed >= 90) ? 90 : speed;
-        speed = (speed <= 50) ? 50 : speed;
-        double deltastud = getNoiseLvl(getCoeff("a", freq, "1", fileVersion), getCoeff("b", freq, "1", fileVersion), speed, vRef);
-        return 10 * Math.log10((1 - ps) + ps * Math.pow(10, deltastud / 10)); // Eq. 2.2.8
-        // Only for light vehicles (Eq.2.2.9)
-    }
-
     /**
      * Get the correction due to the air temperature
      * @param Temperature temperature in °C
@@ -279,6 +249,7 @@ public class RoadCnossos {
         return deltaSlope;
     }
 
+
     /**
      * Return the noise emission level of a road segment in dB/m
      * @param roadCnossosParameters every parameters linked to RoadCnossosParameters class (e.g. speed on the road segment)
@@ -286,44 +257,67 @@ public class RoadCnossos {
      */
 
     public static double evaluate(RoadCnossosParameters roadCnossosParameters) throws IOException {
-        final int freqParam = roadCnossosParameters.getFrequency();
+        final int band = RoadCnossosCoefficients.getBandIndex(roadCnossosParameters.getFrequency());
+        double[] levels = new double[RoadCnossosCoefficients.FREQUENCIES.length];
+        evaluate(roadCnossosParameters, band, band + 1, levels);
+        return levels[band];
+    }
+
+    /**
+     * Return the noise emission spectrum of a road segment in dB/m. The frequency of the parameters is ignored.
+     * @param roadCnossosParameters every parameters linked to RoadCnossosParameters class (e.g. speed on the road segment)
+     * @return Noise level in dB for each octave band from 63 Hz to 8000 Hz
+     * @see #getFrequencyIndex(int)
+     */
+    public static double[] evaluateSpectrum(RoadCnossosParameters roadCnossosParameters) throws IOException {
+        double[] levels = new double[RoadCnossosCoefficients.FREQUENCIES.length];
+        evaluate(roadCnossosParameters, 0, levels.length, levels);
+        return levels;
+    }
+
+    /**
+     * @param frequency Frequency in Hz
+     * @return Index of the frequency in the spectrum returned by {@link #evaluateSpectrum(RoadCnossosParameters)},
+     * the index of the 63 Hz band if this is not an octave band from 63 Hz to 8000 Hz
+     */
+    public static int getFrequencyIndex(int frequency) {
+        return RoadCnossosCoefficients.getBandIndex(frequency);
+    }
+
+    /**
+     * Compute the noise emission level of the octave bands [firstBand, lastBand[. The terms that do not depend on
+     * the frequency are computed once.
+     */
+    private static void evaluate(RoadCnossosParameters roadCnossosParameters, int firstBand, int lastBand,
+                                 double[] levels) throws IOException {
         final double Temperature = roadCnossosParameters.getTemperature();
         final double Ts_stud = roadCnossosParameters.getTsStud();
         final double Pm_stud = roadCnossosParameters.getqStudRatio();
         final double Junc_dist = roadCnossosParameters.getJunc_dist();
         final int Junc_type = roadCnossosParameters.getJunc_type();
         final String roadSurface = roadCnossosParameters.getRoadSurface();
-        final int coeffVer = roadCnossosParameters.getFileVersion();
-        double vRef = 70.;
-
-        /**
-         * Rolling Noise
-         */
-        // Rolling noise level Eq. 2.2.4
-        double lvRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "1", coeffVer), getCoeff("br", freqParam, "1", coeffVer), roadCnossosParameters.getSpeedLv(), vRef);
-        double medRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "2", coeffVer), getCoeff("br", freqParam, "2", coeffVer), roadCnossosParameters.getSpeedMv(), vRef);
-        double hgvRoadLvl = getNoiseLvl(getCoeff("ar", freqParam, "3", coeffVer), getCoeff("br", freqParam, "3", coeffVer), roadCnossosParameters.getSpeedHgv(), vRef);
-        // Rolling noise is only for categories 1, 2 and 3
+        final RoadCnossosCoefficients coefficients = getCoefficients(roadCnossosParameters.getFileVersion());
+        final int surface = getSurfaceIndex(coefficients, roadSurface);
+        final double speedLv = roadCnossosParameters.getSpeedLv();
+        final double speedMv = roadCnossosParameters.getSpeedMv();
+        final double speedHgv = roadCnossosParameters.getSpeedHgv();
+        final double speedWav = roadCnossosParameters.getSpeedWav();
+        final double speedWbv = roadCnossosParameters.getSpeedWbv();
+        final double vRef = 70.;
+        final double logSpeedLv = Math.log10(speedLv / vRef);
+        final double logSpeedMv = Math.log10(speedMv / vRef);
+        final double logSpeedHgv = Math.log10(speedHgv / vRef);
 
         // Correction for studded tyres - Eq. 2.2.6
-        if (Pm_stud > 0 && Ts_stud > 0) {
-            lvRoadLvl = lvRoadLvl + getDeltaStuddedTyres(roadCnossosParameters, Pm_stud, Ts_stud, freqParam, coeffVer, vRef);
-        }
+        // only for light vehicles, if speed is over 50 km/h or below 90 km/h the correction is limited.
+        final boolean studdedTyres = Pm_stud > 0 && Ts_stud > 0;
+        final double ps = Pm_stud * Ts_stud / 12; // Eq. 2.2.7 yearly average proportion of vehicles equipped with studded tyres
+        final double logSpeedStud = Math.log10(Math.max(50, Math.min(90, speedLv)) / vRef);
 
         // Effect of air temperature on rolling noise correction Eq 2.2.10
-        lvRoadLvl = lvRoadLvl + getDeltaTemperature(Temperature, "1"); // K = 0.08
-        medRoadLvl = medRoadLvl + getDeltaTemperature(Temperature, "2"); // K = 0.04
-        hgvRoadLvl = hgvRoadLvl + getDeltaTemperature(Temperature, "3"); // K = 0.04
-
-        /**
-         * Propulsion Noise
-         */
-        // General equation - Eq. 2.2.11
-        double lvMotorLvl = getCoeff("ap", freqParam, "1", coeffVer) + getCoeff("bp", freqParam, "1", coeffVer) * (roadCnossosParameters.getSpeedLv() - vRef) / vRef;
-        double medMotorLvl = getCoeff("ap", freqParam, "2", coeffVer) + getCoeff("bp", freqParam, "2", coeffVer) * (roadCnossosParameters.getSpeedMv() - vRef) / vRef;
-        double hgvMotorLvl = getCoeff("ap", freqParam, "3", coeffVer) + getCoeff("bp", freqParam, "3", coeffVer) * (roadCnossosParameters.getSpeedHgv() - vRef) / vRef;
-        double wheelaMotorLvl = getCoeff("ap", freqParam, "4a", coeffVer) + getCoeff("bp", freqParam, "4a", coeffVer) * (roadCnossosParameters.getSpeedWav() - vRef) / vRef;
-        double wheelbMotorLvl = getCoeff("ap", freqParam, "4b", coeffVer) + getCoeff("bp", freqParam, "4b", coeffVer) * (roadCnossosParameters.getSpeedWbv() - vRef) / vRef;
+        final double lvDeltaTemperature = getDeltaTemperature(Temperature, "1"); // K = 0.08
+        final double medDeltaTemperature = getDeltaTemperature(Temperature, "2"); // K = 0.04
+        final double hgvDeltaTemperature = getDeltaTemperature(Temperature, "3"); // K = 0.04
 
         // Effect of road gradients
         // This correction implicitly includes the effect of slope on speed.
@@ -340,71 +334,121 @@ public class RoadCnossos {
             case 3:
                 twoWay = true;
         }
+        final double lvDeltaSlope = getDeltaSlope(roadCnossosParameters, "1", sign);
+        final double medDeltaSlope = getDeltaSlope(roadCnossosParameters, "2", sign);
+        final double hgvDeltaSlope = getDeltaSlope(roadCnossosParameters, "3", sign);
+        final boolean inverseSlope = twoWay && roadCnossosParameters.getSlopePercentage() != 0;
+        final double lvDeltaInverseSlope = inverseSlope ? getDeltaSlope(roadCnossosParameters, "1", -sign) : 0;
+        final double medDeltaInverseSlope = inverseSlope ? getDeltaSlope(roadCnossosParameters, "2", -sign) : 0;
+        final double hgvDeltaInverseSlope = inverseSlope ? getDeltaSlope(roadCnossosParameters, "3", -sign) : 0;
 
-        lvMotorLvl = lvMotorLvl + getDeltaSlope(roadCnossosParameters, "1", sign);
-        medMotorLvl = medMotorLvl + getDeltaSlope(roadCnossosParameters, "2", sign);
-        hgvMotorLvl = hgvMotorLvl + getDeltaSlope(roadCnossosParameters, "3", sign);
-
-        /**
-         * Mixed effects (Rolling & Propulsion)
-         */
         // Effect of the acceleration and deceleration of vehicles
         // Todo Here, we should get the Junc_dist by another way that we are doing now to be more precise issue #524
-        double coefficientJunctionDistance = Math.max(1 - Math.abs(Junc_dist) / 100, 0);
-        // Effect of the acceleration and deceleration of vehicles - Rolling Noise Eq 2.2.17
-        lvRoadLvl = lvRoadLvl + getCr("1", Junc_type, coeffVer) * coefficientJunctionDistance;
-        medRoadLvl = medRoadLvl + getCr("2", Junc_type, coeffVer) * coefficientJunctionDistance;
-        hgvRoadLvl = hgvRoadLvl + getCr("3", Junc_type, coeffVer) * coefficientJunctionDistance;
-        // Effect of the acceleration and deceleration of vehicles - Propulsion Noise Eq 2.2.18
-        lvMotorLvl = lvMotorLvl + getCp("1", Junc_type, coeffVer) * coefficientJunctionDistance;
-        medMotorLvl = medMotorLvl + getCp("2", Junc_type, coeffVer) * coefficientJunctionDistance;
-        hgvMotorLvl = hgvMotorLvl + getCp("3", Junc_type, coeffVer) * coefficientJunctionDistance;
-        wheelaMotorLvl = wheelaMotorLvl + getCp("4a", Junc_type, coeffVer) * coefficientJunctionDistance;
-        wheelbMotorLvl = wheelbMotorLvl + getCp("4b", Junc_type, coeffVer) * coefficientJunctionDistance;
-
-        // Effect of the type of road surface - Eq. 2.2.19
-        lvRoadLvl = lvRoadLvl + getNoiseLvl(getA_RoadSurfaceCoeff(freqParam, "1", roadCnossosParameters.getRoadSurface(), coeffVer), getB_RoadSurfaceCoeff("1", roadSurface, coeffVer), roadCnossosParameters.getSpeedLv(), 70.);
-        medRoadLvl = medRoadLvl + getNoiseLvl(getA_RoadSurfaceCoeff(freqParam, "2", roadCnossosParameters.getRoadSurface(), coeffVer), getB_RoadSurfaceCoeff("2", roadSurface, coeffVer), roadCnossosParameters.getSpeedMv(), 70.);
-        hgvRoadLvl = hgvRoadLvl + getNoiseLvl(getA_RoadSurfaceCoeff(freqParam, "3", roadCnossosParameters.getRoadSurface(), coeffVer), getB_RoadSurfaceCoeff("3", roadSurface, coeffVer), roadCnossosParameters.getSpeedHgv(), 70.);
-
-        // Correction road on propulsion noise - Eq. 2.2.20
-        lvMotorLvl = lvMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "1", roadSurface, coeffVer), 0.);
-        medMotorLvl = medMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "2", roadSurface, coeffVer), 0.);
-        hgvMotorLvl = hgvMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "3", roadSurface, coeffVer), 0.);
-        wheelaMotorLvl = wheelaMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "4a", roadSurface, coeffVer), 0.);
-        wheelbMotorLvl = wheelbMotorLvl + Math.min(getA_RoadSurfaceCoeff(freqParam, "4b", roadSurface, coeffVer), 0.);
-
-        /**
-         * Combine Propulsion and Rolling Noise - Eq. 2.2.2
-         */
-        final double lvCompound = sumDbValues(lvRoadLvl, lvMotorLvl);
-        final double medCompound = sumDbValues(medRoadLvl, medMotorLvl);
-        final double hgvCompound = sumDbValues(hgvRoadLvl, hgvMotorLvl);
-        final double wheelaCompound = wheelaMotorLvl; // Eq. 2.2.3
-        final double wheelbCompound = wheelbMotorLvl; // Eq. 2.2.3
-        /**
-         * Compute Noise Level from flow_rate and speed - Eq 2.2.1
-         */
-        double lvLvl = Vperhour2NoiseLevel(lvCompound, roadCnossosParameters.getLvPerHour(), roadCnossosParameters.getSpeedLv());
-        double medLvl = Vperhour2NoiseLevel(medCompound, roadCnossosParameters.getMvPerHour(), roadCnossosParameters.getSpeedMv());
-        double hgvLvl = Vperhour2NoiseLevel(hgvCompound, roadCnossosParameters.getHgvPerHour(), roadCnossosParameters.getSpeedHgv());
-        double wheelaLvl = Vperhour2NoiseLevel(wheelaCompound, roadCnossosParameters.getWavPerHour(), roadCnossosParameters.getSpeedWav());
-        double wheelbLvl = Vperhour2NoiseLevel(wheelbCompound, roadCnossosParameters.getWbvPerHour(), roadCnossosParameters.getSpeedWbv());
-
-        // In the case of a bi-directional traffic flow, it is necessary to split the flow into two components and correct half for uphill and half for downhill.
-        if (twoWay && roadCnossosParameters.getSlopePercentage() != 0) {
-            lvRoadLvl = lvRoadLvl - getDeltaSlope(roadCnossosParameters, "1", sign) + getDeltaSlope(roadCnossosParameters, "1", -sign);
-            medRoadLvl = medRoadLvl - getDeltaSlope(roadCnossosParameters, "2", sign) + getDeltaSlope(roadCnossosParameters, "2", -sign);
-            hgvRoadLvl = hgvRoadLvl - getDeltaSlope(roadCnossosParameters, "3", sign) + getDeltaSlope(roadCnossosParameters, "3", -sign);
-            double lvCompound_InverseSlope = sumDbValues(lvRoadLvl, lvMotorLvl);
-            double medCompound_InverseSlope = sumDbValues(medRoadLvl, medMotorLvl);
-            double hgvCompound_InverseSlope = sumDbValues(hgvRoadLvl, hgvMotorLvl);
-
-            lvLvl = sumDbValues(Vperhour2NoiseLevel(lvCompound, roadCnossosParameters.getLvPerHour() / 2, roadCnossosParameters.getSpeedLv()), Vperhour2NoiseLevel(lvCompound_InverseSlope, roadCnossosParameters.getLvPerHour() / 2, roadCnossosParameters.getSpeedLv()));
-            medLvl = sumDbValues(Vperhour2NoiseLevel(medCompound, roadCnossosParameters.getMvPerHour() / 2, roadCnossosParameters.getSpeedMv()), Vperhour2NoiseLevel(medCompound_InverseSlope, roadCnossosParameters.getMvPerHour() / 2, roadCnossosParameters.getSpeedMv()));
-            hgvLvl = sumDbValues(Vperhour2NoiseLevel(hgvCompound, roadCnossosParameters.getHgvPerHour() / 2, roadCnossosParameters.getSpeedHgv()), Vperhour2NoiseLevel(hgvCompound_InverseSlope, roadCnossosParameters.getHgvPerHour() / 2, roadCnossosParameters.getSpeedHgv()));
+        final double coefficientJunctionDistance = Math.max(1 - Math.abs(Junc_dist) / 100, 0);
+        final int junction = RoadCnossosCoefficients.getJunctionIndex(Junc_type);
+
+        final int lv = RoadCnossosCoefficients.CATEGORY_1;
+        final int med = RoadCnossosCoefficients.CATEGORY_2;
+        final int hgv = RoadCnossosCoefficients.CATEGORY_3;
+        final int wheela = RoadCnossosCoefficients.CATEGORY_4A;
+        final int wheelb = RoadCnossosCoefficients.CATEGORY_4B;
+        final double[][] surfaceSpectrum = coefficients.surfaceSpectrum[surface];
+        final double[] surfaceBeta = coefficients.surfaceBeta[surface];
+
+        for (int band = firstBand; band < lastBand; band++) {
+            /**
+             * Rolling Noise
+             */
+            // Rolling noise level Eq. 2.2.4
+            double lvRoadLvl = coefficients.ar[lv][band] + coefficients.br[lv][band] * logSpeedLv;
+            double medRoadLvl = coefficients.ar[med][band] + coefficients.br[med][band] * logSpeedMv;
+            double hgvRoadLvl = coefficients.ar[hgv][band] + coefficients.br[hgv][band] * logSpeedHgv;
+            // Rolling noise is only for categories 1, 2 and 3
+
+            // Correction for studded tyres - Eq. 2.2.6
+            if (studdedTyres) {
+                double deltastud = coefficients.a[lv][band] + coefficients.b[lv][band] * logSpeedStud;
+                lvRoadLvl = lvRoadLvl + 10 * Math.log10((1 - ps) + ps * Math.pow(10, deltastud / 10)); // Eq. 2.2.8
+            }
+
+            // Effect of air temperature on rolling noise correction Eq 2.2.10
+            lvRoadLvl = lvRoadLvl + lvDeltaTemperature;
+            medRoadLvl = medRoadLvl + medDeltaTemperature;
+            hgvRoadLvl = hgvRoadLvl + hgvDeltaTemperature;
+
+            /**
+             * Propulsion Noise
+             */
+            // General equation - Eq. 2.2.11
+            double lvMotorLvl = coefficients.ap[lv][band] + coefficients.bp[lv][band] * (speedLv - vRef) / vRef;
+            double medMotorLvl = coefficients.ap[med][band] + coefficients.bp[med][band] * (speedMv - vRef) / vRef;
+            double hgvMotorLvl = coefficients.ap[hgv][band] + coefficients.bp[hgv][band] * (speedHgv - vRef) / vRef;
+            double wheelaMotorLvl = coefficients.ap[wheela][band] + coefficients.bp[wheela][band] * (speedWav - vRef) / vRef;
+            double wheelbMotorLvl = coefficients.ap[wheelb][band] + coefficients.bp[wheelb][band] * (speedWbv - vRef) / vRef;
+
+            // Effect of road gradients
+            lvMotorLvl = lvMotorLvl + lvDeltaSlope;
+            medMotorLvl = medMotorLvl + medDeltaSlope;
+            hgvMotorLvl = hgvMotorLvl + hgvDeltaSlope;
+
+            /**
+             * Mixed effects (Rolling & Propulsion)
+             */
+            // Effect of the acceleration and deceleration of vehicles - Rolling Noise Eq 2.2.17
+            lvRoadLvl = lvRoadLvl + coefficients.cr[lv][junction] * coefficientJunctionDistance;
+            medRoadLvl = medRoadLvl + coefficients.cr[med][junction] * coefficientJunctionDistance;
+            hgvRoadLvl = hgvRoadLvl + coefficients.cr[hgv][junction] * coefficientJunctionDistance;
+            // Effect of the acceleration and deceleration of vehicles - Propulsion Noise Eq 2.2.18
+            lvMotorLvl = lvMotorLvl + coefficients.cp[lv][junction] * coefficientJunctionDistance;
+            medMotorLvl = medMotorLvl + coefficients.cp[med][junction] * coefficientJunctionDistance;
+            hgvMotorLvl = hgvMotorLvl + coefficients.cp[hgv][junction] * coefficientJunctionDistance;
+            wheelaMotorLvl = wheelaMotorLvl + coefficients.cp[wheela][junction] * coefficientJunctionDistance;
+            wheelbMotorLvl = wheelbMotorLvl + coefficients.cp[wheelb][junction] * coefficientJunctionDistance;
+
+            // Effect of the type of road surface - Eq. 2.2.19
+            lvRoadLvl = lvRoadLvl + (surfaceSpectrum[lv][band] + surfaceBeta[lv] * logSpeedLv);
+            medRoadLvl = medRoadLvl + (surfaceSpectrum[med][band] + surfaceBeta[med] * logSpeedMv);
+            hgvRoadLvl = hgvRoadLvl + (surfaceSpectrum[hgv][band] + surfaceBeta[hgv] * logSpeedHgv);
+
+            // Correction road on propulsion noise - Eq. 2.2.20
+            lvMotorLvl = lvMotorLvl + Math.min(surfaceSpectrum[lv][band], 0.);
+            medMotorLvl = medMotorLvl + Math.min(surfaceSpectrum[med][band], 0.);
+            hgvMotorLvl = hgvMotorLvl + Math.min(surfaceSpectrum[hgv][band], 0.);
+            wheelaMotorLvl = wheelaMotorLvl + Math.min(surfaceSpectrum[wheela][band], 0.);
+            wheelbMotorLvl = wheelbMotorLvl + Math.min(surfaceSpectrum[wheelb][band], 0.);
+
+            /**
+             * Combine Propulsion and Rolling Noise - Eq. 2.2.2
+             */
+            final double lvCompound = sumDbValues(lvRoadLvl, lvMotorLvl);
+            final double medCompound = sumDbValues(medRoadLvl, medMotorLvl);
+            final double hgvCompound = sumDbValues(hgvRoadLvl, hgvMotorLvl);
+            final double wheelaCompound = wheelaMotorLvl; // Eq. 2.2.3
+            final double wheelbCompound = wheelbMotorLvl; // Eq. 2.2.3
+            /**
+             * Compute Noise Level from flow_rate and speed - Eq 2.2.1
+             */
+            double lvLvl = Vperhour2NoiseLevel(lvCompound, roadCnossosParameters.getLvPerHour(), speedLv);
+            double medLvl = Vperhour2NoiseLevel(medCompound, roadCnossosParameters.getMvPerHour(), speedMv);
+            double hgvLvl = Vperhour2NoiseLevel(hgvCompound, roadCnossosParameters.getHgvPerHour(), speedHgv);
+            double wheelaLvl = Vperhour2NoiseLevel(wheelaCompound, roadCnossosParameters.getWavPerHour(), speedWav);
+            double wheelbLvl = Vperhour2NoiseLevel(wheelbCompound, roadCnossosParameters.getWbvPerHour(), speedWbv);
+
+            // In the case of a bi-directional traffic flow, it is necessary to split the flow into two components and correct half for uphill and half for downhill.
+            if (inverseSlope) {
+                lvRoadLvl = lvRoadLvl - lvDeltaSlope + lvDeltaInverseSlope;
+                medRoadLvl = medRoadLvl - medDeltaSlope + medDeltaInverseSlope;
+                hgvRoadLvl = hgvRoadLvl - hgvDeltaSlope + hgvDeltaInverseSlope;
+                double lvCompound_InverseSlope = sumDbValues(lvRoadLvl, lvMotorLvl);
+                double medCompound_InverseSlope = sumDbValues(medRoadLvl, medMotorLvl);
+                double hgvCompound_InverseSlope = sumDbValues(hgvRoadLvl, hgvMotorLvl);
+
+                lvLvl = sumDbValues(Vperhour2NoiseLevel(lvCompound, roadCnossosParameters.getLvPerHour() / 2, speedLv), Vperhour2NoiseLevel(lvCompound_InverseSlope, roadCnossosParameters.getLvPerHour() / 2, speedLv));
+                medLvl = sumDbValues(Vperhour2NoiseLevel(medCompound, roadCnossosParameters.getMvPerHour() / 2, speedMv), Vperhour2NoiseLevel(medCompound_InverseSlope, roadCnossosParameters.getMvPerHour() / 2, speedMv));
+                hgvLvl = sumDbValues(Vperhour2NoiseLevel(hgvCompound, roadCnossosParameters.getHgvPerHour() / 2, speedHgv), Vperhour2NoiseLevel(hgvCompound_InverseSlope, roadCnossosParameters.getHgvPerHour() / 2, speedHgv));
+            }
+
+            levels[band] = sumDb5(lvLvl, medLvl, hgvLvl, wheelaLvl, wheelbLvl);
         }
-
-        return sumDb5(lvLvl, medLvl, hgvLvl, wheelaLvl, wheelbLvl);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,145 @@
+/**
+ * NoiseModelling is a library capable of producing noise maps. It can be freely used either for research and education, as well as by experts in a professional use.
+ * <p>
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ * <p>
+ * Official webpage : http://noise-planet.org/noisemodelling.html
+ * Contact: contact@noise-planet.org
+ */
+
+package org.noise_planet.noisemodelling.emission.road.cnossos;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * CNOSSOS road coefficients of one file version compiled into arrays indexed by vehicle category, octave band and
+ * road surface ordinal. The json tree is walked only once, when the tables are built.
+ * A coefficient array is null when the file does not provide it (ex. studded tyres coefficients of category 2).
+ */
+final class RoadCnossosCoefficients {
+    /** Octave bands of the coefficients in Hz */
+    static final int[] FREQUENCIES = new int[]{63, 125, 250, 500, 1000, 2000, 4000, 8000};
+    static final String[] VEHICLE_CATEGORIES = new String[]{"1", "2", "3", "4a", "4b", "5"};
+    static final int CATEGORY_1 = 0;
+    static final int CATEGORY_2 = 1;
+    static final int CATEGORY_3 = 2;
+    static final int CATEGORY_4A = 3;
+    static final int CATEGORY_4B = 4;
+
+    /** Rolling noise coefficients [category][band] */
+    final double[][] ar = new double[VEHICLE_CATEGORIES.length][];
+    final double[][] br = new double[VEHICLE_CATEGORIES.length][];
+    /** Propulsion noise coefficients [category][band] */
+    final double[][] ap = new double[VEHICLE_CATEGORIES.length][];
+    final double[][] bp = new double[VEHICLE_CATEGORIES.length][];
+    /** Studded tyres coefficients [category][band] */
+    final double[][] a = new double[VEHICLE_CATEGORIES.length][];
+    final double[][] b = new double[VEHICLE_CATEGORIES.length][];
+    /** Junction coefficients [category][0 crossing lights, 1 roundabout] */
+    final double[][] cr = new double[VEHICLE_CATEGORIES.length][];
+    final double[][] cp = new double[VEHICLE_CATEGORIES.length][];
+    /** Road surface identifier to road surface ordinal */
+    private final Map<String, Integer> surfaceIndex = new HashMap<>();
+    /** Road surface spectrum [surface][category][band] */
+    final double[][][] surfaceSpectrum;
+    /** Road surface ßm coefficient [surface][category], NaN if not provided */
+    final double[][] surfaceBeta;
+
+    /**
+     * @param cnossosData Content of RoadCnossos_2015.json or RoadCnossos_2020.json
+     */
+    RoadCnossosCoefficients(JsonNode cnossosData) {
+        JsonNode vehicles = cnossosData.path("vehicles");
+        for (int category = 0; category < VEHICLE_CATEGORIES.length; category++) {
+            JsonNode vehicle = vehicles.path(VEHICLE_CATEGORIES[category]);
+            ar[category] = readBands(vehicle.path("ar"));
+            br[category] = readBands(vehicle.path("br"));
+            ap[category] = readBands(vehicle.path("ap"));
+            bp[category] = readBands(vehicle.path("bp"));
+            a[category] = readBands(vehicle.path("a"));
+            b[category] = readBands(vehicle.path("b"));
+            if (!vehicle.isMissingNode()) {
+                cr[category] = new double[]{vehicle.path("crossing").path("cr").doubleValue(),
+                        vehicle.path("roundabout").path("cr").doubleValue()};
+                cp[category] = new double[]{vehicle.path("crossing").path("cp").doubleValue(),
+                        vehicle.path("roundabout").path("cp").doubleValue()};
+            }
+        }
+        JsonNode roads = cnossosData.path("roads");
+        surfaceSpectrum = new double[roads.size()][][];
+        surfaceBeta = new double[roads.size()][];
+        Iterator<Map.Entry<String, JsonNode>> it = roads.fields();
+        while (it.hasNext()) {
+            Map.Entry<String, JsonNode> road = it.next();
+            int surface = surfaceIndex.size();
+            surfaceIndex.put(road.getKey(), surface);
+            surfaceSpectrum[surface] = new double[VEHICLE_CATEGORIES.length][];
+            surfaceBeta[surface] = new double[VEHICLE_CATEGORIES.length];
+            JsonNode ref = road.getValue().path("ref");
+            for (int category = 0; category < VEHICLE_CATEGORIES.length; category++) {
+                JsonNode refCategory = ref.path(VEHICLE_CATEGORIES[category]);
+                surfaceSpectrum[surface][category] = readBands(refCategory.path("spectrum"));
+                JsonNode beta = refCategory.path("ßm");
+                surfaceBeta[surface][category] = beta.isMissingNode() ? Double.NaN : beta.doubleValue();
+            }
+        }
+    }
+
+    private static double[] readBands(JsonNode values) {
+        if (!values.isArray()) {
+            return null;
+        }
+        double[] bands = new double[values.size()];
+        for (int i = 0; i < bands.length; i++) {
+            bands[i] = values.get(i).doubleValue();
+        }
+        return bands;
+    }
+
+    /**
+     * @param frequency Frequency in Hz (octave band)
+     * @return Index of the band in the coefficient arrays, the first band if the frequency is not an octave band
+     */
+    static int getBandIndex(int frequency) {
+        for (int band = 0; band < FREQUENCIES.length; band++) {
+            if (FREQUENCIES[band] == frequency) {
+                return band;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param vehicleCategory Vehicle category (1,2,3,4a,4b,5)
+     * @return Index of the category in the coefficient arrays
+     */
+    static int getCategoryIndex(String vehicleCategory) {
+        for (int category = 0; category < VEHICLE_CATEGORIES.length; category++) {
+            if (VEHICLE_CATEGORIES[category].equals(vehicleCategory)) {
+                return category;
+            }
+        }
+        throw new IllegalArgumentException("Unknown vehicle category " + vehicleCategory);
+    }
+
+    /**
+     * @param k k=1 Crossing lights, k=2 roundabout
+     * @return Index of the junction type in the junction coefficient arrays
+     */
+    static int getJunctionIndex(int k) {
+        return k == 1 ? 0 : 1;
+    }
+
+    /**
+     * @param roadSurface Road surface identifier
+     * @return Road surface ordinal or -1 if the pavement does not exist in the file
+     */
+    int getSurfaceIndex(String roadSurface) {
+        Integer surface = roadSurface == null ? null : surfaceIndex.get(roadSurface);
+        return surface == null ? -1 : surface;
+    }
+}
@@ -223,6 +223,67 @@ public class RoadCnossosTest {
         }
     }
 
+    @Test
+    public void testEvaluateSpectrum() throws IOException {
+        for (int fileVersion = 1; fileVersion <= 2; fileVersion++) {
+            for (int way = 1; way <= 3; way++) {
+                RoadCnossosParameters rsParameters = new RoadCnossosParameters(50, 60, 70, 45, 80, 1000, 100, 50, 20,
+                        10, 0, 5, "NL05", 4, 0.5, 50, 2);
+                rsParameters.setSlopePercentage(-8);
+                rsParameters.setWay(way);
+                rsParameters.setFileVersion(fileVersion);
+                double[] spectrum = RoadCnossos.evaluateSpectrum(rsParameters);
+                assertEquals(FREQUENCIES.length, spectrum.length);
+                for (int idFreq = 0; idFreq < FREQUENCIES.length; idFreq++) {
+                    rsParameters.setFrequency(FREQUENCIES[idFreq]);
+                    assertEquals(FREQUENCIES[idFreq] + " Hz", RoadCnossos.evaluate(rsParameters), spectrum[idFreq], 0);
+                    assertEquals(idFreq, RoadCnossos.getFrequencyIndex(FREQUENCIES[idFreq]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Spectra of the json tree lookup, before the compiled coefficient tables
+     */
+    @Test
+    public void testEvaluateSpectrumReference() throws IOException {
+        // Speeds and flows of the lv, mv, hgv, wav and wbv categories, temperature, tsStud, pmStud,
+        // junction distance, junction type, slope, way and file version
+        double[][] parameters = new double[][]{
+                {20, 20, 20, 20, 20, 1000, 0, 0, 0, 0, -5, 0.5, 1, 200, 1, -15, 3, 1},
+                {50, 50, 50, 50, 50, 0, 400, 0, 0, 0, 10, 0, 0, 200, 1, 6, 1, 2},
+                {90, 90, 90, 90, 90, 0, 0, 300, 0, 0, 20, 0, 0, 200, 1, -8, 2, 1},
+                {45, 45, 45, 45, 45, 0, 0, 0, 150, 0, 30, 0, 0, 200, 1, 4, 1, 2},
+                {70, 70, 70, 70, 70, 0, 0, 0, 0, 80, 15, 0, 0, 200, 1, 0, 3, 1},
+                {130, 110, 90, 45, 80, 2000, 200, 150, 50, 30, 5, 4, 0.5, 50, 2, 2, 3, 1},
+                {30, 30, 30, 30, 30, 500, 60, 40, 20, 10, 25, 0, 0, 10, 1, -3, 2, 2}};
+        String[] roadSurfaces = new String[]{"DEF", "NL05", "FR_R2", "NL01", "NL12", "FR2N", "NL08"};
+        double[][] expectedValues = new double[][]{
+                {88.4190, 77.0562, 75.5037, 73.6350, 72.8332, 74.3860, 70.6187, 63.4032},
+                {88.0898, 81.0783, 81.0868, 80.9902, 82.5080, 78.5194, 71.8120, 65.8123},
+                {89.5933, 88.1728, 88.8419, 88.6777, 88.9850, 84.2330, 78.4903, 72.8540},
+                {66.7288, 65.5859, 65.2288, 66.3859, 66.8216, 68.8788, 63.7788, 58.7716},
+                {65.5799, 67.7799, 63.2799, 63.4799, 65.2799, 63.7799, 60.6799, 57.0799},
+                {87.4391, 90.9450, 90.3050, 89.0923, 91.1324, 86.7235, 80.3804, 75.1805},
+                {92.9499, 85.1035, 83.7895, 82.5601, 83.0738, 79.8227, 74.5376, 68.0305}};
+        for (int idCase = 0; idCase < parameters.length; idCase++) {
+            double[] p = parameters[idCase];
+            RoadCnossosParameters rsParameters = new RoadCnossosParameters(p[0], p[1], p[2], p[3], p[4], p[5], p[6],
+                    p[7], p[8], p[9], FREQUENCIES[0], p[10], roadSurfaces[idCase], p[11], p[12], p[13], (int) p[14]);
+            rsParameters.setSlopePercentage(p[15]);
+            rsParameters.setWay((int) p[16]);
+            rsParameters.setFileVersion((int) p[17]);
+            double[] spectrum = RoadCnossos.evaluateSpectrum(rsParameters);
+            for (int idFreq = 0; idFreq < FREQUENCIES.length; idFreq++) {
+                rsParameters.setFrequency(FREQUENCIES[idFreq]);
+                String message = roadSurfaces[idCase] + " " + FREQUENCIES[idFreq] + " Hz";
+                assertEquals(message, expectedValues[idCase][idFreq], spectrum[idFreq], 1e-4);
+                assertEquals(message, expectedValues[idCase][idFreq], RoadCnossos.evaluate(rsParameters), 1e-4);
+            }
+        }
+    }
+
     @Test(expected = IOException.class)
     public void testWrongPavement() throws IOException {
         String vehCat="1";
@@ -50,6 +50,7 @@ public class BezierContouring {
     String triangleTable = "TRIANGLES";
     String outputTable = "CONTOURING_NOISE_MAP";
     String pointTableField = "LAEQ";
+    Map<Long, Double> pointLevels = null;
     List<Double> isoLevels;
     List<String> isoLabels;
     boolean smooth = true;
@@ -295,6 +296,20 @@ public class BezierContouring {
         this.pointTableField = pointTableField;
     }
 
+    public Map<Long, Double> getPointLevels() {
+        return pointLevels;
+    }
+
+    /**
+     * Use the provided levels instead of reading the point table field (ex: levels loaded with
+     * {@link org.noise_planet.noisemodelling.jdbc.utils.LevelsFileReader#readLevels(String)}).
+     * The point table is then only used for the point geometries, triangles with a missing level are skipped.
+     * @param pointLevels Level in dB(A) by primary key of the point table, null to read the point table field
+     */
+    public void setPointLevels(Map<Long, Double> pointLevels) {
+        this.pointLevels = pointLevels;
+    }
+
     public String getPointTable() {
         return pointTable;
     }
@@ -456,7 +471,9 @@ public class BezierContouring {
         try(Statement st = connection.createStatement()) {
             st.execute("DROP TABLE IF EXISTS " + TableLocation.parse(outputTable));
             st.execute("CREATE TABLE " + TableLocation.parse(outputTable) + "(PK SERIAL, CELL_ID INTEGER, THE_GEOM GEOMETRY, ISOLVL INTEGER, ISOLABEL VARCHAR);");
-            String query = "SELECT CELL_ID, ST_X(p1.the_geom) xa,ST_Y(p1.the_geom) ya,ST_X(p2.the_geom) xb,ST_Y(p2.the_geom) yb,ST_X(p3.the_geom) xc,ST_Y(p3.the_geom) yc, p1."+pointTableField+" lvla, p2."+pointTableField+" lvlb, p3."+pointTableField+" lvlc FROM "+triangleTable+" t, "+pointTable+" p1,"+pointTable+" p2,"+pointTable+" p3 WHERE t.PK_1 = p1."+pkField+" and t.PK_2 = p2."+pkField+" AND t.PK_3 = p3."+pkField+" order by cell_id;";
+            // With provided point levels, lvla, lvlb and lvlc columns contain the primary keys of the points
+            String levelField = pointLevels == null ? pointTableField : pkField;
+            String query = "SELECT CELL_ID, ST_X(p1.the_geom) xa,ST_Y(p1.the_geom) ya,ST_X(p2.the_geom) xb,ST_Y(p2.the_geom) yb,ST_X(p3.the_geom) xc,ST_Y(p3.the_geom) yc, p1."+levelField+" lvla, p2."+levelField+" lvlb, p3."+levelField+" lvlc FROM "+triangleTable+" t, "+pointTable+" p1,"+pointTable+" p2,"+pointTable+" p3 WHERE t.PK_1 = p1."+pkField+" and t.PK_2 = p2."+pkField+" AND t.PK_3 = p3."+pkField+" order by cell_id;";
             try(ResultSet rs = st.executeQuery(query)) {
                 // Cache columns index
                 int xa = 0, xb = 0, xc = 0, ya = 0, yb = 0, yc = 0, lvla = 0, lvlb = 0, lvlc = 0, cell_id = 0;
@@ -507,14 +524,30 @@ public class BezierContouring {
                         polyMap.clear();
                     }
                     lastCellId = cellId;
+                    // Fetch data
+                    double levelA, levelB, levelC;
+                    if(pointLevels == null) {
+                        levelA = rs.getDouble(lvla);
+                        levelB = rs.getDouble(lvlb);
+                        levelC = rs.getDouble(lvlc);
+                    } else {
+                        Double pointA = pointLevels.get(rs.getLong(lvla));
+                        Double pointB = pointLevels.get(rs.getLong(lvlb));
+                        Double pointC = pointLevels.get(rs.getLong(lvlc));
+                        if(pointA == null || pointB == null || pointC == null) {
+                            continue;
+                        }
+                        levelA = pointA;
+                        levelB = pointB;
+                        levelC = pointC;
+                    }
                     // Split current triangle
                     Coordinate a = new Coordinate(rs.getDouble(xa), rs.getDouble(ya));
                     Coordinate b = new Coordinate(rs.getDouble(xb), rs.getDouble(yb));
                     Coordinate c = new Coordinate(rs.getDouble(xc), rs.getDouble(yc));
-                    // Fetch data
-                    TriMarkers triMarkers = new TriMarkers(a, b, c, dbaToW(rs.getDouble(lvla)),
-                            dbaToW(rs.getDouble(lvlb)),
-                            dbaToW(rs.getDouble(lvlc)));
+                    TriMarkers triMarkers = new TriMarkers(a, b, c, dbaToW(levelA),
+                            dbaToW(levelB),
+                            dbaToW(levelC));
                     // Split triangle
                     Map<Short, Deque<TriMarkers>> res = Contouring.processTriangle(triMarkers, isoLevels);
                     for(Map.Entry<Short, Deque<TriMarkers>> entry : res.entrySet()) {
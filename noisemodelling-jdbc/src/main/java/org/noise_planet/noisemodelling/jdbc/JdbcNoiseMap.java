@@ -11,6 +11,7 @@ import org.locationtech.jts.geom.prep.PreparedPolygon;
 import org.locationtech.jts.io.WKTWriter;
 import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.TopographicRaster;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -21,7 +22,10 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.h2gis.utilities.GeometryTableUtilities.getGeometryColumnNames;
 import static org.h2gis.utilities.GeometryTableUtilities.getSRID;
@@ -47,6 +51,10 @@ public abstract class JdbcNoiseMap {
     protected String soilTableName = "";
     // Digital elevation model table. (Contains points or triangles)
     protected String demTable = "";
+    // Topographic raster shared by all the cells, the DEM table is not used if set
+    protected TopographicRaster demRaster = null;
+    // If greater than 0 the DEM table points are gridded with this resolution instead of being triangulated
+    protected double demRasterCellSize = 0;
     protected String sound_lvl_field = "DB_M";
     // True if Z of sound source and receivers are relative to the ground
     protected boolean receiverHasAbsoluteZCoordinates = false;
@@ -69,6 +77,8 @@ public abstract class JdbcNoiseMap {
     protected double wallAbsorption = 100000;
     /** maximum dB Error, stop calculation if the sum of further sources contributions are smaller than this value */
     public double maximumError = Double.NEGATIVE_INFINITY;
+    /** maximum dB Error of the geometric dispersion when far sub-sources of a line source are merged, 0 to disable */
+    public double sourceAggregationError = 0;
 
     /** stop calculation if the sum of further sources contributions are smaller than this value */
     public double noiseFloor = Double.NEGATIVE_INFINITY;
@@ -79,6 +89,11 @@ public abstract class JdbcNoiseMap {
     // Initialised attributes
     protected int gridDim = 0;
     protected Envelope mainEnvelope = new Envelope();
+    // Buildings, topography and ground areas are fetched by tiles shared between cells
+    static final long DEFAULT_TILE_CACHE_MEMORY = 256L * 1024 * 1024;
+    protected ProfileTileCache tileCache = new ProfileTileCache(DEFAULT_TILE_CACHE_MEMORY, groundSurfaceSplitSideLength);
+    // Side length of the cached tiles, 0 to use half of the maximum propagation distance
+    protected double tileCacheTileSize = 0;
 
     public JdbcNoiseMap(String buildingsTableName, String sourcesTableName) {
         this.buildingsTableName = buildingsTableName;
@@ -176,10 +191,35 @@ public abstract class JdbcNoiseMap {
 
     public void setGroundSurfaceSplitSideLength(double groundSurfaceSplitSideLength) {
         this.groundSurfaceSplitSideLength = groundSurfaceSplitSideLength;
+        tileCache.clear();
     }
 
     protected void fetchCellDem(Connection connection, Envelope fetchEnvelope, ProfileBuilder mesh) throws SQLException {
-        if(!demTable.isEmpty()) {
+        List<Coordinate> topographicPoints = new ArrayList<>();
+        fetchTopographicPoints(connection, fetchEnvelope, topographicPoints);
+        feedTopography(topographicPoints, mesh);
+    }
+
+    /**
+     * Feed the builder with the topographic raster or the cell topographic points
+     * @param topographicPoints Topographic points of the cell
+     * @param mesh (Out) Profile builder
+     */
+    void feedTopography(List<Coordinate> topographicPoints, ProfileBuilder mesh) {
+        if(demRaster != null) {
+            mesh.setTopographicRaster(demRaster);
+        } else if(demRasterCellSize > 0) {
+            mesh.setTopographicRaster(TopographicRaster.fromPoints(topographicPoints, demRasterCellSize));
+        } else {
+            for (Coordinate topographicPoint : topographicPoints) {
+                mesh.addTopographicPoint(topographicPoint);
+            }
+        }
+    }
+
+    void fetchTopographicPoints(Connection connection, Envelope fetchEnvelope, List<Coordinate> topographicPoints)
+            throws SQLException {
+        if(!demTable.isEmpty() && demRaster == null) {
             List<String> geomFields = getGeometryColumnNames(connection,
                     TableLocation.parse(demTable));
             if(geomFields.isEmpty()) {
@@ -195,7 +235,7 @@ public abstract class JdbcNoiseMap {
                     while (rs.next()) {
                         Geometry pt = rs.getGeometry();
                         if(pt != null) {
-                            mesh.addTopographicPoint(pt.getCoordinate());
+                            topographicPoints.add(pt.getCoordinate());
                         }
                     }
                 }
@@ -205,6 +245,22 @@ public abstract class JdbcNoiseMap {
 
     protected void fetchCellSoilAreas(Connection connection, Envelope fetchEnvelope, ProfileBuilder builder)
             throws SQLException {
+        List<ProfileTileCache.GroundArea> groundAreas = new ArrayList<>();
+        fetchGroundAreas(connection, fetchEnvelope, groundAreas);
+        for(ProfileTileCache.GroundArea groundArea : groundAreas) {
+            builder.addGroundEffect(groundArea.geometry, groundArea.g);
+        }
+    }
+
+    /**
+     * Fetch soil areas split by squares of {@link #groundSurfaceSplitSideLength} side length.
+     * @param connection Active connection
+     * @param fetchEnvelope Soil areas intersecting this envelope are fetched, only the squares with the lower left
+     *                      corner located inside this envelope are kept
+     * @param groundAreas (Out) Split soil areas
+     */
+    void fetchGroundAreas(Connection connection, Envelope fetchEnvelope, List<ProfileTileCache.GroundArea> groundAreas)
+            throws SQLException {
         if(!soilTableName.isEmpty()){
             double startX = Math.floor(fetchEnvelope.getMinX() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
             double startY = Math.floor(fetchEnvelope.getMinY() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
@@ -240,7 +296,8 @@ public abstract class JdbcNoiseMap {
                                                 try {
                                                     Geometry inters = poly.intersection(envGeom);
                                                     if (!inters.isEmpty() && (inters instanceof Polygon || inters instanceof MultiPolygon)) {
-                                                        builder.addGroundEffect(inters, g);
+                                                        groundAreas.add(new ProfileTileCache.GroundArea(inters, g,
+                                                                geoEnv, xCursor, yCursor));
                                                     }
                                                 } catch (TopologyException | IllegalArgumentException ex) {
                                                     // Ignore
@@ -269,7 +326,18 @@ public abstract class JdbcNoiseMap {
     }
 
     void fetchCellBuildings(Connection connection, Envelope fetchEnvelope, List<ProfileBuilder.Building> buildings) throws SQLException {
-        Geometry envGeo = geometryFactory.toGeometry(fetchEnvelope);
+        List<ProfileTileCache.BuildingRow> buildingRows = new ArrayList<>();
+        fetchBuildingRows(connection, fetchEnvelope, buildingRows);
+        clipBuildings(buildingRows, fetchEnvelope, buildings);
+    }
+
+    /**
+     * Fetch buildings without clipping
+     * @param connection Active connection
+     * @param fetchEnvelope Buildings intersecting this envelope are fetched
+     * @param buildingRows (Out) Buildings
+     */
+    void fetchBuildingRows(Connection connection, Envelope fetchEnvelope, List<ProfileTileCache.BuildingRow> buildingRows) throws SQLException {
         boolean fetchAlpha = JDBCUtilities.hasField(connection, buildingsTableName, alphaFieldName);
         String additionalQuery = "";
         if(!heightField.isEmpty()) {
@@ -296,52 +364,193 @@ public abstract class JdbcNoiseMap {
                 if(!pkBuilding.isEmpty()) {
                     columnIndex = JDBCUtilities.getFieldIndex(rs.getMetaData(), pkBuilding);
                 }
-                double oldAlpha = wallAbsorption;
-                List<Double> alphaList = new ArrayList<>(propagationProcessPathDataDay.freq_lvl.size());
-                for(double freq : propagationProcessPathDataDay.freq_lvl_exact) {
-                    alphaList.add(getWallAlpha(oldAlpha, freq));
-                }
                 while (rs.next()) {
                     //if we don't have height of building
                     Geometry building = rs.getGeometry();
                     if(building != null) {
-                        Geometry intersectedGeometry = null;
-                        try {
-                            intersectedGeometry = building.intersection(envGeo);
-                        } catch (TopologyException ex) {
-                            WKTWriter wktWriter = new WKTWriter(3);
-                            logger.error(String.format("Error with input buildings geometry\n%s\n%s",wktWriter.write(building),wktWriter.write(envGeo)), ex);
+                        int pk = -1;
+                        if(columnIndex != 0) {
+                            pk = rs.getInt(columnIndex);
                         }
-                        if(intersectedGeometry instanceof Polygon || intersectedGeometry instanceof MultiPolygon) {
-                            if(fetchAlpha && Double.compare(rs.getDouble(alphaFieldName), oldAlpha) != 0 ) {
-                                // Compute building absorption value
-                                alphaList.clear();
-                                oldAlpha = rs.getDouble(alphaFieldName);
-                                for(double freq : propagationProcessPathDataDay.freq_lvl_exact) {
-                                    alphaList.add(getWallAlpha(oldAlpha, freq));
-                                }
-                            }
+                        buildingRows.add(new ProfileTileCache.BuildingRow(building,
+                                heightField.isEmpty() ? Double.MAX_VALUE : rs.getDouble(heightField),
+                                fetchAlpha ? rs.getDouble(alphaFieldName) : Double.NaN, pk));
+                    }
+                }
+            }
+        }
+    }
 
-                            int pk = -1;
-                            if(columnIndex != 0) {
-                                pk = rs.getInt(columnIndex);
-                            }
-                            for(int i=0; i<intersectedGeometry.getNumGeometries(); i++) {
-                                Geometry geometry = intersectedGeometry.getGeometryN(i);
-                                if(geometry instanceof Polygon && !geometry.isEmpty()) {
-                                    ProfileBuilder.Building poly = new ProfileBuilder.Building((Polygon) geometry,
-                                            heightField.isEmpty() ? Double.MAX_VALUE : rs.getDouble(heightField),
-                                            alphaList, pk, iszBuildings());
-                                    buildings.add(poly);
-                                }
-                            }
-                        }
+    /**
+     * Clip buildings with the envelope
+     * @param buildingRows Buildings
+     * @param fetchEnvelope Clipping envelope
+     * @param buildings (Out) Clipped buildings
+     */
+    void clipBuildings(List<ProfileTileCache.BuildingRow> buildingRows, Envelope fetchEnvelope,
+                       List<ProfileBuilder.Building> buildings) {
+        Geometry envGeo = geometryFactory.toGeometry(fetchEnvelope);
+        double oldAlpha = wallAbsorption;
+        List<Double> alphaList = new ArrayList<>(propagationProcessPathDataDay.freq_lvl.size());
+        for(double freq : propagationProcessPathDataDay.freq_lvl_exact) {
+            alphaList.add(getWallAlpha(oldAlpha, freq));
+        }
+        for(ProfileTileCache.BuildingRow buildingRow : buildingRows) {
+            Geometry building = buildingRow.geometry;
+            Geometry intersectedGeometry = null;
+            try {
+                intersectedGeometry = building.intersection(envGeo);
+            } catch (TopologyException ex) {
+                WKTWriter wktWriter = new WKTWriter(3);
+                logger.error(String.format("Error with input buildings geometry\n%s\n%s",wktWriter.write(building),wktWriter.write(envGeo)), ex);
+            }
+            if(intersectedGeometry instanceof Polygon || intersectedGeometry instanceof MultiPolygon) {
+                if(!Double.isNaN(buildingRow.alpha) && Double.compare(buildingRow.alpha, oldAlpha) != 0 ) {
+                    // Compute building absorption value
+                    alphaList.clear();
+                    oldAlpha = buildingRow.alpha;
+                    for(double freq : propagationProcessPathDataDay.freq_lvl_exact) {
+                        alphaList.add(getWallAlpha(oldAlpha, freq));
+                    }
+                }
+                for(int i=0; i<intersectedGeometry.getNumGeometries(); i++) {
+                    Geometry geometry = intersectedGeometry.getGeometryN(i);
+                    if(geometry instanceof Polygon && !geometry.isEmpty()) {
+                        ProfileBuilder.Building poly = new ProfileBuilder.Building((Polygon) geometry,
+                                buildingRow.height, alphaList, buildingRow.pk, iszBuildings());
+                        buildings.add(poly);
                     }
                 }
             }
         }
     }
 
+    /**
+     * Feed the builder with the buildings, topographic points and soil areas of the envelope.
+     * Data are fetched by tiles kept in {@link #tileCache}, if the cache is enabled.
+     * @param connection Active connection
+     * @param fetchEnvelope Fetch envelope
+     * @param builder (Out) Profile builder
+     */
+    protected void fetchCellProfileData(Connection connection, Envelope fetchEnvelope, ProfileBuilder builder) throws SQLException {
+        if(!tileCache.isEnabled()) {
+            fetchCellBuildings(connection, fetchEnvelope, builder);
+            fetchCellDem(connection, fetchEnvelope, builder);
+            fetchCellSoilAreas(connection, fetchEnvelope, builder);
+            return;
+        }
+        tileCache.setTileSize(getTileCacheTileSize());
+        List<ProfileTileCache.Tile> tiles = new ArrayList<>();
+        for(long key : tileCache.getTileKeys(fetchEnvelope)) {
+            ProfileTileCache.Tile tile = tileCache.get(key);
+            if(tile == null) {
+                tile = fetchTile(connection, key);
+                tileCache.put(key, tile);
+            }
+            tiles.add(tile);
+        }
+        // Buildings may intersect more than one tile
+        Map<Object, ProfileTileCache.BuildingRow> buildingRows = new LinkedHashMap<>();
+        for(ProfileTileCache.Tile tile : tiles) {
+            for(ProfileTileCache.BuildingRow buildingRow : tile.buildings) {
+                if(buildingRow.geometry.getEnvelopeInternal().intersects(fetchEnvelope)) {
+                    buildingRows.putIfAbsent(buildingRow.pk >= 0 ? buildingRow.pk : buildingRow.geometry, buildingRow);
+                }
+            }
+        }
+        List<ProfileTileCache.BuildingRow> sortedBuildingRows = new ArrayList<>(buildingRows.values());
+        sortedBuildingRows.sort(Comparator.comparingInt(buildingRow -> buildingRow.pk));
+        List<ProfileBuilder.Building> buildings = new ArrayList<>(sortedBuildingRows.size());
+        clipBuildings(sortedBuildingRows, fetchEnvelope, buildings);
+        for(ProfileBuilder.Building building : buildings) {
+            builder.addBuilding(building);
+        }
+        List<Coordinate> topographicPoints = new ArrayList<>();
+        for(ProfileTileCache.Tile tile : tiles) {
+            for(Coordinate topographicPoint : tile.topographicPoints) {
+                if(fetchEnvelope.intersects(topographicPoint)) {
+                    topographicPoints.add(new Coordinate(topographicPoint));
+                }
+            }
+        }
+        feedTopography(topographicPoints, builder);
+        // Keep the same split squares as fetchCellSoilAreas
+        double startX = Math.floor(fetchEnvelope.getMinX() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
+        double startY = Math.floor(fetchEnvelope.getMinY() / groundSurfaceSplitSideLength) * groundSurfaceSplitSideLength;
+        for(ProfileTileCache.Tile tile : tiles) {
+            for(ProfileTileCache.GroundArea groundArea : tile.groundAreas) {
+                if(groundArea.squareX >= startX && groundArea.squareX < fetchEnvelope.getMaxX() &&
+                        groundArea.squareY >= startY && groundArea.squareY < fetchEnvelope.getMaxY() &&
+                        groundArea.areaEnvelope.intersects(fetchEnvelope)) {
+                    builder.addGroundEffect(groundArea.geometry.copy(), groundArea.g);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetch the content of a tile from the database
+     * @param connection Active connection
+     * @param key Tile key
+     * @return Tile content
+     */
+    ProfileTileCache.Tile fetchTile(Connection connection, long key) throws SQLException {
+        ProfileTileCache.Tile tile = new ProfileTileCache.Tile();
+        Envelope tileEnvelope = tileCache.getTileEnvelope(key);
+        fetchBuildingRows(connection, tileEnvelope, tile.buildings);
+        List<Coordinate> topographicPoints = new ArrayList<>();
+        fetchTopographicPoints(connection, tileEnvelope, topographicPoints);
+        // Points on the tile border are kept by only one tile
+        int tileI = tileCache.getTileIndex(tileEnvelope.centre().x);
+        int tileJ = tileCache.getTileIndex(tileEnvelope.centre().y);
+        for(Coordinate topographicPoint : topographicPoints) {
+            if(tileCache.getTileIndex(topographicPoint.x) == tileI &&
+                    tileCache.getTileIndex(topographicPoint.y) == tileJ) {
+                tile.topographicPoints.add(topographicPoint);
+            }
+        }
+        fetchGroundAreas(connection, tileEnvelope, tile.groundAreas);
+        return tile;
+    }
+
+    /**
+     * @return Side length of the cached tiles, multiple of {@link #getGroundSurfaceSplitSideLength()}
+     */
+    public double getTileCacheTileSize() {
+        double tileSize = tileCacheTileSize > 0 ? tileCacheTileSize : maximumPropagationDistance / 2;
+        return Math.max(1, Math.round(tileSize / groundSurfaceSplitSideLength)) * groundSurfaceSplitSideLength;
+    }
+
+    /**
+     * @param tileCacheTileSize Side length of the cached tiles, rounded to a multiple of
+     * {@link #getGroundSurfaceSplitSideLength()}. 0 to use half of the maximum propagation distance
+     */
+    public void setTileCacheTileSize(double tileCacheTileSize) {
+        this.tileCacheTileSize = tileCacheTileSize;
+    }
+
+    /**
+     * @return Maximum estimated memory of the buildings, topography and soil areas tiles kept between cells
+     */
+    public long getTileCacheMemoryBudget() {
+        return tileCache.getMemoryBudget();
+    }
+
+    /**
+     * @param tileCacheMemoryBudget Maximum estimated memory in bytes of the buildings, topography and soil areas
+     *                              tiles kept between cells, 0 to fetch the data of each cell from the database
+     */
+    public void setTileCacheMemoryBudget(long tileCacheMemoryBudget) {
+        tileCache.setMemoryBudget(tileCacheMemoryBudget);
+    }
+
+    /**
+     * @return Cache of buildings, topography and soil areas tiles
+     */
+    public ProfileTileCache getTileCache() {
+        return tileCache;
+    }
+
 
     /**
      * Fetch source geometries and power
@@ -442,6 +651,8 @@ public abstract class JdbcNoiseMap {
             srid = getSRID(connection, TableLocation.parse(buildingsTableName, dbTypes));
         }
         geometryFactory = new GeometryFactory(new PrecisionModel(), srid);
+        // Input tables or parameters may have changed since the last computation
+        tileCache.clear();
 
         // Steps of execution
         // Evaluation of the main bounding box (sourcesTableName+buildingsTableName)
@@ -583,6 +794,39 @@ public abstract class JdbcNoiseMap {
         this.demTable = demTable;
     }
 
+    /**
+     * @return Topographic raster shared by all the cells, null if the topography comes from the DEM table
+     */
+    public TopographicRaster getDemRaster() {
+        return demRaster;
+    }
+
+    /**
+     * Use a topographic raster, read with {@link org.noise_planet.noisemodelling.jdbc.utils.AscReaderDriver#readRaster}
+     * for example, instead of the DEM table. The raster is shared by all the cells and no triangulation is done.
+     * @param demRaster Topographic raster, null to use the DEM table
+     */
+    public void setDemRaster(TopographicRaster demRaster) {
+        this.demRaster = demRaster;
+    }
+
+    /**
+     * @return Distance between the samples of the raster built from the DEM table points, 0 if the points are
+     * triangulated
+     */
+    public double getDemRasterCellSize() {
+        return demRasterCellSize;
+    }
+
+    /**
+     * The points of the DEM table are located on a regular grid (imported from an ASC file for example). The points
+     * of each cell are stored in a raster instead of being triangulated.
+     * @param demRasterCellSize Distance between the points of the DEM table, 0 to triangulate the points
+     */
+    public void setDemRasterCellSize(double demRasterCellSize) {
+        this.demRasterCellSize = demRasterCellSize;
+    }
+
     /**
      * Field name of the {@link #sourcesTableName}HERTZ. Where HERTZ is a number [100-5000].
      * Without the hertz value.
@@ -651,6 +895,21 @@ public abstract class JdbcNoiseMap {
         this.maximumError = maximumError;
     }
 
+    /**
+     * @return maximum dB Error of the geometric dispersion when far sub-sources of a line source are merged
+     */
+    public double getSourceAggregationError() {
+        return sourceAggregationError;
+    }
+
+    /**
+     * @param sourceAggregationError maximum dB Error of the geometric dispersion when far sub-sources of a line source
+     *                               are merged into one equivalent source, 0 to disable
+     */
+    public void setSourceAggregationError(double sourceAggregationError) {
+        this.sourceAggregationError = sourceAggregationError;
+    }
+
     /**
      * @return Reflection and diffraction maximum search distance, default to 400m.
      */
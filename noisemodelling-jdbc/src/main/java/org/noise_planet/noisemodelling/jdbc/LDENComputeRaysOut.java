@@ -9,11 +9,16 @@ import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
 
@@ -78,6 +83,8 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         LDENComputeRaysOut ldenComputeRaysOut;
         LDENConfig ldenConfig;
         ThreadRaysOut[] lDENThreadRaysOut = new ThreadRaysOut[3];
+        /** Atmospheric settings of each time period, null if the time periods must be evaluated separately */
+        PropagationProcessPathData[] periodsPathData = null;
         public List<PropagationPath> propagationPaths = new ArrayList<PropagationPath>();
 
         public ThreadComputeRaysOut(LDENComputeRaysOut multiThreadParent) {
@@ -86,6 +93,11 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
             lDENThreadRaysOut[0] = new ThreadRaysOut(multiThreadParent, multiThreadParent.dayPathData);
             lDENThreadRaysOut[1] = new ThreadRaysOut(multiThreadParent, multiThreadParent.eveningPathData);
             lDENThreadRaysOut[2] = new ThreadRaysOut(multiThreadParent, multiThreadParent.nightPathData);
+            if(!multiThreadParent.keepAbsorption && multiThreadParent.dayPathData != null &&
+                    multiThreadParent.eveningPathData != null && multiThreadParent.nightPathData != null) {
+                periodsPathData = new PropagationProcessPathData[] {multiThreadParent.dayPathData,
+                        multiThreadParent.eveningPathData, multiThreadParent.nightPathData};
+            }
             for (ThreadRaysOut threadRaysOut : lDENThreadRaysOut) {
                 threadRaysOut.keepRays = false;
             }
@@ -134,6 +146,21 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                 }
             }
             double[] globalLevel = null;
+            if(periodsPathData != null) {
+                // Evaluate all time periods at once, only the terms that depend on the atmospheric settings
+                // are computed for each time period
+                double[][] periodLevels = ldenComputeRaysOut.computeAttenuation(periodsPathData, sourceId, sourceLi,
+                        receiverId, propagationPathsParameter);
+                for(LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
+                    double[] levels = periodLevels[timePeriod.ordinal()];
+                    if(levels.length > 0) {
+                        lDENThreadRaysOut[timePeriod.ordinal()].receiverAttenuationLevels.add(
+                                new VerticeSL(receiverId, sourceId, levels));
+                        globalLevel = globalLevel == null ? levels : PowerUtils.sumDbArray(globalLevel, levels);
+                    }
+                }
+                return globalLevel;
+            }
             for(LDENConfig.TIME_PERIOD timePeriod : LDENConfig.TIME_PERIOD.values()) {
                 for(PropagationPath propagationPath : propagationPathsParameter) {
                     if (globalLevel == null) {
@@ -166,23 +193,27 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
          * @param data receiver noise level in dB
          */
         public void pushInStack(ConcurrentLinkedDeque<VerticeSL> stack, VerticeSL data) {
-            while(ldenComputeRaysOut.ldenData.queueSize.get() > ldenConfig.outputMaximumQueue) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ex) {
-                    ldenConfig.aborted = true;
-                    break;
-                }
-                if(ldenConfig.aborted) {
-                    if(ldenComputeRaysOut != null && this.ldenComputeRaysOut.inputData != null &&
-                            this.ldenComputeRaysOut.inputData.cellProg != null) {
-                        this.ldenComputeRaysOut.inputData.cellProg.cancel();
-                    }
+            pushAll(stack, Collections.singletonList(data));
+        }
+
+        /**
+         * Add elements into the stack, wait while the writer is late
+         * @param stack Stack to feed
+         * @param data Elements to add
+         * @param <T> Element type
+         */
+        private <T> void pushAll(Deque<T> stack, Collection<T> data) {
+            try {
+                if(ldenComputeRaysOut.ldenData.push(stack, data, ldenConfig)) {
                     return;
                 }
+            } catch (InterruptedException ex) {
+                ldenConfig.aborted = true;
+            }
+            if(ldenComputeRaysOut != null && this.ldenComputeRaysOut.inputData != null &&
+                    this.ldenComputeRaysOut.inputData.cellProg != null) {
+                this.ldenComputeRaysOut.inputData.cellProg.cancel();
             }
-            stack.add(data);
-            ldenComputeRaysOut.ldenData.queueSize.incrementAndGet();
         }
 
         @Override
@@ -195,21 +226,6 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
          * @param data rays
          */
         public void pushInStack(ConcurrentLinkedDeque<PropagationPath> stack, Collection<PropagationPath> data) {
-            while(ldenComputeRaysOut.ldenData.queueSize.get() > ldenConfig.outputMaximumQueue) {
-                try {
-                    Thread.sleep(10);
-                } catch (InterruptedException ex) {
-                    ldenConfig.aborted = true;
-                    break;
-                }
-                if(ldenConfig.aborted) {
-                    if(ldenComputeRaysOut != null && this.ldenComputeRaysOut.inputData != null &&
-                            this.ldenComputeRaysOut.inputData.cellProg != null) {
-                        this.ldenComputeRaysOut.inputData.cellProg.cancel();
-                    }
-                    return;
-                }
-            }
             if(ldenConfig.getMaximumRaysOutputCount() == 0 || ldenComputeRaysOut.ldenData.totalRaysInserted.get() < ldenConfig.getMaximumRaysOutputCount()) {
                 long newTotalRays = ldenComputeRaysOut.ldenData.totalRaysInserted.addAndGet(data.size());
                 if(ldenConfig.getMaximumRaysOutputCount() > 0 && newTotalRays > ldenConfig.getMaximumRaysOutputCount()) {
@@ -224,8 +240,7 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
                     }
                     data = subList;
                 }
-                stack.addAll(data);
-                ldenComputeRaysOut.ldenData.queueSize.addAndGet(data.size());
+                pushAll(stack, data);
             }
         }
 
@@ -352,13 +367,137 @@ public class LDENComputeRaysOut extends ComputeRaysOutAttenuation {
         }
     }
 
+    /**
+     * Results exchanged between the computation threads and the table writer threads (one writer per stack).
+     * The total number of elements in the stacks is bounded: producers block while the stacks are full and a
+     * writer blocks while its stack is empty.
+     */
     public static class LdenData {
+        /** Maximum time between two checks of the aborted flag while waiting */
+        private static final long ABORT_CHECK_INTERVAL = 250;
         public final AtomicLong queueSize = new AtomicLong(0);
         public final AtomicLong totalRaysInserted = new AtomicLong(0);
+        /** Maximum value reached by queueSize */
+        public final AtomicLong maximumQueueSize = new AtomicLong(0);
+        /** Cumulated time spent by the producers waiting for the writer in nanoseconds */
+        public final AtomicLong producerWaitTime = new AtomicLong(0);
+        /** Number of times a producer had to wait for the writer */
+        public final AtomicLong producerWaitCount = new AtomicLong(0);
         public final ConcurrentLinkedDeque<VerticeSL> lDayLevels = new ConcurrentLinkedDeque<>();
         public final ConcurrentLinkedDeque<VerticeSL> lEveningLevels = new ConcurrentLinkedDeque<>();
         public final ConcurrentLinkedDeque<VerticeSL> lNightLevels = new ConcurrentLinkedDeque<>();
         public final ConcurrentLinkedDeque<VerticeSL> lDenLevels = new ConcurrentLinkedDeque<>();
         public final ConcurrentLinkedDeque<PropagationPath> rays = new ConcurrentLinkedDeque<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notFull = lock.newCondition();
+        private final Condition notEmpty = lock.newCondition();
+        private final AtomicInteger waitingProducers = new AtomicInteger(0);
+        private final AtomicInteger waitingConsumers = new AtomicInteger(0);
+
+        /**
+         * Add elements into a stack. Wait while the stacks contain more than
+         * {@link LDENConfig#setOutputMaximumQueue(int)} elements.
+         * @param stack Stack to feed
+         * @param elements Elements to add
+         * @param ldenConfig Configuration
+         * @param <T> Element type
+         * @return False if the computation has been aborted while waiting, elements are not added
+         * @throws InterruptedException Interrupted while waiting
+         */
+        public <T> boolean push(Deque<T> stack, Collection<T> elements, LDENConfig ldenConfig)
+                throws InterruptedException {
+            if(queueSize.get() > ldenConfig.outputMaximumQueue) {
+                long start = System.nanoTime();
+                producerWaitCount.incrementAndGet();
+                lock.lock();
+                waitingProducers.incrementAndGet();
+                try {
+                    while (queueSize.get() > ldenConfig.outputMaximumQueue) {
+                        if (ldenConfig.aborted) {
+                            return false;
+                        }
+                        notFull.await(ABORT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                    }
+                } finally {
+                    waitingProducers.decrementAndGet();
+                    lock.unlock();
+                    producerWaitTime.addAndGet(System.nanoTime() - start);
+                }
+            }
+            stack.addAll(elements);
+            long newSize = queueSize.addAndGet(elements.size());
+            maximumQueueSize.accumulateAndGet(newSize, Math::max);
+            if(waitingConsumers.get() > 0) {
+                signalAll(notEmpty);
+            }
+            return true;
+        }
+
+        /**
+         * Move elements from a stack into the target collection
+         * @param stack Stack to pop from
+         * @param target Collection to feed
+         * @param maximum Maximum number of elements to move
+         * @param <T> Element type
+         * @return Number of moved elements
+         */
+        public <T> int drain(Deque<T> stack, Collection<? super T> target, int maximum) {
+            int count = 0;
+            T element;
+            while(count < maximum && (element = stack.poll()) != null) {
+                target.add(element);
+                count++;
+            }
+            if(count > 0) {
+                queueSize.addAndGet(-count);
+                if(waitingProducers.get() > 0) {
+                    signalAll(notFull);
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Wait for new elements in a stack. Return immediately if the stack is not empty.
+         * @param stack Stack to watch
+         * @param timeout Maximum time to wait in milliseconds
+         * @return True if the stack is not empty
+         * @throws InterruptedException Interrupted while waiting
+         */
+        public boolean awaitElements(Deque<?> stack, long timeout) throws InterruptedException {
+            lock.lock();
+            waitingConsumers.incrementAndGet();
+            try {
+                if(stack.isEmpty()) {
+                    notEmpty.await(timeout, TimeUnit.MILLISECONDS);
+                }
+                return !stack.isEmpty();
+            } finally {
+                waitingConsumers.decrementAndGet();
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Wake up the waiting producers and writers, in order to check the abort and exit flags
+         */
+        public void wakeUp() {
+            lock.lock();
+            try {
+                notFull.signalAll();
+                notEmpty.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void signalAll(Condition condition) {
+            lock.lock();
+            try {
+                condition.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
     }
 }
@@ -73,6 +73,8 @@ public class LDENConfig {
     // Maximum result stack to be inserted in database
     // if the stack is full, the computation core is waiting
     int outputMaximumQueue = 50000;
+    // Maximum number of rows sent to the database at once by each table writer
+    int outputBatchSize = 500;
 
     boolean mergeSources = true;
 
@@ -86,6 +88,8 @@ public class LDENConfig {
 
     File sqlOutputFile;
     Boolean sqlOutputFileCompression = true;
+    // Write receiver levels into binary files instead of tables
+    File levelsOutputFolder;
     Boolean dropResultsTable = true;
 
     public LDENConfig(INPUT_MODE input_mode) {
@@ -173,6 +177,23 @@ public class LDENConfig {
         this.sqlOutputFile = sqlOutputFile;
     }
 
+    /**
+     * @return Folder of receiver levels binary files, null if receiver levels are written into tables
+     */
+    public File getLevelsOutputFolder() {
+        return levelsOutputFolder;
+    }
+
+    /**
+     * Write receiver levels into columnar binary files instead of the result tables. One file is created for each
+     * result table, named as the table with the extension {@link org.noise_planet.noisemodelling.jdbc.utils.LevelsFileWriter#FILE_EXTENSION}.
+     * Files can be loaded using {@link org.noise_planet.noisemodelling.jdbc.utils.LevelsFileReader}. Rays are still written into the rays table.
+     * @param levelsOutputFolder Output folder or null to write receiver levels into tables
+     */
+    public void setLevelsOutputFolder(File levelsOutputFolder) {
+        this.levelsOutputFolder = levelsOutputFolder;
+    }
+
     public void setComputeLDay(boolean computeLDay) {
         this.computeLDay = computeLDay;
     }
@@ -244,6 +265,23 @@ public class LDENConfig {
         this.outputMaximumQueue = outputMaximumQueue;
     }
 
+    /**
+     * @return Maximum number of rows sent to the database at once by each table writer
+     */
+    public int getOutputBatchSize() {
+        return outputBatchSize;
+    }
+
+    /**
+     * @param outputBatchSize Maximum number of rows sent to the database at once by each table writer
+     */
+    public void setOutputBatchSize(int outputBatchSize) {
+        if(outputBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        this.outputBatchSize = outputBatchSize;
+    }
+
     /**
      * @param computeLDEN IF true create LDEN_GEOM table
      */
@@ -28,6 +28,7 @@ import org.locationtech.jts.geom.LineString;
 import org.noise_planet.noisemodelling.emission.LineSource;
 import org.noise_planet.noisemodelling.emission.directivity.DirectivitySphere;
 import org.noise_planet.noisemodelling.emission.railway.cnossos.RailWayCnossosParameters;
+import org.noise_planet.noisemodelling.jdbc.utils.LevelsFileWriter;
 import org.noise_planet.noisemodelling.jdbc.utils.StringPreparedStatements;
 import org.noise_planet.noisemodelling.pathfinder.*;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
@@ -42,7 +43,12 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.GZIPOutputStream;
 
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.*;
@@ -55,11 +61,28 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
     TableWriter tableWriter;
     Thread tableWriterThread;
     Connection connection;
-    static final int BATCH_MAX_SIZE = 500;
     static final int WRITER_CACHE = 65536;
+    /** Maximum time the writer waits for new results before checking the exit flags, in milliseconds */
+    static final long WRITER_WAIT_TIMEOUT = 1000;
+    /**
+     * Index of each table writer in the metrics
+     */
+    static final int WRITER_DAY = 0;
+    static final int WRITER_EVENING = 1;
+    static final int WRITER_NIGHT = 2;
+    static final int WRITER_DEN = 3;
+    static final int WRITER_RAYS = 4;
+    static final String[] WRITER_NAMES = new String[] {"lday", "levening", "lnight", "lden", "rays"};
     LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
     int srid;
+    /** Number of rows inserted by each table writer */
+    AtomicLong[] insertedRows = new AtomicLong[WRITER_NAMES.length];
+    long[] lastInsertedRows = new long[WRITER_NAMES.length];
+    long lastMetricTime = 0;
     List<String> noiseSource = Arrays.asList("ROLLING","TRACTIONA", "TRACTIONB","AERODYNAMICA","AERODYNAMICB","BRIDGE");
+    static final long DEFAULT_EMISSION_CACHE_MEMORY = 64L * 1024 * 1024;
+    /** Road traffic emission of the sources, shared by the cells */
+    SourceEmissionCache emissionCache = new SourceEmissionCache(DEFAULT_EMISSION_CACHE_MEMORY);
 
 
     /**
@@ -71,16 +94,37 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
     public LDENPointNoiseMapFactory(Connection connection, LDENConfig ldenConfig) {
         this.ldenConfig = ldenConfig;
         this.connection = connection;
+        for(int i = 0; i < insertedRows.length; i++) {
+            insertedRows[i] = new AtomicLong();
+        }
     }
 
     @Override
     public String[] getColumnNames() {
-        return new String[] {"jdbc_stack"};
+        List<String> columns = new ArrayList<>(Arrays.asList("jdbc_stack", "jdbc_stack_max", "jdbc_wait_count",
+                "jdbc_wait_ms"));
+        for(String writerName : WRITER_NAMES) {
+            columns.add("jdbc_" + writerName + "_rows_s");
+        }
+        return columns.toArray(new String[0]);
     }
 
     @Override
     public String[] getCurrentValues() {
-        return new String[] {Long.toString(ldenData.queueSize.get())};
+        List<String> values = new ArrayList<>(Arrays.asList(Long.toString(ldenData.queueSize.get()),
+                Long.toString(ldenData.maximumQueueSize.get()), Long.toString(ldenData.producerWaitCount.get()),
+                Long.toString(ldenData.producerWaitTime.get() / 1000000)));
+        // Insertion rate of each writer since the last call
+        long now = System.currentTimeMillis();
+        double elapsed = lastMetricTime > 0 ? (now - lastMetricTime) / 1000.0 : 0;
+        lastMetricTime = now;
+        for(int i = 0; i < insertedRows.length; i++) {
+            long rows = insertedRows[i].get();
+            double rate = elapsed > 0 ? (rows - lastInsertedRows[i]) / elapsed : 0;
+            lastInsertedRows[i] = rows;
+            values.add(String.format(Locale.ROOT, "%.1f", rate));
+        }
+        return values.toArray(new String[0]);
     }
 
     @Override
@@ -103,8 +147,25 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         }
     }
 
+    /**
+     * @param emissionCacheMemoryBudget Maximum estimated memory in bytes of the road traffic emission kept between
+     *                                  cells, 0 to compute the emission of a source for each cell
+     */
+    public void setEmissionCacheMemoryBudget(long emissionCacheMemoryBudget) {
+        emissionCache.setMemoryBudget(emissionCacheMemoryBudget);
+    }
+
+    /**
+     * @return Cache of the road traffic emission of the sources
+     */
+    public SourceEmissionCache getEmissionCache() {
+        return emissionCache;
+    }
+
     @Override
     public void initialize(Connection connection, PointNoiseMap pointNoiseMap) throws SQLException {
+        // The sources table or the configuration may have changed
+        emissionCache.clear();
         if(ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN) {
             // Fetch source fields
             List<String> sourceField = JDBCUtilities.getColumnNames(connection, pointNoiseMap.getSourcesTableName());
@@ -178,7 +239,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         if(ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.DAY) == null) {
             throw new IllegalStateException("start() function must be called after PointNoiseMap initialization call");
         }
-        tableWriter = new TableWriter(connection, ldenConfig, ldenData, srid);
+        tableWriter = new TableWriter(connection, ldenConfig, ldenData, srid, insertedRows);
         ldenConfig.exitWhenDone = false;
         tableWriterThread = new Thread(tableWriter);
         tableWriterThread.start();
@@ -197,6 +258,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
      */
     public void stop() {
         ldenConfig.exitWhenDone = true;
+        ldenData.wakeUp();
         while (tableWriterThread != null && tableWriterThread.isAlive()) {
             try {
                 Thread.sleep(150);
@@ -212,6 +274,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
      */
     public void cancel() {
         ldenConfig.aborted = true;
+        ldenData.wakeUp();
         while (tableWriterThread.isAlive()) {
             try {
                 Thread.sleep(150);
@@ -226,6 +289,7 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
     public LDENPropagationProcessData create(ProfileBuilder builder) {
         LDENPropagationProcessData ldenPropagationProcessData = new LDENPropagationProcessData(builder, ldenConfig);
         ldenPropagationProcessData.setDirectionAttributes(directionAttributes);
+        ldenPropagationProcessData.setEmissionCache(emissionCache);
         return ldenPropagationProcessData;
     }
 
@@ -246,9 +310,17 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         boolean started = false;
         Writer o;
         int srid;
+        AtomicLong[] insertedRows;
+        /**
+         * The table writers share the same connection, the statements are executed one at a time. Only the
+         * conversion of the rows and the binary level files are processed in parallel.
+         */
+        final Object databaseLock = new Object();
 
-        public TableWriter(Connection connection, LDENConfig ldenConfig, LDENComputeRaysOut.LdenData ldenData, int srid) {
+        public TableWriter(Connection connection, LDENConfig ldenConfig, LDENComputeRaysOut.LdenData ldenData, int srid,
+                           AtomicLong[] insertedRows) {
             this.connection = connection;
+            this.insertedRows = insertedRows;
             this.sqlFilePath = ldenConfig.sqlOutputFile;
             this.ldenConfig = ldenConfig;
             this.ldenData = ldenData;
@@ -259,139 +331,289 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
             this.srid = srid;
         }
 
-        void processRaysStack(ConcurrentLinkedDeque<PropagationPath> stack) throws SQLException {
-            StringBuilder query = new StringBuilder("INSERT INTO " + ldenConfig.raysTable +
-                    "(the_geom , IDRECEIVER , IDSOURCE");
-            if(ldenConfig.exportProfileInRays) {
-                query.append(", GEOJSON");
-            }
-            if(ldenConfig.keepAbsorption) {
-                query.append(", LEQ, PERIOD");
-            }
-            query.append(") VALUES (?, ?, ?");
-            if(ldenConfig.exportProfileInRays) {
-                query.append(", ?");
+        /**
+         * Consume one result stack and insert the rows into one table
+         * @param <T> Row type
+         */
+        private abstract class StackWriter<T> implements Callable<Void> {
+            final Deque<T> stack;
+            final AtomicLong insertedRows;
+
+            StackWriter(Deque<T> stack, AtomicLong insertedRows) {
+                this.stack = stack;
+                this.insertedRows = insertedRows;
             }
-            if(ldenConfig.keepAbsorption) {
-                query.append(", ?, ?");
+
+            /**
+             * Prepare statements, called by the writer thread
+             */
+            abstract void open() throws SQLException, IOException;
+
+            /**
+             * Insert the rows in the table
+             * @param rows Rows to insert, at most {@link LDENConfig#getOutputBatchSize()}
+             */
+            abstract void write(List<T> rows) throws SQLException, IOException;
+
+            abstract void close() throws SQLException, IOException;
+
+            @Override
+            public Void call() throws SQLException, IOException, InterruptedException {
+                try {
+                    open();
+                    int batchMaxSize = ldenConfig.getOutputBatchSize();
+                    List<T> rows = new ArrayList<>(batchMaxSize);
+                    while (!ldenConfig.aborted) {
+                        ldenData.drain(stack, rows, batchMaxSize - rows.size());
+                        if (rows.size() >= batchMaxSize || (!rows.isEmpty() && stack.isEmpty())) {
+                            write(rows);
+                            insertedRows.addAndGet(rows.size());
+                            rows.clear();
+                        } else if (rows.isEmpty()) {
+                            if (ldenConfig.exitWhenDone) {
+                                // exit flag is set once all results have been pushed, check again before leaving
+                                if (stack.isEmpty()) {
+                                    break;
+                                }
+                            } else {
+                                ldenData.awaitElements(stack, WRITER_WAIT_TIMEOUT);
+                            }
+                        }
+                    }
+                } catch (SQLException | IOException | RuntimeException ex) {
+                    // Stop the other writers and the computation
+                    ldenConfig.aborted = true;
+                    ldenData.wakeUp();
+                    throw ex;
+                } finally {
+                    close();
+                }
+                return null;
             }
-            query.append(");");
-            // PK, GEOM, ID_RECEIVER, ID_SOURCE
+        }
+
+
+        /**
+         * Read the rays stack and insert rows
+         */
+        private class RaysWriter extends StackWriter<PropagationPath> {
             PreparedStatement ps;
-            if(sqlFilePath == null) {
-                ps = connection.prepareStatement(query.toString());
-            } else {
-                ps = new StringPreparedStatements(o, query.toString());
-            }
-            int batchSize = 0;
-            while(!stack.isEmpty()) {
-                PropagationPath row = stack.pop();
-                ldenData.queueSize.decrementAndGet();
-                int parameterIndex = 1;
-                LineString lineString = row.asGeom();
-                lineString.setSRID(srid);
-                ps.setObject(parameterIndex++, lineString);
-                ps.setLong(parameterIndex++, row.getIdReceiver());
-                ps.setLong(parameterIndex++, row.getIdSource());
+
+            RaysWriter(AtomicLong insertedRows) {
+                super(ldenData.rays, insertedRows);
+            }
+
+            @Override
+            void open() throws SQLException {
+                StringBuilder query = new StringBuilder("INSERT INTO " + ldenConfig.raysTable +
+                        "(the_geom , IDRECEIVER , IDSOURCE");
                 if(ldenConfig.exportProfileInRays) {
-                    String geojson = "";
-                    try {
-                        geojson = row.profileAsJSON(ldenConfig.geojsonColumnSizeLimit);
-                    } catch (IOException ex) {
-                        //ignore
-                    }
-                    ps.setString(parameterIndex++, geojson);
+                    query.append(", GEOJSON");
+                }
+                if(ldenConfig.keepAbsorption) {
+                    query.append(", LEQ, PERIOD");
+                }
+                query.append(") VALUES (?, ?, ?");
+                if(ldenConfig.exportProfileInRays) {
+                    query.append(", ?");
                 }
                 if(ldenConfig.keepAbsorption) {
-                    double globalValue = sumDbArray(row.absorptionData.aGlobal);
-                    ps.setDouble(parameterIndex++, globalValue);
-                    ps.setString(parameterIndex++, row.getTimePeriod());
+                    query.append(", ?, ?");
                 }
-                ps.addBatch();
-                batchSize++;
-                if (batchSize >= BATCH_MAX_SIZE) {
+                query.append(");");
+                // PK, GEOM, ID_RECEIVER, ID_SOURCE
+                ps = prepareStatement(query.toString());
+            }
+
+            @Override
+            void write(List<PropagationPath> rows) throws SQLException {
+                // Convert rays before locking the connection
+                List<LineString> geometries = new ArrayList<>(rows.size());
+                List<String> profiles = new ArrayList<>(rows.size());
+                for(PropagationPath row : rows) {
+                    LineString lineString = row.asGeom();
+                    lineString.setSRID(srid);
+                    geometries.add(lineString);
+                    if(ldenConfig.exportProfileInRays) {
+                        String geojson = "";
+                        try {
+                            geojson = row.profileAsJSON(ldenConfig.geojsonColumnSizeLimit);
+                        } catch (IOException ex) {
+                            //ignore
+                        }
+                        profiles.add(geojson);
+                    }
+                }
+                synchronized (databaseLock) {
+                    for (int idRow = 0; idRow < rows.size(); idRow++) {
+                        PropagationPath row = rows.get(idRow);
+                        int parameterIndex = 1;
+                        ps.setObject(parameterIndex++, geometries.get(idRow));
+                        ps.setLong(parameterIndex++, row.getIdReceiver());
+                        ps.setLong(parameterIndex++, row.getIdSource());
+                        if (ldenConfig.exportProfileInRays) {
+                            ps.setString(parameterIndex++, profiles.get(idRow));
+                        }
+                        if (ldenConfig.keepAbsorption) {
+                            double globalValue = sumDbArray(row.absorptionData.aGlobal);
+                            ps.setDouble(parameterIndex++, globalValue);
+                            ps.setString(parameterIndex++, row.getTimePeriod());
+                        }
+                        ps.addBatch();
+                    }
                     ps.executeBatch();
                     ps.clearBatch();
-                    batchSize = 0;
                 }
             }
-            if (batchSize > 0) {
-                ps.executeBatch();
-            }
 
+            @Override
+            void close() throws SQLException {
+                if(ps != null) {
+                    ps.close();
+                }
+            }
         }
 
         /**
-         * Pop values from stack and insert rows
-         * @param tableName Table to feed
-         * @param stack Stack to pop from
-         * @throws SQLException Got an error
+         * Read a receiver levels stack and insert rows
          */
-        void processStack(String tableName, ConcurrentLinkedDeque<ComputeRaysOutAttenuation.VerticeSL> stack) throws SQLException {
-            StringBuilder query = new StringBuilder("INSERT INTO ");
-            query.append(tableName);
-            query.append(" VALUES (? "); // ID_RECEIVER
-            if(!ldenConfig.mergeSources) {
-                query.append(", ?"); // ID_SOURCE
-            }
-            if (!ldenConfig.computeLAEQOnly) {
-                query.append(", ?".repeat(ldenConfig.propagationProcessPathDataDay.freq_lvl.size())); // freq value
-                query.append(", ?, ?);"); // laeq, leq
-            }else{
-                query.append(", ?);"); // laeq, leq
-            }
+        private class LevelsWriter extends StackWriter<ComputeRaysOutAttenuation.VerticeSL> {
+            final String tableName;
             PreparedStatement ps;
-            if(sqlFilePath == null) {
-                ps = connection.prepareStatement(query.toString());
-            } else {
-                ps = new StringPreparedStatements(o, query.toString());
+            LevelsFileWriter levelsFile;
+
+            LevelsWriter(String tableName, Deque<ComputeRaysOutAttenuation.VerticeSL> stack,
+                         AtomicLong insertedRows) {
+                super(stack, insertedRows);
+                this.tableName = tableName;
             }
-            int batchSize = 0;
-            while(!stack.isEmpty()) {
-                ComputeRaysOutAttenuation.VerticeSL row = stack.pop();
-                ldenData.queueSize.decrementAndGet();
-                int parameterIndex = 1;
-                ps.setLong(parameterIndex++, row.receiverId);
-                if(!ldenConfig.mergeSources) {
-                    ps.setLong(parameterIndex++, row.sourceId);
+
+            @Override
+            void open() throws SQLException, IOException {
+                if(ldenConfig.levelsOutputFolder != null) {
+                    List<String> columns = getLevelColumnNames();
+                    levelsFile = new LevelsFileWriter(new File(ldenConfig.levelsOutputFolder,
+                            tableName + LevelsFileWriter.FILE_EXTENSION), !ldenConfig.mergeSources,
+                            columns.subList(ldenConfig.mergeSources ? 1 : 2, columns.size()));
+                } else {
+                    StringBuilder query = new StringBuilder("INSERT INTO ");
+                    query.append(tableName);
+                    query.append(" VALUES (? "); // ID_RECEIVER
+                    query.append(", ?".repeat(getLevelColumnNames().size() - 1));
+                    query.append(");");
+                    ps = prepareStatement(query.toString());
                 }
+            }
 
+            /**
+             * @param row Receiver levels
+             * @return Column values of the row
+             */
+            double[] getValues(ComputeRaysOutAttenuation.VerticeSL row) {
+                int frequencyCount = ldenConfig.propagationProcessPathDataDay.freq_lvl.size();
+                double[] values = new double[ldenConfig.computeLAEQOnly ? 1 : frequencyCount + 2];
+                int index = 0;
                 if (!ldenConfig.computeLAEQOnly){
-                    for(int idfreq=0;idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
+                    for(int idfreq=0;idfreq < frequencyCount; idfreq++) {
                         double value = row.value[idfreq];
                         if(!Double.isFinite(value)) {
                             value = -99.0;
                             row.value[idfreq] = value;
                         }
-                        ps.setDouble(parameterIndex++, value);
+                        values[index++] = value;
                     }
-
                 }
                 // laeq value
                 double value = wToDba(sumArray(dbaToW(sumArray(row.value, a_weighting))));
                 if(!Double.isFinite(value)) {
                     value = -99;
                 }
-                ps.setDouble(parameterIndex++, value);
+                values[index++] = value;
 
                 // leq value
                 if (!ldenConfig.computeLAEQOnly) {
-                    ps.setDouble(parameterIndex++, wToDba(sumArray(dbaToW(row.value))));
+                    values[index] = wToDba(sumArray(dbaToW(row.value)));
                 }
+                return values;
+            }
 
-                ps.addBatch();
-                batchSize++;
-                if (batchSize >= BATCH_MAX_SIZE) {
+            @Override
+            void write(List<ComputeRaysOutAttenuation.VerticeSL> rows) throws SQLException, IOException {
+                List<double[]> values = new ArrayList<>(rows.size());
+                for(ComputeRaysOutAttenuation.VerticeSL row : rows) {
+                    values.add(getValues(row));
+                }
+                if(levelsFile != null) {
+                    long[] receiverIds = new long[rows.size()];
+                    long[] sourceIds = new long[rows.size()];
+                    for (int idRow = 0; idRow < rows.size(); idRow++) {
+                        receiverIds[idRow] = rows.get(idRow).receiverId;
+                        sourceIds[idRow] = rows.get(idRow).sourceId;
+                    }
+                    levelsFile.write(receiverIds, sourceIds, values.toArray(new double[0][]), rows.size());
+                    return;
+                }
+                synchronized (databaseLock) {
+                    for (int idRow = 0; idRow < rows.size(); idRow++) {
+                        ComputeRaysOutAttenuation.VerticeSL row = rows.get(idRow);
+                        int parameterIndex = 1;
+                        ps.setLong(parameterIndex++, row.receiverId);
+                        if (!ldenConfig.mergeSources) {
+                            ps.setLong(parameterIndex++, row.sourceId);
+                        }
+                        for (double value : values.get(idRow)) {
+                            ps.setDouble(parameterIndex++, value);
+                        }
+                        ps.addBatch();
+                    }
                     ps.executeBatch();
                     ps.clearBatch();
-                    batchSize = 0;
                 }
             }
-            if (batchSize > 0) {
-                ps.executeBatch();
+
+            @Override
+            void close() throws SQLException, IOException {
+                if(ps != null) {
+                    ps.close();
+                }
+                if(levelsFile != null) {
+                    levelsFile.close();
+                }
+            }
+        }
+
+        PreparedStatement prepareStatement(String query) throws SQLException {
+            if(sqlFilePath == null) {
+                synchronized (databaseLock) {
+                    return connection.prepareStatement(query);
+                }
+            } else {
+                return new StringPreparedStatements(o, query);
+            }
+        }
+
+        /**
+         * @return Column names of the receiver levels tables
+         */
+        List<String> getLevelColumnNames() {
+            List<String> columns = new ArrayList<>();
+            columns.add("IDRECEIVER");
+            if(!ldenConfig.mergeSources) {
+                columns.add("IDSOURCE");
+            }
+            if (!ldenConfig.computeLAEQOnly) {
+                for (int idfreq = 0; idfreq < ldenConfig.propagationProcessPathDataDay.freq_lvl.size(); idfreq++) {
+                    columns.add("HZ" + ldenConfig.propagationProcessPathDataDay.freq_lvl.get(idfreq));
+                }
+                columns.add("LAEQ");
+                columns.add("LEQ");
+            } else {
+                columns.add("LAEQ");
             }
+            return columns;
         }
 
+
         private String forgeCreateTable(String tableName) {
             StringBuilder sb = new StringBuilder("create table ");
             sb.append(tableName);
@@ -453,6 +675,10 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                 sb.append(");");
                 processQuery(sb.toString());
             }
+            if(ldenConfig.levelsOutputFolder != null) {
+                // receiver levels are written into binary files
+                return;
+            }
             if(ldenConfig.computeLDay) {
                 if(ldenConfig.dropResultsTable) {
                     String q = String.format("DROP TABLE IF EXISTS %s;", ldenConfig.lDayTable);
@@ -488,34 +714,55 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
         }
 
         void mainLoop() throws SQLException, IOException {
-            while (!ldenConfig.aborted) {
-                started = true;
-                try {
-                    if(!ldenData.lDayLevels.isEmpty()) {
-                        processStack(ldenConfig.lDayTable, ldenData.lDayLevels);
-                    } else if(!ldenData.lEveningLevels.isEmpty()) {
-                        processStack(ldenConfig.lEveningTable, ldenData.lEveningLevels);
-                    } else if(!ldenData.lNightLevels.isEmpty()) {
-                        processStack(ldenConfig.lNightTable, ldenData.lNightLevels);
-                    } else if(!ldenData.lDenLevels.isEmpty()) {
-                        processStack(ldenConfig.lDenTable, ldenData.lDenLevels);
-                    } else if(!ldenData.rays.isEmpty()) {
-                        processRaysStack(ldenData.rays);
-                    } else {
-                        if(ldenConfig.exitWhenDone) {
-                            break;
-                        } else {
-                            Thread.sleep(50);
-                        }
-                    }
-                } catch (InterruptedException ex) {
-                    // ignore
-                    break;
+            List<StackWriter<?>> writers = new ArrayList<>();
+            if(ldenConfig.computeLDay) {
+                writers.add(new LevelsWriter(ldenConfig.lDayTable, ldenData.lDayLevels, insertedRows[WRITER_DAY]));
+            }
+            if(ldenConfig.computeLEvening) {
+                writers.add(new LevelsWriter(ldenConfig.lEveningTable, ldenData.lEveningLevels,
+                        insertedRows[WRITER_EVENING]));
+            }
+            if(ldenConfig.computeLNight) {
+                writers.add(new LevelsWriter(ldenConfig.lNightTable, ldenData.lNightLevels, insertedRows[WRITER_NIGHT]));
+            }
+            if(ldenConfig.computeLDEN) {
+                writers.add(new LevelsWriter(ldenConfig.lDenTable, ldenData.lDenLevels, insertedRows[WRITER_DEN]));
+            }
+            if(ldenConfig.getExportRaysMethod() == LDENConfig.ExportRaysMethods.TO_RAYS_TABLE) {
+                writers.add(new RaysWriter(insertedRows[WRITER_RAYS]));
+            }
+            started = true;
+            if(writers.isEmpty()) {
+                return;
+            }
+            ExecutorService executorService = Executors.newFixedThreadPool(writers.size());
+            try {
+                List<Future<Void>> futures = new ArrayList<>(writers.size());
+                for(StackWriter<?> writer : writers) {
+                    futures.add(executorService.submit(writer));
+                }
+                for(Future<Void> future : futures) {
+                    future.get();
                 }
+            } catch (ExecutionException ex) {
+                if(ex.getCause() instanceof SQLException) {
+                    throw (SQLException) ex.getCause();
+                } else if(ex.getCause() instanceof IOException) {
+                    throw (IOException) ex.getCause();
+                } else if(!(ex.getCause() instanceof InterruptedException)) {
+                    throw new IllegalStateException(ex.getCause());
+                }
+            } catch (InterruptedException ex) {
+                // ignore
+            } finally {
+                executorService.shutdownNow();
             }
         }
 
         void createKeys()  throws SQLException, IOException {
+            if(ldenConfig.levelsOutputFolder != null) {
+                return;
+            }
             // Set primary keys
             LOGGER.info("Write done, apply primary keys");
             if(ldenConfig.computeLDay) {
@@ -552,9 +799,11 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                     LOGGER.error("SQL Writer exception", e);
                     LOGGER.error(e.getLocalizedMessage(), e.getNextException());
                     ldenConfig.aborted = true;
+                    ldenData.wakeUp();
                 } catch (Throwable e) {
                     LOGGER.error("Got exception on result writer, cancel calculation", e);
                     ldenConfig.aborted = true;
+                    ldenData.wakeUp();
                 }
             } else {
                 try(OutputStreamWriter bw = getStream()) {
@@ -566,9 +815,11 @@ public class LDENPointNoiseMapFactory implements PointNoiseMap.PropagationProces
                     LOGGER.error("SQL Writer exception", e);
                     LOGGER.error(e.getLocalizedMessage(), e.getNextException());
                     ldenConfig.aborted = true;
+                    ldenData.wakeUp();
                 } catch (Throwable e) {
                     LOGGER.error("Got exception on result writer, cancel calculation", e);
                     ldenConfig.aborted = true;
+                    ldenData.wakeUp();
                 }
             }
             // LOGGER.info("Exit TableWriter");
@@ -48,6 +48,8 @@ import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.dbaToW
  */
 public class LDENPropagationProcessData extends CnossosPropagationData {
     public Map<String, Integer> sourceFields = null;
+    private final Map<String, RoadTrafficColumns> roadTrafficColumns = new HashMap<>();
+    private Map<String, Integer> roadTrafficColumnsFields = null;
 
     // Source value in energetic  e = pow(10, dbVal / 10.0)
     public List<double[]> wjSourcesD = new ArrayList<>();
@@ -61,6 +63,9 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
 
     LDENConfig ldenConfig;
 
+    /** Emission of the sources already fetched by another cell, may be null */
+    SourceEmissionCache emissionCache;
+
     public LDENPropagationProcessData(ProfileBuilder builder, LDENConfig ldenConfig) {
         super(builder, ldenConfig.propagationProcessPathDataDay.freq_lvl);
         this.ldenConfig = ldenConfig;
@@ -70,10 +75,18 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         this.directionAttributes = directionAttributes;
     }
 
+    /**
+     * @param emissionCache Emission of the sources shared between the cells, null to compute the emission of each
+     *                      fetched source
+     */
+    public void setEmissionCache(SourceEmissionCache emissionCache) {
+        this.emissionCache = emissionCache;
+    }
+
     @Override
     public void addSource(Long pk, Geometry geom, SpatialResultSet rs) throws SQLException, IOException {
         super.addSource(pk, geom, rs);
-        double[][] res = computeLw(rs);
+        double[][] res = computeLw(pk, rs);
         if(ldenConfig.computeLDay || ldenConfig.computeLDEN) {
             wjSourcesD.add(res[0]);
         }
@@ -87,12 +100,12 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
 
     @Override
     public boolean isOmnidirectional(int srcIndex) {
-        return sourcesPk.size() > srcIndex && !sourceDirection.containsKey(sourcesPk.get(srcIndex));
+        return sourcesPk.size() > srcIndex && getSourceDirection(srcIndex) == null;
     }
 
     @Override
     public double[] getSourceAttenuation(int srcIndex, double[] frequencies, double phi, double theta) {
-        int directivityIdentifier = sourceDirection.get(sourcesPk.get(srcIndex));
+        int directivityIdentifier = getSourceDirection(srcIndex);
         if(directionAttributes.containsKey(directivityIdentifier)) {
             return directionAttributes.get(directivityIdentifier).getAttenuationArray(frequencies, phi, theta);
         } else {
@@ -103,7 +116,8 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
 
     @Override
     public double getSourceGs(int srcIndex){
-        return sourceGs.get(sourcesPk.get(srcIndex));
+        double gs = getSourceGsAttribute(srcIndex);
+        return Double.isNaN(gs) ? super.getSourceGs(srcIndex) : gs;
     }
 
     /**
@@ -113,6 +127,18 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
      * @return Emission spectrum in dB
      */
     public double[] getEmissionFromResultSet(ResultSet rs, String period, double slope) throws SQLException, IOException {
+        return getEmission(getRoadCnossosParameters(rs, period, slope));
+    }
+
+    /**
+     * Read the road traffic of a period, the emission can then be computed by another thread with
+     * {@link #getEmission(RoadCnossosParameters)}
+     * @param rs result set of source
+     * @param period D or E or N
+     * @param slope Gradient percentage of road from -12 % to 12 %
+     * @return Road traffic parameters
+     */
+    public RoadCnossosParameters getRoadCnossosParameters(ResultSet rs, String period, double slope) throws SQLException {
         if (sourceFields == null) {
             sourceFields = new HashMap<>();
             int fieldId = 1;
@@ -120,7 +146,6 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
                 sourceFields.put(fieldName.toUpperCase(), fieldId++);
             }
         }
-        double[] lvl = new double[ldenConfig.propagationProcessPathDataDay.freq_lvl.size()];
         // Set default values
         double tv = 0; // old format "total vehicles"
         double hv = 0; // old format "heavy vehicles"
@@ -143,75 +168,76 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         int way = 3; // default value 2-way road
 
         // Read fields
-        if(sourceFields.containsKey("LV_SPD_"+period)) {
-            lv_speed = rs.getDouble(sourceFields.get("LV_SPD_"+period));
+        RoadTrafficColumns columns = getRoadTrafficColumns(period);
+        if(columns.lvSpeed > 0) {
+            lv_speed = rs.getDouble(columns.lvSpeed);
         }
-        if(sourceFields.containsKey("MV_SPD_"+period)) {
-            mv_speed = rs.getDouble(sourceFields.get("MV_SPD_"+period));
+        if(columns.mvSpeed > 0) {
+            mv_speed = rs.getDouble(columns.mvSpeed);
         }
-        if(sourceFields.containsKey("HGV_SPD_"+period)) {
-            hgv_speed = rs.getDouble(sourceFields.get("HGV_SPD_"+period));
+        if(columns.hgvSpeed > 0) {
+            hgv_speed = rs.getDouble(columns.hgvSpeed);
         }
-        if(sourceFields.containsKey("WAV_SPD_"+period)) {
-            wav_speed = rs.getDouble(sourceFields.get("WAV_SPD_"+period));
+        if(columns.wavSpeed > 0) {
+            wav_speed = rs.getDouble(columns.wavSpeed);
         }
-        if(sourceFields.containsKey("WBV_SPD_"+period)) {
-            wbv_speed = rs.getDouble(sourceFields.get("WBV_SPD_"+period));
+        if(columns.wbvSpeed > 0) {
+            wbv_speed = rs.getDouble(columns.wbvSpeed);
         }
-        if(sourceFields.containsKey("LV_"+period)) {
-            lvPerHour = rs.getDouble(sourceFields.get("LV_"+period));
+        if(columns.lvPerHour > 0) {
+            lvPerHour = rs.getDouble(columns.lvPerHour);
         }
-        if(sourceFields.containsKey("MV_"+period)) {
-            mvPerHour = rs.getDouble(sourceFields.get("MV_"+period));
+        if(columns.mvPerHour > 0) {
+            mvPerHour = rs.getDouble(columns.mvPerHour);
         }
-        if(sourceFields.containsKey("HGV_"+period)) {
-            hgvPerHour = rs.getDouble(sourceFields.get("HGV_"+period));
+        if(columns.hgvPerHour > 0) {
+            hgvPerHour = rs.getDouble(columns.hgvPerHour);
         }
-        if(sourceFields.containsKey("WAV_"+period)) {
-            wavPerHour = rs.getDouble(sourceFields.get("WAV_"+period));
+        if(columns.wavPerHour > 0) {
+            wavPerHour = rs.getDouble(columns.wavPerHour);
         }
-        if(sourceFields.containsKey("WBV_"+period)) {
-            wbvPerHour = rs.getDouble(sourceFields.get("WBV_"+period));
+        if(columns.wbvPerHour > 0) {
+            wbvPerHour = rs.getDouble(columns.wbvPerHour);
         }
-        if(sourceFields.containsKey("PVMT")) {
-            roadSurface= rs.getString(sourceFields.get("PVMT"));
+        if(columns.roadSurface > 0) {
+            roadSurface= rs.getString(columns.roadSurface);
         }
-        if(sourceFields.containsKey("TEMP_"+period)) {
-            temperature = rs.getDouble(sourceFields.get("TEMP_"+period));
+        if(columns.temperature > 0) {
+            temperature = rs.getDouble(columns.temperature);
         }
-        if(sourceFields.containsKey("TS_STUD")) {
-            tsStud = rs.getDouble(sourceFields.get("TS_STUD"));
+        if(columns.tsStud > 0) {
+            tsStud = rs.getDouble(columns.tsStud);
         }
-        if(sourceFields.containsKey("PM_STUD")) {
-            pmStud = rs.getDouble(sourceFields.get("PM_STUD"));
+        if(columns.pmStud > 0) {
+            pmStud = rs.getDouble(columns.pmStud);
         }
-        if(sourceFields.containsKey("JUNC_DIST")) {
-            junctionDistance = rs.getDouble(sourceFields.get("JUNC_DIST"));
+        if(columns.junctionDistance > 0) {
+            junctionDistance = rs.getDouble(columns.junctionDistance);
         }
-        if(sourceFields.containsKey("JUNC_TYPE")) {
-            junctionType = rs.getInt(sourceFields.get("JUNC_TYPE"));
+        if(columns.junctionType > 0) {
+            junctionType = rs.getInt(columns.junctionType);
         }
 
-        if(sourceFields.containsKey("WAY")) {
-            way = rs.getInt(sourceFields.get("WAY"));
+        if(columns.way > 0) {
+            way = rs.getInt(columns.way);
         }
 
-        if(sourceFields.containsKey("SLOPE")) {
-            slope = rs.getDouble(sourceFields.get("SLOPE"));
+        if(columns.slope > 0) {
+            slope = rs.getDouble(columns.slope);
         }else{
             way = 3;
         }
 
 
         // old fields
-        if(sourceFields.containsKey("TV_"+period)) {
-            tv = rs.getDouble(sourceFields.get("TV_"+period));
+        if(columns.tv > 0) {
+            tv = rs.getDouble(columns.tv);
         }
-        if(sourceFields.containsKey("HV_"+period)) {
-            hv = rs.getDouble(sourceFields.get("HV_"+period));
+        if(columns.hv > 0) {
+            hv = rs.getDouble(columns.hv);
         }
-        if(sourceFields.containsKey("HV_SPD_"+period)) {
-            hgv_speed = rs.getDouble(sourceFields.get("HV_SPD_"+period));
+        if(columns.hvSpeed > 0) {
+            hgv_speed = rs.getDouble(columns.hvSpeed);
         }
 
         if(tv > 0) {
@@ -220,16 +246,94 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
         if(hv > 0) {
             hgvPerHour = hv;
         }
-        // Compute emission
+        RoadCnossosParameters rsParametersCnossos = new RoadCnossosParameters(lv_speed, mv_speed, hgv_speed, wav_speed,
+                wbv_speed,lvPerHour, mvPerHour, hgvPerHour, wavPerHour, wbvPerHour, 0, temperature,
+                roadSurface, tsStud, pmStud, junctionDistance, junctionType);
+        rsParametersCnossos.setSlopePercentage(slope);
+        rsParametersCnossos.setWay(way);
+        rsParametersCnossos.setFileVersion(ldenConfig.coefficientVersion);
+        return rsParametersCnossos;
+    }
+
+    /**
+     * @param period D or E or N
+     * @return Index of the traffic columns of the period in {@link #sourceFields}, resolved once per period
+     */
+    private RoadTrafficColumns getRoadTrafficColumns(String period) {
+        if(roadTrafficColumnsFields != sourceFields) {
+            roadTrafficColumns.clear();
+            roadTrafficColumnsFields = sourceFields;
+        }
+        RoadTrafficColumns columns = roadTrafficColumns.get(period);
+        if(columns == null) {
+            columns = new RoadTrafficColumns(sourceFields, period);
+            roadTrafficColumns.put(period, columns);
+        }
+        return columns;
+    }
+
+    /**
+     * Column index of the road traffic fields of a period, 0 if the field is not in the source table
+     */
+    private static final class RoadTrafficColumns {
+        final int lvSpeed;
+        final int mvSpeed;
+        final int hgvSpeed;
+        final int wavSpeed;
+        final int wbvSpeed;
+        final int lvPerHour;
+        final int mvPerHour;
+        final int hgvPerHour;
+        final int wavPerHour;
+        final int wbvPerHour;
+        final int roadSurface;
+        final int temperature;
+        final int tsStud;
+        final int pmStud;
+        final int junctionDistance;
+        final int junctionType;
+        final int way;
+        final int slope;
+        final int tv;
+        final int hv;
+        final int hvSpeed;
+
+        RoadTrafficColumns(Map<String, Integer> sourceFields, String period) {
+            lvSpeed = sourceFields.getOrDefault("LV_SPD_" + period, 0);
+            mvSpeed = sourceFields.getOrDefault("MV_SPD_" + period, 0);
+            hgvSpeed = sourceFields.getOrDefault("HGV_SPD_" + period, 0);
+            wavSpeed = sourceFields.getOrDefault("WAV_SPD_" + period, 0);
+            wbvSpeed = sourceFields.getOrDefault("WBV_SPD_" + period, 0);
+            lvPerHour = sourceFields.getOrDefault("LV_" + period, 0);
+            mvPerHour = sourceFields.getOrDefault("MV_" + period, 0);
+            hgvPerHour = sourceFields.getOrDefault("HGV_" + period, 0);
+            wavPerHour = sourceFields.getOrDefault("WAV_" + period, 0);
+            wbvPerHour = sourceFields.getOrDefault("WBV_" + period, 0);
+            roadSurface = sourceFields.getOrDefault("PVMT", 0);
+            temperature = sourceFields.getOrDefault("TEMP_" + period, 0);
+            tsStud = sourceFields.getOrDefault("TS_STUD", 0);
+            pmStud = sourceFields.getOrDefault("PM_STUD", 0);
+            junctionDistance = sourceFields.getOrDefault("JUNC_DIST", 0);
+            junctionType = sourceFields.getOrDefault("JUNC_TYPE", 0);
+            way = sourceFields.getOrDefault("WAY", 0);
+            slope = sourceFields.getOrDefault("SLOPE", 0);
+            tv = sourceFields.getOrDefault("TV_" + period, 0);
+            hv = sourceFields.getOrDefault("HV_" + period, 0);
+            hvSpeed = sourceFields.getOrDefault("HV_SPD_" + period, 0);
+        }
+    }
+
+    /**
+     * @param rsParametersCnossos Road traffic parameters
+     * @return Emission spectrum in dB
+     */
+    public double[] getEmission(RoadCnossosParameters rsParametersCnossos) throws IOException {
+        double[] lvl = new double[ldenConfig.propagationProcessPathDataDay.freq_lvl.size()];
+        // Compute emission, all the octave bands are evaluated at once
+        double[] spectrum = RoadCnossos.evaluateSpectrum(rsParametersCnossos);
         int idFreq = 0;
         for (int freq : ldenConfig.propagationProcessPathDataDay.freq_lvl) {
-            RoadCnossosParameters rsParametersCnossos = new RoadCnossosParameters(lv_speed, mv_speed, hgv_speed, wav_speed,
-                    wbv_speed,lvPerHour, mvPerHour, hgvPerHour, wavPerHour, wbvPerHour, freq, temperature,
-                    roadSurface, tsStud, pmStud, junctionDistance, junctionType);
-            rsParametersCnossos.setSlopePercentage(slope);
-            rsParametersCnossos.setWay(way);
-            rsParametersCnossos.setFileVersion(ldenConfig.coefficientVersion);
-            lvl[idFreq++] = RoadCnossos.evaluate(rsParametersCnossos);
+            lvl[idFreq++] = spectrum[RoadCnossos.getFrequencyIndex(freq)];
         }
         return lvl;
     }
@@ -266,33 +370,84 @@ public class LDENPropagationProcessData extends CnossosPropagationData {
                 }
             }
         } else if(ldenConfig.input_mode == LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW) {
-            // Extract road slope
-            double slope = 0;
-            try {
-                Geometry g = rs.getGeometry();
-                if(profileBuilder!=null && g != null && !g.isEmpty()) {
-                    Coordinate[] c = g.getCoordinates();
-                    if(c.length >= 2) {
-                        double z0 = profileBuilder.getZ(c[0]);
-                        double z1 = profileBuilder.getZ(c[1]);
-                        if(!Double.isNaN(z0) && !Double.isNaN(z1)) {
-                            slope = Utils.computeSlope(z0, z1, g.getLength());
-                        }
-                    }
+            double slope = getSlope(rs);
+            return computeTrafficFlowLw(rs, Double.isNaN(slope) ? 0 : slope);
+        }
+        return new double[][] {ld, le, ln};
+    }
+
+    /**
+     * Compute the emission of a source, the road traffic emission is read from the emission cache if the source
+     * has already been fetched by another cell. The emission is not cached if the topography of this cell does not
+     * cover the first segment of the road, so the cached emission does not depend on the order of the cells.
+     * @param pk Source primary key
+     * @param rs result set of source
+     * @return Day, evening and night emission spectrum in W
+     */
+    public double[][] computeLw(Long pk, SpatialResultSet rs) throws SQLException, IOException {
+        if(emissionCache == null || !emissionCache.isEnabled() || pk == null ||
+                ldenConfig.input_mode != LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW) {
+            return computeLw(rs);
+        }
+        double[][] res = emissionCache.get(pk);
+        if(res == null) {
+            double slope = getSlope(rs);
+            if(Double.isNaN(slope)) {
+                return computeTrafficFlowLw(rs, 0);
+            }
+            res = computeTrafficFlowLw(rs, slope);
+            emissionCache.put(pk, res);
+        }
+        return res;
+    }
+
+    /**
+     * @param rs result set of source
+     * @return Gradient percentage of the first segment of the road, NaN if the topography is not known
+     */
+    private double getSlope(SpatialResultSet rs) {
+        double slope = 0;
+        try {
+            Geometry g = rs.getGeometry();
+            if(profileBuilder!=null && g != null && !g.isEmpty()) {
+                Coordinate[] c = g.getCoordinates();
+                if(c.length >= 2) {
+                    double z0 = getZGround(c[0]);
+                    double z1 = getZGround(c[1]);
+                    slope = Double.isNaN(z0) || Double.isNaN(z1) ? Double.NaN :
+                            Utils.computeSlope(z0, z1, g.getLength());
                 }
-            } catch (SQLException ex) {
-                // ignore
             }
-            // Day
-            ld = dbaToW(getEmissionFromResultSet(rs, "D", slope));
+        } catch (SQLException ex) {
+            // ignore
+        }
+        return slope;
+    }
+
+    /**
+     * The building roofs are ignored as they depend on the buildings fetched by the computation cell
+     * @param c Location
+     * @return Topographic height, 0 without digital elevation model, NaN if the topography does not cover the location
+     */
+    private double getZGround(Coordinate c) {
+        if(!profileBuilder.hasDem()) {
+            return 0;
+        }
+        ProfileBuilder.CutPoint cut = new ProfileBuilder.CutPoint(c, ProfileBuilder.IntersectionType.TOPOGRAPHY, -1);
+        profileBuilder.getZGround(cut);
+        return cut.getzGround();
+    }
 
-            // Evening
-            le = dbaToW(getEmissionFromResultSet(rs, "E", slope));
+    private double[][] computeTrafficFlowLw(SpatialResultSet rs, double slope) throws SQLException, IOException {
+        // Day
+        double[] ld = dbaToW(getEmissionFromResultSet(rs, "D", slope));
 
-            // Night
-            ln = dbaToW(getEmissionFromResultSet(rs, "N", slope));
+        // Evening
+        double[] le = dbaToW(getEmissionFromResultSet(rs, "E", slope));
+
+        // Night
+        double[] ln = dbaToW(getEmissionFromResultSet(rs, "N", slope));
 
-        }
         return new double[][] {ld, le, ln};
     }
 
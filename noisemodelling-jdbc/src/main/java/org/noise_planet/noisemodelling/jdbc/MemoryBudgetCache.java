@@ -0,0 +1,129 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Least recently used cache of the data shared between the computation cells. The least recently used values are
+ * evicted when the estimated memory of the cached values exceeds the memory budget.
+ * @param <K> Key
+ * @param <V> Value
+ */
+class MemoryBudgetCache<K, V> {
+    private final Map<K, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ToLongFunction<V> memoryEstimator;
+    private long memoryBudget;
+    private long usedMemory = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param memoryBudget Maximum estimated memory of the cached values in bytes, 0 to disable the cache
+     * @param memoryEstimator Estimated memory of a value in bytes
+     */
+    MemoryBudgetCache(long memoryBudget, ToLongFunction<V> memoryEstimator) {
+        this.memoryBudget = memoryBudget;
+        this.memoryEstimator = memoryEstimator;
+    }
+
+    /**
+     * @return True if the cache can keep values
+     */
+    boolean isEnabled() {
+        return memoryBudget > 0;
+    }
+
+    long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @param memoryBudget Maximum estimated memory of the cached values in bytes, 0 to disable the cache
+     */
+    synchronized void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        evict();
+    }
+
+    /**
+     * @param key Key
+     * @return Cached value or null if not in cache
+     */
+    synchronized V get(K key) {
+        V value = entries.get(key);
+        if(value != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return value;
+    }
+
+    /**
+     * Add a value in the cache, then evict the least recently used values if the memory budget is exceeded
+     * @param key Key
+     * @param value Value
+     */
+    synchronized void put(K key, V value) {
+        if(!isEnabled()) {
+            return;
+        }
+        V old = entries.put(key, value);
+        if(old != null) {
+            usedMemory -= memoryEstimator.applyAsLong(old);
+        }
+        usedMemory += memoryEstimator.applyAsLong(value);
+        evict();
+    }
+
+    private void evict() {
+        Iterator<V> it = entries.values().iterator();
+        while(usedMemory > memoryBudget && it.hasNext()) {
+            usedMemory -= memoryEstimator.applyAsLong(it.next());
+            it.remove();
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        usedMemory = 0;
+    }
+
+    /**
+     * @return Estimated memory of the cached values in bytes
+     */
+    synchronized long getUsedMemory() {
+        return usedMemory;
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Number of values found in the cache
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of values not found in the cache
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+}
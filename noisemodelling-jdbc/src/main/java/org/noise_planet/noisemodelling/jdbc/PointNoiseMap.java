@@ -23,6 +23,7 @@ import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
 import org.noise_planet.noisemodelling.pathfinder.ComputeCnossosRays;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.utils.JVMMemoryMetric;
 import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
@@ -34,7 +35,12 @@ import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Compute noise propagation at specified receiver points.
@@ -47,6 +53,24 @@ public class PointNoiseMap extends JdbcNoiseMap {
     private Logger logger = LoggerFactory.getLogger(PointNoiseMap.class);
     private int threadCount = 0;
     private ProfilerThread profilerThread;
+    /** Number of cells prepared in advance while the current cell is computed */
+    private int cellPrefetchCount = 1;
+    /** Do not prepare cells in advance if the used heap is above this ratio of the maximum heap size */
+    private double prefetchMaximumMemoryRatio = 0.7;
+    /** Interval in milliseconds of the cancellation check of the prefetch thread while the queue is full */
+    private static final long CANCEL_CHECK_INTERVAL = 100;
+    /** Receivers already processed by a previous cell, a receiver can be found in multiple cells */
+    private final Set<Long> processedReceivers = ConcurrentHashMap.newKeySet();
+    /** Minimal side length of adaptive cells, relative to the maximum propagation distance */
+    static final double ADAPTIVE_MINIMAL_CELL_RATIO = 0.5;
+    /** Maximum subdivision level of adaptive cells */
+    static final int ADAPTIVE_MAXIMUM_LEVEL = 10;
+    /** Compute the cells size from the density of receivers, sources and buildings */
+    private boolean adaptiveCellSize = false;
+    /** Maximum number of receivers x sources pairs of an adaptive cell */
+    private long cellMaximumWork = 100_000_000L;
+    /** Maximum estimated memory of an adaptive cell in bytes, 0 for a quarter of the maximum heap size */
+    private long cellMaximumMemory = 0;
 
     public PointNoiseMap(String buildingsTableName, String sourcesTableName, String receiverTableName) {
         super(buildingsTableName, sourcesTableName);
@@ -87,6 +111,117 @@ public class PointNoiseMap extends JdbcNoiseMap {
         this.threadCount = threadCount;
     }
 
+    /**
+     * @return Number of cells prepared in advance while the current cell is computed
+     */
+    public int getCellPrefetchCount() {
+        return cellPrefetchCount;
+    }
+
+    /**
+     * While the propagation of a cell is computed by {@link #run(Connection, ProgressVisitor, CellResultListener)},
+     * the buildings, topography, sources and receivers of the next cells are fetched by another thread.
+     * @param cellPrefetchCount Number of cells prepared in advance, 0 to prepare cells in the calling thread
+     */
+    public void setCellPrefetchCount(int cellPrefetchCount) {
+        this.cellPrefetchCount = cellPrefetchCount;
+    }
+
+    /**
+     * @return Maximum ratio of used heap before waiting for the end of the current cell to prepare the next one
+     */
+    public double getPrefetchMaximumMemoryRatio() {
+        return prefetchMaximumMemoryRatio;
+    }
+
+    /**
+     * @param prefetchMaximumMemoryRatio Maximum ratio [0-1] of used heap before waiting for the end of the current
+     *                                   cell to prepare the next one
+     */
+    public void setPrefetchMaximumMemoryRatio(double prefetchMaximumMemoryRatio) {
+        this.prefetchMaximumMemoryRatio = prefetchMaximumMemoryRatio;
+    }
+
+    public boolean isAdaptiveCellSize() {
+        return adaptiveCellSize;
+    }
+
+    /**
+     * If enabled, {@link #searchPopulatedCells(Connection)} split the computation area with a quadtree. Cells are
+     * split while the number of receivers x sources pairs or the estimated memory of the cell is greater than
+     * {@link #getCellMaximumWork()} or {@link #getCellMaximumMemory()}. Dense areas are computed with small cells and
+     * sparse areas with large cells. The returned {@link CellIndex} have a size greater than 1 for the large cells,
+     * use {@link #getCellEnvelope(CellIndex)} to get the envelope of a cell.
+     * @param adaptiveCellSize True to compute the cells size from the density of receivers, sources and buildings
+     */
+    public void setAdaptiveCellSize(boolean adaptiveCellSize) {
+        this.adaptiveCellSize = adaptiveCellSize;
+    }
+
+    /**
+     * @return Maximum number of receivers x sources pairs of an adaptive cell
+     */
+    public long getCellMaximumWork() {
+        return cellMaximumWork;
+    }
+
+    /**
+     * @param cellMaximumWork Maximum number of receivers x sources pairs of an adaptive cell
+     */
+    public void setCellMaximumWork(long cellMaximumWork) {
+        this.cellMaximumWork = cellMaximumWork;
+    }
+
+    /**
+     * @return Maximum estimated memory of an adaptive cell in bytes
+     */
+    public long getCellMaximumMemory() {
+        return cellMaximumMemory > 0 ? cellMaximumMemory : Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * @param cellMaximumMemory Maximum estimated memory of an adaptive cell in bytes, 0 for a quarter of the maximum
+     *                          heap size
+     */
+    public void setCellMaximumMemory(long cellMaximumMemory) {
+        this.cellMaximumMemory = cellMaximumMemory;
+    }
+
+    /**
+     * @param cellIndex Cell index returned by {@link #searchPopulatedCells(Connection)}
+     * @return Envelope of the cell
+     */
+    public Envelope getCellEnvelope(CellIndex cellIndex) {
+        double cellWidth = getCellWidth();
+        double cellHeight = getCellHeight();
+        return new Envelope(mainEnvelope.getMinX() + cellIndex.getLatitudeIndex() * cellWidth,
+                mainEnvelope.getMinX() + (cellIndex.getLatitudeIndex() + cellIndex.getSize()) * cellWidth,
+                mainEnvelope.getMinY() + cellIndex.getLongitudeIndex() * cellHeight,
+                mainEnvelope.getMinY() + (cellIndex.getLongitudeIndex() + cellIndex.getSize()) * cellHeight);
+    }
+
+    /**
+     * @return Primary keys of the receivers already fetched by {@link #prepareCell(Connection, int, int, ProgressVisitor)}
+     */
+    public Set<Long> getProcessedReceivers() {
+        return processedReceivers;
+    }
+
+    /**
+     * Initialisation of data structures needed for sound propagation.
+     * Receivers already fetched by a previous cell are skipped.
+     * @param connection JDBC Connection
+     * @param cellI Cell I [0-{@link #getGridDim()}]
+     * @param cellJ Cell J [0-{@link #getGridDim()}]
+     * @param progression Progression info
+     * @return Data input for cell evaluation
+     * @throws SQLException
+     */
+    public CnossosPropagationData prepareCell(Connection connection, int cellI, int cellJ,
+                                              ProgressVisitor progression) throws SQLException, IOException {
+        return prepareCell(connection, cellI, cellJ, progression, processedReceivers);
+    }
+
     /**
      * Initialisation of data structures needed for sound propagation.
      * @param connection JDBC Connection
@@ -98,13 +233,40 @@ public class PointNoiseMap extends JdbcNoiseMap {
      */
     public CnossosPropagationData prepareCell(Connection connection,int cellI, int cellJ,
                                               ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
+        return prepareCell(connection, new CellIndex(cellJ, cellI), progression, skipReceivers);
+    }
+
+    /**
+     * Initialisation of data structures needed for sound propagation.
+     * Receivers already fetched by a previous cell are skipped.
+     * @param connection JDBC Connection
+     * @param cellIndex Cell index returned by {@link #searchPopulatedCells(Connection)}
+     * @param progression Progression info
+     * @return Data input for cell evaluation
+     * @throws SQLException
+     */
+    public CnossosPropagationData prepareCell(Connection connection, CellIndex cellIndex,
+                                              ProgressVisitor progression) throws SQLException, IOException {
+        return prepareCell(connection, cellIndex, progression, processedReceivers);
+    }
+
+    /**
+     * Initialisation of data structures needed for sound propagation.
+     * @param connection JDBC Connection
+     * @param cellIndex Cell index returned by {@link #searchPopulatedCells(Connection)}
+     * @param progression Progression info
+     * @param skipReceivers Receivers to skip, fetched receivers are added to this set
+     * @return Data input for cell evaluation
+     * @throws SQLException
+     */
+    public CnossosPropagationData prepareCell(Connection connection, CellIndex cellIndex,
+                                              ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
         ProfileBuilder builder = new ProfileBuilder();
-        int ij = cellI * gridDim + cellJ + 1;
+        int ij = cellIndex.getLatitudeIndex() * gridDim + cellIndex.getLongitudeIndex() + 1;
         if(verbose) {
             logger.info("Begin processing of cell " + ij + " / " + gridDim * gridDim);
         }
-        Envelope cellEnvelope = getCellEnv(mainEnvelope, cellI,
-                cellJ, getCellWidth(), getCellHeight());
+        Envelope cellEnvelope = getCellEnvelope(cellIndex);
 
 
         Envelope expandedCellEnvelop = new Envelope(cellEnvelope);
@@ -113,13 +275,8 @@ public class PointNoiseMap extends JdbcNoiseMap {
         // //////////////////////////////////////////////////////
         // feed freeFieldFinder for fast intersection query
         // optimization
-        // Fetch buildings in extendedEnvelope
-        fetchCellBuildings(connection, expandedCellEnvelop, builder);
-        //if we have topographic points data
-        fetchCellDem(connection, expandedCellEnvelop, builder);
-
-        // Fetch soil areas
-        fetchCellSoilAreas(connection, expandedCellEnvelop, builder);
+        // Fetch buildings, topographic points and soil areas in extendedEnvelope
+        fetchCellProfileData(connection, expandedCellEnvelop, builder);
 
         builder.finishFeeding();
 
@@ -133,6 +290,7 @@ public class PointNoiseMap extends JdbcNoiseMap {
         propagationProcessData.reflexionOrder = soundReflectionOrder;
         propagationProcessData.setBodyBarrier(bodyBarrier);
         propagationProcessData.maximumError = getMaximumError();
+        propagationProcessData.sourceAggregationError = getSourceAggregationError();
         propagationProcessData.noiseFloor = getNoiseFloor();
         propagationProcessData.maxRefDist = maximumReflectionDistance;
         propagationProcessData.maxSrcDist = maximumPropagationDistance;
@@ -215,6 +373,9 @@ public class PointNoiseMap extends JdbcNoiseMap {
             throw new SQLException("The table "+receiverTableName+" does not contain a Geometry field, then the extent " +
                     "cannot be computed");
         }
+        if(adaptiveCellSize) {
+            return searchAdaptiveCells(connection, geometryFields.get(0));
+        }
         logger.info("Collect all receivers in order to localize populated cells");
         geometryField = geometryFields.get(0);
         ResultSet rs = connection.createStatement().executeQuery("SELECT " + geometryField + " FROM " + receiverTableName);
@@ -245,6 +406,86 @@ public class PointNoiseMap extends JdbcNoiseMap {
         return cellIndices;
     }
 
+    /**
+     * Split the computation area with a quadtree according to the density of receivers, sources and buildings.
+     * The grid dimension is set to the finest level of the quadtree.
+     * @param connection JDBC Connection
+     * @param receiverGeometryField Geometry field of the receivers table
+     * @return Cell index with number of receivers
+     * @throws SQLException
+     */
+    private Map<CellIndex, Integer> searchAdaptiveCells(Connection connection, String receiverGeometryField)
+            throws SQLException {
+        double greatestSideLength = mainEnvelope.maxExtent();
+        int level = 0;
+        while(level < ADAPTIVE_MAXIMUM_LEVEL && greatestSideLength / Math.pow(2, level + 1) >=
+                maximumPropagationDistance * ADAPTIVE_MINIMAL_CELL_RATIO) {
+            level++;
+        }
+        gridDim = (int) Math.pow(2, level);
+        QuadTreeCellPartitioner partitioner = new QuadTreeCellPartitioner(level, getCellWidth(), getCellHeight(),
+                maximumPropagationDistance);
+        logger.info("Collect receivers, sources and buildings in order to compute the size of the cells");
+        DBTypes dbTypes = DBUtils.getDBType(connection);
+        try(Statement st = connection.createStatement()) {
+            try (SpatialResultSet rs = st.executeQuery("SELECT " + TableLocation.quoteIdentifier(receiverGeometryField,
+                    dbTypes) + " FROM " + receiverTableName).unwrap(SpatialResultSet.class)) {
+                while (rs.next()) {
+                    Geometry geometry = rs.getGeometry();
+                    if (geometry != null && !geometry.isEmpty()) {
+                        Coordinate centre = geometry.getEnvelopeInternal().centre();
+                        partitioner.addReceiver(getFineCellI(centre.x), getFineCellJ(centre.y));
+                    }
+                }
+            }
+            if(!sourcesTableName.isEmpty()) {
+                String sourceGeometryField = GeometryTableUtilities.getGeometryColumnNames(connection,
+                        TableLocation.parse(sourcesTableName, dbTypes)).get(0);
+                try (SpatialResultSet rs = st.executeQuery("SELECT " + TableLocation.quoteIdentifier(
+                        sourceGeometryField, dbTypes) + " FROM " + sourcesTableName).unwrap(SpatialResultSet.class)) {
+                    while (rs.next()) {
+                        Geometry geometry = rs.getGeometry();
+                        if (geometry != null && !geometry.isEmpty()) {
+                            Coordinate centre = geometry.getEnvelopeInternal().centre();
+                            partitioner.addSource(getFineCellI(centre.x), getFineCellJ(centre.y));
+                        }
+                    }
+                }
+            }
+            if(!buildingsTableName.isEmpty()) {
+                String buildingGeometryField = GeometryTableUtilities.getGeometryColumnNames(connection,
+                        TableLocation.parse(buildingsTableName, dbTypes)).get(0);
+                try (SpatialResultSet rs = st.executeQuery("SELECT " + TableLocation.quoteIdentifier(
+                        buildingGeometryField, dbTypes) + " FROM " + buildingsTableName).unwrap(SpatialResultSet.class)) {
+                    while (rs.next()) {
+                        Geometry geometry = rs.getGeometry();
+                        if (geometry != null && !geometry.isEmpty()) {
+                            Coordinate centre = geometry.getEnvelopeInternal().centre();
+                            partitioner.addBuilding(getFineCellI(centre.x), getFineCellJ(centre.y));
+                        }
+                    }
+                }
+            }
+        }
+        Map<CellIndex, Integer> cellIndices = new HashMap<>();
+        for(QuadTreeCellPartitioner.Block block : partitioner.partition(cellMaximumWork, getCellMaximumMemory())) {
+            cellIndices.put(new CellIndex(block.j, block.i, block.size), (int) block.receiverCount);
+        }
+        if(verbose) {
+            logger.info(String.format(Locale.ROOT, "The computation area is split into %d cells on a %d x %d grid",
+                    cellIndices.size(), gridDim, gridDim));
+        }
+        return cellIndices;
+    }
+
+    private int getFineCellI(double x) {
+        return (int) Math.floor((x - mainEnvelope.getMinX()) / getCellWidth());
+    }
+
+    private int getFineCellJ(double y) {
+        return (int) Math.floor((y - mainEnvelope.getMinY()) / getCellHeight());
+    }
+
     /**
      * Launch sound propagation
      * @param connection
@@ -256,8 +497,42 @@ public class PointNoiseMap extends JdbcNoiseMap {
      */
     public IComputeRaysOut evaluateCell(Connection connection, int cellI, int cellJ,
                                         ProgressVisitor progression, Set<Long> skipReceivers) throws SQLException, IOException {
-        CnossosPropagationData threadData = prepareCell(connection, cellI, cellJ, progression, skipReceivers);
+        return evaluateCell(prepareCell(connection, cellI, cellJ, progression, skipReceivers));
+    }
+
+    /**
+     * Launch sound propagation, receivers already processed by a previous cell are skipped
+     * @param connection
+     * @param cellI
+     * @param cellJ
+     * @param progression
+     * @return
+     * @throws SQLException
+     */
+    public IComputeRaysOut evaluateCell(Connection connection, int cellI, int cellJ,
+                                        ProgressVisitor progression) throws SQLException, IOException {
+        return evaluateCell(prepareCell(connection, cellI, cellJ, progression));
+    }
+
+    /**
+     * Launch sound propagation, receivers already processed by a previous cell are skipped
+     * @param connection JDBC Connection
+     * @param cellIndex Cell index returned by {@link #searchPopulatedCells(Connection)}
+     * @param progression Progression info
+     * @return Propagation output
+     * @throws SQLException
+     */
+    public IComputeRaysOut evaluateCell(Connection connection, CellIndex cellIndex,
+                                        ProgressVisitor progression) throws SQLException, IOException {
+        return evaluateCell(prepareCell(connection, cellIndex, progression));
+    }
 
+    /**
+     * Launch sound propagation on a cell
+     * @param threadData Cell data given by {@link #prepareCell(Connection, int, int, ProgressVisitor)}
+     * @return Propagation output
+     */
+    public IComputeRaysOut evaluateCell(CnossosPropagationData threadData) {
         if(verbose) {
             logger.info(String.format("This computation area contains %d receivers %d sound sources and %d buildings",
                     threadData.receivers.size(), threadData.sourceGeometries.size(),
@@ -294,9 +569,208 @@ public class PointNoiseMap extends JdbcNoiseMap {
         return computeRaysOut;
     }
 
+    /**
+     * Compute all the cells containing receivers. The next cells are prepared by another thread while the
+     * propagation of the current cell is computed.
+     * @param connection JDBC Connection
+     * @param progression Progression info
+     * @param cellResultListener Called after the computation of each cell, may be null
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void run(Connection connection, ProgressVisitor progression,
+                    CellResultListener cellResultListener) throws SQLException, IOException {
+        Map<CellIndex, Integer> cells = searchPopulatedCells(connection);
+        ProgressVisitor cellsProgression = progression.subProcess(cells.size());
+        run(connection, new ArrayList<>(new TreeSet<>(cells.keySet())), cellsProgression, cellResultListener);
+    }
+
+    /**
+     * Compute the provided cells. The next cells are prepared by another thread while the propagation of the current
+     * cell is computed.
+     * @param connection JDBC Connection
+     * @param cells Cells to compute, in this order
+     * @param progression Progression info, one step per cell
+     * @param cellResultListener Called after the computation of each cell, may be null
+     * @throws SQLException
+     * @throws IOException
+     */
+    public void run(Connection connection, List<CellIndex> cells, ProgressVisitor progression,
+                    CellResultListener cellResultListener) throws SQLException, IOException {
+        processedReceivers.clear();
+        if(cellPrefetchCount <= 0) {
+            for(CellIndex cellIndex : cells) {
+                if(progression.isCanceled()) {
+                    break;
+                }
+                CnossosPropagationData cellData = prepareCell(connection, cellIndex, progression);
+                onCellComputed(cellIndex, evaluateCell(cellData), cellResultListener);
+            }
+            return;
+        }
+        BlockingQueue<PreparedCell> preparedCells = new ArrayBlockingQueue<>(cellPrefetchCount);
+        CellPrefetch cellPrefetch = new CellPrefetch(connection, cells, progression, preparedCells);
+        Thread prefetchThread = new Thread(cellPrefetch, "PointNoiseMap cell prefetch");
+        prefetchThread.start();
+        try {
+            while (true) {
+                PreparedCell preparedCell = preparedCells.take();
+                synchronized (preparedCells) {
+                    preparedCells.notifyAll();
+                }
+                if(preparedCell.sqlException != null) {
+                    throw preparedCell.sqlException;
+                } else if(preparedCell.ioException != null) {
+                    throw preparedCell.ioException;
+                } else if(preparedCell.runtimeException != null) {
+                    throw preparedCell.runtimeException;
+                } else if(preparedCell.cellData == null) {
+                    // All cells have been computed
+                    break;
+                }
+                onCellComputed(preparedCell.cellIndex, evaluateCell(preparedCell.cellData), cellResultListener);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the next cell", ex);
+        } finally {
+            // Do not interrupt the prefetch thread, it may be in a call on the shared connection
+            cellPrefetch.cancel();
+            try {
+                prefetchThread.join();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void onCellComputed(CellIndex cellIndex, IComputeRaysOut computeRaysOut,
+                                CellResultListener cellResultListener) throws SQLException, IOException {
+        if(cellResultListener != null) {
+            cellResultListener.onCellComputed(cellIndex, computeRaysOut);
+        }
+    }
+
+    /**
+     * Fetch the cells data in advance
+     */
+    private final class CellPrefetch implements Runnable {
+        private final Connection connection;
+        private final List<CellIndex> cells;
+        private final ProgressVisitor progression;
+        private final BlockingQueue<PreparedCell> preparedCells;
+        private final JVMMemoryMetric memoryMetric;
+        private volatile boolean canceled = false;
+
+        public CellPrefetch(Connection connection, List<CellIndex> cells, ProgressVisitor progression,
+                            BlockingQueue<PreparedCell> preparedCells) {
+            this.connection = connection;
+            this.cells = cells;
+            this.progression = progression;
+            this.preparedCells = preparedCells;
+            if(profilerThread != null && profilerThread.getMetric(JVMMemoryMetric.class) != null) {
+                memoryMetric = profilerThread.getMetric(JVMMemoryMetric.class);
+            } else {
+                memoryMetric = new JVMMemoryMetric();
+            }
+        }
+
+        /**
+         * Stop preparing cells once the current call to prepareCell is done
+         */
+        void cancel() {
+            canceled = true;
+            synchronized (preparedCells) {
+                preparedCells.notifyAll();
+            }
+        }
+
+        /**
+         * Add a cell to the queue, wait while the queue is full
+         * @return False if the prefetch has been canceled
+         */
+        private boolean offer(PreparedCell preparedCell) throws InterruptedException {
+            while (!canceled) {
+                if(preparedCells.offer(preparedCell, CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Wait while there is already a prepared cell and the heap usage is too high
+         */
+        private void waitForMemory() throws InterruptedException {
+            synchronized (preparedCells) {
+                boolean logged = false;
+                while (!canceled && !preparedCells.isEmpty() &&
+                        memoryMetric.getUsedMemoryRatio() > prefetchMaximumMemoryRatio) {
+                    if(verbose && !logged) {
+                        logger.info(String.format(Locale.ROOT, "Heap usage is %.0f %%, wait for the end of the " +
+                                "current cell before preparing the next one", memoryMetric.getUsedMemoryRatio() * 100));
+                        logged = true;
+                    }
+                    preparedCells.wait();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            PreparedCell lastCell = new PreparedCell(null, null);
+            try {
+                for (CellIndex cellIndex : cells) {
+                    if (canceled || progression.isCanceled()) {
+                        break;
+                    }
+                    waitForMemory();
+                    if (canceled) {
+                        break;
+                    }
+                    CnossosPropagationData cellData = prepareCell(connection, cellIndex, progression);
+                    if (!offer(new PreparedCell(cellIndex, cellData))) {
+                        return;
+                    }
+                }
+            } catch (SQLException ex) {
+                lastCell.sqlException = ex;
+            } catch (IOException ex) {
+                lastCell.ioException = ex;
+            } catch (RuntimeException ex) {
+                lastCell.runtimeException = ex;
+            } catch (InterruptedException ex) {
+                // The computation has been stopped
+                return;
+            }
+            try {
+                offer(lastCell);
+            } catch (InterruptedException ex) {
+                // The computation has been stopped
+            }
+        }
+    }
+
+    /**
+     * Cell data ready to be computed, or last element of the queue if cellData is null
+     */
+    private static final class PreparedCell {
+        private final CellIndex cellIndex;
+        private final CnossosPropagationData cellData;
+        private SQLException sqlException;
+        private IOException ioException;
+        private RuntimeException runtimeException;
+
+        public PreparedCell(CellIndex cellIndex, CnossosPropagationData cellData) {
+            this.cellIndex = cellIndex;
+            this.cellData = cellData;
+        }
+    }
+
     @Override
     public void initialize(Connection connection, ProgressVisitor progression) throws SQLException {
         super.initialize(connection, progression);
+        processedReceivers.clear();
         if(propagationProcessDataFactory != null) {
             propagationProcessDataFactory.initialize(connection, this);
         }
@@ -308,6 +782,15 @@ public class PointNoiseMap extends JdbcNoiseMap {
         void initialize(Connection connection, PointNoiseMap pointNoiseMap) throws SQLException;
     }
 
+    public interface CellResultListener {
+        /**
+         * Called after the propagation of a cell
+         * @param cellIndex Cell index
+         * @param computeRaysOut Propagation output of the cell
+         */
+        void onCellComputed(CellIndex cellIndex, IComputeRaysOut computeRaysOut) throws SQLException, IOException;
+    }
+
     public interface IComputeRaysOutFactory {
         IComputeRaysOut create(CnossosPropagationData threadData, PropagationProcessPathData pathDataDay,
                                PropagationProcessPathData pathDataEvening, PropagationProcessPathData pathDataNight);
@@ -319,17 +802,40 @@ public class PointNoiseMap extends JdbcNoiseMap {
     public static class CellIndex implements Comparable<CellIndex> {
         int longitudeIndex;
         int latitudeIndex;
+        /** Number of grid cells on each side of this cell */
+        int size = 1;
 
         public CellIndex(int longitudeIndex, int latitudeIndex) {
             this.longitudeIndex = longitudeIndex;
             this.latitudeIndex = latitudeIndex;
         }
 
+        /**
+         * @param longitudeIndex Lower grid cell index
+         * @param latitudeIndex Lower grid cell index
+         * @param size Number of grid cells on each side of this cell
+         */
+        public CellIndex(int longitudeIndex, int latitudeIndex, int size) {
+            this.longitudeIndex = longitudeIndex;
+            this.latitudeIndex = latitudeIndex;
+            this.size = size;
+        }
+
         @Override
         public String toString() {
+            if(size > 1) {
+                return String.format("CellIndex(%d, %d, %d);", longitudeIndex, latitudeIndex, size);
+            }
             return String.format("CellIndex(%d, %d);", longitudeIndex, latitudeIndex);
         }
 
+        /**
+         * @return Number of grid cells on each side of this cell
+         */
+        public int getSize() {
+            return size;
+        }
+
         public int getLongitudeIndex() {
             return longitudeIndex;
         }
@@ -343,21 +849,26 @@ public class PointNoiseMap extends JdbcNoiseMap {
             if (this == o) return true;
             if (o == null || getClass() != o.getClass()) return false;
             CellIndex cellIndex = (CellIndex) o;
-            return longitudeIndex == cellIndex.longitudeIndex && latitudeIndex == cellIndex.latitudeIndex;
+            return longitudeIndex == cellIndex.longitudeIndex && latitudeIndex == cellIndex.latitudeIndex &&
+                    size == cellIndex.size;
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(longitudeIndex, latitudeIndex);
+            return Objects.hash(longitudeIndex, latitudeIndex, size);
         }
 
         @Override
         public int compareTo(CellIndex o) {
             int comp = Integer.compare(latitudeIndex, o.latitudeIndex);
+            if(comp != 0) {
+                return comp;
+            }
+            comp = Integer.compare(longitudeIndex, o.longitudeIndex);
             if(comp != 0) {
                 return comp;
             } else {
-                return Integer.compare(longitudeIndex, o.longitudeIndex);
+                return Integer.compare(size, o.size);
             }
         }
     }
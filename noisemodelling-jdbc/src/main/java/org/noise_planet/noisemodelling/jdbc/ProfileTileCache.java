@@ -0,0 +1,231 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Buildings, topographic points and ground areas fetched from the database, stored by square tile.
+ * Neighbour computation cells share most of their expanded envelope, so the tiles are fetched once and reused
+ * to feed the ProfileBuilder of each cell. The least recently used tiles are evicted when the estimated memory of
+ * the cached tiles exceeds the memory budget.
+ * The tiles are aligned on the coordinates origin.
+ */
+public class ProfileTileCache {
+    // Estimated memory of cached objects, in bytes
+    static final int COORDINATE_MEMORY = 48;
+    static final int OBJECT_MEMORY = 96;
+
+    private final MemoryBudgetCache<Long, Tile> tiles;
+    private double tileSize;
+
+    /**
+     * @param memoryBudget Maximum estimated memory of the cached tiles in bytes, 0 to disable the cache
+     * @param tileSize Side length of a tile in meters
+     */
+    public ProfileTileCache(long memoryBudget, double tileSize) {
+        this.tiles = new MemoryBudgetCache<>(memoryBudget, Tile::getMemory);
+        this.tileSize = tileSize;
+    }
+
+    /**
+     * @return True if the cache can keep tiles
+     */
+    public boolean isEnabled() {
+        return tiles.isEnabled();
+    }
+
+    public long getMemoryBudget() {
+        return tiles.getMemoryBudget();
+    }
+
+    /**
+     * @param memoryBudget Maximum estimated memory of the cached tiles in bytes, 0 to disable the cache
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        tiles.setMemoryBudget(memoryBudget);
+    }
+
+    public double getTileSize() {
+        return tileSize;
+    }
+
+    /**
+     * Set the side length of the tiles, all cached tiles are removed
+     * @param tileSize Side length of a tile in meters
+     */
+    public synchronized void setTileSize(double tileSize) {
+        if(Double.compare(tileSize, this.tileSize) != 0) {
+            clear();
+            this.tileSize = tileSize;
+        }
+    }
+
+    /**
+     * @param coordinate Coordinate value
+     * @return Index of the tile containing the coordinate value
+     */
+    public int getTileIndex(double coordinate) {
+        return (int) Math.floor(coordinate / tileSize);
+    }
+
+    /**
+     * @param envelope Area
+     * @return Keys of the tiles intersecting the area
+     */
+    public List<Long> getTileKeys(Envelope envelope) {
+        int minI = getTileIndex(envelope.getMinX());
+        int maxI = getTileIndex(envelope.getMaxX());
+        int minJ = getTileIndex(envelope.getMinY());
+        int maxJ = getTileIndex(envelope.getMaxY());
+        List<Long> keys = new ArrayList<>((maxI - minI + 1) * (maxJ - minJ + 1));
+        for(int i = minI; i <= maxI; i++) {
+            for(int j = minJ; j <= maxJ; j++) {
+                keys.add(getTileKey(i, j));
+            }
+        }
+        return keys;
+    }
+
+    public static long getTileKey(int i, int j) {
+        return ((long) i << 32) | (j & 0xFFFFFFFFL);
+    }
+
+    /**
+     * @param key Tile key
+     * @return Envelope of the tile
+     */
+    public Envelope getTileEnvelope(long key) {
+        int i = (int) (key >> 32);
+        int j = (int) key;
+        return new Envelope(i * tileSize, (i + 1) * tileSize, j * tileSize, (j + 1) * tileSize);
+    }
+
+    /**
+     * @param key Tile key
+     * @return Cached tile or null if not in cache
+     */
+    public Tile get(long key) {
+        return tiles.get(key);
+    }
+
+    /**
+     * Add a tile in the cache, then evict the least recently used tiles if the memory budget is exceeded
+     * @param key Tile key
+     * @param tile Tile content
+     */
+    public void put(long key, Tile tile) {
+        tiles.put(key, tile);
+    }
+
+    public void clear() {
+        tiles.clear();
+    }
+
+    /**
+     * @return Estimated memory of the cached tiles in bytes
+     */
+    public long getUsedMemory() {
+        return tiles.getUsedMemory();
+    }
+
+    public int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * @return Number of tiles found in the cache
+     */
+    public long getTileHits() {
+        return tiles.getHits();
+    }
+
+    /**
+     * @return Number of tiles fetched from the database
+     */
+    public long getTileMisses() {
+        return tiles.getMisses();
+    }
+
+    /**
+     * Content of a tile. Buildings and ground areas are stored as fetched, they must be clipped and copied
+     * before feeding a ProfileBuilder.
+     */
+    public static class Tile {
+        /** Buildings intersecting the tile */
+        public final List<BuildingRow> buildings = new ArrayList<>();
+        /** Topographic points located in the tile */
+        public final List<Coordinate> topographicPoints = new ArrayList<>();
+        /** Ground area parts located in the squares of the tile */
+        public final List<GroundArea> groundAreas = new ArrayList<>();
+
+        long getMemory() {
+            long memory = OBJECT_MEMORY + (long) topographicPoints.size() * COORDINATE_MEMORY;
+            for(BuildingRow building : buildings) {
+                memory += OBJECT_MEMORY + (long) building.geometry.getNumPoints() * COORDINATE_MEMORY;
+            }
+            for(GroundArea groundArea : groundAreas) {
+                memory += OBJECT_MEMORY + (long) groundArea.geometry.getNumPoints() * COORDINATE_MEMORY;
+            }
+            return memory;
+        }
+    }
+
+    /**
+     * Building row of the buildings table
+     */
+    public static class BuildingRow {
+        public final Geometry geometry;
+        public final double height;
+        public final double alpha;
+        public final int pk;
+
+        /**
+         * @param geometry Building geometry (not clipped)
+         * @param height Building height
+         * @param alpha Wall absorption or NaN to use the default wall absorption
+         * @param pk Primary key or -1
+         */
+        public BuildingRow(Geometry geometry, double height, double alpha, int pk) {
+            this.geometry = geometry;
+            this.height = height;
+            this.alpha = alpha;
+            this.pk = pk;
+        }
+    }
+
+    /**
+     * Part of a ground area polygon inside a ground split square
+     */
+    public static class GroundArea {
+        public final Geometry geometry;
+        public final double g;
+        /** Envelope of the complete ground area polygon */
+        public final Envelope areaEnvelope;
+        /** Lower left corner of the split square */
+        public final double squareX;
+        public final double squareY;
+
+        public GroundArea(Geometry geometry, double g, Envelope areaEnvelope, double squareX, double squareY) {
+            this.geometry = geometry;
+            this.g = g;
+            this.areaEnvelope = areaEnvelope;
+            this.squareX = squareX;
+            this.squareY = squareY;
+        }
+    }
+}
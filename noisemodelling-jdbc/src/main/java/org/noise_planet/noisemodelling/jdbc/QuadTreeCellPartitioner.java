@@ -0,0 +1,165 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Split the computation area into square blocks of a fine grid, using a quadtree.
+ * A block is split into 4 blocks while its estimated work or memory is greater than the maximum values.
+ * The work of a block is the number of receivers multiplied by the number of sources within the propagation distance
+ * of the block. The memory of a block is estimated from the number of buildings and sources within the propagation
+ * distance and the number of receivers of the block.
+ * The fine grid side count is a power of 2.
+ */
+public class QuadTreeCellPartitioner {
+    // Estimated memory used by the computation of a cell, in bytes
+    static final long BUILDING_MEMORY = 4096;
+    static final long SOURCE_MEMORY = 2048;
+    static final long RECEIVER_MEMORY = 512;
+
+    private final int gridDim;
+    private final int marginI;
+    private final int marginJ;
+    private final int[] receivers;
+    private final int[] sources;
+    private final int[] buildings;
+    private long[] receiversSum;
+    private long[] sourcesSum;
+    private long[] buildingsSum;
+
+    /**
+     * @param level Subdivision level of the fine grid, the grid contains 2^level x 2^level cells
+     * @param cellWidth Width of a cell of the fine grid
+     * @param cellHeight Height of a cell of the fine grid
+     * @param propagationDistance Maximum propagation distance
+     */
+    public QuadTreeCellPartitioner(int level, double cellWidth, double cellHeight, double propagationDistance) {
+        this.gridDim = 1 << level;
+        this.marginI = (int) Math.ceil(propagationDistance / cellWidth);
+        this.marginJ = (int) Math.ceil(propagationDistance / cellHeight);
+        receivers = new int[gridDim * gridDim];
+        sources = new int[gridDim * gridDim];
+        buildings = new int[gridDim * gridDim];
+    }
+
+    public int getGridDim() {
+        return gridDim;
+    }
+
+    private int clamp(int index) {
+        return Math.max(0, Math.min(gridDim - 1, index));
+    }
+
+    public void addReceiver(int i, int j) {
+        receivers[clamp(j) * gridDim + clamp(i)]++;
+    }
+
+    public void addSource(int i, int j) {
+        sources[clamp(j) * gridDim + clamp(i)]++;
+    }
+
+    public void addBuilding(int i, int j) {
+        buildings[clamp(j) * gridDim + clamp(i)]++;
+    }
+
+    /**
+     * @param counts Count by fine cell
+     * @return Summed area table of (gridDim + 1) x (gridDim + 1) values
+     */
+    private long[] sumArea(int[] counts) {
+        int sumDim = gridDim + 1;
+        long[] sum = new long[sumDim * sumDim];
+        for(int j = 0; j < gridDim; j++) {
+            long rowSum = 0;
+            for(int i = 0; i < gridDim; i++) {
+                rowSum += counts[j * gridDim + i];
+                sum[(j + 1) * sumDim + i + 1] = sum[j * sumDim + i + 1] + rowSum;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return Sum of the counts of the cells [minI, maxI[ x [minJ, maxJ[
+     */
+    private long getSum(long[] sum, int minI, int minJ, int maxI, int maxJ) {
+        minI = Math.max(0, minI);
+        minJ = Math.max(0, minJ);
+        maxI = Math.min(gridDim, maxI);
+        maxJ = Math.min(gridDim, maxJ);
+        int sumDim = gridDim + 1;
+        return sum[maxJ * sumDim + maxI] - sum[minJ * sumDim + maxI] - sum[maxJ * sumDim + minI] +
+                sum[minJ * sumDim + minI];
+    }
+
+    /**
+     * Compute the blocks of the computation area
+     * @param maximumWork Maximum number of receivers x sources pairs of a block
+     * @param maximumMemory Maximum estimated memory of a block in bytes
+     * @return Blocks that contain at least one receiver
+     */
+    public List<Block> partition(long maximumWork, long maximumMemory) {
+        receiversSum = sumArea(receivers);
+        sourcesSum = sumArea(sources);
+        buildingsSum = sumArea(buildings);
+        List<Block> blocks = new ArrayList<>();
+        split(0, 0, gridDim, maximumWork, maximumMemory, blocks);
+        return blocks;
+    }
+
+    private void split(int i, int j, int size, long maximumWork, long maximumMemory, List<Block> blocks) {
+        long receiverCount = getSum(receiversSum, i, j, i + size, j + size);
+        if(receiverCount == 0) {
+            return;
+        }
+        long sourceCount = getSum(sourcesSum, i - marginI, j - marginJ, i + size + marginI, j + size + marginJ);
+        long buildingCount = getSum(buildingsSum, i - marginI, j - marginJ, i + size + marginI, j + size + marginJ);
+        Block block = new Block(i, j, size, receiverCount, receiverCount * sourceCount,
+                buildingCount * BUILDING_MEMORY + sourceCount * SOURCE_MEMORY + receiverCount * RECEIVER_MEMORY);
+        if(size > 1 && (block.work > maximumWork || block.memory > maximumMemory)) {
+            int half = size / 2;
+            split(i, j, half, maximumWork, maximumMemory, blocks);
+            split(i + half, j, half, maximumWork, maximumMemory, blocks);
+            split(i, j + half, half, maximumWork, maximumMemory, blocks);
+            split(i + half, j + half, half, maximumWork, maximumMemory, blocks);
+        } else {
+            blocks.add(block);
+        }
+    }
+
+    /**
+     * Square block of cells of the fine grid
+     */
+    public static class Block {
+        /** Index of the lower left cell */
+        public final int i;
+        public final int j;
+        /** Number of cells on each side */
+        public final int size;
+        public final long receiverCount;
+        /** Estimated number of receivers x sources pairs */
+        public final long work;
+        /** Estimated memory in bytes */
+        public final long memory;
+
+        public Block(int i, int j, int size, long receiverCount, long work, long memory) {
+            this.i = i;
+            this.j = j;
+            this.size = size;
+            this.receiverCount = receiverCount;
+            this.work = work;
+            this.memory = memory;
+        }
+    }
+}
@@ -34,6 +34,7 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
     private String tableTrainTraffic;
     private SpatialResultSet spatialResultSet;
     public Map<String, Integer> sourceFields = null;
+    private boolean computeEmission = true;
 
 
     /**
@@ -73,6 +74,14 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
         return railWayLWComplete != null;
     }
 
+    /**
+     * @param computeEmission False to only read the traffic of the tracks, the emission of the returned tracks is then
+     *                        computed with {@link #computeEmission(RailWayLWGeom)}, possibly by another thread
+     */
+    public void setComputeEmission(boolean computeEmission) {
+        this.computeEmission = computeEmission;
+    }
+
     private List<LineString> splitGeometry(Geometry geometry){
         List<LineString> inputLineStrings = new ArrayList<>();
         for (int id = 0; id < geometry.getNumGeometries(); id++) {
@@ -99,13 +108,67 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
     public RailWayLWGeom next() {
         RailWayLWGeom current = railWayLWComplete;
         railWayLWComplete = fetchNext(railWayLWIncomplete);
+        if(computeEmission) {
+            computeEmissionOrThrow(current);
+        }
         return current;
     }
 
     public RailWayLWGeom current() {
+        if(computeEmission) {
+            computeEmissionOrThrow(railWayLWComplete);
+        }
         return railWayLWComplete;
     }
 
+    private void computeEmissionOrThrow(RailWayLWGeom railWayLWGeom) {
+        try {
+            computeEmission(railWayLWGeom);
+        } catch (IOException ex) {
+            throw new NoSuchElementException(ex.getMessage());
+        }
+    }
+
+    /**
+     * Compute the day, evening and night emission of a track from the traffic read by the iterator, the traffic rows
+     * of the track are summed. Does nothing if the emission has already been computed.
+     * This method can be called by several threads at the same time for different tracks.
+     * @param railWayLWGeom Track returned by this iterator
+     */
+    public void computeEmission(RailWayLWGeom railWayLWGeom) throws IOException {
+        if(railWayLWGeom == null || railWayLWGeom.traffic == null) {
+            return;
+        }
+        RailWayCnossosParameters total = null;
+        RailWayCnossosParameters day = null;
+        RailWayCnossosParameters evening = null;
+        RailWayCnossosParameters night = null;
+        for(RailWayTraffic[] periods : railWayLWGeom.traffic) {
+            // The emission of the whole period is the day emission, it is evaluated again as the sum is done in place
+            if(day == null) {
+                total = evaluate(periods[0]);
+                day = evaluate(periods[0]);
+                evening = evaluate(periods[1]);
+                night = evaluate(periods[2]);
+            } else {
+                total = RailWayCnossosParameters.sumRailwaySource(total, evaluate(periods[0]));
+                day = RailWayCnossosParameters.sumRailwaySource(day, evaluate(periods[0]));
+                evening = RailWayCnossosParameters.sumRailwaySource(evening, evaluate(periods[1]));
+                night = RailWayCnossosParameters.sumRailwaySource(night, evaluate(periods[2]));
+            }
+        }
+        railWayLWGeom.setRailWayLW(total);
+        railWayLWGeom.setRailWayLWDay(day);
+        railWayLWGeom.setRailWayLWEvening(evening);
+        railWayLWGeom.setRailWayLWNight(night);
+        railWayLWGeom.traffic = null;
+    }
+
+    private void readTraffic(RailWayLWGeom record) throws SQLException {
+        record.traffic.add(new RailWayTraffic[] {readRailWayTraffic(spatialResultSet, "DAY"),
+                readRailWayTraffic(spatialResultSet, "EVENING"), readRailWayTraffic(spatialResultSet, "NIGHT")});
+    }
+
     private RailWayLWGeom fetchNext(RailWayLWGeom incompleteRecord) {
         RailWayLWGeom completeRecord = null;
         try {
@@ -131,10 +194,8 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
                 if (sourceFields.containsKey("TRACKSPC")) {
                     incompleteRecord.distance = spatialResultSet.getDouble("TRACKSPC");
                 }
-                incompleteRecord.setRailWayLW(getRailwayEmissionFromResultSet(spatialResultSet, "DAY"));
-                incompleteRecord.setRailWayLWDay(getRailwayEmissionFromResultSet(spatialResultSet, "DAY"));
-                incompleteRecord.setRailWayLWEvening(getRailwayEmissionFromResultSet(spatialResultSet, "EVENING"));
-                incompleteRecord.setRailWayLWNight(getRailwayEmissionFromResultSet(spatialResultSet, "NIGHT"));
+                incompleteRecord.traffic = new ArrayList<>();
+                readTraffic(incompleteRecord);
                 incompleteRecord.nbTrack = spatialResultSet.getInt("NTRACK");
                 incompleteRecord.idSection = spatialResultSet.getString("IDSECTION");
                 if (hasColumn(spatialResultSet, "GS")) {
@@ -149,10 +210,7 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
             while (spatialResultSet.next()) {
                 hasNext = true;
                 if (incompleteRecord.pk == spatialResultSet.getInt("trackid")) {
-                    incompleteRecord.setRailWayLW(RailWayCnossosParameters.sumRailwaySource(incompleteRecord.railWayLW, getRailwayEmissionFromResultSet(spatialResultSet, "DAY")));
-                    incompleteRecord.setRailWayLWDay(RailWayCnossosParameters.sumRailwaySource(incompleteRecord.railWayLWDay, getRailwayEmissionFromResultSet(spatialResultSet, "DAY")));
-                    incompleteRecord.setRailWayLWEvening(RailWayCnossosParameters.sumRailwaySource(incompleteRecord.railWayLWEvening, getRailwayEmissionFromResultSet(spatialResultSet, "EVENING")));
-                    incompleteRecord.setRailWayLWNight(RailWayCnossosParameters.sumRailwaySource(incompleteRecord.railWayLWNight, getRailwayEmissionFromResultSet(spatialResultSet, "NIGHT")));
+                    readTraffic(incompleteRecord);
                 } else {
                     // railWayLWIncomplete is complete
                     completeRecord = new RailWayLWGeom(incompleteRecord);
@@ -162,10 +220,8 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
                         incompleteRecord.distance = spatialResultSet.getDouble("TRACKSPC");
                     }
                     // initialize incomplete record
-                    incompleteRecord.setRailWayLW(getRailwayEmissionFromResultSet(spatialResultSet, "DAY"));
-                    incompleteRecord.setRailWayLWDay(getRailwayEmissionFromResultSet(spatialResultSet, "DAY"));
-                    incompleteRecord.setRailWayLWEvening(getRailwayEmissionFromResultSet(spatialResultSet, "EVENING"));
-                    incompleteRecord.setRailWayLWNight(getRailwayEmissionFromResultSet(spatialResultSet, "NIGHT"));
+                    incompleteRecord.traffic = new ArrayList<>();
+                    readTraffic(incompleteRecord);
                     incompleteRecord.nbTrack = spatialResultSet.getInt("NTRACK");
                     incompleteRecord.idSection = spatialResultSet.getString("IDSECTION");
                     if (hasColumn(spatialResultSet, "GS")) {
@@ -184,7 +240,7 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
                 }
             }
             return completeRecord;
-        } catch (SQLException | IOException throwables) {
+        } catch (SQLException throwables) {
             throw new NoSuchElementException(throwables.getMessage());
         }
     }
@@ -195,6 +251,15 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
      * @return Emission spectrum in dB
      */
     public RailWayCnossosParameters getRailwayEmissionFromResultSet(ResultSet rs, String period) throws SQLException, IOException {
+        return evaluate(readRailWayTraffic(rs, period));
+    }
+
+    /**
+     * @param rs     result set of source
+     * @param period D or E or N
+     * @return Traffic of the period
+     */
+    public RailWayTraffic readRailWayTraffic(ResultSet rs, String period) throws SQLException {
         String train = "FRET";
         double vehicleSpeed = 160;
         double vehiclePerHour = 1;
@@ -270,11 +335,29 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
         }
 
 
-        RailWayCnossosParameters  lWRailWay = new RailWayCnossosParameters();
-
         RailwayTrackCnossosParameters trackParameters = new RailwayTrackCnossosParameters(vMaxInfra, trackTransfer, railRoughness,
                 impactNoise, bridgeTransfert, curvature, commercialSpeed, isTunnel, nbTrack);
 
+        return new RailWayTraffic(train, vehicleSpeed, vehiclePerHour, rollingCondition, idlingTime, nbTrack,
+                trackParameters);
+    }
+
+    /**
+     * Compute the emission of a traffic, can be called by several threads at the same time
+     * @param traffic Traffic of a period
+     * @return Emission spectrum in dB
+     */
+    public RailWayCnossosParameters evaluate(RailWayTraffic traffic) throws IOException {
+        final String train = traffic.train;
+        final double vehicleSpeed = traffic.vehicleSpeed;
+        final double vehiclePerHour = traffic.vehiclePerHour;
+        final int rollingCondition = traffic.rollingCondition;
+        final double idlingTime = traffic.idlingTime;
+        final int nbTrack = traffic.nbTrack;
+        final RailwayTrackCnossosParameters trackParameters = traffic.trackParameters;
+
+        RailWayCnossosParameters  lWRailWay = new RailWayCnossosParameters();
+
         Map<String, Integer> vehicles = railway.getVehicleFromTrainset(train);
        // double vehiclePerHouri=vehiclePerHour;
         if (vehicles!=null){
@@ -307,6 +390,30 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
     }
 
 
+    /**
+     * Train traffic of a track for a period, as read in the traffic table
+     */
+    public static class RailWayTraffic {
+        private final String train;
+        private final double vehicleSpeed;
+        private final double vehiclePerHour;
+        private final int rollingCondition;
+        private final double idlingTime;
+        private final int nbTrack;
+        private final RailwayTrackCnossosParameters trackParameters;
+
+        public RailWayTraffic(String train, double vehicleSpeed, double vehiclePerHour, int rollingCondition,
+                              double idlingTime, int nbTrack, RailwayTrackCnossosParameters trackParameters) {
+            this.train = train;
+            this.vehicleSpeed = vehicleSpeed;
+            this.vehiclePerHour = vehiclePerHour;
+            this.rollingCondition = rollingCondition;
+            this.idlingTime = idlingTime;
+            this.nbTrack = nbTrack;
+            this.trackParameters = trackParameters;
+        }
+    }
+
     public static class RailWayLWGeom {
         private RailWayCnossosParameters railWayLW;
         private RailWayCnossosParameters railWayLWDay;
@@ -318,6 +425,8 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
         private String idSection;
         private double distance = 2;
         private double gs = 1.0;
+        /** Day, evening and night traffic of each row of the track, null once the emission is computed */
+        private List<RailWayTraffic[]> traffic;
 
         // Default constructor
         public RailWayLWGeom() {
@@ -335,6 +444,7 @@ public class RailWayLWIterator implements Iterator<RailWayLWIterator.RailWayLWGe
             this.idSection = other.idSection;
             this.distance = other.distance;
             this.gs = other.gs;
+            this.traffic = other.traffic;
         }
 
         public RailWayLWGeom(RailWayCnossosParameters RailWayParameters, RailWayCnossosParameters railWayLWDay, RailWayCnossosParameters railWayLWEvening, RailWayCnossosParameters railWayLWNight, List<LineString> geometry, int pk, int nbTrack, double distance, double gs) {
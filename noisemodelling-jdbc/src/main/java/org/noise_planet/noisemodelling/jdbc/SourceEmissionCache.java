@@ -0,0 +1,119 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc;
+
+import java.util.Arrays;
+
+/**
+ * Day, evening and night emission spectra of the sources, stored by source primary key.
+ * The sources are fetched for each computation cell intersecting their geometry, so a source located near a cell
+ * corner is read for up to nine cells; the emission is computed the first time and found in the cache for the
+ * other cells. The spectra of a source are packed in a single array. The least recently used sources are evicted when
+ * the estimated memory of the cached spectra exceeds the memory budget.
+ * The road slope is evaluated on the topography of the first cell that covers the first segment of the road, the other
+ * cells do not query the topography again.
+ */
+public class SourceEmissionCache {
+    // Estimated memory of an entry without its values, in bytes
+    static final int ENTRY_MEMORY = 96;
+
+    private final MemoryBudgetCache<Long, double[]> entries;
+
+    /**
+     * @param memoryBudget Maximum estimated memory of the cached spectra in bytes, 0 to disable the cache
+     */
+    public SourceEmissionCache(long memoryBudget) {
+        entries = new MemoryBudgetCache<>(memoryBudget, entry -> ENTRY_MEMORY + (long) entry.length * Double.BYTES);
+    }
+
+    /**
+     * @return True if the cache can keep spectra
+     */
+    public boolean isEnabled() {
+        return entries.isEnabled();
+    }
+
+    public long getMemoryBudget() {
+        return entries.getMemoryBudget();
+    }
+
+    /**
+     * @param memoryBudget Maximum estimated memory of the cached spectra in bytes, 0 to disable the cache
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        entries.setMemoryBudget(memoryBudget);
+    }
+
+    /**
+     * @param pk Source primary key
+     * @return Copy of the day, evening and night spectra, or null if the source is not in cache
+     */
+    public double[][] get(long pk) {
+        double[] entry = entries.get(pk);
+        if(entry == null) {
+            return null;
+        }
+        final int frequencyCount = entry.length / 3;
+        double[][] spectra = new double[3][];
+        for(int period = 0; period < 3; period++) {
+            final int start = period * frequencyCount;
+            spectra[period] = Arrays.copyOfRange(entry, start, start + frequencyCount);
+        }
+        return spectra;
+    }
+
+    /**
+     * Add the spectra of a source, then evict the least recently used sources if the memory budget is exceeded
+     * @param pk Source primary key
+     * @param spectra Day, evening and night spectra, of the same length
+     */
+    public void put(long pk, double[][] spectra) {
+        if(!isEnabled()) {
+            return;
+        }
+        final int frequencyCount = spectra[0].length;
+        double[] entry = new double[3 * frequencyCount];
+        for(int period = 0; period < 3; period++) {
+            System.arraycopy(spectra[period], 0, entry, period * frequencyCount, frequencyCount);
+        }
+        entries.put(pk, entry);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * @return Estimated memory of the cached spectra in bytes
+     */
+    public long getUsedMemory() {
+        return entries.getUsedMemory();
+    }
+
+    public int getSourceCount() {
+        return entries.size();
+    }
+
+    /**
+     * @return Number of sources found in the cache
+     */
+    public long getHits() {
+        return entries.getHits();
+    }
+
+    /**
+     * @return Number of sources emission computed
+     */
+    public long getMisses() {
+        return entries.getMisses();
+    }
+}
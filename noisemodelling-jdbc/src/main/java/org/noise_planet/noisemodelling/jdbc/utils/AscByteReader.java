@@ -0,0 +1,281 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Byte level reader of the words of an ESRI ascii grid. The content is read through a NIO buffer, the words of the
+ * cells are skipped or copied without creating strings, then parsed with {@link #parseDouble(byte[], int, int)}.
+ */
+final class AscByteReader {
+    private static final int BUFFER_SIZE = 1 << 20;
+    /** Maximum number of significant digits of the fast number parsing */
+    private static final int MAX_DIGITS = 15;
+    /** Powers of ten that are exactly represented by a double */
+    private static final double[] POWERS_OF_TEN = new double[]{1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final byte[] data = buffer.array();
+    private final Charset charset;
+    private int position = 0;
+    private int limit = 0;
+    private boolean endOfStream = false;
+
+    /**
+     * @param channel Content of the file
+     * @param charset Charset of the header words
+     */
+    AscByteReader(ReadableByteChannel channel, Charset charset) {
+        this.channel = channel;
+        this.charset = charset;
+    }
+
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f' || b == 0x0B;
+    }
+
+    /**
+     * Move the unread bytes to the start of the buffer then read more bytes
+     * @return False if there is no more bytes to read
+     */
+    private boolean fill() throws IOException {
+        if (endOfStream) {
+            return false;
+        }
+        final int remaining = limit - position;
+        System.arraycopy(data, position, data, 0, remaining);
+        position = 0;
+        limit = remaining;
+        buffer.clear();
+        buffer.position(limit);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                endOfStream = true;
+                break;
+            }
+        }
+        boolean read = buffer.position() > limit;
+        limit = buffer.position();
+        return read;
+    }
+
+    /**
+     * Skip the whitespaces
+     * @return False if the end of the stream has been reached
+     */
+    private boolean skipWhitespace() throws IOException {
+        while (true) {
+            while (position < limit && isWhitespace(data[position])) {
+                position++;
+            }
+            if (position < limit) {
+                return true;
+            }
+            if (!fill()) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * @return Length of the word at the current position, the word is entirely in the buffer
+     */
+    private int wordLength() throws IOException {
+        int end = position;
+        while (true) {
+            while (end < limit && !isWhitespace(data[end])) {
+                end++;
+            }
+            if (end < limit || endOfStream) {
+                return end - position;
+            }
+            final int length = end - position;
+            if (!fill()) {
+                return length;
+            }
+            end = position + length;
+        }
+    }
+
+    /**
+     * @return The next word without consuming it, null at the end of the stream
+     */
+    String peekWord() throws IOException {
+        if (!skipWhitespace()) {
+            return null;
+        }
+        return new String(data, position, wordLength(), charset);
+    }
+
+    /**
+     * @return The next word, null at the end of the stream
+     */
+    String nextWord() throws IOException {
+        if (!skipWhitespace()) {
+            return null;
+        }
+        final int length = wordLength();
+        String word = new String(data, position, length, charset);
+        position += length;
+        return word;
+    }
+
+    /**
+     * Skip words without decoding them
+     * @param count Number of words to skip
+     * @return Number of skipped words, lower than count if the end of the stream has been reached
+     */
+    long skipWords(long count) throws IOException {
+        long skipped = 0;
+        while (skipped < count && skipWhitespace()) {
+            skipped++;
+            while (true) {
+                while (position < limit && !isWhitespace(data[position])) {
+                    position++;
+                }
+                if (position < limit || !fill()) {
+                    break;
+                }
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * Copy the bytes of the next words, separated with whitespaces
+     * @param count Number of words to copy
+     * @return The words, the array may be larger than the words, the unused bytes are 0
+     * @throws IOException If the stream contains less than count words
+     */
+    byte[] readWords(long count) throws IOException {
+        byte[] words = new byte[(int) Math.min(Integer.MAX_VALUE - 16, Math.max(16, count * 8))];
+        int length = 0;
+        long copied = 0;
+        while (copied < count && skipWhitespace()) {
+            copied++;
+            int start = position;
+            while (true) {
+                while (position < limit && !isWhitespace(data[position])) {
+                    position++;
+                }
+                // Copy the word and a separator
+                final int wordPart = position - start;
+                if (length + wordPart + 1 > words.length) {
+                    words = Arrays.copyOf(words, Math.max(length + wordPart + 1, words.length + (words.length >> 1)));
+                }
+                System.arraycopy(data, start, words, length, wordPart);
+                length += wordPart;
+                if (position < limit || !fill()) {
+                    break;
+                }
+                start = position;
+            }
+            words[length++] = ' ';
+        }
+        if (copied < count) {
+            throw new IOException(String.format("Unexpected end of file, %d values are missing", count - copied));
+        }
+        return words;
+    }
+
+    /**
+     * Parse a decimal number. The result is the same as {@link Double#parseDouble(String)}, the numbers with more
+     * than 15 significant digits or a large exponent are parsed by {@link Double#parseDouble(String)}.
+     * @param data Bytes of the number
+     * @param start First byte of the number
+     * @param end Last byte of the number, exclusive
+     * @return Parsed number
+     * @throws NumberFormatException If this is not a number
+     */
+    static double parseDouble(byte[] data, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (data[i] == '-' || data[i] == '+')) {
+            negative = data[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean hasDigits = false;
+        while (i < end && data[i] >= '0' && data[i] <= '9') {
+            if (digits == MAX_DIGITS) {
+                return parseDoubleSlow(data, start, end);
+            }
+            mantissa = mantissa * 10 + (data[i] - '0');
+            if (mantissa != 0) {
+                digits++;
+            }
+            hasDigits = true;
+            i++;
+        }
+        if (i < end && data[i] == '.') {
+            i++;
+            while (i < end && data[i] >= '0' && data[i] <= '9') {
+                if (digits == MAX_DIGITS) {
+                    return parseDoubleSlow(data, start, end);
+                }
+                mantissa = mantissa * 10 + (data[i] - '0');
+                if (mantissa != 0) {
+                    digits++;
+                }
+                exponent--;
+                hasDigits = true;
+                i++;
+            }
+        }
+        if (hasDigits && i < end && (data[i] == 'e' || data[i] == 'E')) {
+            i++;
+            boolean negativeExponent = false;
+            if (i < end && (data[i] == '-' || data[i] == '+')) {
+                negativeExponent = data[i] == '-';
+                i++;
+            }
+            int exponentValue = 0;
+            int exponentStart = i;
+            while (i < end && data[i] >= '0' && data[i] <= '9' && exponentValue < 1000) {
+                exponentValue = exponentValue * 10 + (data[i] - '0');
+                i++;
+            }
+            if (i == exponentStart) {
+                return parseDoubleSlow(data, start, end);
+            }
+            exponent += negativeExponent ? -exponentValue : exponentValue;
+        }
+        if (!hasDigits || i != end) {
+            return parseDoubleSlow(data, start, end);
+        }
+        final double value;
+        if (mantissa == 0) {
+            value = 0;
+        } else if (exponent >= 0 && exponent < POWERS_OF_TEN.length) {
+            value = mantissa * POWERS_OF_TEN[exponent];
+        } else if (exponent < 0 && -exponent < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[-exponent];
+        } else {
+            return parseDoubleSlow(data, start, end);
+        }
+        return negative ? -value : value;
+    }
+
+    private static double parseDoubleSlow(byte[] data, int start, int end) {
+        return Double.parseDouble(new String(data, start, end - start, StandardCharsets.ISO_8859_1));
+    }
+}
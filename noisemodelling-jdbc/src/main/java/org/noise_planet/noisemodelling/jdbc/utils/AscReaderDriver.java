@@ -26,11 +26,22 @@ import org.h2gis.utilities.TableLocation;
 import org.h2gis.utilities.dbtypes.DBTypes;
 import org.h2gis.utilities.dbtypes.DBUtils;
 import org.locationtech.jts.geom.*;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.TopographicRaster;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
 import java.sql.*;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 
 /**
@@ -54,24 +65,29 @@ import java.util.zip.GZIPInputStream;
  *
  * NODATA_value : arbitrary value assigned to unknown cells.
  *
+ * The file is read with a byte level parser. The rows before the extract envelope are skipped without parsing the
+ * values, the reading stops after the last row of the envelope, and the blocks of rows are parsed in parallel.
+ *
  * @author Nicolas Fortin (Université Gustave Eiffel 2020)
  * @author Erwan Bocher, CNRS, 2020
  */
 public class AscReaderDriver {
 
-    private static final int BATCH_MAX_SIZE = 100;
-    private static final int BUFFER_SIZE = 16384;
+    private static final int BATCH_MAX_SIZE = 1000;
+    private static final int BUFFER_SIZE = 65536;
+    /** Number of cells of a block of rows parsed by a thread */
+    private static final int BLOCK_CELLS = 1 << 18;
     private boolean as3DPoint = true;
     private Envelope extractEnvelope = null;
     private int downScale = 1;
     private String lastWord = "";
+    private int threadCount = Runtime.getRuntime().availableProcessors();
 
     private int nrows;
     private int ncols;
     private double cellSize;
     private double yValue;
     private double xValue;
-    private boolean readFirst;
     private double noData;
     private int zType = 2;
     private boolean deleteTable = false;
@@ -125,77 +141,298 @@ public class AscReaderDriver {
         this.downScale = downScale;
     }
 
-    private void readHeader(Scanner scanner) throws IOException {
-        // NCOLS
-        lastWord = scanner.next();
-        if (!lastWord.equalsIgnoreCase("NCOLS")) {
-            throw new IOException("Unexpected word " + lastWord);
+    /**
+     * @return Number of threads parsing the cell values
+     */
+    public int getThreadCount() {
+        return threadCount;
+    }
+
+    /**
+     * @param threadCount Number of threads parsing the cell values, 1 to parse in the calling thread
+     */
+    public void setThreadCount(int threadCount) {
+        this.threadCount = threadCount;
+    }
+
+    private String nextWord(AscByteReader reader) throws IOException {
+        lastWord = reader.nextWord();
+        if (lastWord == null) {
+            lastWord = "";
+            throw new IOException("Unexpected end of file");
+        }
+        return lastWord;
+    }
+
+    private void readHeader(AscByteReader reader) throws IOException {
+        try {
+            // NCOLS
+            nextWord(reader);
+            if (!lastWord.equalsIgnoreCase("NCOLS")) {
+                throw new IOException("Unexpected word " + lastWord);
+            }
+            // XXX
+            ncols = Integer.parseInt(nextWord(reader));
+            if (ncols <= 0) {
+                throw new IOException("NCOLS <= 0");
+            }
+            // NROWS
+            nextWord(reader);
+            if (!lastWord.equalsIgnoreCase("NROWS")) {
+                throw new IOException("Unexpected word " + lastWord);
+            }
+            // XXX
+            nrows = Integer.parseInt(nextWord(reader));
+            if (nrows <= 0) {
+                throw new IOException("NROWS <= 0");
+            }
+            // XLLCENTER or XLLCORNER
+            nextWord(reader);
+            if (!(lastWord.equalsIgnoreCase("XLLCENTER") || lastWord.equalsIgnoreCase("XLLCORNER"))) {
+                throw new IOException("Unexpected word " + lastWord);
+            }
+            boolean isXCenter = lastWord.equalsIgnoreCase("XLLCENTER");
+            // XXX
+            xValue = Double.parseDouble(nextWord(reader));
+
+            // YLLCENTER or YLLCORNER
+            nextWord(reader);
+            if (!(lastWord.equalsIgnoreCase("YLLCENTER") || lastWord.equalsIgnoreCase("YLLCORNER"))) {
+                throw new IOException("Unexpected word " + lastWord);
+            }
+            boolean isYCenter = lastWord.equalsIgnoreCase("YLLCENTER");
+            // XXX
+            yValue = Double.parseDouble(nextWord(reader));
+
+            // CELLSIZE
+            nextWord(reader);
+            if (!lastWord.equalsIgnoreCase("CELLSIZE")) {
+                throw new IOException("Unexpected word " + lastWord);
+            }
+            // XXX
+            cellSize = Double.parseDouble(nextWord(reader));
+            // Compute offsets
+            if (isXCenter) {
+                xValue = xValue - cellSize / 2;
+            }
+            if (isYCenter) {
+                yValue = yValue + cellSize * nrows - cellSize / 2;
+            } else {
+                yValue = yValue + cellSize * nrows;
+            }
+            // Optional NODATA_VALUE, the first cell value otherwise
+            noData = -9999;
+            String word = reader.peekWord();
+            if (word != null && word.equalsIgnoreCase("NODATA_VALUE")) {
+                nextWord(reader);
+                // XXX
+                noData = Double.parseDouble(nextWord(reader));
+            }
+        } catch (NumberFormatException ex) {
+            throw new IOException("Unexpected word " + lastWord, ex);
+        }
+    }
+
+    /**
+     * Cells to read and receiver of their values
+     */
+    private interface CellsConsumer {
+        /**
+         * @param row Row index in the file, from the north
+         * @return True if the cells of this row are read
+         */
+        boolean isRowRead(int row);
+
+        /**
+         * Receive the values of the blocks of rows, in the file order
+         * @param firstRow First row of the block
+         * @param rowCount Number of rows of the block
+         * @param values Values of the read cells of the read rows of the block, row by row
+         */
+        void accept(int firstRow, int rowCount, double[] values) throws SQLException, IOException;
+    }
+
+    /**
+     * Parse the values of a block of rows
+     * @param words Words of the cells of the rows, separated by whitespaces
+     * @param firstRow First row of the block
+     * @param rowCount Number of rows of the block
+     * @param readRows For each row of the block, true if its cells are read
+     * @param readColumns For each column, true if the cell is read
+     * @param readColumnCount Number of read columns
+     * @return Values of the read cells
+     */
+    private static double[] parseBlock(byte[] words, int firstRow, int rowCount, boolean[] readRows,
+                                       boolean[] readColumns, int readColumnCount) {
+        int readRowCount = 0;
+        for (int row = 0; row < rowCount; row++) {
+            if (readRows[row]) {
+                readRowCount++;
+            }
+        }
+        final int columns = readColumns.length;
+        double[] values = new double[readRowCount * readColumnCount];
+        int valueIndex = 0;
+        int position = 0;
+        for (int row = 0; row < rowCount; row++) {
+            for (int column = 0; column < columns; column++) {
+                while (AscByteReader.isWhitespace(words[position])) {
+                    position++;
+                }
+                int start = position;
+                while (!AscByteReader.isWhitespace(words[position])) {
+                    position++;
+                }
+                if (readRows[row] && readColumns[column]) {
+                    try {
+                        values[valueIndex++] = AscByteReader.parseDouble(words, start, position);
+                    } catch (NumberFormatException ex) {
+                        throw new NumberFormatException(String.format("Unexpected word %s at row %d column %d",
+                                new String(words, start, position - start), firstRow + row, column));
+                    }
+                }
+            }
         }
-        // XXX
-        lastWord = scanner.next();
-        ncols = Integer.parseInt(lastWord);
-        if (ncols <= 0) {
-            throw new IOException("NCOLS <= 0");
+        return values;
+    }
+
+    /**
+     * Read the cell values after the header. The rows before the first read row are skipped without being parsed,
+     * the reading stops after the last read row. The blocks of rows are parsed by a pool of threads.
+     * @param reader Reader located after the header
+     * @param readColumns For each column, true if the cell is read
+     * @param consumer Read rows and receiver of the values
+     * @param progress Progression, a step for each row of the file until the last read row
+     */
+    private void readCells(AscByteReader reader, final boolean[] readColumns, CellsConsumer consumer,
+                           ProgressVisitor progress) throws IOException, SQLException {
+        int firstReadRow = -1;
+        int lastReadRow = -1;
+        for (int row = 0; row < nrows; row++) {
+            if (consumer.isRowRead(row)) {
+                if (firstReadRow < 0) {
+                    firstReadRow = row;
+                }
+                lastReadRow = row;
+            }
         }
-        // NROWS
-        lastWord = scanner.next();
-        if (!lastWord.equalsIgnoreCase("NROWS")) {
-            throw new IOException("Unexpected word " + lastWord);
+        int readColumnCount = 0;
+        for (boolean readColumn : readColumns) {
+            if (readColumn) {
+                readColumnCount++;
+            }
         }
-        // XXX
-        lastWord = scanner.next();
-        nrows = Integer.parseInt(lastWord);
-        if (nrows <= 0) {
-            throw new IOException("NROWS <= 0");
+        ProgressVisitor rowProgress = progress.subProcess(Math.max(1, lastReadRow + 1));
+        if (firstReadRow < 0 || readColumnCount == 0) {
+            return;
         }
-        // XLLCENTER or XLLCORNER
-        lastWord = scanner.next();
-        if (!(lastWord.equalsIgnoreCase("XLLCENTER") || lastWord.equalsIgnoreCase("XLLCORNER"))) {
-            throw new IOException("Unexpected word " + lastWord);
+        // Skip the rows before the first read row
+        if (reader.skipWords((long) firstReadRow * ncols) != (long) firstReadRow * ncols) {
+            throw new IOException("Unexpected end of file");
         }
-        boolean isXCenter = lastWord.equalsIgnoreCase("XLLCENTER");
-        // XXX
-        lastWord = scanner.next();
-        xValue = Double.parseDouble(lastWord);
-
-        // YLLCENTER or YLLCORNER
-        lastWord = scanner.next();
-        if (!(lastWord.equalsIgnoreCase("YLLCENTER") || lastWord.equalsIgnoreCase("YLLCORNER"))) {
-            throw new IOException("Unexpected word " + lastWord);
+        for (int row = 0; row < firstReadRow; row++) {
+            rowProgress.endStep();
         }
-        boolean isYCenter = lastWord.equalsIgnoreCase("YLLCENTER");
-        // XXX
-        lastWord = scanner.next();
-        yValue = Double.parseDouble(lastWord);
-
-        // CELLSIZE
-        lastWord = scanner.next();
-        if (!lastWord.equalsIgnoreCase("CELLSIZE")) {
-            throw new IOException("Unexpected word " + lastWord);
+        final int blockRows = Math.max(1, BLOCK_CELLS / ncols);
+        ExecutorService executorService = threadCount > 1 ? Executors.newFixedThreadPool(threadCount) : null;
+        Deque<Future<double[]>> pendingBlocks = new ArrayDeque<>();
+        Deque<int[]> pendingBlockRows = new ArrayDeque<>();
+        try {
+            for (int firstRow = firstReadRow; firstRow <= lastReadRow; firstRow += blockRows) {
+                final int blockFirstRow = firstRow;
+                final int rowCount = Math.min(blockRows, lastReadRow - firstRow + 1);
+                final boolean[] readRows = new boolean[rowCount];
+                for (int row = 0; row < rowCount; row++) {
+                    readRows[row] = consumer.isRowRead(firstRow + row);
+                }
+                final byte[] words = reader.readWords((long) rowCount * ncols);
+                final int blockColumnCount = readColumnCount;
+                if (executorService == null) {
+                    consumer.accept(blockFirstRow, rowCount, parseBlock(words, blockFirstRow, rowCount, readRows,
+                            readColumns, blockColumnCount));
+                    for (int row = 0; row < rowCount; row++) {
+                        rowProgress.endStep();
+                    }
+                } else {
+                    pendingBlocks.add(executorService.submit(() -> parseBlock(words, blockFirstRow, rowCount,
+                            readRows, readColumns, blockColumnCount)));
+                    pendingBlockRows.add(new int[]{blockFirstRow, rowCount});
+                    // Keep a block for each thread while the next block is read
+                    while (pendingBlocks.size() > threadCount) {
+                        acceptBlock(pendingBlocks, pendingBlockRows, consumer, rowProgress);
+                    }
+                }
+            }
+            while (!pendingBlocks.isEmpty()) {
+                acceptBlock(pendingBlocks, pendingBlockRows, consumer, rowProgress);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing the cells", ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw new IOException(ex.getCause());
+        } finally {
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
         }
-        // XXX
-        lastWord = scanner.next();
-        cellSize = Double.parseDouble(lastWord);
-        // Compute offsets
-        if (isXCenter) {
-            xValue = xValue - cellSize / 2;
+    }
+
+    private static void acceptBlock(Deque<Future<double[]>> pendingBlocks, Deque<int[]> pendingBlockRows,
+                                    CellsConsumer consumer, ProgressVisitor rowProgress)
+            throws InterruptedException, ExecutionException, SQLException, IOException {
+        double[] values = pendingBlocks.removeFirst().get();
+        int[] blockRows = pendingBlockRows.removeFirst();
+        consumer.accept(blockRows[0], blockRows[1], values);
+        for (int row = 0; row < blockRows[1]; row++) {
+            rowProgress.endStep();
         }
-        if (isYCenter) {
-            yValue = yValue + cellSize * nrows - cellSize / 2;
+    }
+
+    /**
+     * @param fileName asc or gz file
+     * @return Channel of the asc content
+     */
+    private static ReadableByteChannel openChannel(File fileName) throws IOException {
+        if (fileName.getName().toLowerCase().endsWith(".gz")) {
+            return Channels.newChannel(new GZIPInputStream(new FileInputStream(fileName), BUFFER_SIZE));
         } else {
-            yValue = yValue + cellSize * nrows;
+            return FileChannel.open(fileName.toPath(), StandardOpenOption.READ);
         }
-        // Optional NODATA_VALUE
-        lastWord = scanner.next();
-        readFirst = false;
-        noData = -9999;
-        if (lastWord.equalsIgnoreCase("NODATA_VALUE")) {
-            readFirst = true;
-            // XXX
-            lastWord = scanner.next();
-            noData = Double.parseDouble(lastWord);
+    }
+
+    /**
+     * Rows and columns of the table import, aligned on the down scale from the first cell of the file
+     */
+    private boolean[] getTableColumns() {
+        int firstCol = 0;
+        int lastCol = ncols;
+        if (extractEnvelope != null) {
+            firstCol = (int) Math.floor((extractEnvelope.getMinX() - xValue) / cellSize);
+            lastCol = (int) Math.ceil((extractEnvelope.getMaxX() - xValue) / cellSize);
+        }
+        boolean[] readColumns = new boolean[ncols];
+        for (int j = 0; j < ncols; j++) {
+            readColumns[j] = (downScale == 1 || j % downScale == 0) && j >= firstCol && j <= lastCol;
+        }
+        return readColumns;
+    }
+
+    private int getTableFirstRow() {
+        if (extractEnvelope == null) {
+            return 0;
+        }
+        return nrows - (int) Math.ceil((extractEnvelope.getMaxY() - (yValue - cellSize * nrows)) / cellSize);
+    }
 
+    private int getTableLastRow() {
+        if (extractEnvelope == null) {
+            return nrows;
         }
+        return nrows - (int) Math.ceil((extractEnvelope.getMinY() - (yValue - cellSize * nrows)) / cellSize);
     }
 
     /**
@@ -211,7 +448,8 @@ public class AscReaderDriver {
      */
     public String[] read(Connection connection, File fileName, ProgressVisitor progress, String tableReference,
             int srid) throws SQLException, IOException {
-        if (fileName != null && fileName.getName().toLowerCase().endsWith(".asc")) {
+        if (fileName != null && (fileName.getName().toLowerCase().endsWith(".asc") ||
+                fileName.getName().toLowerCase().endsWith(".gz"))) {
             if (!fileName.exists()) {
                 throw new SQLException("The file " + tableReference + " doesn't exist ");
             }
@@ -223,24 +461,9 @@ public class AscReaderDriver {
                 stmt.execute("DROP TABLE IF EXISTS " + outputTableName);
                 stmt.close();
             }
-            try (FileInputStream inputStream = new FileInputStream(fileName)) {
-                outputTableName = readAsc(connection, inputStream, progress, outputTableName, srid);
-            }
-            return new String[]{outputTableName};
-        } else if (fileName != null && fileName.getName().toLowerCase().endsWith(".gz")) {
-            if (!fileName.exists()) {
-                throw new SQLException("The file " + tableReference + " doesn't exist ");
-            }
-            final DBTypes dbType = DBUtils.getDBType(connection);
-            TableLocation requestedTable = TableLocation.parse(tableReference, dbType);
-            String outputTableName = requestedTable.toString();
-            if (deleteTable) {
-                Statement stmt = connection.createStatement();
-                stmt.execute("DROP TABLE IF EXISTS " + outputTableName);
-                stmt.close();
+            try (ReadableByteChannel channel = openChannel(fileName)) {
+                outputTableName = readAsc(connection, channel, progress, outputTableName, srid);
             }
-            FileInputStream fis = new FileInputStream(fileName);
-            outputTableName = readAsc(connection, new GZIPInputStream(fis), progress, outputTableName, srid);
             return new String[]{outputTableName};
         } else {
             throw new SQLException("The asc read driver supports only asc or gz extensions");
@@ -248,31 +471,28 @@ public class AscReaderDriver {
     }
 
     /**
-     * Read the ascii file from inpustream
+     * Read the ascii file from the channel
      *
      * @param connection
-     * @param inputStream
+     * @param channel
      * @param progress
      * @param outputTable
      * @param srid
-     * @throws UnsupportedEncodingException
      * @throws SQLException
      * @return output table name
      */
 
-    private String readAsc(Connection connection, InputStream inputStream, ProgressVisitor progress, String outputTable,
-            int srid) throws UnsupportedEncodingException, SQLException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(new BufferedInputStream(inputStream, BUFFER_SIZE), encoding));
+    private String readAsc(Connection connection, ReadableByteChannel channel, ProgressVisitor progress,
+                           String outputTable, int srid) throws SQLException {
         try {
-            Scanner scanner = new Scanner(reader);
+            AscByteReader reader = new AscByteReader(channel, Charset.forName(encoding));
             // Read HEADER
-            readHeader(scanner);
+            readHeader(reader);
             // Read values
             connection.setAutoCommit(false);
             Statement st = connection.createStatement();
-            PreparedStatement preparedStatement;
 
-            int index=0;
+            int startIndex = 0;
             if (!JDBCUtilities.tableExists(connection,outputTable)) {
                 if (as3DPoint) {
                     if (zType == 1) {
@@ -295,63 +515,50 @@ public class AscReaderDriver {
                 // restore the incremental index from the existing table
                 try(ResultSet rs = st.executeQuery("SELECT MAX(PK) FROM " +  outputTable)) {
                     if(rs.next()) {
-                        index = rs.getInt(1) + 1;
+                        startIndex = rs.getInt(1) + 1;
                     }
                 }
             }
-            preparedStatement = connection.prepareStatement("INSERT INTO " + outputTable
+            final PreparedStatement preparedStatement = connection.prepareStatement("INSERT INTO " + outputTable
                     + "(PK, the_geom, Z) VALUES (?, ?, ?)");
 
             // Read data
-            GeometryFactory factory = new GeometryFactory(new PrecisionModel(),srid);
-            int batchSize = 0;
-            int firstRow = 0;
-            int firstCol = 0;
-            int lastRow = nrows;
-            int lastCol = ncols;
-            // Compute envelope
-            if (extractEnvelope != null) {
-                firstCol = (int) Math.floor((extractEnvelope.getMinX() - xValue) / cellSize);
-                lastCol = (int) Math.ceil((extractEnvelope.getMaxX() - xValue) / cellSize);
-                firstRow = nrows - (int) Math.ceil((extractEnvelope.getMaxY() - (yValue - cellSize * nrows)) / cellSize);
-                lastRow = nrows - (int) Math.ceil((extractEnvelope.getMinY() - (yValue - cellSize * nrows)) / cellSize);
-            }
-            ProgressVisitor cellProgress = new EmptyProgressVisitor();
-            if (progress != null) {
-                cellProgress = progress.subProcess(lastRow);
-            }
-            for (int i = 0; i < nrows; i++) {
-                for (int j = 0; j < ncols; j++) {
-                    if (readFirst) {
-                        lastWord = scanner.next();
-                    } else {
-                        readFirst = true;
-                    }
+            final GeometryFactory factory = new GeometryFactory(new PrecisionModel(),srid);
+            final int firstRow = getTableFirstRow();
+            final int lastRow = getTableLastRow();
+            final boolean[] readColumns = getTableColumns();
+            final int firstIndex = startIndex;
+            CellsConsumer tableWriter = new CellsConsumer() {
+                int index = firstIndex;
+                int batchSize = 0;
 
-                    if ((downScale == 1 || (i % downScale == 0 && j % downScale == 0)) && (extractEnvelope == null || (i >= firstRow && i <= lastRow && j >= firstCol && j <= lastCol))) {
-                        double z = Double.parseDouble(lastWord);
-                        double x = xValue + j * cellSize;
-                        double y = yValue - i * cellSize;
-                        if (as3DPoint) {
-                            //Set the PK
-                            preparedStatement.setObject(1, index++);
-                            Point cell = factory.createPoint(new Coordinate(x + cellSize / 2, y - cellSize / 2, z));
-                            cell.setSRID(srid);
-                            if (Math.abs(noData - z) != 0) {
-                                preparedStatement.setObject(2, cell);
-                                preparedStatement.setObject(3, z);
-                                preparedStatement.addBatch();
-                                batchSize++;
-                            } else if (importNodata) {
-                                preparedStatement.setObject(2, cell);
-                                preparedStatement.setObject(3, noData);
-                                preparedStatement.addBatch();
-                                batchSize++;
+                @Override
+                public boolean isRowRead(int i) {
+                    return (downScale == 1 || i % downScale == 0) && i >= firstRow && i <= lastRow;
+                }
+
+                @Override
+                public void accept(int blockFirstRow, int rowCount, double[] values) throws SQLException {
+                    int valueIndex = 0;
+                    for (int i = blockFirstRow; i < blockFirstRow + rowCount; i++) {
+                        if (!isRowRead(i)) {
+                            continue;
+                        }
+                        for (int j = 0; j < ncols; j++) {
+                            if (!readColumns[j]) {
+                                continue;
                             }
-                        } else {
+                            double z = values[valueIndex++];
+                            double x = xValue + j * cellSize;
+                            double y = yValue - i * cellSize;
                             //Set the PK
                             preparedStatement.setObject(1, index++);
-                            Polygon cell = factory.createPolygon(new Coordinate[]{new Coordinate(x, y, z), new Coordinate(x, y - cellSize * downScale, z), new Coordinate(x + cellSize * downScale, y - cellSize * downScale, z), new Coordinate(x + cellSize * downScale, y, z), new Coordinate(x, y, z)});
+                            Geometry cell;
+                            if (as3DPoint) {
+                                cell = factory.createPoint(new Coordinate(x + cellSize / 2, y - cellSize / 2, z));
+                            } else {
+                                cell = factory.createPolygon(new Coordinate[]{new Coordinate(x, y, z), new Coordinate(x, y - cellSize * downScale, z), new Coordinate(x + cellSize * downScale, y - cellSize * downScale, z), new Coordinate(x + cellSize * downScale, y, z), new Coordinate(x, y, z)});
+                            }
                             cell.setSRID(srid);
                             if (Math.abs(noData - z) != 0) {
                                 preparedStatement.setObject(2, cell);
@@ -364,29 +571,176 @@ public class AscReaderDriver {
                                 preparedStatement.addBatch();
                                 batchSize++;
                             }
-                        }
-                        if (batchSize >= BATCH_MAX_SIZE) {
-                            preparedStatement.executeBatch();
-                            connection.commit();
-                            preparedStatement.clearBatch();
-                            batchSize = 0;
+                            if (batchSize >= BATCH_MAX_SIZE) {
+                                preparedStatement.executeBatch();
+                                connection.commit();
+                                preparedStatement.clearBatch();
+                                batchSize = 0;
+                            }
                         }
                     }
                 }
-                cellProgress.endStep();
-                if (i > lastRow) {
-                    break;
-                }
-            }
-            if (batchSize > 0) {
-                preparedStatement.executeBatch();
-                connection.commit();
-            }
+            };
+            readCells(reader, readColumns, tableWriter, progress == null ? new EmptyProgressVisitor() : progress);
+            // Insert the last rows
+            preparedStatement.executeBatch();
+            connection.commit();
+            preparedStatement.close();
             connection.setAutoCommit(true);
             return outputTable;
-        } catch (NoSuchElementException | NumberFormatException | IOException | SQLException ex) {
-            throw new SQLException("Unexpected word " + lastWord, ex);
+        } catch (NumberFormatException | IOException | SQLException ex) {
+            throw new SQLException(ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Add the cell centers of the asc file as topographic points, without database. The extract envelope and the
+     * down scale parameters are applied like the table import, no data cells are not added.
+     * Use {@link #readRaster(File)} and {@link ProfileBuilder#setTopographicRaster(TopographicRaster)} in order to
+     * use the grid without triangulation.
+     *
+     * @param fileName asc or asc.gz file
+     * @param profileBuilder Receiver of the topographic points
+     * @return Number of added points
+     * @throws IOException If the file cannot be read
+     */
+    public int readTopography(File fileName, final ProfileBuilder profileBuilder) throws IOException {
+        checkExtension(fileName);
+        try (ReadableByteChannel channel = openChannel(fileName)) {
+            AscByteReader reader = new AscByteReader(channel, Charset.forName(encoding));
+            readHeader(reader);
+            final int firstRow = getTableFirstRow();
+            final int lastRow = getTableLastRow();
+            final boolean[] readColumns = getTableColumns();
+            final int[] pointCount = new int[1];
+            readCells(reader, readColumns, new CellsConsumer() {
+                @Override
+                public boolean isRowRead(int i) {
+                    return (downScale == 1 || i % downScale == 0) && i >= firstRow && i <= lastRow;
+                }
+
+                @Override
+                public void accept(int blockFirstRow, int rowCount, double[] values) {
+                    int valueIndex = 0;
+                    for (int i = blockFirstRow; i < blockFirstRow + rowCount; i++) {
+                        if (!isRowRead(i)) {
+                            continue;
+                        }
+                        for (int j = 0; j < ncols; j++) {
+                            if (readColumns[j]) {
+                                double z = values[valueIndex++];
+                                if (Math.abs(noData - z) != 0) {
+                                    profileBuilder.addTopographicPoint(new Coordinate(xValue + j * cellSize + cellSize / 2,
+                                            yValue - i * cellSize - cellSize / 2, z));
+                                    pointCount[0]++;
+                                }
+                            }
+                        }
+                    }
+                }
+            }, new EmptyProgressVisitor());
+            return pointCount[0];
+        } catch (SQLException ex) {
+            // Not thrown without database
+            throw new IOException(ex);
+        } catch (NumberFormatException ex) {
+            throw new IOException(ex.getMessage(), ex);
+        }
+    }
+
+    private static void checkExtension(File fileName) throws IOException {
+        String name = fileName.getName().toLowerCase();
+        if (!name.endsWith(".asc") && !name.endsWith(".gz")) {
+            throw new IOException("The asc read driver supports only asc or gz extensions");
+        }
+    }
+
+    /**
+     * Read the asc file into a topographic raster, without database. The extract envelope and the down scale
+     * parameters are applied, no data cells are stored as NaN.
+     *
+     * @param fileName asc or asc.gz file
+     * @return Topographic raster of the cell centers
+     * @throws IOException If the file cannot be read
+     */
+    public TopographicRaster readRaster(File fileName) throws IOException {
+        checkExtension(fileName);
+        try (ReadableByteChannel channel = openChannel(fileName)) {
+            return readRaster(channel);
+        }
+    }
+
+    /**
+     * Read the ascii file from inputstream into a topographic raster
+     *
+     * @param inputStream asc content
+     * @return Topographic raster of the cell centers
+     * @throws IOException If the content cannot be read
+     */
+    public TopographicRaster readRaster(InputStream inputStream) throws IOException {
+        return readRaster(Channels.newChannel(inputStream));
+    }
+
+    private TopographicRaster readRaster(ReadableByteChannel channel) throws IOException {
+        AscByteReader reader = new AscByteReader(channel, Charset.forName(encoding));
+        readHeader(reader);
+        int firstRow = 0;
+        int firstCol = 0;
+        int lastRow = nrows - 1;
+        int lastCol = ncols - 1;
+        if (extractEnvelope != null) {
+            // Keep one more cell on each side in order to interpolate up to the envelope border
+            firstCol = Math.max(firstCol, (int) Math.floor((extractEnvelope.getMinX() - xValue) / cellSize) - 1);
+            lastCol = Math.min(lastCol, (int) Math.ceil((extractEnvelope.getMaxX() - xValue) / cellSize) + 1);
+            firstRow = Math.max(firstRow, nrows - (int) Math.ceil((extractEnvelope.getMaxY() - (yValue - cellSize * nrows)) / cellSize) - 1);
+            lastRow = Math.min(lastRow, nrows - (int) Math.ceil((extractEnvelope.getMinY() - (yValue - cellSize * nrows)) / cellSize) + 1);
+        }
+        // Kept cells are aligned on the down scale, like the table import
+        firstCol = (firstCol + downScale - 1) / downScale * downScale;
+        firstRow = (firstRow + downScale - 1) / downScale * downScale;
+        final int columns = lastCol >= firstCol ? (lastCol - firstCol) / downScale + 1 : 0;
+        final int rows = lastRow >= firstRow ? (lastRow - firstRow) / downScale + 1 : 0;
+        if (columns < 2 || rows < 2) {
+            throw new IOException("The extracted raster must contain at least 2 x 2 cells");
+        }
+        boolean[] readColumns = new boolean[ncols];
+        for (int j = firstCol; j <= lastCol; j += downScale) {
+            readColumns[j] = true;
+        }
+        final int rasterFirstRow = firstRow;
+        final int rasterLastRow = firstRow + (rows - 1) * downScale;
+        final float[] z = new float[columns * rows];
+        try {
+            readCells(reader, readColumns, new CellsConsumer() {
+                @Override
+                public boolean isRowRead(int i) {
+                    return i >= rasterFirstRow && i <= rasterLastRow && (i - rasterFirstRow) % downScale == 0;
+                }
+
+                @Override
+                public void accept(int blockFirstRow, int rowCount, double[] values) {
+                    int valueIndex = 0;
+                    for (int i = blockFirstRow; i < blockFirstRow + rowCount; i++) {
+                        if (!isRowRead(i)) {
+                            continue;
+                        }
+                        // The first row of the file is the northern one
+                        int row = rows - 1 - (i - rasterFirstRow) / downScale;
+                        for (int column = 0; column < columns; column++) {
+                            double value = values[valueIndex++];
+                            z[row * columns + column] = Math.abs(noData - value) != 0 ? (float) value : Float.NaN;
+                        }
+                    }
+                }
+            }, new EmptyProgressVisitor());
+        } catch (SQLException ex) {
+            // Not thrown without database
+            throw new IOException(ex);
+        } catch (NumberFormatException ex) {
+            throw new IOException(ex.getMessage(), ex);
         }
+        return new TopographicRaster(xValue + firstCol * cellSize + cellSize / 2,
+                yValue - rasterLastRow * cellSize - cellSize / 2, cellSize * downScale, columns, rows, z);
     }
 
     /**
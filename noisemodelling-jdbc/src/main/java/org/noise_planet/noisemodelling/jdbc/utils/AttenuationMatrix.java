@@ -0,0 +1,367 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.utilities.SpatialResultSet;
+import org.locationtech.jts.geom.Geometry;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Attenuation between receivers and sources, stored as a compressed sparse row matrix.
+ * A row holds the sources of a receiver, the octave band attenuation of each source is stored as a linear factor in
+ * single precision. The levels of the receivers for any number of time steps are obtained with a single pass over the
+ * matrix, by multiplying it with the linear emission of the sources at each time step.
+ * The matrix is read from the attenuation table exported by the noise map computation when the source identifier is
+ * kept (IDRECEIVER, IDSOURCE, HZ63 ... HZ8000).
+ */
+public class AttenuationMatrix {
+    public static final String[] ATTENUATION_FIELDS = new String[]{"HZ63", "HZ125", "HZ250", "HZ500", "HZ1000",
+            "HZ2000", "HZ4000", "HZ8000"};
+    public static final String[] EMISSION_FIELDS = new String[]{"LW63", "LW125", "LW250", "LW500", "LW1000",
+            "LW2000", "LW4000", "LW8000"};
+    /** Duration of the day in seconds */
+    public static final int DAY_DURATION = 86400;
+    /** Level of a frequency band without sound sources in dB */
+    public static final double NO_LEVEL = -99.0;
+    private static final int BAND_COUNT = ATTENUATION_FIELDS.length;
+
+    /** Receiver identifier of each row, sorted */
+    private final long[] receivers;
+    /** Index of the first non zero value of each row, then the number of non zero values */
+    private final int[] rowStart;
+    /** Source index of each non zero value */
+    private final int[] columns;
+    /** Linear attenuation of each band of the non zero values */
+    private final float[] attenuation;
+    /** Source identifier of each column */
+    private final long[] sources;
+
+    AttenuationMatrix(long[] receivers, int[] rowStart, int[] columns, float[] attenuation, long[] sources) {
+        this.receivers = receivers;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.attenuation = attenuation;
+        this.sources = sources;
+    }
+
+    /**
+     * Read the attenuation table with a single query
+     * @param connection Database connection
+     * @param attenuationTable Table with the fields IDRECEIVER, IDSOURCE, HZ63 ... HZ8000, the attenuation in dB
+     * @return Attenuation matrix
+     * @throws SQLException
+     */
+    public static AttenuationMatrix read(Connection connection, String attenuationTable) throws SQLException {
+        Map<Long, Integer> sourceIndex = new HashMap<>();
+        List<Long> sourceIds = new ArrayList<>();
+        int count = 0;
+        long[] entryReceivers = new long[1024];
+        int[] entryColumns = new int[1024];
+        float[] entryAttenuation = new float[1024 * BAND_COUNT];
+        StringBuilder query = new StringBuilder("SELECT IDRECEIVER, IDSOURCE");
+        for(String field : ATTENUATION_FIELDS) {
+            query.append(", ").append(field);
+        }
+        query.append(" FROM ").append(attenuationTable);
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery(query.toString())) {
+            while (rs.next()) {
+                if(count == entryReceivers.length) {
+                    final int capacity = count + (count >> 1);
+                    entryReceivers = Arrays.copyOf(entryReceivers, capacity);
+                    entryColumns = Arrays.copyOf(entryColumns, capacity);
+                    entryAttenuation = Arrays.copyOf(entryAttenuation, capacity * BAND_COUNT);
+                }
+                entryReceivers[count] = rs.getLong(1);
+                final long sourceId = rs.getLong(2);
+                Integer column = sourceIndex.get(sourceId);
+                if(column == null) {
+                    column = sourceIds.size();
+                    sourceIndex.put(sourceId, column);
+                    sourceIds.add(sourceId);
+                }
+                entryColumns[count] = column;
+                for(int band = 0; band < BAND_COUNT; band++) {
+                    entryAttenuation[count * BAND_COUNT + band] = (float) Math.pow(10, rs.getDouble(3 + band) / 10);
+                }
+                count++;
+            }
+        }
+        // Distinct receivers, sorted
+        long[] receivers = Arrays.copyOf(entryReceivers, count);
+        Arrays.sort(receivers);
+        int receiverCount = 0;
+        for(int i = 0; i < count; i++) {
+            if(receiverCount == 0 || receivers[receiverCount - 1] != receivers[i]) {
+                receivers[receiverCount++] = receivers[i];
+            }
+        }
+        receivers = Arrays.copyOf(receivers, receiverCount);
+        // Counting sort of the values by row, the values of a row are kept in the table order
+        int[] entryRows = new int[count];
+        int[] rowStart = new int[receiverCount + 1];
+        for(int i = 0; i < count; i++) {
+            entryRows[i] = Arrays.binarySearch(receivers, entryReceivers[i]);
+            rowStart[entryRows[i] + 1]++;
+        }
+        for(int row = 0; row < receiverCount; row++) {
+            rowStart[row + 1] += rowStart[row];
+        }
+        int[] next = Arrays.copyOf(rowStart, receiverCount);
+        int[] columns = new int[count];
+        float[] attenuation = new float[count * BAND_COUNT];
+        for(int i = 0; i < count; i++) {
+            final int position = next[entryRows[i]]++;
+            columns[position] = entryColumns[i];
+            System.arraycopy(entryAttenuation, i * BAND_COUNT, attenuation, position * BAND_COUNT, BAND_COUNT);
+        }
+        long[] sources = new long[sourceIds.size()];
+        for(int column = 0; column < sources.length; column++) {
+            sources[column] = sourceIds.get(column);
+        }
+        return new AttenuationMatrix(receivers, rowStart, columns, attenuation, sources);
+    }
+
+    public int getReceiverCount() {
+        return receivers.length;
+    }
+
+    public int getSourceCount() {
+        return sources.length;
+    }
+
+    /**
+     * @param column Source column
+     * @return Source identifier
+     */
+    public long getSource(int column) {
+        return sources[column];
+    }
+
+    /**
+     * @return Number of receiver-source couples
+     */
+    public int getNonZeroCount() {
+        return columns.length;
+    }
+
+    /**
+     * @param receiverId Receiver identifier
+     * @return Row of the receiver or -1 if the receiver does not have sources
+     */
+    public int getRow(long receiverId) {
+        final int row = Arrays.binarySearch(receivers, receiverId);
+        return row >= 0 ? row : -1;
+    }
+
+    /**
+     * Read the emission of the sources for each time bin of the day. The rows of the same source and time bin are
+     * summed, the rows with a time that is not the start of a time bin are ignored.
+     * @param connection Database connection
+     * @param sourcesTable Table with the fields PK, the source identifier, and LINK_ID
+     * @param sourcesLwTable Table with the fields LINK_ID, TIME, LW63 ... LW8000, the emission in dB
+     * @param timeBinSize Time bin duration in seconds
+     * @return Linear emission of each source, time bin and band
+     * @throws SQLException
+     */
+    public float[] readEmission(Connection connection, String sourcesTable, String sourcesLwTable,
+                                int timeBinSize) throws SQLException {
+        final int timeBinCount = getTimeBinCount(timeBinSize);
+        Map<Long, Integer> sourceIndex = new HashMap<>(sources.length * 2);
+        for(int column = 0; column < sources.length; column++) {
+            sourceIndex.put(sources[column], column);
+        }
+        // Columns of the sources of each link
+        Map<String, int[]> linkColumns = new HashMap<>();
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT PK, LINK_ID FROM " + sourcesTable)) {
+            while (rs.next()) {
+                Integer column = sourceIndex.get(rs.getLong(1));
+                if(column != null) {
+                    int[] columns = linkColumns.get(rs.getString(2));
+                    columns = columns == null ? new int[1] : Arrays.copyOf(columns, columns.length + 1);
+                    columns[columns.length - 1] = column;
+                    linkColumns.put(rs.getString(2), columns);
+                }
+            }
+        }
+        float[] emission = new float[sources.length * timeBinCount * BAND_COUNT];
+        StringBuilder query = new StringBuilder("SELECT LINK_ID, TIME");
+        for(String field : EMISSION_FIELDS) {
+            query.append(", ").append(field);
+        }
+        query.append(" FROM ").append(sourcesLwTable);
+        float[] lw = new float[BAND_COUNT];
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery(query.toString())) {
+            while (rs.next()) {
+                int[] columns = linkColumns.get(rs.getString(1));
+                final int time = rs.getInt(2);
+                if(columns == null || time < 0 || time >= DAY_DURATION || time % timeBinSize != 0) {
+                    continue;
+                }
+                for(int band = 0; band < BAND_COUNT; band++) {
+                    lw[band] = (float) Math.pow(10, rs.getDouble(3 + band) / 10);
+                }
+                for(int column : columns) {
+                    final int offset = (column * timeBinCount + time / timeBinSize) * BAND_COUNT;
+                    for(int band = 0; band < BAND_COUNT; band++) {
+                        emission[offset + band] += lw[band];
+                    }
+                }
+            }
+        }
+        return emission;
+    }
+
+    /**
+     * @param timeBinSize Time bin duration in seconds
+     * @return Number of time bins of the day
+     */
+    public static int getTimeBinCount(int timeBinSize) {
+        return (DAY_DURATION + timeBinSize - 1) / timeBinSize;
+    }
+
+    /**
+     * Add the sound power received by a receiver for each time step
+     * @param row Receiver row
+     * @param emission Linear emission of each source (column), time step and band
+     * @param stepCount Number of time steps
+     * @param levels Linear level of each time step and band, the received power is added to the values
+     */
+    public void multiply(int row, float[] emission, int stepCount, double[] levels) {
+        final int sourceStride = stepCount * BAND_COUNT;
+        for(int entry = rowStart[row]; entry < rowStart[row + 1]; entry++) {
+            final int attenuationOffset = entry * BAND_COUNT;
+            final int sourceOffset = columns[entry] * sourceStride;
+            for(int step = 0; step < sourceStride; step += BAND_COUNT) {
+                for(int band = 0; band < BAND_COUNT; band++) {
+                    levels[step + band] += (double) attenuation[attenuationOffset + band] *
+                            emission[sourceOffset + step + band];
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the noise levels of the receivers for each time bin of the day. The attenuation matrix is read once,
+     * the levels of the receivers are computed by chunks with a pool of threads while the next receivers are read.
+     * The receivers without sources are not written in the output table.
+     * @param connection Database connection
+     * @param sourcesTable Table with the fields PK, the source identifier, and LINK_ID
+     * @param sourcesLwTable Table with the fields LINK_ID, TIME, LW63 ... LW8000, the emission in dB
+     * @param attenuationTable Table with the fields IDRECEIVER, IDSOURCE, HZ63 ... HZ8000, the attenuation in dB
+     * @param receiversTable Table with the fields PK and THE_GEOM
+     * @param outputTable Created table with the fields PK, IDRECEIVER, THE_GEOM, HZ63 ... HZ8000, TIME
+     * @param timeBinSize Time bin duration in seconds
+     * @param threadCount Number of threads computing the levels, 1 to compute the levels in the calling thread
+     * @throws SQLException
+     */
+    public static void makeNoiseLevelTable(Connection connection, String sourcesTable, String sourcesLwTable,
+                                           String attenuationTable, String receiversTable, String outputTable,
+                                           int timeBinSize, int threadCount) throws SQLException {
+        final AttenuationMatrix matrix = read(connection, attenuationTable);
+        final float[] emission = matrix.readEmission(connection, sourcesTable, sourcesLwTable, timeBinSize);
+        final int timeBinCount = getTimeBinCount(timeBinSize);
+
+        StringBuilder createTableQuery = new StringBuilder("CREATE TABLE " + outputTable +
+                " (PK integer PRIMARY KEY AUTO_INCREMENT, IDRECEIVER integer, THE_GEOM geometry");
+        StringBuilder insertIntoQuery = new StringBuilder("INSERT INTO " + outputTable + " VALUES(DEFAULT, ?, ?");
+        for(String field : ATTENUATION_FIELDS) {
+            createTableQuery.append(", ").append(field).append(" double precision");
+            insertIntoQuery.append(", ?");
+        }
+        createTableQuery.append(", TIME int)");
+        insertIntoQuery.append(", ?)");
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS " + outputTable);
+            st.execute(createTableQuery.toString());
+        }
+        final double noLevel = Math.pow(10, NO_LEVEL / 10);
+        try(Statement st = connection.createStatement();
+            PreparedStatement ps = connection.prepareStatement(insertIntoQuery.toString())) {
+            final SpatialResultSet rs = st.executeQuery("SELECT PK, THE_GEOM FROM " + receiversTable)
+                    .unwrap(SpatialResultSet.class);
+            new MakeLWTable.EmissionPipeline<Receiver>() {
+                @Override
+                Receiver read() throws SQLException {
+                    while (rs.next()) {
+                        final long pk = rs.getLong(1);
+                        final int row = matrix.getRow(pk);
+                        if(row >= 0) {
+                            return new Receiver(pk, rs.getGeometry(2), row);
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                void compute(Receiver receiver) {
+                    double[] levels = new double[timeBinCount * BAND_COUNT];
+                    Arrays.fill(levels, noLevel);
+                    matrix.multiply(receiver.row, emission, timeBinCount, levels);
+                    for(int i = 0; i < levels.length; i++) {
+                        levels[i] = 10 * Math.log10(levels[i]);
+                    }
+                    receiver.levels = levels;
+                }
+
+                @Override
+                void write(List<Receiver> chunk) throws SQLException {
+                    int batchSize = 0;
+                    for(Receiver receiver : chunk) {
+                        for(int timeBin = 0; timeBin < timeBinCount; timeBin++) {
+                            int cursor = 1;
+                            ps.setLong(cursor++, receiver.pk);
+                            ps.setObject(cursor++, receiver.geometry);
+                            for(int band = 0; band < BAND_COUNT; band++) {
+                                ps.setDouble(cursor++, receiver.levels[timeBin * BAND_COUNT + band]);
+                            }
+                            ps.setInt(cursor, timeBin * timeBinSize);
+                            ps.addBatch();
+                            if(++batchSize >= MakeLWTable.CHUNK_SIZE) {
+                                ps.executeBatch();
+                                batchSize = 0;
+                            }
+                        }
+                    }
+                    if(batchSize > 0) {
+                        ps.executeBatch();
+                    }
+                }
+            }.run(threadCount);
+        }
+    }
+
+    private static class Receiver {
+        final long pk;
+        final Geometry geometry;
+        final int row;
+        double[] levels;
+
+        Receiver(long pk, Geometry geometry, int row) {
+            this.pk = pk;
+            this.geometry = geometry;
+            this.row = row;
+        }
+    }
+}
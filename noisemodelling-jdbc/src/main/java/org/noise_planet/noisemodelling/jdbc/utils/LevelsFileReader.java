@@ -0,0 +1,317 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.utilities.TableLocation;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+
+/**
+ * Read receiver levels written by {@link LevelsFileWriter}.
+ * The file is read through memory mapped windows, block by block:
+ * <pre>
+ * try(LevelsFileReader reader = new LevelsFileReader(file)) {
+ *     while(reader.next()) {
+ *         long[] receivers = reader.getReceiverIds();
+ *         float[] laeq = reader.getColumn(reader.getColumnIndex("LAEQ"));
+ *         // use the first reader.getBlockRowCount() values
+ *     }
+ * }
+ * </pre>
+ * This class is not thread safe.
+ */
+public class LevelsFileReader implements Closeable {
+    /** Size of the memory mapped window, in bytes */
+    static final int WINDOW_SIZE = 64 * 1024 * 1024;
+    static final int BATCH_MAX_SIZE = 500;
+
+    private final FileChannel channel;
+    private final long fileSize;
+    private final boolean hasSourceId;
+    private final List<String> columnNames;
+    private final long dataPosition;
+    private MappedByteBuffer window;
+    private long windowPosition = 0;
+    private long position;
+    // current block
+    private int blockRowCount = 0;
+    private long[] receiverIds = new long[0];
+    private long[] sourceIds = new long[0];
+    private float[][] columns;
+
+    /**
+     * @param file File written by {@link LevelsFileWriter}
+     * @throws IOException Unable to read the file or wrong file format
+     */
+    public LevelsFileReader(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            fileSize = channel.size();
+            ByteBuffer buffer = map(0, Integer.BYTES * 3 + 1);
+            if (buffer.getInt() != LevelsFileWriter.MAGIC) {
+                throw new IOException(file + " is not a receiver levels file");
+            }
+            int version = buffer.getInt();
+            if (version != LevelsFileWriter.VERSION) {
+                throw new IOException("Unsupported receiver levels file version " + version);
+            }
+            hasSourceId = buffer.get() != 0;
+            int columnCount = buffer.getInt();
+            position = Integer.BYTES * 3 + 1;
+            columnNames = new ArrayList<>(columnCount);
+            for (int column = 0; column < columnCount; column++) {
+                int length = map(position, Short.BYTES).getShort();
+                position += Short.BYTES;
+                byte[] name = new byte[length];
+                map(position, length).get(name);
+                position += length;
+                columnNames.add(new String(name, StandardCharsets.UTF_8));
+            }
+            dataPosition = position;
+            columns = new float[columnCount][0];
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @param start Position in the file
+     * @param length Number of bytes to read
+     * @return Buffer positioned at start with at least length remaining bytes
+     */
+    private ByteBuffer map(long start, int length) throws IOException {
+        if(start + length > fileSize) {
+            throw new IOException("Unexpected end of file");
+        }
+        if(window == null || start < windowPosition || start + length > windowPosition + window.limit()) {
+            long windowLength = Math.min(Math.max(WINDOW_SIZE, length), fileSize - start);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, start, windowLength);
+            window.order(LevelsFileWriter.BYTE_ORDER);
+            windowPosition = start;
+        }
+        window.position((int) (start - windowPosition));
+        return window;
+    }
+
+    /**
+     * @return True if rows contain a source identifier
+     */
+    public boolean hasSourceId() {
+        return hasSourceId;
+    }
+
+    /**
+     * @return Name of the level columns
+     */
+    public List<String> getColumnNames() {
+        return Collections.unmodifiableList(columnNames);
+    }
+
+    /**
+     * @param columnName Column name (case insensitive)
+     * @return Index of the column or -1 if not found
+     */
+    public int getColumnIndex(String columnName) {
+        for(int column = 0; column < columnNames.size(); column++) {
+            if(columnNames.get(column).equalsIgnoreCase(columnName)) {
+                return column;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Read the next block of rows
+     * @return False if the end of file has been reached
+     * @throws IOException Read error
+     */
+    public boolean next() throws IOException {
+        if(position >= fileSize) {
+            blockRowCount = 0;
+            return false;
+        }
+        int rowCount = map(position, Integer.BYTES).getInt();
+        int blockSize = Integer.BYTES + rowCount * ((hasSourceId ? 2 : 1) * Long.BYTES +
+                columns.length * Float.BYTES);
+        ByteBuffer buffer = map(position, blockSize);
+        buffer.getInt();
+        if(receiverIds.length < rowCount) {
+            receiverIds = new long[rowCount];
+            sourceIds = new long[hasSourceId ? rowCount : 0];
+            for(int column = 0; column < columns.length; column++) {
+                columns[column] = new float[rowCount];
+            }
+        }
+        buffer.asLongBuffer().get(receiverIds, 0, rowCount);
+        buffer.position(buffer.position() + rowCount * Long.BYTES);
+        if(hasSourceId) {
+            buffer.asLongBuffer().get(sourceIds, 0, rowCount);
+            buffer.position(buffer.position() + rowCount * Long.BYTES);
+        }
+        for (float[] column : columns) {
+            buffer.asFloatBuffer().get(column, 0, rowCount);
+            buffer.position(buffer.position() + rowCount * Float.BYTES);
+        }
+        position += blockSize;
+        blockRowCount = rowCount;
+        return true;
+    }
+
+    /**
+     * Read again from the first block
+     */
+    public void rewind() {
+        position = dataPosition;
+        blockRowCount = 0;
+    }
+
+    /**
+     * @return Number of rows in the current block
+     */
+    public int getBlockRowCount() {
+        return blockRowCount;
+    }
+
+    /**
+     * @return Receiver identifiers of the current block, only the first {@link #getBlockRowCount()} values are valid
+     */
+    public long[] getReceiverIds() {
+        return receiverIds;
+    }
+
+    /**
+     * @return Source identifiers of the current block, only the first {@link #getBlockRowCount()} values are valid
+     */
+    public long[] getSourceIds() {
+        return sourceIds;
+    }
+
+    /**
+     * @param columnIndex Column index
+     * @return Values of the current block, only the first {@link #getBlockRowCount()} values are valid
+     */
+    public float[] getColumn(int columnIndex) {
+        return columns[columnIndex];
+    }
+
+    /**
+     * Read a level column of all rows. If sources are not merged, the levels of the sources are summed.
+     * @param columnName Column name (ex: LAEQ)
+     * @return Level in dB by receiver identifier
+     * @throws IOException Read error or unknown column
+     */
+    public Map<Long, Double> readLevels(String columnName) throws IOException {
+        int columnIndex = getColumnIndex(columnName);
+        if(columnIndex < 0) {
+            throw new IOException("Column " + columnName + " not found in " + columnNames);
+        }
+        Map<Long, Double> levels = new HashMap<>();
+        rewind();
+        while(next()) {
+            float[] values = columns[columnIndex];
+            for(int row = 0; row < blockRowCount; row++) {
+                double value = values[row];
+                if(hasSourceId) {
+                    levels.merge(receiverIds[row], value, (a, b) -> 10 * Math.log10(Math.pow(10, a / 10) +
+                            Math.pow(10, b / 10)));
+                } else {
+                    levels.put(receiverIds[row], value);
+                }
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Create a table with the content of the file, using the same columns as the LDEN result tables.
+     * @param connection Database connection
+     * @param tableName Table to create
+     * @throws SQLException Database error
+     * @throws IOException Read error
+     */
+    public void copyToTable(Connection connection, String tableName) throws SQLException, IOException {
+        String table = TableLocation.parse(tableName).toString();
+        StringBuilder createTable = new StringBuilder("CREATE TABLE ");
+        createTable.append(table);
+        createTable.append(" (IDRECEIVER bigint NOT NULL");
+        StringBuilder insert = new StringBuilder("INSERT INTO ");
+        insert.append(table);
+        insert.append(" VALUES (?");
+        if(hasSourceId) {
+            createTable.append(", IDSOURCE bigint NOT NULL");
+            insert.append(", ?");
+        }
+        for(String columnName : columnNames) {
+            createTable.append(", ");
+            createTable.append(columnName);
+            createTable.append(" REAL");
+            insert.append(", ?");
+        }
+        createTable.append(")");
+        insert.append(")");
+        try(Statement st = connection.createStatement()) {
+            st.execute(createTable.toString());
+        }
+        rewind();
+        try(PreparedStatement ps = connection.prepareStatement(insert.toString())) {
+            int batchSize = 0;
+            while (next()) {
+                for (int row = 0; row < blockRowCount; row++) {
+                    int parameterIndex = 1;
+                    ps.setLong(parameterIndex++, receiverIds[row]);
+                    if (hasSourceId) {
+                        ps.setLong(parameterIndex++, sourceIds[row]);
+                    }
+                    for (float[] column : columns) {
+                        ps.setFloat(parameterIndex++, column[row]);
+                    }
+                    ps.addBatch();
+                    batchSize++;
+                    if (batchSize >= BATCH_MAX_SIZE) {
+                        ps.executeBatch();
+                        ps.clearBatch();
+                        batchSize = 0;
+                    }
+                }
+            }
+            if (batchSize > 0) {
+                ps.executeBatch();
+            }
+        }
+        try(Statement st = connection.createStatement()) {
+            if (hasSourceId) {
+                st.execute("CREATE INDEX ON " + table + " (IDRECEIVER)");
+            } else {
+                st.execute("ALTER TABLE " + table + " ADD PRIMARY KEY(IDRECEIVER)");
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+}
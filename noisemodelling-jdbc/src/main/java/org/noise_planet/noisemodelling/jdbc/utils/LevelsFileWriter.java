@@ -0,0 +1,144 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Write receiver levels into a columnar binary file.
+ * The file starts with a header:
+ * <ul>
+ *     <li>magic number {@link #MAGIC}, format version (int)</li>
+ *     <li>1 if the rows contain a source identifier, 0 otherwise (byte)</li>
+ *     <li>number of level columns (int), then the name of each column (short length and UTF-8 bytes)</li>
+ * </ul>
+ * Followed by blocks of rows, each block is stored column by column:
+ * <ul>
+ *     <li>number of rows in the block (int)</li>
+ *     <li>receiver identifiers (long[])</li>
+ *     <li>source identifiers (long[]) if the file contains source identifiers</li>
+ *     <li>values of each level column (float[])</li>
+ * </ul>
+ * All values are little endian.
+ * This class is not thread safe.
+ */
+public class LevelsFileWriter implements Closeable {
+    public static final int MAGIC = 0x4E4D4C56; // NMLV
+    public static final int VERSION = 1;
+    public static final String FILE_EXTENSION = ".nmlv";
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private final FileChannel channel;
+    private final boolean hasSourceId;
+    private final int columnCount;
+    private ByteBuffer buffer;
+    private long rowCount = 0;
+
+    /**
+     * @param file Output file, overwritten if exists
+     * @param hasSourceId True if rows contain a source identifier
+     * @param columnNames Name of the level columns (ex: HZ63, ..., LAEQ, LEQ)
+     * @throws IOException Unable to create the file
+     */
+    public LevelsFileWriter(File file, boolean hasSourceId, List<String> columnNames) throws IOException {
+        this.hasSourceId = hasSourceId;
+        this.columnCount = columnNames.size();
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        int headerSize = Integer.BYTES * 3 + 1;
+        for(String columnName : columnNames) {
+            headerSize += Short.BYTES + columnName.getBytes(StandardCharsets.UTF_8).length;
+        }
+        ByteBuffer header = ByteBuffer.allocate(headerSize).order(BYTE_ORDER);
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.put((byte) (hasSourceId ? 1 : 0));
+        header.putInt(columnCount);
+        for(String columnName : columnNames) {
+            byte[] name = columnName.getBytes(StandardCharsets.UTF_8);
+            header.putShort((short) name.length);
+            header.put(name);
+        }
+        header.flip();
+        writeFully(header);
+    }
+
+    /**
+     * @param rowCount Number of rows
+     * @return Size in bytes of a block
+     */
+    int getBlockSize(int rowCount) {
+        return Integer.BYTES + rowCount * ((hasSourceId ? 2 : 1) * Long.BYTES + columnCount * Float.BYTES);
+    }
+
+    /**
+     * Append a block of rows
+     * @param receiverIds Receiver identifier of each row
+     * @param sourceIds Source identifier of each row, ignored if the file does not contain source identifiers
+     * @param values Level values of each row, in the order of the column names
+     * @param rowCount Number of rows to write
+     * @throws IOException Write error
+     */
+    public void write(long[] receiverIds, long[] sourceIds, double[][] values, int rowCount) throws IOException {
+        if(rowCount == 0) {
+            return;
+        }
+        int blockSize = getBlockSize(rowCount);
+        if(buffer == null || buffer.capacity() < blockSize) {
+            buffer = ByteBuffer.allocateDirect(blockSize).order(BYTE_ORDER);
+        }
+        buffer.clear();
+        buffer.putInt(rowCount);
+        for(int row = 0; row < rowCount; row++) {
+            buffer.putLong(receiverIds[row]);
+        }
+        if(hasSourceId) {
+            for(int row = 0; row < rowCount; row++) {
+                buffer.putLong(sourceIds[row]);
+            }
+        }
+        for(int column = 0; column < columnCount; column++) {
+            for(int row = 0; row < rowCount; row++) {
+                buffer.putFloat((float) values[row][column]);
+            }
+        }
+        buffer.flip();
+        writeFully(buffer);
+        this.rowCount += rowCount;
+    }
+
+    private void writeFully(ByteBuffer byteBuffer) throws IOException {
+        while(byteBuffer.hasRemaining()) {
+            channel.write(byteBuffer);
+        }
+    }
+
+    /**
+     * @return Number of rows written
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
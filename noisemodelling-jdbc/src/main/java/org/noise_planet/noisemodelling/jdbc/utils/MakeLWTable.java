@@ -2,25 +2,46 @@ package org.noise_planet.noisemodelling.jdbc.utils;
 
 import org.h2gis.functions.spatial.convert.ST_Force3D;
 import org.h2gis.functions.spatial.edit.ST_UpdateZ;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.h2gis.utilities.TableLocation;
 import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.LineString;
 import org.noise_planet.noisemodelling.emission.railway.RailWayParameters;
+import org.noise_planet.noisemodelling.emission.road.cnossos.RoadCnossosParameters;
+import org.noise_planet.noisemodelling.jdbc.LDENConfig;
+import org.noise_planet.noisemodelling.jdbc.LDENPropagationProcessData;
 import org.noise_planet.noisemodelling.jdbc.RailWayLWIterator;
 import org.noise_planet.noisemodelling.pathfinder.CnossosPropagationData;
 
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
- * Functions to generate Sound source table from traffic tables
+ * Functions to generate Sound source table from traffic tables.
+ * The source table is read by chunks, the emission of a chunk is computed by the worker threads while the next chunk
+ * is read, then the rows of the chunk are inserted with a single batch. The rows are inserted in the order of the
+ * source table whatever the number of threads.
  */
 public class MakeLWTable {
+    /** Number of sources read before computing their emission */
+    public static final int CHUNK_SIZE = 4096;
+    /** Height of the road sources in meters */
+    public static final double ROAD_SOURCE_HEIGHT = 0.05;
 
     /**
-     * Generate Train emission from train geometry tracks and train traffic
+     * Generate Train emission from train geometry tracks and train traffic, using all the available processors
      * @param connection
      * @param railSectionTableName
      * @param railTrafficTableName
@@ -28,6 +49,35 @@ public class MakeLWTable {
      * @throws SQLException
      */
     public static void makeTrainLWTable(Connection connection, String railSectionTableName, String railTrafficTableName, String outputTable) throws SQLException {
+        makeTrainLWTable(connection, railSectionTableName, railTrafficTableName, outputTable,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Generate Train emission from train geometry tracks and train traffic
+     * @param connection
+     * @param railSectionTableName
+     * @param railTrafficTableName
+     * @param outputTable
+     * @param threadCount Number of threads computing the emission, 1 to compute the emission in the calling thread
+     * @throws SQLException
+     */
+    public static void makeTrainLWTable(Connection connection, String railSectionTableName, String railTrafficTableName, String outputTable, int threadCount) throws SQLException {
+        makeTrainLWTable(connection, railSectionTableName, railTrafficTableName, outputTable, threadCount, CHUNK_SIZE);
+    }
+
+    /**
+     * Generate Train emission from train geometry tracks and train traffic
+     * @param connection
+     * @param railSectionTableName
+     * @param railTrafficTableName
+     * @param outputTable
+     * @param threadCount Number of threads computing the emission, 1 to compute the emission in the calling thread
+     * @param chunkSize Number of tracks read before computing their emission
+     * @throws SQLException
+     */
+    static void makeTrainLWTable(Connection connection, String railSectionTableName, String railTrafficTableName,
+                                 String outputTable, int threadCount, int chunkSize) throws SQLException {
 
         // drop table LW_RAILWAY if exists and the create and prepare the table
         connection.createStatement().execute("drop table if exists " + outputTable);
@@ -69,104 +119,379 @@ public class MakeLWTable {
         insertIntoQuery.append(")");
         connection.createStatement().execute(createTableQuery.toString());
 
-        // Get Class to compute LW
-        RailWayLWIterator railWayLWIterator = new RailWayLWIterator(connection,railSectionTableName, railTrafficTableName);
-
-        while (railWayLWIterator.hasNext()) {
-            RailWayLWIterator.RailWayLWGeom railWayLWGeom = railWayLWIterator.next();
-
-            RailWayParameters railWayLWDay = railWayLWGeom.getRailWayLWDay();
-            RailWayParameters railWayLWEvening = railWayLWGeom.getRailWayLWEvening();
-            RailWayParameters railWayLWNight = railWayLWGeom.getRailWayLWNight();
-            List<LineString> geometries = railWayLWGeom.getRailWayLWGeometry();
-
-            int pk = railWayLWGeom.getPK();
-            double[] LWDay = new double[CnossosPropagationData.DEFAULT_FREQUENCIES_THIRD_OCTAVE.length];
-            double[] LWEvening = new double[CnossosPropagationData.DEFAULT_FREQUENCIES_THIRD_OCTAVE.length];
-            double[] LWNight = new double[CnossosPropagationData.DEFAULT_FREQUENCIES_THIRD_OCTAVE.length];
-            Arrays.fill(LWDay, -99.00);
-            Arrays.fill(LWEvening, -99.00);
-            Arrays.fill(LWNight, -99.00);
-            double heightSource = 0;
-            int directivityId = 0;
-            boolean day = (railWayLWDay.getRailwaySourceList().size()>0);
-            boolean evening = (railWayLWEvening.getRailwaySourceList().size()>0);
-            boolean night = (railWayLWNight.getRailwaySourceList().size()>0);
-                for (int iSource = 0; iSource < 6; iSource++) {
-
-                heightSource = 0;
-                switch (iSource) {
-                    case 0:
-                        if (day) LWDay = railWayLWDay.getRailwaySourceList().get("ROLLING").getlW();
-                        if (evening) LWEvening = railWayLWEvening.getRailwaySourceList().get("ROLLING").getlW();
-                        if (night) LWNight = railWayLWNight.getRailwaySourceList().get("ROLLING").getlW();
-                        if (day) heightSource = 4; //railWayLWDay.getRailwaySourceList().get("ROLLING").getSourceHeight();
-                        directivityId = 1;
-                        break;
-                    case 1:
-                        if (day) LWDay = railWayLWDay.getRailwaySourceList().get("TRACTIONA").getlW();
-                        if (evening) LWEvening = railWayLWEvening.getRailwaySourceList().get("TRACTIONA").getlW();
-                        if (night) LWNight = railWayLWNight.getRailwaySourceList().get("TRACTIONA").getlW();
-                        heightSource = 0.5;
-                        directivityId = 2;
-                        break;
-                    case 2:
-                        if (day) LWDay = railWayLWDay.getRailwaySourceList().get("TRACTIONB").getlW();
-                        if (evening) LWEvening = railWayLWEvening.getRailwaySourceList().get("TRACTIONB").getlW();
-                        if (night) LWNight = railWayLWNight.getRailwaySourceList().get("TRACTIONB").getlW();
-                        heightSource = 4;
-                        directivityId = 3;
-                        break;
-                    case 3:
-                        if (day) LWDay = railWayLWDay.getRailwaySourceList().get("AERODYNAMICA").getlW();
-                        if (evening) LWEvening = railWayLWEvening.getRailwaySourceList().get("AERODYNAMICA").getlW();
-                        if (night)  LWNight = railWayLWNight.getRailwaySourceList().get("AERODYNAMICA").getlW();
-                        heightSource = 0.5;
-                        directivityId = 4;
-                        break;
-                    case 4:
-                        if (day) LWDay = railWayLWDay.getRailwaySourceList().get("AERODYNAMICB").getlW();
-                        if (evening) LWEvening = railWayLWEvening.getRailwaySourceList().get("AERODYNAMICB").getlW();
-                        if (night)  LWNight = railWayLWNight.getRailwaySourceList().get("AERODYNAMICB").getlW();
-                        heightSource = 4;
-                        directivityId = 5;
-                        break;
-                    case 5:
-                        if (day) LWDay = railWayLWDay.getRailwaySourceList().get("BRIDGE").getlW();
-                        if (evening) LWEvening = railWayLWEvening.getRailwaySourceList().get("BRIDGE").getlW();
-                        if (night)  LWNight = railWayLWNight.getRailwaySourceList().get("BRIDGE").getlW();
-                        heightSource = 0.5;
-                        directivityId = 6;
-                        break;
+        // Get Class to compute LW, the emission is computed by the worker threads
+        final RailWayLWIterator railWayLWIterator = new RailWayLWIterator(connection,railSectionTableName, railTrafficTableName);
+        railWayLWIterator.setComputeEmission(false);
+
+        try(PreparedStatement ps = connection.prepareStatement(insertIntoQuery.toString())) {
+            new EmissionPipeline<RailTrack>(chunkSize) {
+                @Override
+                RailTrack read() {
+                    return railWayLWIterator.hasNext() ? new RailTrack(railWayLWIterator.next()) : null;
                 }
 
-                PreparedStatement ps = connection.prepareStatement(insertIntoQuery.toString());
-                for (Geometry trackGeometry : geometries) {
+                @Override
+                void compute(RailTrack track) throws IOException {
+                    railWayLWIterator.computeEmission(track.railWayLWGeom);
+                    track.rows = makeRailSources(track.railWayLWGeom);
+                }
 
-                    Geometry sourceGeometry = ST_UpdateZ.updateZ(ST_Force3D.force3D(trackGeometry), heightSource).copy() ;
+                @Override
+                void write(List<RailTrack> chunk) throws SQLException {
+                    for(RailTrack track : chunk) {
+                        for(RailSource source : track.rows) {
+                            int cursor = 1;
+                            ps.setInt(cursor++, track.railWayLWGeom.getPK());
+                            ps.setObject(cursor++, source.geometry);
+                            ps.setInt(cursor++, source.directivityId);
+                            ps.setDouble(cursor++, track.railWayLWGeom.getGs());
+                            for (double v : source.lwDay) {
+                                ps.setDouble(cursor++, v);
+                            }
+                            for (double v : source.lwEvening) {
+                                ps.setDouble(cursor++, v);
+                            }
+                            for (double v : source.lwNight) {
+                                ps.setDouble(cursor++, v);
+                            }
+                            ps.addBatch();
+                        }
+                    }
+                    ps.executeBatch();
+                }
+            }.run(threadCount);
+        } catch (NoSuchElementException ex) {
+            // Traffic table read error
+            throw new SQLException(ex.getMessage(), ex);
+        }
 
-                    int cursor = 1;
-                    ps.setInt(cursor++, pk);
-                    ps.setObject(cursor++, sourceGeometry);
-                    ps.setInt(cursor++, directivityId);
-                    ps.setDouble(cursor++, railWayLWGeom.getGs());
-                    for (double v : LWDay) {
-                        ps.setDouble(cursor++, v);
+        // Add primary key to the LW table
+        connection.createStatement().execute("ALTER TABLE "+outputTable+" ADD PK INT AUTO_INCREMENT PRIMARY KEY;");
+    }
+
+    /**
+     * @param railWayLWGeom Track with computed emission
+     * @return Rows of the rail source table, for each source type (rolling, traction A..) a row per track geometry
+     */
+    private static List<RailSource> makeRailSources(RailWayLWIterator.RailWayLWGeom railWayLWGeom) {
+        RailWayParameters railWayLWDay = railWayLWGeom.getRailWayLWDay();
+        RailWayParameters railWayLWEvening = railWayLWGeom.getRailWayLWEvening();
+        RailWayParameters railWayLWNight = railWayLWGeom.getRailWayLWNight();
+        List<LineString> geometries = railWayLWGeom.getRailWayLWGeometry();
+        List<RailSource> sources = new ArrayList<>(6 * geometries.size());
+
+        double[] LWDay = new double[CnossosPropagationData.DEFAULT_FREQUENCIES_THIRD_OCTAVE.length];
+        double[] LWEvening = new double[CnossosPropagationData.DEFAULT_FREQUENCIES_THIRD_OCTAVE.length];
+        double[] LWNight = new double[CnossosPropagationData.DEFAULT_FREQUENCIES_THIRD_OCTAVE.length];
+        Arrays.fill(LWDay, -99.00);
+        Arrays.fill(LWEvening, -99.00);
+        Arrays.fill(LWNight, -99.00);
+        double heightSource = 0;
+        int directivityId = 0;
+        boolean day = (railWayLWDay.getRailwaySourceList().size()>0);
+        boolean evening = (railWayLWEvening.getRailwaySourceList().size()>0);
+        boolean night = (railWayLWNight.getRailwaySourceList().size()>0);
+        for (int iSource = 0; iSource < 6; iSource++) {
+
+            heightSource = 0;
+            switch (iSource) {
+                case 0:
+                    if (day) LWDay = railWayLWDay.getRailwaySourceList().get("ROLLING").getlW();
+                    if (evening) LWEvening = railWayLWEvening.getRailwaySourceList().get("ROLLING").getlW();
+                    if (night) LWNight = railWayLWNight.getRailwaySourceList().get("ROLLING").getlW();
+                    if (day) heightSource = 4; //railWayLWDay.getRailwaySourceList().get("ROLLING").getSourceHeight();
+                    directivityId = 1;
+                    break;
+                case 1:
+                    if (day) LWDay = railWayLWDay.getRailwaySourceList().get("TRACTIONA").getlW();
+                    if (evening) LWEvening = railWayLWEvening.getRailwaySourceList().get("TRACTIONA").getlW();
+                    if (night) LWNight = railWayLWNight.getRailwaySourceList().get("TRACTIONA").getlW();
+                    heightSource = 0.5;
+                    directivityId = 2;
+                    break;
+                case 2:
+                    if (day) LWDay = railWayLWDay.getRailwaySourceList().get("TRACTIONB").getlW();
+                    if (evening) LWEvening = railWayLWEvening.getRailwaySourceList().get("TRACTIONB").getlW();
+                    if (night) LWNight = railWayLWNight.getRailwaySourceList().get("TRACTIONB").getlW();
+                    heightSource = 4;
+                    directivityId = 3;
+                    break;
+                case 3:
+                    if (day) LWDay = railWayLWDay.getRailwaySourceList().get("AERODYNAMICA").getlW();
+                    if (evening) LWEvening = railWayLWEvening.getRailwaySourceList().get("AERODYNAMICA").getlW();
+                    if (night)  LWNight = railWayLWNight.getRailwaySourceList().get("AERODYNAMICA").getlW();
+                    heightSource = 0.5;
+                    directivityId = 4;
+                    break;
+                case 4:
+                    if (day) LWDay = railWayLWDay.getRailwaySourceList().get("AERODYNAMICB").getlW();
+                    if (evening) LWEvening = railWayLWEvening.getRailwaySourceList().get("AERODYNAMICB").getlW();
+                    if (night)  LWNight = railWayLWNight.getRailwaySourceList().get("AERODYNAMICB").getlW();
+                    heightSource = 4;
+                    directivityId = 5;
+                    break;
+                case 5:
+                    if (day) LWDay = railWayLWDay.getRailwaySourceList().get("BRIDGE").getlW();
+                    if (evening) LWEvening = railWayLWEvening.getRailwaySourceList().get("BRIDGE").getlW();
+                    if (night)  LWNight = railWayLWNight.getRailwaySourceList().get("BRIDGE").getlW();
+                    heightSource = 0.5;
+                    directivityId = 6;
+                    break;
+            }
+
+            for (Geometry trackGeometry : geometries) {
+                Geometry sourceGeometry = ST_UpdateZ.updateZ(ST_Force3D.force3D(trackGeometry), heightSource).copy() ;
+                sources.add(new RailSource(sourceGeometry, directivityId, LWDay, LWEvening, LWNight));
+            }
+        }
+        return sources;
+    }
+
+    /**
+     * Generate Road emission from the road traffic table, using all the available processors.
+     * @param connection
+     * @param roadsTableName Road traffic table, with an integer primary key. See
+     *                       {@link LDENPropagationProcessData#getRoadCnossosParameters} for the recognized columns
+     * @param outputTable Output table with the primary key of the road, the road geometry at 0.05 m and the day,
+     *                    evening and night emission in dB for each frequency of the configuration
+     * @param ldenConfig Configuration, coefficient version and frequencies
+     * @throws SQLException
+     */
+    public static void makeRoadLWTable(Connection connection, String roadsTableName, String outputTable,
+                                       LDENConfig ldenConfig) throws SQLException {
+        makeRoadLWTable(connection, roadsTableName, outputTable, ldenConfig,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Generate Road emission from the road traffic table. The road slope is not known, it is set to 0 %.
+     * @param connection
+     * @param roadsTableName Road traffic table, with an integer primary key. See
+     *                       {@link LDENPropagationProcessData#getRoadCnossosParameters} for the recognized columns
+     * @param outputTable Output table with the primary key of the road, the road geometry at 0.05 m and the day,
+     *                    evening and night emission in dB for each frequency of the configuration
+     * @param ldenConfig Configuration, coefficient version and frequencies
+     * @param threadCount Number of threads computing the emission, 1 to compute the emission in the calling thread
+     * @throws SQLException
+     */
+    public static void makeRoadLWTable(Connection connection, String roadsTableName, String outputTable,
+                                       LDENConfig ldenConfig, int threadCount) throws SQLException {
+        makeRoadLWTable(connection, roadsTableName, outputTable, ldenConfig, threadCount, CHUNK_SIZE);
+    }
+
+    /**
+     * Generate Road emission from the road traffic table. The road slope is not known, it is set to 0 %.
+     * @param connection
+     * @param roadsTableName Road traffic table, with an integer primary key
+     * @param outputTable Output table
+     * @param ldenConfig Configuration, coefficient version and frequencies
+     * @param threadCount Number of threads computing the emission, 1 to compute the emission in the calling thread
+     * @param chunkSize Number of roads read before computing their emission
+     * @throws SQLException
+     */
+    static void makeRoadLWTable(Connection connection, String roadsTableName, String outputTable,
+                                LDENConfig ldenConfig, int threadCount, int chunkSize) throws SQLException {
+        final int pkIndex = JDBCUtilities.getIntegerPrimaryKey(connection, TableLocation.parse(roadsTableName));
+        if (pkIndex < 1) {
+            throw new SQLException(String.format("Source table %s does not contain a primary key", roadsTableName));
+        }
+        final LDENPropagationProcessData ldenData = new LDENPropagationProcessData(null, ldenConfig);
+        List<Integer> frequencies = ldenConfig.getPropagationProcessPathData(LDENConfig.TIME_PERIOD.DAY).freq_lvl;
+
+        try(Statement st = connection.createStatement()) {
+            st.execute("drop table if exists " + outputTable);
+        }
+        StringBuilder createTableQuery = new StringBuilder("create table "+outputTable+" (PK int, the_geom GEOMETRY");
+        StringBuilder insertIntoQuery = new StringBuilder("INSERT INTO "+outputTable+"(PK, the_geom");
+        StringBuilder insertIntoValuesQuery = new StringBuilder("?,?");
+        for(String period : new String[]{"LWD", "LWE", "LWN"}) {
+            for (int freq : frequencies) {
+                createTableQuery.append(", ").append(period).append(freq).append(" double precision");
+                insertIntoQuery.append(", ").append(period).append(freq);
+                insertIntoValuesQuery.append(", ?");
+            }
+        }
+        createTableQuery.append(")");
+        insertIntoQuery.append(") VALUES (").append(insertIntoValuesQuery).append(")");
+        try(Statement st = connection.createStatement()) {
+            st.execute(createTableQuery.toString());
+        }
+
+        try(Statement st = connection.createStatement();
+            PreparedStatement ps = connection.prepareStatement(insertIntoQuery.toString())) {
+            final SpatialResultSet rs = st.executeQuery("SELECT * FROM " + roadsTableName).unwrap(SpatialResultSet.class);
+            new EmissionPipeline<RoadSource>(chunkSize) {
+                @Override
+                RoadSource read() throws SQLException {
+                    if(!rs.next()) {
+                        return null;
                     }
-                    for (double v : LWEvening) {
-                        ps.setDouble(cursor++, v);
+                    RoadSource road = new RoadSource(rs.getInt(pkIndex), rs.getGeometry());
+                    road.traffic = new RoadCnossosParameters[] {ldenData.getRoadCnossosParameters(rs, "D", 0),
+                            ldenData.getRoadCnossosParameters(rs, "E", 0),
+                            ldenData.getRoadCnossosParameters(rs, "N", 0)};
+                    return road;
+                }
+
+                @Override
+                void compute(RoadSource road) throws IOException {
+                    road.lw = new double[road.traffic.length][];
+                    for(int period = 0; period < road.traffic.length; period++) {
+                        road.lw[period] = ldenData.getEmission(road.traffic[period]);
                     }
-                    for (double v : LWNight) {
-                        ps.setDouble(cursor++, v);
+                    road.traffic = null;
+                    if(road.geometry != null) {
+                        road.geometry = ST_UpdateZ.updateZ(ST_Force3D.force3D(road.geometry), ROAD_SOURCE_HEIGHT);
                     }
-                    ps.addBatch();
                 }
-                ps.executeBatch();
-            }
 
+                @Override
+                void write(List<RoadSource> chunk) throws SQLException {
+                    for(RoadSource road : chunk) {
+                        int cursor = 1;
+                        ps.setInt(cursor++, road.pk);
+                        ps.setObject(cursor++, road.geometry);
+                        for(double[] lw : road.lw) {
+                            for (double v : lw) {
+                                ps.setDouble(cursor++, v);
+                            }
+                        }
+                        ps.addBatch();
+                    }
+                    ps.executeBatch();
+                }
+            }.run(threadCount);
         }
 
         // Add primary key to the LW table
-        connection.createStatement().execute("ALTER TABLE "+outputTable+" ADD PK INT AUTO_INCREMENT PRIMARY KEY;");
+        try(Statement st = connection.createStatement()) {
+            st.execute("ALTER TABLE " + outputTable + " ALTER COLUMN PK INT NOT NULL");
+            st.execute("ALTER TABLE " + outputTable + " ADD PRIMARY KEY (PK)");
+        }
+    }
+
+    /**
+     * Read the sources by chunks, compute the emission of each chunk with a pool of threads while the next chunk
+     * is read, then write the chunk in the source order.
+     * @param <T> Source
+     */
+    abstract static class EmissionPipeline<T> {
+        private final int chunkSize;
+
+        EmissionPipeline() {
+            this(CHUNK_SIZE);
+        }
+
+        /**
+         * @param chunkSize Number of sources read before computing their emission
+         */
+        EmissionPipeline(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * @return Next source or null if all the sources have been read
+         */
+        abstract T read() throws SQLException;
+
+        /**
+         * Compute the emission of a source, called by the worker threads
+         */
+        abstract void compute(T source) throws IOException;
+
+        abstract void write(List<T> chunk) throws SQLException;
+
+        private List<T> readChunk() throws SQLException {
+            List<T> chunk = new ArrayList<>(chunkSize);
+            T source;
+            while(chunk.size() < chunkSize && (source = read()) != null) {
+                chunk.add(source);
+            }
+            return chunk;
+        }
+
+        void run(int threadCount) throws SQLException {
+            ExecutorService executorService = threadCount > 1 ? Executors.newFixedThreadPool(threadCount) : null;
+            try {
+                List<T> chunk = readChunk();
+                while (!chunk.isEmpty()) {
+                    List<Future<Void>> futures = new ArrayList<>(threadCount);
+                    if(executorService == null) {
+                        for(T source : chunk) {
+                            compute(source);
+                        }
+                    } else {
+                        final int splitSize = (chunk.size() + threadCount - 1) / threadCount;
+                        for(int start = 0; start < chunk.size(); start += splitSize) {
+                            final List<T> split = chunk.subList(start, Math.min(chunk.size(), start + splitSize));
+                            futures.add(executorService.submit(() -> {
+                                for(T source : split) {
+                                    compute(source);
+                                }
+                                return null;
+                            }));
+                        }
+                    }
+                    // Read the next chunk while the emission of this chunk is computed
+                    List<T> nextChunk = readChunk();
+                    for(Future<Void> future : futures) {
+                        future.get();
+                    }
+                    write(chunk);
+                    chunk = nextChunk;
+                }
+            } catch (ExecutionException ex) {
+                if(ex.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) ex.getCause();
+                }
+                throw new SQLException(ex.getCause().getMessage(), ex.getCause());
+            } catch (IOException ex) {
+                throw new SQLException(ex.getMessage(), ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Emission computation interrupted", ex);
+            } finally {
+                if(executorService != null) {
+                    executorService.shutdownNow();
+                }
+            }
+        }
+    }
+
+    private static class RailTrack {
+        final RailWayLWIterator.RailWayLWGeom railWayLWGeom;
+        List<RailSource> rows;
+
+        RailTrack(RailWayLWIterator.RailWayLWGeom railWayLWGeom) {
+            this.railWayLWGeom = railWayLWGeom;
+        }
+    }
+
+    private static class RailSource {
+        final Geometry geometry;
+        final int directivityId;
+        final double[] lwDay;
+        final double[] lwEvening;
+        final double[] lwNight;
+
+        RailSource(Geometry geometry, int directivityId, double[] lwDay, double[] lwEvening, double[] lwNight) {
+            this.geometry = geometry;
+            this.directivityId = directivityId;
+            this.lwDay = lwDay;
+            this.lwEvening = lwEvening;
+            this.lwNight = lwNight;
+        }
+    }
+
+    private static class RoadSource {
+        final int pk;
+        Geometry geometry;
+        RoadCnossosParameters[] traffic;
+        double[][] lw;
+
+        RoadSource(int pk, Geometry geometry) {
+            this.pk = pk;
+            this.geometry = geometry;
+        }
     }
 }
@@ -9,15 +9,23 @@ import org.h2gis.utilities.JDBCUtilities;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.noise_planet.noisemodelling.jdbc.utils.LevelsFileReader;
+import org.noise_planet.noisemodelling.jdbc.utils.LevelsFileWriter;
 import org.noise_planet.noisemodelling.pathfinder.LayerDelaunayError;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class BezierContouringJDBCTest {
@@ -72,4 +80,74 @@ public class BezierContouringJDBCTest {
 
         SHPWrite.exportTable(connection, "target/contouring.shp", "CONTOURING_NOISE_MAP","UTF-8",true);
     }
+
+    @Test
+    public void testBezierContouringLevelsFile() throws SQLException, IOException {
+        GeoJsonRead.importTable(connection, BezierContouringJDBCTest.class.getResource("lden_geom.geojson").getFile());
+        GeoJsonRead.importTable(connection, BezierContouringJDBCTest.class.getResource("triangles.geojson").getFile());
+        try(Statement st = connection.createStatement()) {
+            st.execute("ALTER TABLE LDEN_GEOM ALTER COLUMN IDRECEIVER INTEGER NOT NULL");
+            st.execute("ALTER TABLE LDEN_GEOM ADD PRIMARY KEY (IDRECEIVER)");
+            st.execute("ALTER TABLE TRIANGLES ALTER COLUMN PK INTEGER NOT NULL");
+            st.execute("ALTER TABLE TRIANGLES ADD PRIMARY KEY (PK)");
+            st.execute("CREATE INDEX ON TRIANGLES(CELL_ID)");
+        }
+        // Write receiver levels into a binary file
+        File levelsFile = new File("target/lden_geom" + LevelsFileWriter.FILE_EXTENSION);
+        int rowCount = 0;
+        try(LevelsFileWriter writer = new LevelsFileWriter(levelsFile, false, Collections.singletonList("LAEQ"));
+            Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT IDRECEIVER, LAEQ FROM LDEN_GEOM")) {
+            List<Long> receivers = new ArrayList<>();
+            List<Double> levels = new ArrayList<>();
+            while (rs.next()) {
+                receivers.add(rs.getLong(1));
+                levels.add((double) (float) rs.getDouble(2));
+                rowCount++;
+            }
+            // Write in 3 blocks
+            int blockSize = receivers.size() / 3 + 1;
+            for(int start = 0; start < receivers.size(); start += blockSize) {
+                int end = Math.min(receivers.size(), start + blockSize);
+                long[] receiverIds = new long[end - start];
+                double[][] values = new double[end - start][1];
+                for(int i = start; i < end; i++) {
+                    receiverIds[i - start] = receivers.get(i);
+                    values[i - start][0] = levels.get(i);
+                }
+                writer.write(receiverIds, null, values, end - start);
+            }
+            assertEquals(rowCount, writer.getRowCount());
+        }
+        Map<Long, Double> pointLevels;
+        try(LevelsFileReader reader = new LevelsFileReader(levelsFile)) {
+            pointLevels = reader.readLevels("LAEQ");
+        }
+        assertEquals(rowCount, pointLevels.size());
+
+        BezierContouring bezierContouring = new BezierContouring(BezierContouring.NF31_133_ISO, 2154);
+        bezierContouring.setPointTable("LDEN_GEOM");
+        bezierContouring.setSmooth(false);
+        bezierContouring.setOutputTable("CONTOURING_TABLE");
+        bezierContouring.createTable(connection);
+
+        bezierContouring.setPointLevels(pointLevels);
+        bezierContouring.setOutputTable("CONTOURING_FILE");
+        bezierContouring.createTable(connection);
+
+        try(Statement st = connection.createStatement()) {
+            for(int isoLevel = 0; isoLevel < BezierContouring.NF31_133_ISO.size(); isoLevel++) {
+                double expected = 0, got = 0;
+                try(ResultSet rs = st.executeQuery("SELECT COALESCE(SUM(ST_AREA(THE_GEOM)), 0) FROM CONTOURING_TABLE WHERE ISOLVL = " + isoLevel)) {
+                    assertTrue(rs.next());
+                    expected = rs.getDouble(1);
+                }
+                try(ResultSet rs = st.executeQuery("SELECT COALESCE(SUM(ST_AREA(THE_GEOM)), 0) FROM CONTOURING_FILE WHERE ISOLVL = " + isoLevel)) {
+                    assertTrue(rs.next());
+                    got = rs.getDouble(1);
+                }
+                assertEquals(expected, got, Math.max(1.0, expected * 0.01));
+            }
+        }
+    }
 }
\ No newline at end of file
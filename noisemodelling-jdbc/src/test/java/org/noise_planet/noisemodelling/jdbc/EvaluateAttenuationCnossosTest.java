@@ -8,6 +8,8 @@ import org.locationtech.jts.math.Vector3D;
 import org.noise_planet.noisemodelling.pathfinder.*;
 import org.noise_planet.noisemodelling.pathfinder.utils.AlphaUtils;
 import org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils;
+import org.noise_planet.noisemodelling.pathfinder.utils.ProfilerThread;
+import org.noise_planet.noisemodelling.pathfinder.utils.ReceiverStatsMetric;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.EvaluateAttenuationCnossos;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
@@ -16,6 +18,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.stream.IntStream;
@@ -5544,6 +5547,89 @@ public class EvaluateAttenuationCnossosTest {
         assertEquals(44.07, wToDba(sumArray(roadLvl.length, dbaToW(propDataOut.getVerticesSoundLevel().get(0).value))), 3);
     }
 
+    /**
+     * Test optimisation feature {@link CnossosPropagationData#noiseFloor} with the default propagation settings of
+     * {@link JdbcNoiseMap}, ie two reflections and the diffraction on the horizontal and vertical edges
+     */
+    @Test
+    public void testNoiseFloorSkippedSources() throws ParseException {
+        GeometryFactory factory = new GeometryFactory();
+        WKTReader wktReader = new WKTReader(factory);
+
+        ProfileBuilder builder = new ProfileBuilder();
+        builder.addBuilding(wktReader.read("POLYGON((-10 15, 10 15, 10 25, -10 25, -10 15))"), 10, -1);
+        builder.addBuilding(wktReader.read("POLYGON((40 -10, 45 -10, 45 10, 40 10, 40 -10))"), 6, -1);
+        builder.finishFeeding();
+
+        double[] roadLvl = new double[]{25.65, 38.15, 54.35, 60.35, 74.65, 66.75, 59.25, 53.95};
+        for(int i = 0; i < roadLvl.length; i++) {
+            roadLvl[i] = dbaToW(roadLvl[i]);
+        }
+
+        DirectPropagationProcessData rayData = new DirectPropagationProcessData(builder);
+        rayData.addReceiver(new Coordinate(0, 0, 4));
+        // Sources near the receiver, around 42 dB(A) each in free field
+        for(int y = -10; y <= 10; y += 10) {
+            rayData.addSource(factory.createPoint(new Coordinate(-20, y, 1)), roadLvl);
+            rayData.addSource(factory.createPoint(new Coordinate(60, y, 1)), roadLvl);
+        }
+        // Far sources, 12 dB(A) each and 22 dB(A) together in free field
+        final int farSourceCount = 10;
+        for(int i = 0; i < farSourceCount; i++) {
+            rayData.addSource(factory.createPoint(new Coordinate(600 + i * 10, 0, 1)), roadLvl);
+        }
+        rayData.maxSrcDist = 750;
+        rayData.maxRefDist = 100;
+        rayData.reflexionOrder = 2;
+        rayData.setComputeHorizontalDiffraction(true);
+        rayData.setComputeVerticalDiffraction(true);
+
+        PropagationProcessPathData attData = new PropagationProcessPathData();
+        attData.setHumidity(70);
+        attData.setTemperature(10);
+
+        double[] levels = new double[2];
+        int[] skippedSources = new int[2];
+        double[] noiseFloor = new double[]{Double.NEGATIVE_INFINITY, 25};
+        for(int run = 0; run < 2; run++) {
+            rayData.noiseFloor = noiseFloor[run];
+            RayOut propDataOut = new RayOut(false, attData, rayData);
+            skippedSources[run] = computeSkippedSources(rayData, propDataOut);
+            for(ComputeRaysOutAttenuation.VerticeSL lvl : propDataOut.receiversAttenuationLevels) {
+                levels[run] += sumArray(lvl.value.length, dbaToW(lvl.value));
+            }
+        }
+        LOGGER.info(String.format(Locale.ROOT, "Noise floor: %d skipped sources, error %.4f dB",
+                skippedSources[1], Math.abs(wToDba(levels[1]) - wToDba(levels[0]))));
+        assertEquals(0, skippedSources[0]);
+        // The far sources can not reach the noise floor once the near sources have been computed
+        assertEquals(farSourceCount, skippedSources[1]);
+        assertEquals(wToDba(levels[0]), wToDba(levels[1]), 0.1);
+
+        // No source can reach the noise floor
+        rayData.noiseFloor = 200;
+        RayOut propDataOut = new RayOut(false, attData, rayData);
+        assertEquals(farSourceCount + 6, computeSkippedSources(rayData, propDataOut));
+        assertEquals(0, propDataOut.rayCount.get());
+    }
+
+    /**
+     * @return Maximum number of skipped sources of the receivers reported by {@link ReceiverStatsMetric}
+     */
+    private static int computeSkippedSources(CnossosPropagationData rayData, IComputeRaysOut propDataOut) {
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(rayData);
+        computeRays.setThreadCount(1);
+        ProfilerThread profilerThread = new ProfilerThread(new File("target/testNoiseFloorSkippedSources.csv"));
+        ReceiverStatsMetric receiverStatsMetric = new ReceiverStatsMetric();
+        profilerThread.addMetric(receiverStatsMetric);
+        computeRays.setProfilerThread(profilerThread);
+        computeRays.run(propDataOut);
+        receiverStatsMetric.tick(0);
+        String[] values = receiverStatsMetric.getCurrentValues();
+        return Integer.parseInt(values[Arrays.asList(receiverStatsMetric.getColumnNames())
+                .indexOf("receiver_max_skipped_sources")]);
+    }
+
     @Test
     public void testRoseIndex() {
         double angle_section = (2 * Math.PI) / PropagationProcessPathData.DEFAULT_WIND_ROSE.length;
@@ -5662,6 +5748,69 @@ public class EvaluateAttenuationCnossosTest {
 
 
 
+    /**
+     * Test optimisation feature {@link CnossosPropagationData#sourceAggregationError}, the merged far sub-sources of
+     * the line sources give the same levels than the exact computation within the error bound
+     */
+    @Test
+    public void testSourceAggregation() throws ParseException {
+        GeometryFactory factory = new GeometryFactory();
+        WKTReader wktReader = new WKTReader(factory);
+
+        ProfileBuilder builder = new ProfileBuilder();
+        builder.addGroundEffect(factory.toGeometry(new Envelope(-800, 0, -800, 800)), 0.9);
+        builder.addGroundEffect(factory.toGeometry(new Envelope(0, 800, -800, 800)), 0.2);
+        builder.addBuilding(wktReader.read("POLYGON((-20 -40, 20 -40, 20 -30, -20 -30, -20 -40))"), 8, -1);
+        builder.finishFeeding();
+
+        double[] roadLvl = new double[]{25.65, 38.15, 54.35, 60.35, 74.65, 66.75, 59.25, 53.95};
+        for(int i = 0; i < roadLvl.length; i++) {
+            roadLvl[i] = dbaToW(roadLvl[i]);
+        }
+
+        DirectPropagationProcessData rayData = new DirectPropagationProcessData(builder);
+        rayData.addReceiver(new Coordinate(0, 0, 4));
+        rayData.addReceiver(new Coordinate(0, -100, 4));
+        rayData.addReceiver(new Coordinate(300, -400, 4));
+        rayData.addSource(wktReader.read("LINESTRING (-750 20 0.05, 750 20 0.05)"), roadLvl);
+        rayData.addSource(wktReader.read("LINESTRING (-600 -700 0.05, -100 -200 0.05, 200 -250 0.05, 700 -150 0.05)"),
+                roadLvl);
+        rayData.setComputeHorizontalDiffraction(true);
+        rayData.setComputeVerticalDiffraction(true);
+        rayData.maxSrcDist = 1000;
+
+        PropagationProcessPathData attData = new PropagationProcessPathData();
+        attData.setHumidity(70);
+        attData.setTemperature(10);
+
+        double[][] levels = new double[2][];
+        long[] rayCount = new long[2];
+        long[] duration = new long[2];
+        double[] aggregationError = new double[]{0, 0.1};
+        for(int run = 0; run < 2; run++) {
+            rayData.sourceAggregationError = aggregationError[run];
+            RayOut propDataOut = new RayOut(false, attData, rayData);
+            ComputeCnossosRays computeRays = new ComputeCnossosRays(rayData);
+            computeRays.setThreadCount(1);
+            long start = System.nanoTime();
+            computeRays.run(propDataOut);
+            duration[run] = System.nanoTime() - start;
+            rayCount[run] = propDataOut.rayCount.get();
+            levels[run] = new double[3];
+            for(ComputeRaysOutAttenuation.VerticeSL lvl : propDataOut.receiversAttenuationLevels) {
+                levels[run][(int) lvl.receiverId] += sumArray(lvl.value.length, dbaToW(lvl.value));
+            }
+        }
+        LOGGER.info(String.format(Locale.ROOT, "Source aggregation: %d rays instead of %d, %.1f ms instead of %.1f ms",
+                rayCount[1], rayCount[0], duration[1] / 1e6, duration[0] / 1e6));
+        assertTrue(rayCount[1] * 2 < rayCount[0]);
+        for(int receiver = 0; receiver < 3; receiver++) {
+            double error = Math.abs(wToDba(levels[1][receiver]) - wToDba(levels[0][receiver]));
+            LOGGER.info(String.format(Locale.ROOT, "Receiver %d error %.3f dB", receiver, error));
+            assertEquals(wToDba(levels[0][receiver]), wToDba(levels[1][receiver]), 0.1);
+        }
+    }
+
     /**
      * Test of convergence of power at receiver when increasing the reflection order
      * Event at 100 order of reflection then final noise level should not be
@@ -5876,8 +6025,7 @@ public class EvaluateAttenuationCnossosTest {
         propPath.readStream(new DataInputStream(new ByteArrayInputStream(Base64.getDecoder().decode(path))));
 
         PropagationProcessPathData pathData = new PropagationProcessPathData();
-        EvaluateAttenuationCnossos.evaluate(propPath, pathData);
-        double[] aGlobalMeteoHom = EvaluateAttenuationCnossos.getaGlobal();
+        double[] aGlobalMeteoHom = EvaluateAttenuationCnossos.evaluate(propPath, pathData);
         for (int i = 0; i < aGlobalMeteoHom.length; i++) {
             assertFalse(String.format("freq %d Hz with nan value", pathData.freq_lvl.get(i)),
                     Double.isNaN(aGlobalMeteoHom[i]));
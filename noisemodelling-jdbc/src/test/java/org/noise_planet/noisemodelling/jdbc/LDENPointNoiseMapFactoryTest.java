@@ -18,6 +18,8 @@ import org.noise_planet.noisemodelling.emission.LineSource;
 import org.noise_planet.noisemodelling.emission.railway.RailWayParameters;
 import org.noise_planet.noisemodelling.emission.railway.cnossos.RailwayCnossos;
 import org.noise_planet.noisemodelling.emission.utils.Utils;
+import org.noise_planet.noisemodelling.jdbc.utils.LevelsFileReader;
+import org.noise_planet.noisemodelling.jdbc.utils.LevelsFileWriter;
 import org.noise_planet.noisemodelling.jdbc.utils.MakeLWTable;
 import org.noise_planet.noisemodelling.pathfinder.IComputeRaysOut;
 import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
@@ -37,6 +39,11 @@ import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.junit.Assert.*;
 import static org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils.sumArray;
@@ -113,6 +120,103 @@ public class LDENPointNoiseMapFactoryTest {
         }
     }
 
+    @Test
+    public void testSourceEmissionCache() {
+        double[][] spectra = new double[][] {{1, 2, 3}, {4, 5, 6}, {7, 8, 9}};
+        long entryMemory = SourceEmissionCache.ENTRY_MEMORY + 9 * Double.BYTES;
+        SourceEmissionCache cache = new SourceEmissionCache(2 * entryMemory);
+        cache.put(1, spectra);
+        double[][] cached = cache.get(1);
+        assertNotNull(cached);
+        for(int period = 0; period < spectra.length; period++) {
+            assertArrayEquals(spectra[period], cached[period], 0);
+        }
+        // The returned spectra are copies
+        cached[0][0] = 10;
+        assertEquals(1, cache.get(1)[0][0], 0);
+        assertNull(cache.get(2));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        // Least recently used source is evicted
+        cache.put(2, spectra);
+        cache.get(1);
+        cache.put(3, spectra);
+        assertEquals(2, cache.getSourceCount());
+        assertEquals(2 * entryMemory, cache.getUsedMemory());
+        assertNotNull(cache.get(1));
+        assertNull(cache.get(2));
+        cache.setMemoryBudget(0);
+        assertEquals(0, cache.getSourceCount());
+        cache.put(4, spectra);
+        assertNull(cache.get(4));
+    }
+
+    /**
+     * Road traffic emission computed with several cells, the levels must be the same with and without the emission
+     * cache, and the roads fetched by several cells must be found in the cache
+     */
+    @Test
+    public void testSourceEmissionCacheCells() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        // Roads crossing several cells are fetched by each cell, the second run reads their emission from the cache
+        long[] hits = new long[2];
+        for(boolean cache : new boolean[] {false, true}) {
+            LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+            ldenConfig.setComputeLDay(true);
+            ldenConfig.setComputeLEvening(false);
+            ldenConfig.setComputeLNight(false);
+            ldenConfig.setComputeLDEN(false);
+            ldenConfig.setMergeSources(true);
+            ldenConfig.setlDayTable(cache ? "LDAY_CACHE" : "LDAY_NO_CACHE");
+            LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+            if(!cache) {
+                factory.setEmissionCacheMemoryBudget(0);
+            }
+
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_TRAFF", "RECEIVERS");
+            pointNoiseMap.setComputeRaysOutFactory(factory);
+            pointNoiseMap.setPropagationProcessDataFactory(factory);
+            pointNoiseMap.setMaximumPropagationDistance(100.0);
+            pointNoiseMap.setComputeHorizontalDiffraction(false);
+            pointNoiseMap.setComputeVerticalDiffraction(false);
+            pointNoiseMap.setSoundReflectionOrder(0);
+
+            Set<Long> receivers = new HashSet<>();
+            try {
+                RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1);
+                pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+                factory.start();
+                pointNoiseMap.setGridDim(4); // force grid size
+                Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+                assertTrue(cells.size() > 1);
+                ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+                for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                    pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(),
+                            cellIndex.getLongitudeIndex(), progressVisitor, receivers);
+                }
+            } finally {
+                factory.stop();
+            }
+            assertFalse(ldenConfig.aborted);
+            hits[cache ? 1 : 0] = factory.getEmissionCache().getHits();
+        }
+        connection.commit();
+        assertEquals(0, hits[0]);
+        assertTrue(hits[1] > 0);
+
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) CPT, " +
+                "MAX(ABS(A.LAEQ - B.LAEQ)) DIFF, (SELECT COUNT(*) FROM LDAY_NO_CACHE) EXPECTED " +
+                "FROM LDAY_NO_CACHE A, LDAY_CACHE B WHERE A.IDRECEIVER = B.IDRECEIVER")) {
+            assertTrue(rs.next());
+            assertTrue(rs.getInt("CPT") > 0);
+            assertEquals(rs.getInt("EXPECTED"), rs.getInt("CPT"));
+            assertEquals(0, rs.getDouble("DIFF"), 0);
+        }
+    }
+
     @Test
     public void testNoiseEmissionRailWay() throws SQLException, IOException {
         SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("RailTrack.shp").getFile());
@@ -215,6 +319,12 @@ public class LDENPointNoiseMapFactoryTest {
         assertNotNull(v);
         v.setNbTrack(2);
         RailWayParameters railWayLW = v.getRailWayLW();
+        // Same levels as the day, but not the same instance as the traffic rows are summed in place
+        assertNotSame(railWayLW, v.getRailWayLWDay());
+        for(String sourceType : railWayLW.getRailwaySourceList().keySet()) {
+            assertArrayEquals(v.getRailWayLWDay().getRailwaySourceList().get(sourceType).getlW(),
+                    railWayLW.getRailwaySourceList().get(sourceType).getlW(), 0);
+        }
         List<LineString> geometries = v.getRailWayLWGeometry();
 
         v = railWayLWIterator.next();
@@ -931,6 +1041,145 @@ public class LDENPointNoiseMapFactoryTest {
 
     }
 
+    /**
+     * Import the roads, buildings and receivers, only the receivers closer than 300 m from the center are kept
+     */
+    private void importReceiverSubsetScene() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("lw_roads.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("buildings.shp").getFile());
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("receivers.shp").getFile());
+
+        try(Statement st = connection.createStatement()) {
+            // Use only a subset of receivers
+            st.execute("SELECT UpdateGeometrySRID('RECEIVERS', 'THE_GEOM', 2154);");
+            st.execute("DELETE FROM RECEIVERS WHERE ST_DISTANCE('SRID=2154;POINT (223940.83614225042 6757305.252751735)'::geometry, THE_GEOM) > 300");
+        }
+    }
+
+    /**
+     * Compute the receiver levels of the scene of {@link #importReceiverSubsetScene()}, without diffraction nor
+     * reflection
+     * @param ldenConfig Output configuration
+     * @param receivers Computed receivers
+     * @return Factory, stopped
+     */
+    private LDENPointNoiseMapFactory computeLevels(LDENConfig ldenConfig, Set<Long> receivers)
+            throws SQLException, IOException {
+        LDENPointNoiseMapFactory factory = new LDENPointNoiseMapFactory(connection, ldenConfig);
+
+        PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "LW_ROADS",
+                "RECEIVERS");
+
+        pointNoiseMap.setComputeRaysOutFactory(factory);
+        pointNoiseMap.setPropagationProcessDataFactory(factory);
+
+        pointNoiseMap.setMaximumPropagationDistance(100.0);
+        pointNoiseMap.setComputeHorizontalDiffraction(false);
+        pointNoiseMap.setComputeVerticalDiffraction(false);
+        pointNoiseMap.setSoundReflectionOrder(0);
+
+        try {
+            RootProgressVisitor progressLogger = new RootProgressVisitor(1, true, 1);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            factory.start();
+            pointNoiseMap.setGridDim(1); // force grid size
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
+            for(PointNoiseMap.CellIndex cellIndex : new TreeSet<>(cells.keySet())) {
+                pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers);
+            }
+        } finally {
+            factory.stop();
+        }
+        assertFalse(ldenConfig.aborted);
+        return factory;
+    }
+
+    /**
+     * Results written by small batches, the result tables must be the same as with the default batch size
+     */
+    @Test
+    public void testOutputBatchSize() throws SQLException, IOException {
+        importReceiverSubsetScene();
+
+        for(boolean smallBatch : new boolean[] {false, true}) {
+            LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+            if(smallBatch) {
+                ldenConfig.setOutputBatchSize(7);
+            }
+            String suffix = smallBatch ? "_BATCH" : "";
+            ldenConfig.setlDayTable("LDAY_GEOM" + suffix);
+            ldenConfig.setlEveningTable("LEVENING_GEOM" + suffix);
+            ldenConfig.setlNightTable("LNIGHT_GEOM" + suffix);
+            ldenConfig.setlDenTable("LDEN_GEOM" + suffix);
+
+            Set<Long> receivers = new HashSet<>();
+            LDENPointNoiseMapFactory factory = computeLevels(ldenConfig, receivers);
+            long rows = 0;
+            for(AtomicLong insertedRows : factory.insertedRows) {
+                rows += insertedRows.get();
+            }
+            assertEquals(receivers.size() * 4, rows);
+        }
+        connection.commit();
+
+        try(Statement st = connection.createStatement()) {
+            for(String table : new String[] {"LDAY_GEOM", "LEVENING_GEOM", "LNIGHT_GEOM", "LDEN_GEOM"}) {
+                try(ResultSet rs = st.executeQuery("SELECT COUNT(*) CPT, SUM(ABS(A.LAEQ - B.LAEQ)) DIFF," +
+                        " (SELECT COUNT(*) FROM " + table + ") EXPECTED FROM " + table + " A, " + table +
+                        "_BATCH B WHERE A.IDRECEIVER = B.IDRECEIVER")) {
+                    assertTrue(rs.next());
+                    assertTrue(rs.getInt("CPT") > 0);
+                    assertEquals(rs.getInt("EXPECTED"), rs.getInt("CPT"));
+                    assertEquals(0, rs.getDouble("DIFF"), 1e-3);
+                }
+            }
+        }
+    }
+
+    /**
+     * Compare the receiver levels written into binary files with the result tables
+     */
+    @Test
+    public void testLevelsOutputFolder() throws SQLException, IOException {
+        importReceiverSubsetScene();
+        File levelsFolder = new File("target/levels_output");
+        assertTrue(levelsFolder.isDirectory() || levelsFolder.mkdirs());
+
+        for(boolean levelsFile : new boolean[] {false, true}) {
+            LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+            ldenConfig.setOutputBatchSize(7);
+            if(levelsFile) {
+                ldenConfig.setLevelsOutputFolder(levelsFolder);
+            }
+
+            computeLevels(ldenConfig, new HashSet<>());
+        }
+        connection.commit();
+
+        for(String table : new String[] {"LDAY_RESULT", "LEVENING_RESULT", "LNIGHT_RESULT", "LDEN_RESULT"}) {
+            File file = new File(levelsFolder, table + LevelsFileWriter.FILE_EXTENSION);
+            assertTrue(file.exists());
+            try(LevelsFileReader reader = new LevelsFileReader(file)) {
+                assertFalse(reader.hasSourceId());
+                assertEquals(JDBCUtilities.getColumnNames(connection, table).subList(1, reader.getColumnNames().size() + 1),
+                        reader.getColumnNames());
+                reader.copyToTable(connection, table + "_FILE");
+            }
+            try(Statement st = connection.createStatement()) {
+                try(ResultSet rs = st.executeQuery("SELECT COUNT(*) CPT, MAX(ABS(A.LAEQ - B.LAEQ)) DIFF," +
+                        " (SELECT COUNT(*) FROM " + table + ") EXPECTED, (SELECT COUNT(*) FROM " + table +
+                        "_FILE) GOT FROM " + table + " A, " + table + "_FILE B WHERE A.IDRECEIVER = B.IDRECEIVER")) {
+                    assertTrue(rs.next());
+                    assertTrue(rs.getInt("CPT") > 0);
+                    assertEquals(rs.getInt("EXPECTED"), rs.getInt("CPT"));
+                    assertEquals(rs.getInt("EXPECTED"), rs.getInt("GOT"));
+                    assertEquals(0, rs.getDouble("DIFF"), 1e-3);
+                }
+            }
+        }
+    }
+
     // Check regression of finding cell i,j that contains receivers
     @Test
     public void testRegression1() throws SQLException, IOException {
@@ -1188,4 +1437,51 @@ public class LDENPointNoiseMapFactoryTest {
             throw new IOException(ex);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Producers must wait for the writer when the result stacks are full, and the writer must receive all results
+     */
+    @Test
+    public void testResultStackBackPressure() throws InterruptedException, ExecutionException {
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_LW_DEN);
+        ldenConfig.setOutputMaximumQueue(100);
+        LDENComputeRaysOut.LdenData ldenData = new LDENComputeRaysOut.LdenData();
+        final int producerCount = 4;
+        final int rowsPerProducer = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(producerCount);
+        int received = 0;
+        try {
+            // The failures of the producers are thrown by Future.get on this thread
+            List<Future<?>> producers = new ArrayList<>();
+            for (int idProducer = 0; idProducer < producerCount; idProducer++) {
+                final long receiverId = idProducer;
+                producers.add(executor.submit(() -> {
+                    for (int i = 0; i < rowsPerProducer; i++) {
+                        ComputeRaysOutAttenuation.VerticeSL row =
+                                new ComputeRaysOutAttenuation.VerticeSL(receiverId, i, new double[]{i});
+                        assertTrue(ldenData.push(ldenData.lDenLevels, Collections.singletonList(row), ldenConfig));
+                    }
+                    return null;
+                }));
+            }
+            List<ComputeRaysOutAttenuation.VerticeSL> rows = new ArrayList<>();
+            while (received < producerCount * rowsPerProducer) {
+                if (ldenData.drain(ldenData.lDenLevels, rows, 50) == 0) {
+                    assertTrue(ldenData.awaitElements(ldenData.lDenLevels, 5000));
+                }
+                received += rows.size();
+                rows.clear();
+            }
+            for (Future<?> producer : producers) {
+                producer.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(producerCount * rowsPerProducer, received);
+        assertEquals(0, ldenData.queueSize.get());
+        assertTrue(ldenData.lDenLevels.isEmpty());
+        assertTrue(ldenData.maximumQueueSize.get() <= ldenConfig.outputMaximumQueue + producerCount);
+        assertTrue(ldenData.producerWaitCount.get() > 0);
+    }
+}
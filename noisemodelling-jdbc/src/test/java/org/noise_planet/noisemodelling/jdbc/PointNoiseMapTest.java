@@ -14,6 +14,7 @@ import org.locationtech.jts.io.WKTWriter;
 import org.noise_planet.noisemodelling.jdbc.Utils.JDBCComputeRaysOut;
 import org.noise_planet.noisemodelling.jdbc.Utils.JDBCPropagationData;
 import org.noise_planet.noisemodelling.pathfinder.*;
+import org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils;
 import org.noise_planet.noisemodelling.propagation.ComputeRaysOutAttenuation;
 import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
 
@@ -22,6 +23,7 @@ import java.io.DataOutputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
@@ -286,6 +288,270 @@ public class PointNoiseMapTest {
         }
     }
 
+    /**
+     * Compare the levels computed cell by cell with the levels computed while prefetching the next cells
+     */
+    @Test
+    public void testRunWithCellPrefetch() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(String.format("CALL SHPREAD('%s', 'LANDCOVER2000')", PointNoiseMapTest.class.getResource("landcover2000.shp").getFile()));
+            st.execute(getRunScriptRes("scene_with_landcover.sql"));
+        }
+        Map<Long, Double> expectedLevels = new HashMap<>();
+        Map<Long, Double> levels = new HashMap<>();
+        Map<Long, Double> secondRunLevels = new HashMap<>();
+        for(int prefetch : new int[] {0, 2}) {
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_GEOM", "RECEIVERS");
+            pointNoiseMap.setComputeHorizontalDiffraction(false);
+            pointNoiseMap.setComputeVerticalDiffraction(false);
+            pointNoiseMap.setSoundReflectionOrder(0);
+            pointNoiseMap.setMaximumPropagationDistance(200);
+            pointNoiseMap.setReceiverHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setSourceHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setHeightField("HEIGHT");
+            pointNoiseMap.setComputeRaysOutFactory(new JDBCComputeRaysOut(false));
+            pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            pointNoiseMap.setGridDim(3);
+            pointNoiseMap.setCellPrefetchCount(prefetch);
+            Map<Long, Double> cellLevels = prefetch == 0 ? expectedLevels : levels;
+            AtomicInteger computedCells = new AtomicInteger(0);
+            pointNoiseMap.run(connection, new RootProgressVisitor(1, false, 1), (cellIndex, out) -> {
+                computedCells.incrementAndGet();
+                for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                    cellLevels.merge(v.receiverId, PowerUtils.sumArray(PowerUtils.dbaToW(v.value)), Double::sum);
+                }
+            });
+            assertEquals(pointNoiseMap.searchPopulatedCells(connection).size(), computedCells.get());
+            if(prefetch > 0) {
+                // A second run of the same instance computes all the receivers again
+                pointNoiseMap.run(connection, new RootProgressVisitor(1, false, 1), (cellIndex, out) -> {
+                    for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                        secondRunLevels.merge(v.receiverId, PowerUtils.sumArray(PowerUtils.dbaToW(v.value)), Double::sum);
+                    }
+                });
+            }
+        }
+        assertFalse(expectedLevels.isEmpty());
+        assertEquals(expectedLevels.keySet(), levels.keySet());
+        assertEquals(expectedLevels.keySet(), secondRunLevels.keySet());
+        for(Map.Entry<Long, Double> entry : expectedLevels.entrySet()) {
+            assertEquals(entry.getValue(), levels.get(entry.getKey()), 1e-6);
+            assertEquals(entry.getValue(), secondRunLevels.get(entry.getKey()), 1e-6);
+        }
+    }
+
+    /**
+     * Compare the levels computed with the triangulated DEM points with the levels computed using a raster of the same
+     * points
+     */
+    @Test
+    public void testDemRaster() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(getRunScriptRes("scene_with_dem.sql"));
+            st.execute("DROP TABLE IF EXISTS DEM_GRID");
+            st.execute("CREATE TABLE DEM_GRID(THE_GEOM GEOMETRY(POINTZ)) AS SELECT ST_MAKEPOINT(X * 10 - 200, Y * 10 - 250," +
+                    " 10 * EXP(-(POWER(X * 10 - 140, 2) + POWER(Y * 10 - 300, 2)) / 2000)) FROM" +
+                    " (SELECT X FROM SYSTEM_RANGE(0, 65)), (SELECT X Y FROM SYSTEM_RANGE(0, 55))");
+            st.execute("DROP TABLE IF EXISTS RECEIVERS");
+            st.execute("CREATE TABLE RECEIVERS(the_geom GEOMETRY(POINTZ), GID SERIAL PRIMARY KEY)");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINTZ(-72 41 11)')");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINTZ(-9 41 1.6)')");
+            st.execute("INSERT INTO RECEIVERS(the_geom) VALUES ('POINTZ(70 11 7)')");
+        }
+        Map<Long, Double> expectedLevels = new HashMap<>();
+        Map<Long, Double> levels = new HashMap<>();
+        for(boolean useRaster : new boolean[] {false, true}) {
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "SOUND_SOURCE", "RECEIVERS");
+            pointNoiseMap.setComputeHorizontalDiffraction(true);
+            pointNoiseMap.setComputeVerticalDiffraction(false);
+            pointNoiseMap.setSoundReflectionOrder(0);
+            pointNoiseMap.setReceiverHasAbsoluteZCoordinates(true);
+            pointNoiseMap.setSourceHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setHeightField("HEIGHT");
+            pointNoiseMap.setDemTable("DEM_GRID");
+            pointNoiseMap.setDemRasterCellSize(useRaster ? 10 : 0);
+            pointNoiseMap.setComputeRaysOutFactory(new JDBCComputeRaysOut(false));
+            pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            Map<Long, Double> cellLevels = useRaster ? levels : expectedLevels;
+            pointNoiseMap.run(connection, new RootProgressVisitor(1, false, 1), (cellIndex, out) -> {
+                ComputeRaysOutAttenuation rout = (ComputeRaysOutAttenuation) out;
+                assertEquals(useRaster, rout.inputData.profileBuilder.getTopographicRaster() != null);
+                assertTrue(rout.inputData.profileBuilder.hasDem());
+                for(ComputeRaysOutAttenuation.VerticeSL v : rout.getVerticesSoundLevel()) {
+                    cellLevels.merge(v.receiverId, PowerUtils.sumArray(PowerUtils.dbaToW(v.value)), Double::sum);
+                }
+            });
+        }
+        assertFalse(expectedLevels.isEmpty());
+        assertEquals(expectedLevels.keySet(), levels.keySet());
+        for(Map.Entry<Long, Double> entry : expectedLevels.entrySet()) {
+            assertEquals(PowerUtils.wToDba(entry.getValue()), PowerUtils.wToDba(levels.get(entry.getKey())), 0.1);
+        }
+    }
+
+    /**
+     * Compare the levels computed with buildings and soil areas fetched by cell with the levels computed using the
+     * tile cache
+     */
+    @Test
+    public void testTileCache() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute(String.format("CALL SHPREAD('%s', 'LANDCOVER2000')", PointNoiseMapTest.class.getResource("landcover2000.shp").getFile()));
+            st.execute(getRunScriptRes("scene_with_landcover.sql"));
+        }
+        Map<Long, Double> expectedLevels = new HashMap<>();
+        Map<Long, Double> levels = new HashMap<>();
+        for(boolean useCache : new boolean[] {false, true}) {
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "ROADS_GEOM", "RECEIVERS");
+            pointNoiseMap.setComputeHorizontalDiffraction(false);
+            pointNoiseMap.setComputeVerticalDiffraction(false);
+            pointNoiseMap.setSoundReflectionOrder(0);
+            pointNoiseMap.setMaximumPropagationDistance(200);
+            pointNoiseMap.setReceiverHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setSourceHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setHeightField("HEIGHT");
+            pointNoiseMap.setSoilTableName("LAND_G");
+            pointNoiseMap.setGroundSurfaceSplitSideLength(50);
+            pointNoiseMap.setComputeRaysOutFactory(new JDBCComputeRaysOut(false));
+            pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+            pointNoiseMap.setTileCacheMemoryBudget(useCache ? 64 * 1024 * 1024 : 0);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            pointNoiseMap.setGridDim(3);
+            Map<Long, Double> cellLevels = useCache ? levels : expectedLevels;
+            pointNoiseMap.run(connection, new RootProgressVisitor(1, false, 1), (cellIndex, out) -> {
+                for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                    cellLevels.merge(v.receiverId, PowerUtils.sumArray(PowerUtils.dbaToW(v.value)), Double::sum);
+                }
+            });
+            if(useCache) {
+                assertTrue(pointNoiseMap.getTileCache().getTileHits() > 0);
+                assertTrue(pointNoiseMap.getTileCache().getUsedMemory() > 0);
+            } else {
+                assertEquals(0, pointNoiseMap.getTileCache().getTileCount());
+            }
+        }
+        assertFalse(expectedLevels.isEmpty());
+        assertEquals(expectedLevels.keySet(), levels.keySet());
+        for(Map.Entry<Long, Double> entry : expectedLevels.entrySet()) {
+            assertEquals(PowerUtils.wToDba(entry.getValue()), PowerUtils.wToDba(levels.get(entry.getKey())), 1e-6);
+        }
+    }
+
+    @Test
+    public void testAdaptiveCellSize() throws Exception {
+        try(Statement st = connection.createStatement()) {
+            st.execute("CREATE TABLE BUILDINGS(pk serial PRIMARY KEY, the_geom GEOMETRY(POLYGONZ), height real)");
+            st.execute("INSERT INTO BUILDINGS(the_geom, height) VALUES ('POLYGONZ((30 60 0, 40 60 0, 40 70 0, 30 70 0, 30 60 0))', 10)");
+            st.execute("CREATE TABLE SOURCES(pk serial PRIMARY KEY, the_geom GEOMETRY(POINTZ), db_m63 double," +
+                    " db_m125 double, db_m250 double, db_m500 double, db_m1000 double, db_m2000 double," +
+                    " db_m4000 double, db_m8000 double)");
+            st.execute("CREATE TABLE RECEIVERS(pk serial PRIMARY KEY, the_geom GEOMETRY(POINTZ))");
+            // One source every 50 m, dense receivers in the lower left corner and sparse receivers elsewhere
+            for(int x = 0; x <= 800; x += 50) {
+                for(int y = 0; y <= 800; y += 50) {
+                    st.execute(String.format(Locale.ROOT, "INSERT INTO SOURCES(the_geom, db_m63, db_m125, db_m250," +
+                            " db_m500, db_m1000, db_m2000, db_m4000, db_m8000) VALUES ('POINTZ(%d %d 0.5)'," +
+                            " 70, 70, 70, 70, 70, 70, 70, 70)", x, y));
+                }
+            }
+            for(int x = 5; x < 800; x += 10) {
+                for(int y = 5; y < 800; y += 10) {
+                    if((x < 100 && y < 100) || (x % 100 == 45 && y % 100 == 45)) {
+                        st.execute(String.format(Locale.ROOT, "INSERT INTO RECEIVERS(the_geom) VALUES ('POINTZ(%d %d 4)')", x, y));
+                    }
+                }
+            }
+        }
+        Map<Long, Double> expectedLevels = new HashMap<>();
+        Map<Long, Double> levels = new HashMap<>();
+        for(boolean adaptive : new boolean[] {false, true}) {
+            PointNoiseMap pointNoiseMap = new PointNoiseMap("BUILDINGS", "SOURCES", "RECEIVERS");
+            pointNoiseMap.setComputeHorizontalDiffraction(false);
+            pointNoiseMap.setComputeVerticalDiffraction(false);
+            pointNoiseMap.setSoundReflectionOrder(0);
+            pointNoiseMap.setMaximumPropagationDistance(100);
+            pointNoiseMap.setReceiverHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setSourceHasAbsoluteZCoordinates(false);
+            pointNoiseMap.setHeightField("HEIGHT");
+            pointNoiseMap.setComputeRaysOutFactory(new JDBCComputeRaysOut(false));
+            pointNoiseMap.setPropagationProcessDataFactory(new JDBCPropagationData());
+            pointNoiseMap.setAdaptiveCellSize(adaptive);
+            // Split the cells containing more than 2000 receiver x source pairs
+            pointNoiseMap.setCellMaximumWork(2000);
+            pointNoiseMap.initialize(connection, new EmptyProgressVisitor());
+            Map<PointNoiseMap.CellIndex, Integer> cells = pointNoiseMap.searchPopulatedCells(connection);
+            int receiverCount = 0;
+            for(int cellReceiverCount : cells.values()) {
+                receiverCount += cellReceiverCount;
+            }
+            if(adaptive) {
+                // Each receiver is located in one cell
+                try(Statement st = connection.createStatement();
+                    ResultSet rs = st.executeQuery("SELECT COUNT(*) FROM RECEIVERS")) {
+                    assertTrue(rs.next());
+                    assertEquals(rs.getInt(1), receiverCount);
+                }
+                Set<Integer> cellSizes = new HashSet<>();
+                for(PointNoiseMap.CellIndex cellIndex : cells.keySet()) {
+                    cellSizes.add(cellIndex.getSize());
+                    assertTrue(pointNoiseMap.getCellEnvelope(cellIndex).getWidth() >=
+                            pointNoiseMap.getMaximumPropagationDistance() * PointNoiseMap.ADAPTIVE_MINIMAL_CELL_RATIO);
+                }
+                // dense areas have smaller cells than sparse areas
+                assertTrue(cellSizes.size() > 1);
+            }
+            Map<Long, Double> cellLevels = adaptive ? levels : expectedLevels;
+            pointNoiseMap.run(connection, new ArrayList<>(new TreeSet<>(cells.keySet())),
+                    new RootProgressVisitor(1, false, 1).subProcess(cells.size()), (cellIndex, out) -> {
+                for(ComputeRaysOutAttenuation.VerticeSL v : ((ComputeRaysOutAttenuation) out).getVerticesSoundLevel()) {
+                    cellLevels.merge(v.receiverId, PowerUtils.sumArray(PowerUtils.dbaToW(v.value)), Double::sum);
+                }
+            });
+        }
+        assertFalse(expectedLevels.isEmpty());
+        assertEquals(expectedLevels.keySet(), levels.keySet());
+        for(Map.Entry<Long, Double> entry : expectedLevels.entrySet()) {
+            assertEquals(PowerUtils.wToDba(entry.getValue()), PowerUtils.wToDba(levels.get(entry.getKey())), 1e-6);
+        }
+    }
+
+    @Test
+    public void testQuadTreeCellPartitioner() {
+        // 8x8 grid of 100 m cells, dense area in the lower left corner
+        QuadTreeCellPartitioner partitioner = new QuadTreeCellPartitioner(3, 100, 100, 100);
+        for(int i = 0; i < 8; i++) {
+            for(int j = 0; j < 8; j++) {
+                int count = i < 2 && j < 2 ? 50 : 1;
+                for(int k = 0; k < count; k++) {
+                    partitioner.addReceiver(i, j);
+                    partitioner.addSource(i, j);
+                }
+            }
+        }
+        List<QuadTreeCellPartitioner.Block> blocks = partitioner.partition(Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(1, blocks.size());
+        assertEquals(8, blocks.get(0).size);
+        assertEquals(4 * 50 + 60, blocks.get(0).receiverCount);
+        blocks = partitioner.partition(10000, Long.MAX_VALUE);
+        assertTrue(blocks.size() > 1);
+        long receiverCount = 0;
+        int minSize = Integer.MAX_VALUE;
+        int maxSize = 0;
+        for(QuadTreeCellPartitioner.Block block : blocks) {
+            receiverCount += block.receiverCount;
+            minSize = Math.min(minSize, block.size);
+            maxSize = Math.max(maxSize, block.size);
+            assertTrue(block.size == 1 || block.work <= 10000);
+        }
+        assertEquals(4 * 50 + 60, receiverCount);
+        assertEquals(1, minSize);
+        assertEquals(4, maxSize);
+        // the memory limit split the blocks too
+        assertTrue(partitioner.partition(Long.MAX_VALUE, 100 * QuadTreeCellPartitioner.SOURCE_MEMORY).size() > 1);
+    }
+
     public static void assertOrientationEquals(Orientation orientationA, Orientation orientationB, double epsilon) {
         assertEquals(orientationA.pitch, orientationB.pitch, epsilon);
         assertEquals(orientationA.roll, orientationB.roll, epsilon);
@@ -28,14 +28,24 @@ import org.h2gis.utilities.dbtypes.DBTypes;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
+import org.noise_planet.noisemodelling.pathfinder.ProfileBuilder;
+import org.noise_planet.noisemodelling.pathfinder.TopographicRaster;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.*;
 
@@ -297,4 +307,130 @@ public class AscReaderDriverTest {
         }
     }
 
+    @Test
+    public void testReadRaster() throws IOException {
+        AscReaderDriver reader = new AscReaderDriver();
+        TopographicRaster raster = reader.readRaster(new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath()));
+        assertEquals(15, raster.getColumns());
+        assertEquals(20, raster.getRows());
+        assertEquals(0.5, raster.getCellSize(), 1e-12);
+        // Check first read cell
+        assertEquals(234, raster.getZ(-179.75, -80.25), 1e-6);
+        // Check last read cell
+        assertEquals(114, raster.getZ(-172.75, -89.75), 1e-6);
+        // Check nodata cell
+        assertTrue(Double.isNaN(raster.getZ(5, 11)));
+        assertTrue(Double.isNaN(raster.getZ(-177.25, -84.25)));
+
+        // Extract a part of the file
+        reader.setExtractEnvelope(new Envelope(-178, -177, -85, -84));
+        raster = reader.readRaster(new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath()));
+        assertTrue(raster.getEnvelope().contains(new Envelope(-178, -177, -85, -84)));
+        assertTrue(raster.getColumns() < 15);
+        assertTrue(raster.getRows() < 20);
+        assertEquals(154, raster.getZ(-177.75, -84.75), 1e-6);
+    }
+
+
+    @Test
+    public void testParseDouble() {
+        String[] words = new String[]{"0", "-0", "12", "-9999", "+3.5", "154.25", ".5", "5.", "1e3", "-2.5E-3",
+                "0.1", "0.30000000000000004", "123456789012345678", "1e-30", "1.7976931348623157E308", "4.9E-324",
+                "NaN", "-Infinity", "0000012.50000"};
+        for (String word : words) {
+            byte[] bytes = word.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(word, Double.doubleToLongBits(Double.parseDouble(word)),
+                    Double.doubleToLongBits(AscByteReader.parseDouble(bytes, 0, bytes.length)));
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; i++) {
+            String word = String.format(Locale.ROOT, "%." + random.nextInt(8) + "f", (random.nextDouble() - 0.2) * 4000);
+            byte[] bytes = word.getBytes(StandardCharsets.US_ASCII);
+            assertEquals(word, Double.doubleToLongBits(Double.parseDouble(word)),
+                    Double.doubleToLongBits(AscByteReader.parseDouble(bytes, 0, bytes.length)));
+        }
+        try {
+            AscByteReader.parseDouble("12a".getBytes(StandardCharsets.US_ASCII), 0, 3);
+            fail();
+        } catch (NumberFormatException ex) {
+            // expected
+        }
+    }
+
+    /**
+     * Write a grid with random line breaks between the values and without NODATA_value, the cells of the first
+     * column are set to -9999
+     */
+    private static double[][] writeGrid(File file, int columns, int rows) throws IOException {
+        Random random = new Random(42);
+        double[][] values = new double[rows][columns];
+        try (Writer writer = new OutputStreamWriter(file.getName().endsWith(".gz") ?
+                new GZIPOutputStream(new FileOutputStream(file)) : new FileOutputStream(file), StandardCharsets.UTF_8)) {
+            writer.write(String.format(Locale.ROOT, "ncols %d\nnrows %d\nxllcorner 1000\nyllcorner 2000\n" +
+                    "cellsize 2\n", columns, rows));
+            for (int row = 0; row < rows; row++) {
+                for (int column = 0; column < columns; column++) {
+                    String word = column == 0 ? "-9999" :
+                            String.format(Locale.ROOT, "%.2f", random.nextDouble() * 100);
+                    values[row][column] = Double.parseDouble(word);
+                    writer.write(word);
+                    writer.write(random.nextInt(20) == 0 ? "\r\n" : " ");
+                }
+            }
+        }
+        return values;
+    }
+
+    @Test
+    public void testReadRasterParallel() throws IOException {
+        final int columns = 700;
+        final int rows = 1000;
+        File file = new File("target/testReadRasterParallel.asc.gz");
+        double[][] values = writeGrid(file, columns, rows);
+        AscReaderDriver reader = new AscReaderDriver();
+        reader.setThreadCount(1);
+        TopographicRaster expected = reader.readRaster(file);
+        reader.setThreadCount(3);
+        TopographicRaster raster = reader.readRaster(file);
+        assertEquals(columns, raster.getColumns());
+        assertEquals(rows, raster.getRows());
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                // The first row of the file is the northern one
+                double z = raster.getZ(column, rows - 1 - row);
+                assertEquals(expected.getZ(column, rows - 1 - row), z, 0);
+                if (column == 0) {
+                    assertTrue(Double.isNaN(z));
+                } else {
+                    assertEquals((float) values[row][column], z, 0);
+                }
+            }
+        }
+        // Window in the middle of the file
+        reader.setExtractEnvelope(new Envelope(1500, 1600, 3000, 3100));
+        TopographicRaster window = reader.readRaster(file);
+        assertTrue(window.getEnvelope().contains(new Envelope(1500, 1600, 3000, 3100)));
+        assertEquals(raster.getZ(1550.5, 3050.5), window.getZ(1550.5, 3050.5), 0);
+        assertEquals(raster.getZ(1501.0, 3099.0), window.getZ(1501.0, 3099.0), 0);
+    }
+
+    @Test
+    public void testReadTopography() throws IOException, SQLException {
+        File file = new File(AscReaderDriverTest.class.getResource("precip30min.asc").getPath());
+        AscReaderDriver reader = new AscReaderDriver();
+        reader.setDeleteTable(true);
+        reader.read(connection, file, new EmptyProgressVisitor(), "PRECIP30MIN", 4326);
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        assertEquals(JDBCUtilities.getRowCount(connection, TableLocation.parse("PRECIP30MIN", DBTypes.H2GIS)),
+                reader.readTopography(file, profileBuilder));
+        profileBuilder.finishFeeding();
+        // Check first read cell
+        assertEquals(234, profileBuilder.getZ(new Coordinate(-179.75, -80.25)), 1e-6);
+        // Check last read cell
+        assertEquals(114, profileBuilder.getZ(new Coordinate(-172.75, -89.75)), 1e-6);
+
+        // Same cells as the table import with an envelope
+        reader.setExtractEnvelope(new Envelope(-178.242, -174.775, -89.707, -85.205));
+        assertEquals(90, reader.readTopography(file, new ProfileBuilder()));
+    }
 }
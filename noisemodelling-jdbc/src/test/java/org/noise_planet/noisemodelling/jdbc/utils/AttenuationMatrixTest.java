@@ -0,0 +1,223 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.utilities.JDBCUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class AttenuationMatrixTest {
+    private static final int TIME_BIN_SIZE = 3600;
+
+    private Connection connection;
+
+    @Before
+    public void tearUp() throws Exception {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(AttenuationMatrixTest.class.getSimpleName(), true, ""));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if(connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Create roads, traffic, receivers and attenuation tables. Two roads share the same link, some traffic rows are
+     * out of the time bins and the last receivers do not have sources.
+     */
+    private void createTables(Random random, int roadCount, int receiverCount) throws SQLException {
+        try(Statement st = connection.createStatement()) {
+            st.execute("DROP TABLE IF EXISTS ROADS, ROADS_LW, RECEIVERS, ATTENUATION");
+            st.execute("CREATE TABLE ROADS(PK integer PRIMARY KEY, LINK_ID varchar(255), THE_GEOM geometry)");
+            st.execute("CREATE TABLE ROADS_LW(PK integer PRIMARY KEY AUTO_INCREMENT, LINK_ID varchar(255), " +
+                    "LW63 double, LW125 double, LW250 double, LW500 double, LW1000 double, LW2000 double, " +
+                    "LW4000 double, LW8000 double, TIME int)");
+            st.execute("CREATE TABLE RECEIVERS(PK integer PRIMARY KEY, THE_GEOM geometry)");
+            st.execute("CREATE TABLE ATTENUATION(IDRECEIVER integer, IDSOURCE integer, THE_GEOM geometry, " +
+                    "HZ63 double, HZ125 double, HZ250 double, HZ500 double, HZ1000 double, HZ2000 double, " +
+                    "HZ4000 double, HZ8000 double)");
+            st.execute("INSERT INTO ROADS SELECT X, 'link' || (X / 2), ST_MakePoint(X, 0) FROM SYSTEM_RANGE(1, " +
+                    roadCount + ")");
+            st.execute("INSERT INTO RECEIVERS SELECT X, ST_MakePoint(X, 10, 4) FROM SYSTEM_RANGE(1, " +
+                    receiverCount + ")");
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO ROADS_LW VALUES(DEFAULT, ?, ?, ?, ?, " +
+                "?, ?, ?, ?, ?, ?)")) {
+            for(int link = 0; link <= roadCount / 2; link++) {
+                for(int time = 0; time < AttenuationMatrix.DAY_DURATION; time += TIME_BIN_SIZE / 2) {
+                    if(random.nextInt(4) == 0) {
+                        continue;
+                    }
+                    ps.setString(1, "link" + link);
+                    for(int band = 0; band < 8; band++) {
+                        ps.setDouble(2 + band, 40 + random.nextDouble() * 50);
+                    }
+                    ps.setInt(10, time);
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+        try(PreparedStatement ps = connection.prepareStatement("INSERT INTO ATTENUATION VALUES(?, ?, NULL, ?, ?, " +
+                "?, ?, ?, ?, ?, ?)")) {
+            for(int receiver = 1; receiver <= receiverCount - 3; receiver++) {
+                for(int road = 1; road <= roadCount; road++) {
+                    if(random.nextInt(3) != 0) {
+                        continue;
+                    }
+                    ps.setInt(1, receiver);
+                    ps.setInt(2, road);
+                    for(int band = 0; band < 8; band++) {
+                        ps.setDouble(3 + band, -20 - random.nextDouble() * 80);
+                    }
+                    ps.addBatch();
+                }
+            }
+            ps.executeBatch();
+        }
+    }
+
+    /**
+     * Reference levels, summing the traffic of each source of the receiver
+     * @return Levels by receiver identifier, time bin and band
+     */
+    private Map<Long, double[][]> computeReference() throws SQLException {
+        final int timeBinCount = AttenuationMatrix.getTimeBinCount(TIME_BIN_SIZE);
+        Map<Long, double[][]> reference = new HashMap<>();
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT A.IDRECEIVER, L.TIME, A.HZ63 + L.LW63, A.HZ125 + L.LW125, " +
+                    "A.HZ250 + L.LW250, A.HZ500 + L.LW500, A.HZ1000 + L.LW1000, A.HZ2000 + L.LW2000, " +
+                    "A.HZ4000 + L.LW4000, A.HZ8000 + L.LW8000 FROM ATTENUATION A INNER JOIN ROADS R ON " +
+                    "R.PK = A.IDSOURCE INNER JOIN ROADS_LW L ON L.LINK_ID = R.LINK_ID")) {
+            while (rs.next()) {
+                double[][] levels = reference.get(rs.getLong(1));
+                if(levels == null) {
+                    levels = new double[timeBinCount][8];
+                    for(double[] timeBinLevels : levels) {
+                        Arrays.fill(timeBinLevels, AttenuationMatrix.NO_LEVEL);
+                    }
+                    reference.put(rs.getLong(1), levels);
+                }
+                final int time = rs.getInt(2);
+                if(time % TIME_BIN_SIZE == 0) {
+                    double[] timeBinLevels = levels[time / TIME_BIN_SIZE];
+                    for(int band = 0; band < 8; band++) {
+                        timeBinLevels[band] = 10 * Math.log10(Math.pow(10, timeBinLevels[band] / 10) +
+                                Math.pow(10, rs.getDouble(3 + band) / 10));
+                    }
+                }
+            }
+        }
+        return reference;
+    }
+
+    private List<double[]> readLevels(String tableName) throws SQLException {
+        List<double[]> rows = new ArrayList<>();
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT IDRECEIVER, TIME, HZ63, HZ125, HZ250, HZ500, HZ1000, HZ2000, " +
+                    "HZ4000, HZ8000 FROM " + tableName + " ORDER BY PK")) {
+            while (rs.next()) {
+                double[] row = new double[10];
+                for(int i = 0; i < row.length; i++) {
+                    row[i] = rs.getDouble(i + 1);
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    @Test
+    public void testReadMatrix() throws SQLException {
+        createTables(new Random(42), 10, 6);
+        AttenuationMatrix matrix = AttenuationMatrix.read(connection, "ATTENUATION");
+        try(Statement st = connection.createStatement()) {
+            ResultSet rs = st.executeQuery("SELECT COUNT(*), COUNT(DISTINCT IDRECEIVER), COUNT(DISTINCT IDSOURCE) " +
+                    "FROM ATTENUATION");
+            assertTrue(rs.next());
+            assertEquals(rs.getInt(1), matrix.getNonZeroCount());
+            assertEquals(rs.getInt(2), matrix.getReceiverCount());
+            assertEquals(rs.getInt(3), matrix.getSourceCount());
+        }
+        assertEquals(-1, matrix.getRow(6));
+        assertEquals(0, matrix.getRow(1));
+        // A single source and a single time step
+        try(Statement st = connection.createStatement()) {
+            ResultSet rs = st.executeQuery("SELECT IDSOURCE, HZ63 FROM ATTENUATION WHERE IDRECEIVER = 1 LIMIT 1");
+            assertTrue(rs.next());
+            final long source = rs.getLong(1);
+            final double attenuation = rs.getDouble(2);
+            float[] emission = new float[matrix.getSourceCount() * 8];
+            for(int column = 0; column < matrix.getSourceCount(); column++) {
+                if(matrix.getSource(column) == source) {
+                    emission[column * 8] = (float) Math.pow(10, 9.0);
+                }
+            }
+            double[] levels = new double[8];
+            matrix.multiply(0, emission, 1, levels);
+            assertEquals(90 + attenuation, 10 * Math.log10(levels[0]), 1e-4);
+            assertEquals(0, levels[1], 0);
+        }
+    }
+
+    @Test
+    public void testMakeNoiseLevelTable() throws SQLException {
+        createTables(new Random(7), 40, 25);
+        Map<Long, double[][]> reference = computeReference();
+        AttenuationMatrix.makeNoiseLevelTable(connection, "ROADS", "ROADS_LW", "ATTENUATION", "RECEIVERS",
+                "RECEIVERS_LEVEL", TIME_BIN_SIZE, 1);
+        List<double[]> levels = readLevels("RECEIVERS_LEVEL");
+        final int timeBinCount = AttenuationMatrix.getTimeBinCount(TIME_BIN_SIZE);
+        // The receivers without sources are not written
+        assertEquals(22 * timeBinCount, levels.size());
+        for(int i = 0; i < levels.size(); i++) {
+            double[] row = levels.get(i);
+            assertEquals(i / timeBinCount + 1, (long) row[0]);
+            assertEquals((i % timeBinCount) * TIME_BIN_SIZE, (int) row[1]);
+            double[] expected = reference.get((long) row[0])[i % timeBinCount];
+            assertArrayEquals(expected, Arrays.copyOfRange(row, 2, row.length), 1e-4);
+        }
+        try(Statement st = connection.createStatement()) {
+            ResultSet rs = st.executeQuery("SELECT ST_Z(THE_GEOM), ST_X(THE_GEOM) FROM RECEIVERS_LEVEL WHERE " +
+                    "IDRECEIVER = 3 LIMIT 1");
+            assertTrue(rs.next());
+            assertEquals(4, rs.getDouble(1), 0);
+            assertEquals(3, rs.getDouble(2), 0);
+        }
+        // Same rows with a pool of threads
+        AttenuationMatrix.makeNoiseLevelTable(connection, "ROADS", "ROADS_LW", "ATTENUATION", "RECEIVERS",
+                "RECEIVERS_LEVEL_PARALLEL", TIME_BIN_SIZE, 3);
+        List<double[]> parallelLevels = readLevels("RECEIVERS_LEVEL_PARALLEL");
+        assertEquals(levels.size(), parallelLevels.size());
+        for(int i = 0; i < levels.size(); i++) {
+            assertArrayEquals(levels.get(i), parallelLevels.get(i), 0);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.jdbc.utils;
+
+import org.h2gis.functions.factory.H2GISDBFactory;
+import org.h2gis.functions.io.dbf.DBFRead;
+import org.h2gis.functions.io.shp.SHPRead;
+import org.h2gis.utilities.JDBCUtilities;
+import org.h2gis.utilities.SpatialResultSet;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.noise_planet.noisemodelling.jdbc.LDENConfig;
+import org.noise_planet.noisemodelling.jdbc.LDENPointNoiseMapFactoryTest;
+import org.noise_planet.noisemodelling.jdbc.LDENPropagationProcessData;
+import org.noise_planet.noisemodelling.pathfinder.utils.PowerUtils;
+import org.noise_planet.noisemodelling.propagation.PropagationProcessPathData;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MakeLWTableTest {
+    /** Small chunk size, so the tables are split in several chunks that are not a multiple of the thread count */
+    private static final int SMALL_CHUNK_SIZE = 7;
+
+    private Connection connection;
+
+    @Before
+    public void tearUp() throws Exception {
+        connection = JDBCUtilities.wrapConnection(H2GISDBFactory.createSpatialDataBase(MakeLWTableTest.class.getSimpleName(), true, ""));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if(connection != null) {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return Values of the numeric columns of the table ordered by primary key
+     */
+    private List<double[]> readLevels(String tableName) throws SQLException {
+        List<double[]> rows = new ArrayList<>();
+        try(Statement st = connection.createStatement();
+            ResultSet rs = st.executeQuery("SELECT * FROM " + tableName + " ORDER BY PK")) {
+            ResultSetMetaData metaData = rs.getMetaData();
+            List<Integer> columns = new ArrayList<>();
+            for(int column = 1; column <= metaData.getColumnCount(); column++) {
+                if(!metaData.getColumnName(column).equalsIgnoreCase("THE_GEOM")) {
+                    columns.add(column);
+                }
+            }
+            while (rs.next()) {
+                double[] row = new double[columns.size()];
+                for(int i = 0; i < row.length; i++) {
+                    row[i] = rs.getDouble(columns.get(i));
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private void assertSameLevels(List<double[]> expected, List<double[]> actual) {
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.size(), actual.size());
+        for(int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i), 0);
+        }
+    }
+
+    @Test
+    public void testMakeLWTableParallel() throws SQLException, IOException {
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("roads_traff.shp").getFile());
+        LDENConfig ldenConfig = new LDENConfig(LDENConfig.INPUT_MODE.INPUT_MODE_TRAFFIC_FLOW);
+        ldenConfig.setCoefficientVersion(2);
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.DAY, new PropagationProcessPathData(false));
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.EVENING, new PropagationProcessPathData(false));
+        ldenConfig.setPropagationProcessPathData(LDENConfig.TIME_PERIOD.NIGHT, new PropagationProcessPathData(false));
+        MakeLWTable.makeRoadLWTable(connection, "ROADS_TRAFF", "LW_ROADS_SEQ", ldenConfig, 1);
+        MakeLWTable.makeRoadLWTable(connection, "ROADS_TRAFF", "LW_ROADS_PAR", ldenConfig, 4);
+        MakeLWTable.makeRoadLWTable(connection, "ROADS_TRAFF", "LW_ROADS_CHUNK", ldenConfig, 4, SMALL_CHUNK_SIZE);
+        List<double[]> expected = readLevels("LW_ROADS_SEQ");
+        assertTrue(expected.size() > 2 * SMALL_CHUNK_SIZE);
+        assertSameLevels(expected, readLevels("LW_ROADS_PAR"));
+        assertSameLevels(expected, readLevels("LW_ROADS_CHUNK"));
+        // Same emission as the computation of the source emission of the noise map
+        LDENPropagationProcessData ldenData = new LDENPropagationProcessData(null, ldenConfig);
+        try(Statement st = connection.createStatement();
+            SpatialResultSet rs = st.executeQuery("SELECT * FROM ROADS_TRAFF ORDER BY PK").unwrap(SpatialResultSet.class)) {
+            int i = 0;
+            while (rs.next()) {
+                double[][] lw = ldenData.computeLw(rs);
+                for(int period = 0; period < lw.length; period++) {
+                    double[] lwDb = PowerUtils.wToDba(lw[period]);
+                    for(int idFreq = 0; idFreq < lwDb.length; idFreq++) {
+                        assertEquals(lwDb[idFreq], expected.get(i)[1 + period * lwDb.length + idFreq], 1e-6);
+                    }
+                }
+                i++;
+            }
+            assertEquals(expected.size(), i);
+        }
+        try(ResultSet rs = connection.createStatement().executeQuery("SELECT ST_Z(ST_StartPoint(THE_GEOM)) FROM LW_ROADS_PAR")) {
+            while (rs.next()) {
+                assertEquals(0.05, rs.getDouble(1), 1e-9);
+            }
+        }
+
+        SHPRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("PropaRail/Rail_Section2.shp").getFile());
+        DBFRead.importTable(connection, LDENPointNoiseMapFactoryTest.class.getResource("PropaRail/Rail_Traffic.dbf").getFile());
+        MakeLWTable.makeTrainLWTable(connection, "Rail_Section2", "Rail_Traffic", "LW_RAILWAY_SEQ", 1);
+        MakeLWTable.makeTrainLWTable(connection, "Rail_Section2", "Rail_Traffic", "LW_RAILWAY_PAR", 4);
+        MakeLWTable.makeTrainLWTable(connection, "Rail_Section2", "Rail_Traffic", "LW_RAILWAY_CHUNK", 4,
+                SMALL_CHUNK_SIZE);
+        expected = readLevels("LW_RAILWAY_SEQ");
+        assertSameLevels(expected, readLevels("LW_RAILWAY_PAR"));
+        assertSameLevels(expected, readLevels("LW_RAILWAY_CHUNK"));
+    }
+}
@@ -69,7 +69,7 @@ public class CnossosPropagationData {
     /** Profile builder */
     public ProfileBuilder profileBuilder;
     /** Source Index */
-    public QueryGeometryStructure sourcesIndex = new QueryRTree();
+    public QueryGeometryStructure sourcesIndex = new QueryPackedRTree();
     /** Sources geometries. Can be LINESTRING or POINT */
     public List<Geometry> sourceGeometries = new ArrayList<>();
     /** Source orientation for emission computation */
@@ -87,6 +87,12 @@ public class CnossosPropagationData {
      */
     public Map<Long, Double> sourceGs = new HashMap<>();
 
+    /** Orientation of the sources by source index, filled by the addSource methods, null if not defined */
+    private Orientation[] sourceOrientationByIndex = new Orientation[0];
+    /** Direction attenuation index of the sources by source index, filled by the addSource methods */
+    private Integer[] sourceDirectionByIndex = new Integer[0];
+    /** Gs coefficient of the sources by source index, filled by the addSource methods, NaN if not defined */
+    private double[] sourceGsByIndex = new double[0];
 
     /** Maximum reflexion order */
     public int reflexionOrder = 1;
@@ -118,6 +124,10 @@ public class CnossosPropagationData {
     /** maximum dB Error, stop calculation if the sum of further sources contributions are smaller than this value */
     public double maximumError = Double.NEGATIVE_INFINITY;
 
+    /** maximum dB Error of the geometric dispersion when consecutive sub-sources of a line source are merged into one
+     * equivalent source, the merged length grows with the distance to the receiver. 0 to disable */
+    public double sourceAggregationError = 0;
+
     /** stop calculation if the sum of further sources contributions are smaller than this value */
     public double noiseFloor = Double.NEGATIVE_INFINITY;
 
@@ -159,12 +169,95 @@ public class CnossosPropagationData {
 
     public void addSource(Long pk, Geometry geom, Orientation orientation) {
         addSource(pk, geom);
-        sourceOrientation.put(pk, orientation);
+        setSourceOrientation(pk, orientation);
     }
 
     public void addSource(Long pk, Geometry geom, Double gs) {
         addSource(pk, geom);
+        setSourceGs(pk, gs);
+    }
+
+    /**
+     * Grow the attributes arrays up to the last added source
+     * @return Index of the last added source
+     */
+    private int lastSourceIndex() {
+        int srcIndex = sourceGeometries.size() - 1;
+        if(srcIndex >= sourceGsByIndex.length) {
+            int capacity = Math.max(16, Math.max(srcIndex + 1, sourceGsByIndex.length * 2));
+            sourceOrientationByIndex = Arrays.copyOf(sourceOrientationByIndex, capacity);
+            sourceDirectionByIndex = Arrays.copyOf(sourceDirectionByIndex, capacity);
+            int oldLength = sourceGsByIndex.length;
+            sourceGsByIndex = Arrays.copyOf(sourceGsByIndex, capacity);
+            Arrays.fill(sourceGsByIndex, oldLength, capacity, Double.NaN);
+        }
+        return srcIndex;
+    }
+
+    private void setSourceOrientation(Long pk, Orientation orientation) {
+        sourceOrientation.put(pk, orientation);
+        int srcIndex = lastSourceIndex();
+        sourceOrientationByIndex[srcIndex] = orientation;
+    }
+
+    private void setSourceDirection(Long pk, int directionIndex) {
+        sourceDirection.put(pk, directionIndex);
+        int srcIndex = lastSourceIndex();
+        sourceDirectionByIndex[srcIndex] = directionIndex;
+    }
+
+    private void setSourceGs(Long pk, Double gs) {
         sourceGs.put(pk, gs);
+        int srcIndex = lastSourceIndex();
+        sourceGsByIndex[srcIndex] = gs == null ? Double.NaN : gs;
+    }
+
+    /**
+     * @param srcIndex Source index in the list sourceGeometries
+     * @return Orientation of the source or null if not defined
+     */
+    public Orientation getSourceOrientation(int srcIndex) {
+        if(srcIndex < sourceOrientationByIndex.length && sourceOrientationByIndex[srcIndex] != null) {
+            return sourceOrientationByIndex[srcIndex];
+        }
+        // Orientation directly provided in the map
+        if(!sourceOrientation.isEmpty() && srcIndex < sourcesPk.size()) {
+            return sourceOrientation.get(sourcesPk.get(srcIndex));
+        }
+        return null;
+    }
+
+    /**
+     * @param srcIndex Source index in the list sourceGeometries
+     * @return Direction attenuation index of the source or null if the source is omnidirectional
+     */
+    public Integer getSourceDirection(int srcIndex) {
+        if(srcIndex < sourceDirectionByIndex.length && sourceDirectionByIndex[srcIndex] != null) {
+            return sourceDirectionByIndex[srcIndex];
+        }
+        // Direction directly provided in the map
+        if(!sourceDirection.isEmpty() && srcIndex < sourcesPk.size()) {
+            return sourceDirection.get(sourcesPk.get(srcIndex));
+        }
+        return null;
+    }
+
+    /**
+     * @param srcIndex Source index in the list sourceGeometries
+     * @return Gs coefficient of the source or NaN if not defined
+     */
+    public double getSourceGsAttribute(int srcIndex) {
+        if(srcIndex < sourceGsByIndex.length && !Double.isNaN(sourceGsByIndex[srcIndex])) {
+            return sourceGsByIndex[srcIndex];
+        }
+        // Gs directly provided in the map
+        if(!sourceGs.isEmpty() && srcIndex < sourcesPk.size()) {
+            Double gs = sourceGs.get(sourcesPk.get(srcIndex));
+            if(gs != null) {
+                return gs;
+            }
+        }
+        return Double.NaN;
     }
 
     /**
@@ -199,15 +292,15 @@ public class CnossosPropagationData {
         }
         int directivityField = JDBCUtilities.getFieldIndex(rs.getMetaData(), DIRECTIVITY_DATABASE_FIELD);
         if(sourceFieldNames.containsKey(DIRECTIVITY_DATABASE_FIELD)) {
-            sourceDirection.put(pk, rs.getInt(directivityField));
+            setSourceDirection(pk, rs.getInt(directivityField));
         }
         if(hasOrientation) {
-            sourceOrientation.put(pk, new Orientation(yaw, pitch, roll));
+            setSourceOrientation(pk, new Orientation(yaw, pitch, roll));
         }
 
         int gsField = JDBCUtilities.getFieldIndex(rs.getMetaData(), GS_DATABASE_FIELD);
         if(sourceFieldNames.containsKey(GS_DATABASE_FIELD)) {
-            sourceGs.put(pk, rs.getDouble(gsField));
+            setSourceGs(pk, rs.getDouble(gsField));
         }
     }
 
@@ -0,0 +1,655 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.noise_planet.noisemodelling.pathfinder.ProfileBuilder.IntersectionType.*;
+
+/**
+ * Cutting profile stored as a structure of primitive arrays.
+ * This is the allocation light equivalent of {@link ProfileBuilder.CutProfile}: the cut points are referenced by
+ * their index, the source is always at index 0 and the receiver at index {@link #size()} - 1 once the profile has
+ * been filled by {@link ProfileBuilder#getProfile(Coordinate, Coordinate, double, CompactCutProfile)}.
+ * An instance is meant to be reused by the same thread for consecutive profiles, the arrays only grow.
+ */
+public class CompactCutProfile {
+    private static final int DEFAULT_CAPACITY = 32;
+    private static final ProfileBuilder.IntersectionType[] TYPES = ProfileBuilder.IntersectionType.values();
+    private static final byte FREE_FIELD_UNKNOWN = -1;
+
+    int size = 0;
+    double[] x;
+    double[] y;
+    double[] z;
+    /** Topographic height cache, NaN if not computed or not available */
+    double[] zGround;
+    double[] groundCoef;
+    byte[] type;
+    int[] id;
+    int[] buildingId;
+    int[] wallId;
+    boolean[] corner;
+    /** Reference to the wall absorption list, null if empty */
+    List<Double>[] wallAlpha;
+
+    private boolean hasBuildingInter = false;
+    private boolean hasTopographyInter = false;
+    private boolean hasGroundEffectInter = false;
+    private byte freeField = FREE_FIELD_UNKNOWN;
+    private double distanceToSR = 0;
+    private Orientation srcOrientation;
+
+    // Working arrays used for sorting and reordering
+    private int[] order = new int[0];
+    private int[] orderTmp = new int[0];
+    private double[] doubleTmp = new double[0];
+    private int[] intTmp = new int[0];
+    private byte[] byteTmp = new byte[0];
+    private boolean[] booleanTmp = new boolean[0];
+    private List<Double>[] alphaTmp = newAlphaArray(0);
+
+    public CompactCutProfile() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CompactCutProfile(int capacity) {
+        x = new double[capacity];
+        y = new double[capacity];
+        z = new double[capacity];
+        zGround = new double[capacity];
+        groundCoef = new double[capacity];
+        type = new byte[capacity];
+        id = new int[capacity];
+        buildingId = new int[capacity];
+        wallId = new int[capacity];
+        corner = new boolean[capacity];
+        wallAlpha = newAlphaArray(capacity);
+    }
+
+    /**
+     * Copy the content of a materialized cutting profile
+     * @param cutProfile Cutting profile to copy
+     */
+    public CompactCutProfile(ProfileBuilder.CutProfile cutProfile) {
+        this(Math.max(DEFAULT_CAPACITY, cutProfile.getCutPoints().size()));
+        for(ProfileBuilder.CutPoint cutPoint : cutProfile.getCutPoints()) {
+            Coordinate c = cutPoint.getCoordinate();
+            int i = add(c.x, c.y, c.z, cutPoint.getType(), cutPoint.getId(), cutPoint.isCorner());
+            buildingId[i] = cutPoint.getBuildingId();
+            wallId[i] = cutPoint.getWallId();
+            groundCoef[i] = cutPoint.getGroundCoef();
+            zGround[i] = cutPoint.getzGround();
+            wallAlpha[i] = cutPoint.getWallAlpha();
+        }
+        hasBuildingInter = cutProfile.intersectBuilding();
+        hasTopographyInter = cutProfile.intersectTopography();
+        hasGroundEffectInter = cutProfile.intersectGroundEffect();
+        srcOrientation = cutProfile.getSrcOrientation();
+        distanceToSR = cutProfile.getDistanceToSR();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Double>[] newAlphaArray(int capacity) {
+        return (List<Double>[]) new List[capacity];
+    }
+
+    /**
+     * Remove all the cut points, the allocated arrays are kept
+     */
+    public void clear() {
+        size = 0;
+        hasBuildingInter = false;
+        hasTopographyInter = false;
+        hasGroundEffectInter = false;
+        freeField = FREE_FIELD_UNKNOWN;
+        distanceToSR = 0;
+        srcOrientation = null;
+        Arrays.fill(wallAlpha, null);
+    }
+
+    /**
+     * @param capacity Minimal number of cut points that can be stored without reallocation
+     */
+    public void ensureCapacity(int capacity) {
+        if(capacity > x.length) {
+            int newCapacity = Math.max(capacity, x.length + (x.length >> 1));
+            x = Arrays.copyOf(x, newCapacity);
+            y = Arrays.copyOf(y, newCapacity);
+            z = Arrays.copyOf(z, newCapacity);
+            zGround = Arrays.copyOf(zGround, newCapacity);
+            groundCoef = Arrays.copyOf(groundCoef, newCapacity);
+            type = Arrays.copyOf(type, newCapacity);
+            id = Arrays.copyOf(id, newCapacity);
+            buildingId = Arrays.copyOf(buildingId, newCapacity);
+            wallId = Arrays.copyOf(wallId, newCapacity);
+            corner = Arrays.copyOf(corner, newCapacity);
+            wallAlpha = Arrays.copyOf(wallAlpha, newCapacity);
+        }
+    }
+
+    /**
+     * Append a cut point
+     * @return Index of the new cut point
+     */
+    int add(double px, double py, double pz, ProfileBuilder.IntersectionType cutType, int cutId, boolean isCorner) {
+        ensureCapacity(size + 1);
+        int i = size++;
+        x[i] = px;
+        y[i] = py;
+        z[i] = pz;
+        zGround[i] = Double.NaN;
+        groundCoef[i] = 0;
+        type[i] = (byte) cutType.ordinal();
+        id[i] = cutId;
+        buildingId[i] = -1;
+        wallId[i] = -1;
+        corner[i] = isCorner;
+        wallAlpha[i] = null;
+        return i;
+    }
+
+    void addBuildingCutPt(Coordinate coord, int cutBuildingId, int cutWallId, boolean isCorner) {
+        int i = add(coord.x, coord.y, coord.z, BUILDING, cutBuildingId, isCorner);
+        buildingId[i] = cutBuildingId;
+        wallId[i] = cutWallId;
+        hasBuildingInter = true;
+    }
+
+    void addWallCutPt(Coordinate coord, int cutId, boolean isCorner, List<Double> alphas) {
+        int i = add(coord.x, coord.y, coord.z, WALL, cutId, isCorner);
+        wallId[i] = cutId;
+        wallAlpha[i] = alphas;
+        hasBuildingInter = true;
+    }
+
+    void addTopoCutPt(Coordinate coord, int cutId) {
+        addTopoCutPt(coord.x, coord.y, coord.z, cutId);
+    }
+
+    void addTopoCutPt(double x, double y, double z, int cutId) {
+        add(x, y, z, TOPOGRAPHY, cutId, false);
+        hasTopographyInter = true;
+    }
+
+    void addGroundCutPt(Coordinate coord, int cutId) {
+        add(coord.x, coord.y, coord.z, GROUND_EFFECT, cutId, false);
+        hasGroundEffectInter = true;
+    }
+
+    /**
+     * Insert the source cut point at the first position
+     */
+    void addSource(Coordinate coord) {
+        ensureCapacity(size + 1);
+        shift(0, size, 1);
+        size++;
+        set(0, coord, SOURCE);
+    }
+
+    /**
+     * Append the receiver cut point
+     */
+    void addReceiver(Coordinate coord) {
+        ensureCapacity(size + 1);
+        set(size++, coord, RECEIVER);
+    }
+
+    private void set(int i, Coordinate coord, ProfileBuilder.IntersectionType cutType) {
+        x[i] = coord.x;
+        y[i] = coord.y;
+        z[i] = coord.z;
+        zGround[i] = Double.NaN;
+        groundCoef[i] = 0;
+        type[i] = (byte) cutType.ordinal();
+        id[i] = -1;
+        buildingId[i] = -1;
+        wallId[i] = -1;
+        corner[i] = false;
+        wallAlpha[i] = null;
+    }
+
+    private void shift(int from, int length, int offset) {
+        System.arraycopy(x, from, x, from + offset, length);
+        System.arraycopy(y, from, y, from + offset, length);
+        System.arraycopy(z, from, z, from + offset, length);
+        System.arraycopy(zGround, from, zGround, from + offset, length);
+        System.arraycopy(groundCoef, from, groundCoef, from + offset, length);
+        System.arraycopy(type, from, type, from + offset, length);
+        System.arraycopy(id, from, id, from + offset, length);
+        System.arraycopy(buildingId, from, buildingId, from + offset, length);
+        System.arraycopy(wallId, from, wallId, from + offset, length);
+        System.arraycopy(corner, from, corner, from + offset, length);
+        System.arraycopy(wallAlpha, from, wallAlpha, from + offset, length);
+    }
+
+    /**
+     * Rebuild the cut point list from the given index list. A cut point may be referenced more than once.
+     * A negative value ~i references a copy of the cut point i located on the ground, its z is the topographic height
+     * that must have been computed before with {@link ProfileBuilder#getZGround(CompactCutProfile, int)}.
+     * @param indexes Index of the cut points to keep, in the new order
+     * @param length Number of indexes
+     */
+    void reorder(int[] indexes, int length) {
+        ensureCapacity(length);
+        if(doubleTmp.length < length) {
+            doubleTmp = new double[x.length];
+            intTmp = new int[x.length];
+            byteTmp = new byte[x.length];
+            booleanTmp = new boolean[x.length];
+            alphaTmp = newAlphaArray(x.length);
+        }
+        reorder(x, indexes, length);
+        reorder(y, indexes, length);
+        reorder(z, indexes, length);
+        reorder(zGround, indexes, length);
+        reorder(groundCoef, indexes, length);
+        reorder(id, indexes, length);
+        reorder(buildingId, indexes, length);
+        reorder(wallId, indexes, length);
+        for(int i = 0; i < length; i++) {
+            int index = index(indexes[i]);
+            byteTmp[i] = type[index];
+            booleanTmp[i] = corner[index];
+            alphaTmp[i] = wallAlpha[index];
+        }
+        System.arraycopy(byteTmp, 0, type, 0, length);
+        System.arraycopy(booleanTmp, 0, corner, 0, length);
+        System.arraycopy(alphaTmp, 0, wallAlpha, 0, length);
+        Arrays.fill(alphaTmp, 0, length, null);
+        for(int i = 0; i < length; i++) {
+            if(indexes[i] < 0) {
+                z[i] = Double.isNaN(zGround[i]) ? 0.0 : zGround[i];
+            }
+        }
+        size = length;
+    }
+
+    private static int index(int reference) {
+        return reference >= 0 ? reference : ~reference;
+    }
+
+    private void reorder(double[] values, int[] indexes, int length) {
+        for(int i = 0; i < length; i++) {
+            doubleTmp[i] = values[index(indexes[i])];
+        }
+        System.arraycopy(doubleTmp, 0, values, 0, length);
+    }
+
+    private void reorder(int[] values, int[] indexes, int length) {
+        for(int i = 0; i < length; i++) {
+            intTmp[i] = values[index(indexes[i])];
+        }
+        System.arraycopy(intTmp, 0, values, 0, length);
+    }
+
+    /**
+     * @param length Minimal length of the working index arrays
+     * @return Working index array, its content is not defined
+     */
+    int[] getOrderBuffer(int length) {
+        if(order.length < length) {
+            order = new int[Math.max(length, x.length)];
+        }
+        return order;
+    }
+
+    /**
+     * Sort the cut points by their coordinates, following the direction c0 to c1 (same order as
+     * {@link ProfileBuilder.CutProfile#sort(Coordinate, Coordinate)}).
+     */
+    void sort(Coordinate c0, Coordinate c1) {
+        int[] indexes = getOrderBuffer(size);
+        for(int i = 0; i < size; i++) {
+            indexes[i] = i;
+        }
+        sortIndexes(indexes, size, c0.x <= c1.x, c0.y <= c1.y);
+        reorder(indexes, size);
+    }
+
+    /**
+     * Stable sort of cut point indexes by their x then y coordinates
+     * @param indexes Cut point indexes
+     * @param length Number of indexes to sort
+     * @param xAscending Sort x by ascending order
+     * @param yAscending Sort y by ascending order
+     */
+    private void sortIndexes(int[] indexes, int length, boolean xAscending, boolean yAscending) {
+        if(orderTmp.length < length) {
+            orderTmp = new int[Math.max(length, x.length)];
+        }
+        int[] src = indexes;
+        int[] dst = orderTmp;
+        for(int width = 1; width < length; width *= 2) {
+            for(int left = 0; left < length; left += 2 * width) {
+                int mid = Math.min(left + width, length);
+                int right = Math.min(left + 2 * width, length);
+                int i = left;
+                int j = mid;
+                int k = left;
+                while(i < mid && j < right) {
+                    if(compare(src[j], src[i], xAscending, yAscending) < 0) {
+                        dst[k++] = src[j++];
+                    } else {
+                        dst[k++] = src[i++];
+                    }
+                }
+                while(i < mid) {
+                    dst[k++] = src[i++];
+                }
+                while(j < right) {
+                    dst[k++] = src[j++];
+                }
+            }
+            int[] swap = src;
+            src = dst;
+            dst = swap;
+        }
+        if(src != indexes) {
+            System.arraycopy(src, 0, indexes, 0, length);
+        }
+    }
+
+    private int compare(int a, int b, boolean xAscending, boolean yAscending) {
+        if((xAscending ? x[a] < x[b] : x[a] > x[b]) ||
+                (x[a] == x[b] && (yAscending ? y[a] < y[b] : y[a] > y[b]))) {
+            return -1;
+        }
+        if(x[a] == x[b] && y[a] == y[b]) {
+            return 0;
+        }
+        return 1;
+    }
+
+    /**
+     * Same as {@link ProfileBuilder.CutPoint#compareTo(ProfileBuilder.CutPoint)}
+     */
+    public int compareTo(int a, int b) {
+        return compare(a, b, true, true);
+    }
+
+    /**
+     * @return Number of cut points
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getSourceIndex() {
+        return 0;
+    }
+
+    public int getReceiverIndex() {
+        return size - 1;
+    }
+
+    public double getX(int i) {
+        return x[i];
+    }
+
+    public double getY(int i) {
+        return y[i];
+    }
+
+    public double getZ(int i) {
+        return z[i];
+    }
+
+    /**
+     * @return Cached topographic height, NaN if not computed yet. Use
+     * {@link ProfileBuilder#getZGround(CompactCutProfile, int)} to compute it.
+     */
+    public double getCachedZGround(int i) {
+        return zGround[i];
+    }
+
+    public double getGroundCoef(int i) {
+        return groundCoef[i];
+    }
+
+    public void setGroundCoef(int i, double coefficient) {
+        groundCoef[i] = coefficient;
+    }
+
+    public ProfileBuilder.IntersectionType getType(int i) {
+        return TYPES[type[i]];
+    }
+
+    public int getId(int i) {
+        return id[i];
+    }
+
+    public int getBuildingId(int i) {
+        return buildingId[i];
+    }
+
+    public int getWallId(int i) {
+        return wallId[i];
+    }
+
+    public boolean isCorner(int i) {
+        return corner[i];
+    }
+
+    /**
+     * @return The wall absorption, the returned list must not be modified
+     */
+    public List<Double> getWallAlpha(int i) {
+        List<Double> alpha = wallAlpha[i];
+        return alpha == null ? new ArrayList<>() : alpha;
+    }
+
+    /**
+     * @return True if both cut points have the same planar coordinates
+     */
+    public boolean equals2D(int a, int b) {
+        return x[a] == x[b] && y[a] == y[b];
+    }
+
+    /**
+     * @return Planar distance between two cut points
+     */
+    public double dist2D(int a, int b) {
+        return Math.sqrt((x[b]-x[a])*(x[b]-x[a]) + (y[b]-y[a])*(y[b]-y[a]));
+    }
+
+    /**
+     * @return A new coordinate of the cut point
+     */
+    public Coordinate getCoordinate(int i) {
+        return new Coordinate(x[i], y[i], z[i]);
+    }
+
+    public void setSrcOrientation(Orientation srcOrientation){
+        this.srcOrientation = srcOrientation;
+    }
+
+    public Orientation getSrcOrientation(){
+        return srcOrientation;
+    }
+
+    public boolean intersectBuilding(){
+        return hasBuildingInter;
+    }
+
+    public boolean intersectTopography(){
+        return hasTopographyInter;
+    }
+
+    public boolean intersectGroundEffect(){
+        return hasGroundEffectInter;
+    }
+
+    /**
+     * get Distance of the not free field point to the Source-Receiver Segment
+     */
+    public double getDistanceToSR(){
+        return distanceToSR;
+    }
+
+    /**
+     * @return True if no cut point is above the source-receiver line, see {@link ProfileBuilder.CutProfile#isFreeField()}
+     */
+    public boolean isFreeField() {
+        if(freeField == FREE_FIELD_UNKNOWN) {
+            freeField = 1;
+            int s = getSourceIndex();
+            int r = getReceiverIndex();
+            boolean allMatch = true;
+            for(int i = 0; i < size; i++) {
+                if(!(equals2D(i, s) || equals2D(i, r))) {
+                    allMatch = false;
+                    break;
+                }
+            }
+            if(allMatch) {
+                return true;
+            }
+            // Vector representing the source-receiver segment
+            double dx = x[r] - x[s];
+            double dy = y[r] - y[s];
+            double dz = z[r] - z[s];
+            for(int i = 0; i < size; i++) {
+                if(type[i] == GROUND_EFFECT.ordinal()) {
+                    continue;
+                }
+                // Projection of the point onto the source-receiver segment
+                double px = x[i] - x[s];
+                double py = y[i] - y[s];
+                double pz = z[i] - z[s];
+                double t = (dx * px + dy * py + dz * pz) / (dx * dx + dy * dy + dz * dz);
+                double closestX = x[s] + t * dx;
+                double closestY = y[s] + t * dy;
+                double closestZ = z[s] + t * dz;
+                double distance = Math.sqrt((x[i] - closestX) * (x[i] - closestX)
+                        + (y[i] - closestY) * (y[i] - closestY)
+                        + (z[i] - closestZ) * (z[i] - closestZ));
+                if(distance > 0 && z[i] - closestZ > 0 && !corner[i]) {
+                    freeField = 0;
+                    distanceToSR = distance;
+                    break;
+                }
+            }
+        }
+        return freeField == 1;
+    }
+
+    /**
+     * Compute the ground factor of the path between two cut points, see
+     * {@link ProfileBuilder.CutProfile#getGPath(ProfileBuilder.CutPoint, ProfileBuilder.CutPoint)}
+     * @param p0 Index of the first cut point
+     * @param p1 Index of the last cut point
+     * @return Ground factor
+     */
+    public double getGPath(int p0, int p1) {
+        int current = p0;
+        double totLength = dist2D(p0, p1);
+        double rsLength = 0.0;
+        int[] pts = getOrderBuffer(size);
+        int ptsCount = 0;
+        for(int i = 0; i < size; i++) {
+            if(type[i] != TOPOGRAPHY.ordinal() && type[i] != BUILDING.ordinal()) {
+                pts[ptsCount++] = i;
+            }
+        }
+        int p0p1 = compareTo(p0, p1);
+        // Same order as the CutPoint natural ordering, or reverse order
+        sortIndexes(pts, ptsCount, p0p1 <= 0, p0p1 <= 0);
+        int dir = -p0p1;
+        for(int k = 0; k < ptsCount; k++) {
+            int cut = pts[k];
+            if(dir * compareTo(cut, current) >= 0 && dir * compareTo(cut, p1) < 0) {
+                rsLength += dist2D(current, cut) * groundCoef[current];
+                current = cut;
+            }
+        }
+        rsLength += dist2D(current, p1) * groundCoef[p1];
+        return rsLength / totLength;
+    }
+
+    public double getGPath() {
+        return getGPath(getSourceIndex(), getReceiverIndex());
+    }
+
+    /**
+     * @param withGroundEffect If false the ground effect cut points are not copied
+     * @return A copy of this profile with arrays trimmed to the number of cut points
+     */
+    public CompactCutProfile copy(boolean withGroundEffect) {
+        CompactCutProfile other = new CompactCutProfile(size);
+        for(int i = 0; i < size; i++) {
+            if(withGroundEffect || type[i] != GROUND_EFFECT.ordinal()) {
+                int j = other.size++;
+                other.x[j] = x[i];
+                other.y[j] = y[i];
+                other.z[j] = z[i];
+                other.zGround[j] = zGround[i];
+                other.groundCoef[j] = groundCoef[i];
+                other.type[j] = type[i];
+                other.id[j] = id[i];
+                other.buildingId[j] = buildingId[i];
+                other.wallId[j] = wallId[i];
+                other.corner[j] = corner[i];
+                other.wallAlpha[j] = wallAlpha[i];
+            }
+        }
+        other.hasBuildingInter = hasBuildingInter;
+        other.hasTopographyInter = hasTopographyInter;
+        other.hasGroundEffectInter = hasGroundEffectInter && withGroundEffect;
+        other.srcOrientation = srcOrientation;
+        return other;
+    }
+
+    /**
+     * @return New cut point instance of the given index
+     */
+    public ProfileBuilder.CutPoint getCutPoint(int i) {
+        return new ProfileBuilder.CutPoint(this, i);
+    }
+
+    /**
+     * @return New cut point instances of this profile
+     */
+    public List<ProfileBuilder.CutPoint> getCutPoints() {
+        List<ProfileBuilder.CutPoint> cutPoints = new ArrayList<>(size);
+        for(int i = 0; i < size; i++) {
+            cutPoints.add(getCutPoint(i));
+        }
+        return cutPoints;
+    }
+
+    /**
+     * @return Materialized cutting profile
+     */
+    public ProfileBuilder.CutProfile toCutProfile() {
+        return new ProfileBuilder.CutProfile(this);
+    }
+
+    /**
+     * @return True if {@link #isFreeField()} has already been evaluated
+     */
+    boolean isFreeFieldComputed() {
+        return freeField != FREE_FIELD_UNKNOWN;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactCutProfile{" + "pts=" + getCutPoints() + ", " +
+                "hasBuildingInter=" + hasBuildingInter + ", hasTopographyInter=" + hasTopographyInter + ", " +
+                "hasGroundEffectInter=" + hasGroundEffectInter + ", freeField=" + freeField + ", " +
+                "srcOrientation=" + srcOrientation + '}';
+    }
+}
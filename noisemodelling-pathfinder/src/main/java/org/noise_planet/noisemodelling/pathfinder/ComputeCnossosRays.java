@@ -51,9 +51,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 import static java.lang.Double.isNaN;
@@ -80,13 +84,44 @@ public class ComputeCnossosRays {
     private static final Logger LOGGER = LoggerFactory.getLogger(ComputeCnossosRays.class);
 
     private static final GeometryFactory GEOMETRY_FACTORY = new GeometryFactory();
+    /** Working profiles of each thread, for the direct source-receiver line and for the segments of the paths */
+    private static final ThreadLocal<CompactCutProfile> DIRECT_PROFILE = ThreadLocal.withInitial(CompactCutProfile::new);
+    private static final ThreadLocal<CompactCutProfile> SEGMENT_PROFILE = ThreadLocal.withInitial(CompactCutProfile::new);
+    private static final ThreadLocal<IndexBuffer> SOURCE_INDEX_BUFFER = ThreadLocal.withInitial(IndexBuffer::new);
 
     /** Propagation data to use for computation. */
     private final CnossosPropagationData data;
 
+    /** Maximum number of receivers processed by a task when the batch size is automatic */
+    private static final int MAXIMUM_RECEIVER_BATCH = 64;
+    /** Targeted number of tasks per thread when the batch size is automatic */
+    private static final int TASKS_PER_THREAD = 16;
+    /** Default side of the areas where the receivers share the same image receivers */
+    public static final double DEFAULT_MIRROR_RECEIVER_CLUSTER_SIZE = 20;
+    /** Number of receiver clusters kept by a task */
+    private static final int MIRROR_RECEIVER_CLUSTER_CACHE_SIZE = 4;
+    /** The cache of the free field side hull segments is cleared when it reaches this size */
+    private static final int MAXIMUM_FREE_FIELD_CACHE_SIZE = 200000;
+
     /** Number of thread used for ray computation. */
     private int threadCount ;
+    /** Number of receivers per task, 0 if automatic */
+    private int receiverBatchSize = 0;
+    /** Evaluate the most expensive receivers first */
+    private boolean sortReceiversByCost = true;
+    /** Side of the areas where the receivers share the same image receivers, 0 to compute them per receiver */
+    private double mirrorReceiverClusterSize = DEFAULT_MIRROR_RECEIVER_CLUSTER_SIZE;
+    /** Maximum number of image receivers of a receiver */
+    private int mirrorReceiverCapacity = MirrorReceiverResultIndex.DEFAULT_MIRROR_RECEIVER_CAPACITY;
     private ProfilerThread profilerThread;
+    /** Side hull segments that do not cross any building or wall, shared by all the receivers of the cell */
+    private final Set<FreeFieldSegmentKey> freeFieldSegmentCache = ConcurrentHashMap.newKeySet();
+    /**
+     * Walls in the propagation area of each receiver cluster, queried once by the receiver cost estimation and
+     * reused for the image receivers. The lists reference the walls of the profile builder and are released at the
+     * end of the run.
+     */
+    private final Map<Long, List<ProfileBuilder.Wall>> clusterWalls = new ConcurrentHashMap<>();
 
     /**
      * Create new instance from the propagation data.
@@ -123,39 +158,270 @@ public class ComputeCnossosRays {
         this.threadCount = threadCount;
     }
 
+    /**
+     * Receivers are dispatched to the threads by batch. Small batches give a better load balancing between threads.
+     * @param receiverBatchSize Number of receivers per task, 0 to let the scheduler choose.
+     */
+    public void setReceiverBatchSize(int receiverBatchSize) {
+        this.receiverBatchSize = receiverBatchSize;
+    }
+
+    /**
+     * @return Number of receivers per task, 0 if automatic
+     */
+    public int getReceiverBatchSize() {
+        return receiverBatchSize;
+    }
+
+    /**
+     * @param sortReceiversByCost If true, receivers are evaluated starting from the ones having the highest number of
+     *                           surrounding sources and walls, so that the most expensive receivers are not left
+     *                           at the end of the computation.
+     */
+    public void setSortReceiversByCost(boolean sortReceiversByCost) {
+        this.sortReceiversByCost = sortReceiversByCost;
+    }
+
+    /**
+     * @return True if receivers are sorted by expected computation cost
+     */
+    public boolean isSortReceiversByCost() {
+        return sortReceiversByCost;
+    }
+
+    /**
+     * The receivers located in the same square area share the evaluation of the walls sequences of their image
+     * receivers. Each task keeps a few areas in memory, so it is more efficient when the successive receivers are
+     * close to each other, like the receivers of a building facade.
+     * @param mirrorReceiverClusterSize Side of the square areas in meters, 0 to compute the image receivers of each
+     *                                  receiver independently.
+     */
+    public void setMirrorReceiverClusterSize(double mirrorReceiverClusterSize) {
+        this.mirrorReceiverClusterSize = mirrorReceiverClusterSize;
+    }
+
+    /**
+     * @return Side of the areas where the receivers share the same image receivers, 0 if disabled
+     */
+    public double getMirrorReceiverClusterSize() {
+        return mirrorReceiverClusterSize;
+    }
+
+    /**
+     * @param mirrorReceiverCapacity Maximum number of image receivers of a receiver, the generation of the images
+     *                               stops when this number is reached.
+     */
+    public void setMirrorReceiverCapacity(int mirrorReceiverCapacity) {
+        this.mirrorReceiverCapacity = mirrorReceiverCapacity;
+    }
+
+    /**
+     * @return Maximum number of image receivers of a receiver
+     */
+    public int getMirrorReceiverCapacity() {
+        return mirrorReceiverCapacity;
+    }
+
     /**
      * Run computation and store the results in the given output.
+     * The exception of a receiver is logged and cancels the progress visitor. With a single thread it is thrown
+     * again, with several threads the other tasks of the cell go on.
      * @param computeRaysOut Result output.
      */
     public void run(IComputeRaysOut computeRaysOut) {
         ProgressVisitor visitor = data.cellProg;
-        ThreadPool threadManager = new ThreadPool(threadCount, threadCount + 1, Long.MAX_VALUE, TimeUnit.SECONDS);
-        int maximumReceiverBatch = (int) Math.ceil(data.receivers.size() / (double) threadCount);
-        int endReceiverRange = 0;
-        //Launch execution of computation by batch
-        while (endReceiverRange < data.receivers.size()) {
-            //Break if the progress visitor is cancelled
-            if (visitor != null && visitor.isCanceled()) {
-                break;
+        int receiverCount = data.receivers.size();
+        if (receiverCount == 0) {
+            return;
+        }
+        if (threadCount <= 1) {
+            int[] receiverOrder = new int[receiverCount];
+            for (int i = 0; i < receiverCount; i++) {
+                receiverOrder[i] = i;
+            }
+            try {
+                computeReceivers(receiverOrder, 0, receiverCount, computeRaysOut.subProcess(), visitor);
+            } finally {
+                clusterWalls.clear();
             }
-            int newEndReceiver = Math.min(endReceiverRange + maximumReceiverBatch, data.receivers.size());
-            RangeReceiversComputation batchThread = new RangeReceiversComputation(endReceiverRange, newEndReceiver,
-                    this, visitor, computeRaysOut, data);
-            if (threadCount != 1) {
-                threadManager.executeBlocking(batchThread);
+            return;
+        }
+        // Close receivers are evaluated consecutively, they share their sources, walls and image receivers
+        int[] receiverOrder = sortByPosition(data.receivers);
+        int batchSize = receiverBatchSize > 0 ? receiverBatchSize : Math.max(1, Math.min(MAXIMUM_RECEIVER_BATCH,
+                receiverCount / (threadCount * TASKS_PER_THREAD)));
+        ForkJoinPool pool = new ForkJoinPool(threadCount);
+        try {
+            double[] receiverCost = new double[receiverCount];
+            if (sortReceiversByCost) {
+                pool.invoke(new ReceiverCostEstimation(this, receiverCost, 0, receiverCount, batchSize));
+                receiverOrder = sortByCost(receiverOrder, receiverCost);
             } else {
-                batchThread.run();
+                Arrays.fill(receiverCost, 1.0);
+            }
+            // Cumulative cost used to split the receivers into tasks of equivalent cost
+            double[] cumulativeCost = new double[receiverCount + 1];
+            for (int i = 0; i < receiverCount; i++) {
+                cumulativeCost[i + 1] = cumulativeCost[i] + receiverCost[receiverOrder[i]];
             }
-            endReceiverRange = newEndReceiver;
+            pool.invoke(new ReceiversComputation(this, receiverOrder, cumulativeCost, 0, receiverCount, batchSize,
+                    visitor, computeRaysOut, new ConcurrentLinkedDeque<>()));
+        } finally {
+            pool.shutdown();
+            clusterWalls.clear();
+        }
+    }
+
+    /**
+     * Return the receivers index ordered along a Hilbert curve
+     * @param receivers Receivers position
+     * @return Receivers index
+     */
+    static int[] sortByPosition(List<Coordinate> receivers) {
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for (Coordinate receiver : receivers) {
+            minX = min(minX, receiver.x);
+            minY = min(minY, receiver.y);
+            maxX = max(maxX, receiver.x);
+            maxY = max(maxY, receiver.y);
+        }
+        final double width = maxX - minX;
+        final double height = maxY - minY;
+        long[] keys = new long[receivers.size()];
+        for (int i = 0; i < keys.length; i++) {
+            Coordinate receiver = receivers.get(i);
+            int hx = width > 0 ? (int) (PackedEnvelopeTree.HILBERT_MAX * (receiver.x - minX) / width) : 0;
+            int hy = height > 0 ? (int) (PackedEnvelopeTree.HILBERT_MAX * (receiver.y - minY) / height) : 0;
+            keys[i] = ((long) PackedEnvelopeTree.hilbert(hx, hy) << 32) | i;
+        }
+        Arrays.sort(keys);
+        int[] receiverOrder = new int[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            receiverOrder[i] = (int) keys[i];
+        }
+        return receiverOrder;
+    }
+
+    /**
+     * Return the receivers index ordered by descending cost, the receivers of equal cost keep their order
+     * @param receiverOrder Receivers index
+     * @param receiverCost Cost of each receiver
+     * @return Receivers index
+     */
+    private static int[] sortByCost(int[] receiverOrder, double[] receiverCost) {
+        Integer[] sortedIndex = new Integer[receiverOrder.length];
+        for (int i = 0; i < sortedIndex.length; i++) {
+            sortedIndex[i] = receiverOrder[i];
         }
-        //Once the execution ends, shutdown the thread manager and await termination
-        threadManager.shutdown();
+        Arrays.sort(sortedIndex, (a, b) -> Double.compare(receiverCost[b], receiverCost[a]));
+        int[] sortedOrder = new int[sortedIndex.length];
+        for (int i = 0; i < sortedIndex.length; i++) {
+            sortedOrder[i] = sortedIndex[i];
+        }
+        return sortedOrder;
+    }
+
+    /**
+     * Estimate the computation cost of a receiver using the number of sources in the propagation area and the number
+     * of walls in the propagation area of its cluster.
+     * @param idReceiver Receiver index
+     * @return Expected cost (unit-less)
+     */
+    private double estimateReceiverCost(int idReceiver) {
+        Coordinate receiver = data.receivers.get(idReceiver);
+        Envelope propagationEnvelope = new Envelope(receiver);
+        propagationEnvelope.expandBy(data.maxSrcDist);
+        IndexBuffer regionSources = SOURCE_INDEX_BUFFER.get();
+        regionSources.clear();
+        data.sourcesIndex.query(propagationEnvelope, regionSources);
+        double cost = 1 + regionSources.size;
+        if (data.reflexionOrder > 0) {
+            cost *= 1 + getClusterWalls(receiver).size();
+        }
+        return cost;
+    }
+
+    /**
+     * @return Side of the receiver clusters, the default size is used to group the wall queries when the image
+     * receivers are computed per receiver
+     */
+    private double getClusterSize() {
+        return mirrorReceiverClusterSize > 0 ? mirrorReceiverClusterSize : DEFAULT_MIRROR_RECEIVER_CLUSTER_SIZE;
+    }
+
+    /**
+     * @param receiver Receiver position
+     * @return Area of the cluster of the receiver
+     */
+    private Envelope getClusterEnvelope(Coordinate receiver) {
+        final double clusterSize = getClusterSize();
+        double minX = Math.floor(receiver.x / clusterSize) * clusterSize;
+        double minY = Math.floor(receiver.y / clusterSize) * clusterSize;
+        return new Envelope(minX, minX + clusterSize, minY, minY + clusterSize);
+    }
+
+    /**
+     * @param receiver Receiver position
+     * @return Walls in the propagation area of the cluster of the receiver, the query is done once per cluster
+     */
+    private List<ProfileBuilder.Wall> getClusterWalls(Coordinate receiver) {
+        final double clusterSize = getClusterSize();
+        long key = ((long) Math.floor(receiver.x / clusterSize) << 32) |
+                ((long) Math.floor(receiver.y / clusterSize) & 0xFFFFFFFFL);
+        return clusterWalls.computeIfAbsent(key, k -> {
+            Envelope clusterPropagationEnvelope = getClusterEnvelope(receiver);
+            clusterPropagationEnvelope.expandBy(data.maxSrcDist);
+            return data.profileBuilder.getWallsIn(clusterPropagationEnvelope);
+        });
+    }
+
+    /**
+     * Compute the rays of the receivers
+     * @param receiverOrder Receivers index
+     * @param start First index in receiverOrder (included)
+     * @param end Last index in receiverOrder (excluded)
+     * @param dataOut Computation output.
+     * @param visitor Progress visitor used for cancellation and progression managing.
+     */
+    private void computeReceivers(int[] receiverOrder, int start, int end, IComputeRaysOut dataOut,
+                                  ProgressVisitor visitor) {
+        // Most recently used clusters first
+        MirrorReceiverClusterIndex[] mirrorReceiverClusters =
+                new MirrorReceiverClusterIndex[MIRROR_RECEIVER_CLUSTER_CACHE_SIZE];
         try {
-            if(!threadManager.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {
-                LOGGER.warn("Timeout elapsed before termination.");
+            for (int i = start; i < end; i++) {
+                if (visitor != null) {
+                    if (visitor.isCanceled()) {
+                        break;
+                    }
+                }
+                int idReceiver = receiverOrder[i];
+                ReceiverPointInfo rcv = new ReceiverPointInfo(idReceiver, data.receivers.get(idReceiver));
+
+                long startTime = 0;
+                if(profilerThread != null) {
+                    startTime = profilerThread.timeTracker.get();
+                }
+
+                computeRaysAtPosition(rcv, dataOut, visitor, mirrorReceiverClusters);
+
+                // Save computation time for this receiver
+                if(profilerThread != null && profilerThread.getMetric(ReceiverStatsMetric.class) != null) {
+                    profilerThread.getMetric(ReceiverStatsMetric.class).onEndComputation(idReceiver,
+                            (int) (profilerThread.timeTracker.get() - startTime));
+                }
+
+                if (visitor != null) {
+                    visitor.endStep();
+                }
             }
-        } catch (InterruptedException ex) {
+        } catch (Exception ex) {
             LOGGER.error(ex.getLocalizedMessage(), ex);
+            if (visitor != null) {
+                visitor.cancel();
+            }
+            throw ex;
         }
     }
 
@@ -164,16 +430,14 @@ public class ComputeCnossosRays {
      * @param rcv     Receiver point.
      * @param dataOut Computation output.
      * @param visitor Progress visitor used for cancellation and progression managing.
+     * @param mirrorReceiverClusters Image receivers of the last receivers areas
      */
-    private void computeRaysAtPosition(ReceiverPointInfo rcv, IComputeRaysOut dataOut, ProgressVisitor visitor) {
+    private void computeRaysAtPosition(ReceiverPointInfo rcv, IComputeRaysOut dataOut, ProgressVisitor visitor,
+                                       MirrorReceiverClusterIndex[] mirrorReceiverClusters) {
         MirrorReceiverResultIndex receiverMirrorIndex = null;
 
         if(data.reflexionOrder > 0) {
-            Envelope receiverPropagationEnvelope = new Envelope(rcv.getCoord());
-            receiverPropagationEnvelope.expandBy(data.maxSrcDist);
-            List<ProfileBuilder.Wall> buildWalls = data.profileBuilder.getWallsIn(receiverPropagationEnvelope);
-            receiverMirrorIndex = new MirrorReceiverResultIndex(buildWalls, rcv.position, data.reflexionOrder,
-                    data.maxSrcDist, data.maxRefDist);
+            receiverMirrorIndex = getMirrorReceiverIndex(rcv.position, mirrorReceiverClusters);
         }
 
         //Compute the source search area
@@ -184,25 +448,26 @@ public class ComputeCnossosRays {
                 rcv.getCoord().y - searchSourceDistance,
                 rcv.getCoord().y + searchSourceDistance
         );
-        Iterator<Integer> regionSourcesLst = data.sourcesIndex.query(receiverSourceRegion);
+        IndexBuffer regionSources = SOURCE_INDEX_BUFFER.get();
+        regionSources.clear();
+        data.sourcesIndex.query(receiverSourceRegion, regionSources);
+        // Sorted by index so a source is processed only once, and the source attributes are read in sequence
+        Arrays.sort(regionSources.values, 0, regionSources.size);
         List<SourcePointInfo> sourceList = new ArrayList<>();
-        //Already processed Raw source (line and/or points)
-        HashSet<Integer> processedLineSources = new HashSet<>();
         // Sum of all sources power using only geometric dispersion with direct field
         double totalPowerRemaining = 0;
-        while (regionSourcesLst.hasNext()) {
-            Integer srcIndex = regionSourcesLst.next();
-            if (!processedLineSources.contains(srcIndex)) {
-                processedLineSources.add(srcIndex);
+        // The noise floor can only be evaluated if the emission of the sources is provided
+        boolean sourcePowerProvided = false;
+        for (int i = 0; i < regionSources.size; i++) {
+            final int srcIndex = regionSources.values[i];
+            if (i == 0 || srcIndex != regionSources.values[i - 1]) {
                 Geometry source = data.sourceGeometries.get(srcIndex);
                 double[] wj = data.getMaximalSourcePower(srcIndex);
+                sourcePowerProvided |= wj.length > 0;
                 if (source instanceof Point) {
                     Coordinate ptpos = source.getCoordinate();
                     if (ptpos.distance(rcv.getCoord()) < data.maxSrcDist) {
-                        Orientation orientation = null;
-                        if(data.sourcesPk.size() > srcIndex) {
-                            orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
-                        }
+                        Orientation orientation = data.getSourceOrientation(srcIndex);
                         if(orientation == null) {
                             orientation = new Orientation(0,0, 0);
                         }
@@ -226,10 +491,19 @@ public class ComputeCnossosRays {
         // Sort sources by power contribution descending
         Collections.sort(sourceList);
         double powerAtSource = 0;
+        int computedSources = 0;
         // For each Pt Source - Pt Receiver
         AtomicInteger raysCount = new AtomicInteger(0);
         for (SourcePointInfo src : sourceList) {
+            // If the delta between already received power and maximal potential power received is inferior than
+            // data.maximumError or if the remaining sources can not reach data.noiseFloor
+            if ((visitor != null && visitor.isCanceled()) || (data.maximumError > 0 &&
+                            wToDba(powerAtSource + totalPowerRemaining) - wToDba(powerAtSource) < data.maximumError) ||
+                    (sourcePowerProvided && wToDba(totalPowerRemaining) < data.noiseFloor)) {
+                break; //Stop looking for more rays
+            }
             double[] power = rcvSrcPropagation(src, src.li, rcv, dataOut, raysCount, receiverMirrorIndex);
+            computedSources++;
             double global = sumArray(power.length, dbaToW(power));
             totalPowerRemaining -= src.globalWj;
             if (power.length > 0) {
@@ -238,22 +512,56 @@ public class ComputeCnossosRays {
                 powerAtSource += src.globalWj;
             }
             totalPowerRemaining = max(0, totalPowerRemaining);
-            // If the delta between already received power and maximal potential power received is inferior than than data.maximumError
-            if ((visitor != null && visitor.isCanceled()) || (data.maximumError > 0 &&
-                            wToDba(powerAtSource + totalPowerRemaining) - wToDba(powerAtSource) < data.maximumError)) {
-                break; //Stop looking for more rays
-            }
         }
 
         if(profilerThread != null &&
                 profilerThread.getMetric(ReceiverStatsMetric.class) != null) {
             profilerThread.getMetric(ReceiverStatsMetric.class).onReceiverRays(rcv.getId(), raysCount.get());
+            profilerThread.getMetric(ReceiverStatsMetric.class).onReceiverSources(rcv.getId(), computedSources,
+                    sourceList.size() - computedSources);
         }
 
         // No more rays for this receiver
         dataOut.finalizeReceiver(rcv.getId());
     }
 
+    /**
+     * Image receivers of the provided receiver, derived from the cluster of its area when the clusters are enabled
+     * @param receiver Receiver position
+     * @param mirrorReceiverClusters Clusters of the task, the most recently used first
+     * @return Image receivers index
+     */
+    private MirrorReceiverResultIndex getMirrorReceiverIndex(Coordinate receiver,
+                                                             MirrorReceiverClusterIndex[] mirrorReceiverClusters) {
+        if(mirrorReceiverClusterSize <= 0) {
+            // The propagation area of the receiver is included in the propagation area of its cluster
+            Envelope receiverPropagationEnvelope = new Envelope(receiver);
+            receiverPropagationEnvelope.expandBy(data.maxSrcDist);
+            List<ProfileBuilder.Wall> buildWalls = new ArrayList<>();
+            for(ProfileBuilder.Wall wall : getClusterWalls(receiver)) {
+                if(receiverPropagationEnvelope.intersects(new Envelope(wall.p0, wall.p1))) {
+                    buildWalls.add(wall);
+                }
+            }
+            return new MirrorReceiverResultIndex(buildWalls, receiver, data.reflexionOrder, data.maxSrcDist,
+                    data.maxRefDist, mirrorReceiverCapacity);
+        }
+        int position = 0;
+        while (position < mirrorReceiverClusters.length - 1 && mirrorReceiverClusters[position] != null &&
+                !mirrorReceiverClusters[position].contains(receiver)) {
+            position++;
+        }
+        MirrorReceiverClusterIndex cluster = mirrorReceiverClusters[position];
+        if(cluster == null || !cluster.contains(receiver)) {
+            cluster = new MirrorReceiverClusterIndex(getClusterWalls(receiver), getClusterEnvelope(receiver),
+                    data.reflexionOrder, data.maxSrcDist, data.maxRefDist, mirrorReceiverCapacity);
+        }
+        // Move the cluster on top, the least recently used one is dropped
+        System.arraycopy(mirrorReceiverClusters, 0, mirrorReceiverClusters, 1, position);
+        mirrorReceiverClusters[0] = cluster;
+        return cluster.getReceiverIndex(receiver);
+    }
+
     /**
      * Calculation of the propagation between the given source and receiver. The result is registered in the given
      * output.
@@ -309,7 +617,7 @@ public class ComputeCnossosRays {
      */
     public List<PropagationPath> directPath(Coordinate srcCoord, int srcId, Orientation orientation, Coordinate rcvCoord, int rcvId, boolean verticalDiffraction, boolean horizontalDiffraction, boolean bodyBarrier) {
         List<PropagationPath> propagationPaths = new ArrayList<>();
-        ProfileBuilder.CutProfile cutProfile = data.profileBuilder.getProfile(srcCoord, rcvCoord, data.gS);
+        CompactCutProfile cutProfile = data.profileBuilder.getProfile(srcCoord, rcvCoord, data.gS, DIRECT_PROFILE.get());
         cutProfile.setSrcOrientation(orientation);
         //If the field is free, simplify the computation
         if(cutProfile.isFreeField()) {
@@ -387,19 +695,31 @@ public class ComputeCnossosRays {
         return seg;
     }
 
-    private static List<Coordinate> computePts2D(List<ProfileBuilder.CutPoint> pts) {
-        List<Coordinate> pts2D = pts.stream()
-                .map(ProfileBuilder.CutPoint::getCoordinate)
-                .collect(Collectors.toList());
-        pts2D = JTSUtility.getNewCoordinateSystem(pts2D);
+    /**
+     * @param cutProfile Cutting profile
+     * @param indexes Indexes of the cut points to project
+     * @param count Number of indexes
+     * @return Cut points in the vertical plane of the profile, the x is the planar distance from the first point
+     */
+    private static List<Coordinate> computePts2D(CompactCutProfile cutProfile, int[] indexes, int count) {
+        List<Coordinate> pts2D = new ArrayList<>(count);
+        double d = 0;
+        for(int i = 0; i < count; i++) {
+            if(i > 0) {
+                d += cutProfile.dist2D(indexes[i - 1], indexes[i]);
+            }
+            pts2D.add(new Coordinate(d, cutProfile.getZ(indexes[i])));
+        }
         return pts2D;
     }
 
-    private static List<Coordinate> computePts2DGround(ProfileBuilder.CutProfile cutProfile, CnossosPropagationData data) {
-        List<Coordinate> pts2D = cutProfile.getCutPoints().stream()
-                .filter(cut -> cut.getType() != GROUND_EFFECT)
-                .map(cut -> new Coordinate(cut.getCoordinate().x, cut.getCoordinate().y, data.profileBuilder.getZGround(cut)))
-                .collect(Collectors.toList());
+    private static List<Coordinate> computePts2DGround(CompactCutProfile cutProfile, CnossosPropagationData data) {
+        List<Coordinate> pts2D = new ArrayList<>(cutProfile.size());
+        for(int i = 0; i < cutProfile.size(); i++) {
+            if(cutProfile.getType(i) != GROUND_EFFECT) {
+                pts2D.add(new Coordinate(cutProfile.getX(i), cutProfile.getY(i), data.profileBuilder.getZGround(cutProfile, i)));
+            }
+        }
         pts2D = JTSUtility.getNewCoordinateSystem(pts2D);
         List<Coordinate> toRemove = new ArrayList<>();
         for(int i=1; i<pts2D.size(); i++) {
@@ -415,10 +735,10 @@ public class ComputeCnossosRays {
         for(int i=0; i<pts2D.size(); i++) {
             Coordinate c = new Coordinate(pts2D.get(i));
             if(i==0) {
-                c = new Coordinate(pts2D.get(i).x, data.profileBuilder.getZGround(cutProfile.getSource()));
+                c = new Coordinate(pts2D.get(i).x, data.profileBuilder.getZGround(cutProfile, cutProfile.getSourceIndex()));
             }
             else if(i == pts2D.size()-1) {
-                c = new Coordinate(pts2D.get(i).x, data.profileBuilder.getZGround(cutProfile.getReceiver()));
+                c = new Coordinate(pts2D.get(i).x, data.profileBuilder.getZGround(cutProfile, cutProfile.getReceiverIndex()));
             }
             pts2DGround.add(c);
         }
@@ -445,20 +765,36 @@ public class ComputeCnossosRays {
      * @return The calculated propagation path.
      */
     public PropagationPath computeFreeField(ProfileBuilder.CutProfile cutProfile, CnossosPropagationData data, boolean isSrSeg) {
-        ProfileBuilder.CutPoint srcCut = cutProfile.getSource();
-        ProfileBuilder.CutPoint rcvCut = cutProfile.getReceiver();
+        return computeFreeField(new CompactCutProfile(cutProfile), data, isSrSeg);
+    }
 
-        List<ProfileBuilder.CutPoint> cuts = cutProfile.getCutPoints().stream()
-                .filter(cut -> cut.getType() != GROUND_EFFECT)
-                .collect(Collectors.toList());
+    /**
+     * Compute the propagation in case of free field.
+     * @param cutProfile CutProfile containing all the data for propagation computation.
+     * @return The calculated propagation path.
+     */
+    public PropagationPath computeFreeField(CompactCutProfile cutProfile, CnossosPropagationData data, boolean isSrSeg) {
+        int srcCut = cutProfile.getSourceIndex();
+        int rcvCut = cutProfile.getReceiverIndex();
+        Coordinate srcCoordinate = cutProfile.getCoordinate(srcCut);
+        Coordinate rcvCoordinate = cutProfile.getCoordinate(rcvCut);
+
+        // Index of the cut points that are not ground effect cut points
+        int[] cuts = new int[cutProfile.size()];
+        int cutsCount = 0;
+        for(int i = 0; i < cutProfile.size(); i++) {
+            if(cutProfile.getType(i) != GROUND_EFFECT) {
+                cuts[cutsCount++] = i;
+            }
+        }
         List<Coordinate> pts2DGround = computePts2DGround(cutProfile, data);
         Coordinate src = new Coordinate(pts2DGround.get(0));
-        if(!isNaN(srcCut.getCoordinate().z)) {
-            src.y = srcCut.getCoordinate().z;
+        if(!isNaN(srcCoordinate.z)) {
+            src.y = srcCoordinate.z;
         }
         Coordinate rcv = new Coordinate(pts2DGround.get(pts2DGround.size()-1));
-        if(!isNaN(rcvCut.getCoordinate().z)) {
-            rcv.y = rcvCut.getCoordinate().z;
+        if(!isNaN(rcvCoordinate.z)) {
+            rcv.y = rcvCoordinate.z;
         }
         double[] meanPlane;
 
@@ -470,7 +806,7 @@ public class ComputeCnossosRays {
         }
         SegmentPath srSeg;
         if(isSrSeg) {
-            srSeg = computeSegment(new Coordinate(src.x, srcCut.getCoordinate().z), new Coordinate(rcv.x, rcvCut.getCoordinate().z), meanPlane, cutProfile.getGPath(srcCut, rcvCut), data.gS);
+            srSeg = computeSegment(new Coordinate(src.x, srcCoordinate.z), new Coordinate(rcv.x, rcvCoordinate.z), meanPlane, cutProfile.getGPath(srcCut, rcvCut), data.gS);
         }
         else {
             srSeg = computeSegment(src, rcv, meanPlane, cutProfile.getGPath(srcCut, rcvCut), data.gS);
@@ -480,14 +816,13 @@ public class ComputeCnossosRays {
         List<SegmentPath> segments = new ArrayList<>();
 
         List<PointPath> points = new ArrayList<>();
-        PointPath srcPP = new PointPath(src, data.profileBuilder.getZGround(srcCut), srcCut.getWallAlpha(), PointPath.POINT_TYPE.SRCE);
-        srcPP.buildingId = srcCut.getBuildingId();
-        srcPP.wallId = srcCut.getWallId();
-        srcPP.orientation = computeOrientation(cutProfile.getSrcOrientation(), srcCut, rcvCut);
+        PointPath srcPP = new PointPath(src, data.profileBuilder.getZGround(cutProfile, srcCut), cutProfile.getWallAlpha(srcCut), PointPath.POINT_TYPE.SRCE);
+        srcPP.buildingId = cutProfile.getBuildingId(srcCut);
+        srcPP.wallId = cutProfile.getWallId(srcCut);
+        srcPP.orientation = computeOrientation(cutProfile.getSrcOrientation(), srcCoordinate, rcvCoordinate);
         points.add(srcPP);
 
-        PropagationPath propagationPath = new PropagationPath(false, points, segments, srSeg, Angle.angle(rcvCut.getCoordinate(), srcCut.getCoordinate()));
-        propagationPath.setCutPoints(cuts);
+        PropagationPath propagationPath = new PropagationPath(false, points, segments, srSeg, Angle.angle(rcvCoordinate, srcCoordinate));
         propagationPath.raySourceReceiverDirectivity = srcPP.orientation;
         if(data.isComputeDiffraction()) {
             //Check for Rayleigh criterion for segments computation
@@ -497,18 +832,20 @@ public class ComputeCnossosRays {
         if(segments.isEmpty()) {
             segments.add(srSeg);
         }
-        PointPath rcvPP = new PointPath(rcv, data.profileBuilder.getZGround(rcvCut), rcvCut.getWallAlpha(), PointPath.POINT_TYPE.RECV);
-        rcvPP.buildingId = rcvCut.getBuildingId();
-        rcvPP.wallId = rcvCut.getWallId();
+        PointPath rcvPP = new PointPath(rcv, data.profileBuilder.getZGround(cutProfile, rcvCut), cutProfile.getWallAlpha(rcvCut), PointPath.POINT_TYPE.RECV);
+        rcvPP.buildingId = cutProfile.getBuildingId(rcvCut);
+        rcvPP.wallId = cutProfile.getWallId(rcvCut);
         points.add(rcvPP);
+        // The profile is reused by the caller, keep a compact copy of the cut points
+        propagationPath.setCutPoints(cutProfile.copy(false));
 
         return propagationPath;
     }
 
     private void computeDiff(List<Coordinate> pts2DGround, Coordinate src, Coordinate rcv,
-                             ProfileBuilder.CutPoint srcCut, ProfileBuilder.CutPoint rcvCut,
-                             SegmentPath srSeg, ProfileBuilder.CutProfile cutProfile, PropagationPath propagationPath,
-                             LineSegment dSR, List<ProfileBuilder.CutPoint> cuts, List<SegmentPath> segments, List<PointPath> points) {
+                             int srcCut, int rcvCut,
+                             SegmentPath srSeg, CompactCutProfile cutProfile, PropagationPath propagationPath,
+                             LineSegment dSR, int[] cuts, List<SegmentPath> segments, List<PointPath> points) {
         for (int iO = 1; iO < pts2DGround.size() - 1; iO++) {
             Coordinate o = pts2DGround.get(iO);
 
@@ -553,8 +890,8 @@ public class ComputeCnossosRays {
                     }
                 }
                 if (rcrit) {
-                    seg1.setGpath(cutProfile.getGPath(srcCut, cuts.get(iO)), srcCut.getGroundCoef());
-                    seg2.setGpath(cutProfile.getGPath(cuts.get(iO), rcvCut), srcCut.getGroundCoef());
+                    seg1.setGpath(cutProfile.getGPath(srcCut, cuts[iO]), cutProfile.getGroundCoef(srcCut));
+                    seg2.setGpath(cutProfile.getGPath(cuts[iO], rcvCut), cutProfile.getGroundCoef(srcCut));
 
                     if(dSR.orientationIndex(o) == 1) {
                         propagationPath.deltaF = toCurve(dSO, srSeg.d) + toCurve(dOR, srSeg.d) - toCurve(srSeg.d, srSeg.d);
@@ -731,39 +1068,47 @@ public class ComputeCnossosRays {
     }
 
     public PropagationPath computeHEdgeDiffraction(ProfileBuilder.CutProfile cutProfile , boolean bodyBarrier) {
+        return computeHEdgeDiffraction(new CompactCutProfile(cutProfile), bodyBarrier);
+    }
+
+    /**
+     * Compute the path diffracted over the obstacles of the profile. Only the cut points kept after the
+     * simplification of the profile are materialized.
+     * @param cutProfile Cutting profile between the source and the receiver
+     * @param bodyBarrier True if the diffraction points are body barriers
+     * @return Diffracted path or null if there is no diffraction point
+     */
+    public PropagationPath computeHEdgeDiffraction(CompactCutProfile cutProfile, boolean bodyBarrier) {
         List<SegmentPath> segments = new ArrayList<>();
         List<PointPath> points = new ArrayList<>();
-        List<ProfileBuilder.CutPoint> cutPts = cutProfile.getCutPoints().stream()
-                .filter(cutPoint -> cutPoint.getType() != GROUND_EFFECT)
-                .collect(Collectors.toList());
-
-        List<Coordinate> pts2D = computePts2D(cutPts);
-        if(pts2D.size() != cutPts.size()) {
-            throw new IllegalArgumentException("The two arrays size should be the same");
+        // Indexes of the cut points that are not ground effect points
+        int[] cutIndexes = new int[cutProfile.size()];
+        int cutCount = 0;
+        for(int i = 0; i < cutProfile.size(); i++) {
+            if(cutProfile.getType(i) != GROUND_EFFECT) {
+                cutIndexes[cutCount++] = i;
+            }
         }
+
+        List<Coordinate> pts2D = computePts2D(cutProfile, cutIndexes, cutCount);
         //Remove aligned cut points thanks to jts DouglasPeuckerSimplifier algo
-        List<ProfileBuilder.CutPoint> newCutPts = new ArrayList<>(cutPts.size());
        Geometry lineString = new GeometryFactory().createLineString(pts2D.toArray(new Coordinate[0]));
         List<Coordinate> newPts2D = List.of(DouglasPeuckerSimplifier.simplify(lineString, 0.5*cutProfile.getDistanceToSR()).getCoordinates());
 
+        List<ProfileBuilder.CutPoint> cutPts = new ArrayList<>(newPts2D.size());
         for (int i = 0; i < newPts2D.size(); i++) {
-            newCutPts.add(cutPts.get(pts2D.indexOf(newPts2D.get(i))));
+            cutPts.add(cutProfile.getCutPoint(cutIndexes[pts2D.indexOf(newPts2D.get(i))]));
         }
 
-
         pts2D = newPts2D;
-        cutPts = newCutPts;
-        if(pts2D.size() != cutPts.size()) {
-            throw new IllegalArgumentException("The two arrays size should be the same");
-        }
         
         double[] meanPlane = JTSUtility.getMeanPlaneCoefficients(pts2D.toArray(new Coordinate[0]));
         Coordinate firstPts2D = pts2D.get(0);
         Coordinate lastPts2D = pts2D.get(pts2D.size()-1);
-        SegmentPath srPath = computeSegment(firstPts2D, lastPts2D, meanPlane, cutProfile.getGPath(), cutProfile.getSource().getGroundCoef());
+        SegmentPath srPath = computeSegment(firstPts2D, lastPts2D, meanPlane, cutProfile.getGPath(), cutProfile.getGroundCoef(cutProfile.getSourceIndex()));
 
         PropagationPath propagationPath = new PropagationPath(true, points, segments, srPath,
-                Angle.angle(cutProfile.getReceiver().getCoordinate(), cutProfile.getSource().getCoordinate()));
+                Angle.angle(cutProfile.getCoordinate(cutProfile.getReceiverIndex()), cutProfile.getCoordinate(cutProfile.getSourceIndex())));
         propagationPath.setCutPoints(cutPts);
         LineSegment srcRcvLine = new LineSegment(firstPts2D, lastPts2D);
         List<Coordinate> pts = new ArrayList<>();
@@ -821,7 +1166,7 @@ public class ComputeCnossosRays {
             int i1 = pts2D.indexOf(pts.get(i));
             ProfileBuilder.CutPoint cutPt0 = cutPts.get(i0);
             ProfileBuilder.CutPoint cutPt1 = cutPts.get(i1);
-            ProfileBuilder.CutProfile profile = data.profileBuilder.getProfile(cutPt0, cutPt1, data.gS);
+            CompactCutProfile profile = data.profileBuilder.getProfile(cutPt0, cutPt1, data.gS, SEGMENT_PROFILE.get());
             List<Coordinate> subList = pts2D.subList(i0, i1+1).stream().map(Coordinate::new).collect(Collectors.toList());
             for(int j=0; j<=i1-i0; j++){
                 if(!cutPts.get(j+i0).getType().equals(BUILDING) && !cutPts.get(j+i0).getType().equals(TOPOGRAPHY)){
@@ -829,7 +1174,7 @@ public class ComputeCnossosRays {
                 }
             }
             meanPlane = JTSUtility.getMeanPlaneCoefficients(subList.toArray(new Coordinate[0]));
-            SegmentPath path = computeSegment(pts2D.get(i0), pts2D.get(i1), meanPlane, profile.getGPath(), profile.getSource().getGroundCoef());
+            SegmentPath path = computeSegment(pts2D.get(i0), pts2D.get(i1), meanPlane, profile.getGPath(), profile.getGroundCoef(profile.getSourceIndex()));
             segments.add(path);
             if(points.isEmpty()) {
                 //todo check this getBuildingId when DIFH is on floor or line wall
@@ -932,6 +1277,8 @@ public class ComputeCnossosRays {
      * Create a line between p1 and p2. Find the first intersection of this line with a building then create a ConvexHull
      * with the points of buildings in intersection. While there is an intersection add more points to the convex hull.
      * The side diffraction path is found when there is no more intersection.
+     * The hull is updated with the new points only, and the segments that do not cross any obstacle are kept for the
+     * next calls.
      *
      * @param left If true return path between p1 and p2; else p2 to p1
      * @param p1   First point
@@ -946,7 +1293,9 @@ public class ComputeCnossosRays {
         // Intersection test cache
         Set<LineSegment> freeFieldSegments = new HashSet<>();
 
+        // New points of the hull
         List<Coordinate> input = new ArrayList<>();
+        IncrementalConvexHull convexHull = new IncrementalConvexHull();
 
         Coordinate[] coordinates = new Coordinate[0];
         int indexp1 = 0;
@@ -974,18 +1323,17 @@ public class ComputeCnossosRays {
 
         int k;
         while (convexHullIntersects) {
-            ConvexHull convexHull = new ConvexHull(input.toArray(new Coordinate[0]), GEOMETRY_FACTORY);
-            Geometry convexhull = convexHull.getConvexHull();
+            for (Coordinate point : input) {
+                convexHull.add(point);
+            }
+            input.clear();
 
-            if (convexhull.getLength() / p1.distance(p2) > MAX_RATIO_HULL_DIRECT_PATH) {
+            if (convexHull.getLength() / p1.distance(p2) > MAX_RATIO_HULL_DIRECT_PATH) {
                 return new ArrayList<>();
             }
 
             convexHullIntersects = false;
-            coordinates = convexhull.getCoordinates();
-
-            input.clear();
-            input.addAll(Arrays.asList(coordinates));
+            coordinates = convexHull.getCoordinates();
 
             indexp1 = -1;
             for (int i = 0; i < coordinates.length - 1; i++) {
@@ -1025,7 +1373,8 @@ public class ComputeCnossosRays {
                 LineSegment freeFieldTestSegment = new LineSegment(coordinates[k], coordinates[k + 1]);
                 // Ignore intersection if iterating over other side (not parts of what is returned)
                 if (left && k < indexp2 || !left && k >= indexp2) {
-                    if (!freeFieldSegments.contains(freeFieldTestSegment)) {
+                    if (!freeFieldSegments.contains(freeFieldTestSegment) &&
+                            !freeFieldSegmentCache.contains(new FreeFieldSegmentKey(freeFieldTestSegment))) {
                         // Check if we still are in the propagation domain
                         buildingIntersectionRayVisitor = new BuildingIntersectionRayVisitor(profileBuilder.getBuildings(),
                                 coordinates[k], coordinates[k + 1], profileBuilder, input, buildingInHull, cutPlane);
@@ -1038,6 +1387,14 @@ public class ComputeCnossosRays {
                         }
                         if (!convexHullIntersects) {
                             freeFieldSegments.add(freeFieldTestSegment);
+                            if (!buildingIntersectionRayVisitor.intersectsObstacle &&
+                                    !wallIntersectionRayVisitor.intersectsObstacle) {
+                                // Free whatever the hull is, keep it for the other paths of the cell
+                                if (freeFieldSegmentCache.size() >= MAXIMUM_FREE_FIELD_CACHE_SIZE) {
+                                    freeFieldSegmentCache.clear();
+                                }
+                                freeFieldSegmentCache.add(new FreeFieldSegmentKey(freeFieldTestSegment));
+                            }
                         } else {
                             break;
                         }
@@ -1076,6 +1433,47 @@ public class ComputeCnossosRays {
     }
 
 
+    /**
+     * 2D segment with the same key whatever the direction, the z values are ignored
+     */
+    private static final class FreeFieldSegmentKey {
+        private final double x0;
+        private final double y0;
+        private final double x1;
+        private final double y1;
+
+        FreeFieldSegmentKey(LineSegment segment) {
+            Coordinate a = segment.p0;
+            Coordinate b = segment.p1;
+            if(a.compareTo(b) > 0) {
+                a = segment.p1;
+                b = segment.p0;
+            }
+            x0 = a.x;
+            y0 = a.y;
+            x1 = b.x;
+            y1 = b.y;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            FreeFieldSegmentKey that = (FreeFieldSegmentKey) o;
+            return Double.compare(that.x0, x0) == 0 && Double.compare(that.y0, y0) == 0 &&
+                    Double.compare(that.x1, x1) == 0 && Double.compare(that.y1, y1) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            long hash = Double.doubleToLongBits(x0);
+            hash = 31 * hash + Double.doubleToLongBits(y0);
+            hash = 31 * hash + Double.doubleToLongBits(x1);
+            hash = 31 * hash + Double.doubleToLongBits(y1);
+            return (int) (hash ^ (hash >>> 32));
+        }
+    }
+
     private static final class BuildingIntersectionRayVisitor implements ItemVisitor {
         Set<Integer> itemProcessed = new HashSet<>();
         List<ProfileBuilder.Building> buildings;
@@ -1087,6 +1485,8 @@ public class ComputeCnossosRays {
         Plane cutPlane;
         List<Coordinate> input;
         boolean foundIntersection = false;
+        /** The segment crosses at least one obstacle, even if it is already part of the hull */
+        boolean intersectsObstacle = false;
 
         public BuildingIntersectionRayVisitor(List<ProfileBuilder.Building> buildings, Coordinate p1,
                                               Coordinate p2, ProfileBuilder profileBuilder, List<Coordinate> input, Set<Integer> buildingsInIntersection, Plane cutPlane) {
@@ -1108,6 +1508,7 @@ public class ComputeCnossosRays {
                 final ProfileBuilder.Building b = buildings.get(id - 1);
                 RectangleLineIntersector rect = new RectangleLineIntersector(b.getGeometry().getEnvelopeInternal());
                 if (rect.intersects(p1, p2) && seg.intersects(b.getGeometry())) {
+                    intersectsObstacle = true;
                     addItem(id);
                 }
             }
@@ -1144,6 +1545,8 @@ public class ComputeCnossosRays {
         Plane cutPlane;
         List<Coordinate> input;
         boolean foundIntersection = false;
+        /** The segment crosses at least one obstacle, even if it is already part of the hull */
+        boolean intersectsObstacle = false;
 
         public WallIntersectionRayVisitor(List<ProfileBuilder.Wall> walls, Coordinate p1,
                                               Coordinate p2, ProfileBuilder profileBuilder, List<Coordinate> input,
@@ -1166,6 +1569,7 @@ public class ComputeCnossosRays {
                 final ProfileBuilder.Wall w = walls.get(id-1);
                 RectangleLineIntersector rect = new RectangleLineIntersector(w.getLine().getEnvelopeInternal());
                 if (rect.intersects(p1, p2) && seg.intersects(w.getLine())) {
+                    intersectsObstacle = true;
                     addItem(id);
                 }
             }
@@ -1305,7 +1709,7 @@ public class ComputeCnossosRays {
                 for (int idPt = 0; idPt < rayPath.size() - 1; idPt++) {
                     Coordinate firstPt = rayPath.get(idPt).getReceiverPos();
                     MirrorReceiverResult refl = rayPath.get(idPt + 1);
-                    ProfileBuilder.CutProfile profile = data.profileBuilder.getProfile(firstPt, refl.getReceiverPos(), data.gS);
+                    CompactCutProfile profile = data.profileBuilder.getProfile(firstPt, refl.getReceiverPos(), data.gS, SEGMENT_PROFILE.get());
                     if (profile.intersectTopography() || profile.intersectBuilding() ) {
                         validReflection = false;
                         break;
@@ -1654,86 +2058,157 @@ public class ComputeCnossosRays {
             segmentSizeConstraint = max(1, receiverCoord.distance(nearestPoint) / 2.0);
         }
         double li = splitLineStringIntoPoints(source, segmentSizeConstraint, pts);
-        for (int ptIndex = 0; ptIndex < pts.size(); ptIndex++) {
+        // Far sub-sources are merged while the merged length is below this ratio of the distance to the receiver
+        double aggregationRatio = data.sourceAggregationError > 0 ?
+                2 * Math.sqrt(1 - dbaToW(-data.sourceAggregationError)) : 0;
+        int ptIndex = 0;
+        while (ptIndex < pts.size()) {
             Coordinate pt = pts.get(ptIndex);
-            if (pt.distance(receiverCoord) < data.maxSrcDist) {
-                // use the orientation computed from the line source coordinates
-                Vector3D v;
-                if(ptIndex == 0) {
-                    v = new Vector3D(source.getCoordinates()[0], pts.get(ptIndex));
-                } else {
-                    v = new Vector3D(pts.get(ptIndex - 1), pts.get(ptIndex));
-                }
-                Orientation orientation;
-                if(data.sourcesPk.size() > srcIndex && data.sourceOrientation.containsKey(data.sourcesPk.get(srcIndex))) {
-                    // If the line source already provide an orientation then alter the line orientation
-                    orientation = data.sourceOrientation.get(data.sourcesPk.get(srcIndex));
-                    orientation = Orientation.fromVector(
-                            Orientation.rotate(new Orientation(orientation.yaw, orientation.roll, 0),
-                                    v.normalize()), orientation.roll);
-                } else {
-                    orientation = Orientation.fromVector(Orientation.rotate(new Orientation(0,0,0), v.normalize()), 0);
-                }
-                totalPowerRemaining += insertPtSource(pt, receiverCoord, srcIndex, sourceList, wj, li, orientation);
+            if (pt.distance(receiverCoord) >= data.maxSrcDist) {
+                ptIndex++;
+                continue;
+            }
+            int lastIndex = ptIndex;
+            while (aggregationRatio > 0 && lastIndex + 1 < pts.size() &&
+                    pts.get(lastIndex + 1).distance(receiverCoord) < data.maxSrcDist &&
+                    li * (lastIndex + 2 - ptIndex) <= aggregationRatio *
+                            getAggregatedPosition(pts, ptIndex, lastIndex + 1).distance(receiverCoord)) {
+                lastIndex++;
+            }
+            // use the orientation computed from the line source coordinates
+            Vector3D v;
+            if(lastIndex > ptIndex) {
+                v = new Vector3D(pts.get(ptIndex), pts.get(lastIndex));
+            } else if(ptIndex == 0) {
+                v = new Vector3D(source.getCoordinates()[0], pt);
+            } else {
+                v = new Vector3D(pts.get(ptIndex - 1), pt);
             }
+            Orientation orientation = data.getSourceOrientation(srcIndex);
+            if(orientation != null) {
+                // If the line source already provide an orientation then alter the line orientation
+                orientation = Orientation.fromVector(
+                        Orientation.rotate(new Orientation(orientation.yaw, orientation.roll, 0),
+                                v.normalize()), orientation.roll);
+            } else {
+                orientation = Orientation.fromVector(Orientation.rotate(new Orientation(0,0,0), v.normalize()), 0);
+            }
+            totalPowerRemaining += insertPtSource(getAggregatedPosition(pts, ptIndex, lastIndex), receiverCoord,
+                    srcIndex, sourceList, wj, li * (lastIndex - ptIndex + 1), orientation);
+            ptIndex = lastIndex + 1;
         }
         return totalPowerRemaining;
     }
 
-    private static final class RangeReceiversComputation implements Runnable {
-        private final int startReceiver; // Included
-        private final int endReceiver; // Excluded
+    /**
+     * @param pts Regularly spaced sub-sources of a line source
+     * @param first First merged sub-source
+     * @param last Last merged sub-source
+     * @return Position of the source equivalent to the merged sub-sources
+     */
+    private static Coordinate getAggregatedPosition(List<Coordinate> pts, int first, int last) {
+        Coordinate a = pts.get((first + last) / 2);
+        if((last - first) % 2 == 0) {
+            return a;
+        }
+        Coordinate b = pts.get((first + last) / 2 + 1);
+        return new Coordinate((a.x + b.x) / 2, (a.y + b.y) / 2, (a.z + b.z) / 2);
+    }
+
+    /**
+     * Fill the expected cost of a range of receivers
+     */
+    private static final class ReceiverCostEstimation extends RecursiveAction {
         private final ComputeCnossosRays propagationProcess;
-        private final ProgressVisitor visitor;
-        private final IComputeRaysOut dataOut;
-        private final CnossosPropagationData data;
+        private final double[] receiverCost;
+        private final int start; // Included
+        private final int end; // Excluded
+        private final int batchSize;
 
-        public RangeReceiversComputation(int startReceiver, int endReceiver, ComputeCnossosRays propagationProcess,
-                                         ProgressVisitor visitor, IComputeRaysOut dataOut,
-                                         CnossosPropagationData data) {
-            this.startReceiver = startReceiver;
-            this.endReceiver = endReceiver;
+        public ReceiverCostEstimation(ComputeCnossosRays propagationProcess, double[] receiverCost, int start,
+                                      int end, int batchSize) {
             this.propagationProcess = propagationProcess;
-            this.visitor = visitor;
-            this.dataOut = dataOut.subProcess();
-            this.data = data;
+            this.receiverCost = receiverCost;
+            this.start = start;
+            this.end = end;
+            this.batchSize = batchSize;
         }
 
         @Override
-        public void run() {
-            try {
-                for (int idReceiver = startReceiver; idReceiver < endReceiver; idReceiver++) {
-                    if (visitor != null) {
-                        if (visitor.isCanceled()) {
-                            break;
-                        }
-                    }
-                    ReceiverPointInfo rcv = new ReceiverPointInfo(idReceiver, data.receivers.get(idReceiver));
-
-                    long start = 0;
-                    if(propagationProcess.profilerThread != null) {
-                        start = propagationProcess.profilerThread.timeTracker.get();
-                    }
+        protected void compute() {
+            if (end - start <= batchSize) {
+                for (int idReceiver = start; idReceiver < end; idReceiver++) {
+                    receiverCost[idReceiver] = propagationProcess.estimateReceiverCost(idReceiver);
+                }
+            } else {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ReceiverCostEstimation(propagationProcess, receiverCost, start, middle, batchSize),
+                        new ReceiverCostEstimation(propagationProcess, receiverCost, middle, end, batchSize));
+            }
+        }
+    }
 
-                    propagationProcess.computeRaysAtPosition(rcv, dataOut, visitor);
+    /**
+     * Compute a range of receivers. The range is split in two parts of equivalent cost until the batch size is
+     * reached, idle threads of the pool steal the pending parts.
+     * The output instances given by {@link IComputeRaysOut#subProcess()} are shared between tasks, one output can
+     * only be used by a single task at a time.
+     */
+    private static final class ReceiversComputation extends RecursiveAction {
+        private final ComputeCnossosRays propagationProcess;
+        private final int[] receiverOrder;
+        private final double[] cumulativeCost;
+        private final int start; // Included
+        private final int end; // Excluded
+        private final int batchSize;
+        private final ProgressVisitor visitor;
+        private final IComputeRaysOut dataOut;
+        private final Deque<IComputeRaysOut> availableSubProcess;
 
-                    // Save computation time for this receiver
-                    if(propagationProcess.profilerThread != null &&
-                            propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class) != null) {
-                        propagationProcess.profilerThread.getMetric(ReceiverStatsMetric.class).onEndComputation(idReceiver,
-                                (int) (propagationProcess.profilerThread.timeTracker.get() - start));
-                    }
+        public ReceiversComputation(ComputeCnossosRays propagationProcess, int[] receiverOrder,
+                                    double[] cumulativeCost, int start, int end, int batchSize,
+                                    ProgressVisitor visitor, IComputeRaysOut dataOut,
+                                    Deque<IComputeRaysOut> availableSubProcess) {
+            this.propagationProcess = propagationProcess;
+            this.receiverOrder = receiverOrder;
+            this.cumulativeCost = cumulativeCost;
+            this.start = start;
+            this.end = end;
+            this.batchSize = batchSize;
+            this.visitor = visitor;
+            this.dataOut = dataOut;
+            this.availableSubProcess = availableSubProcess;
+        }
 
-                    if (visitor != null) {
-                        visitor.endStep();
-                    }
+        @Override
+        protected void compute() {
+            if (visitor != null && visitor.isCanceled()) {
+                return;
+            }
+            if (end - start <= batchSize) {
+                IComputeRaysOut subProcess = availableSubProcess.pollFirst();
+                if (subProcess == null) {
+                    subProcess = dataOut.subProcess();
                 }
-            } catch (Exception ex) {
-                LOGGER.error(ex.getLocalizedMessage(), ex);
-                if (visitor != null) {
-                    visitor.cancel();
+                try {
+                    propagationProcess.computeReceivers(receiverOrder, start, end, subProcess, visitor);
+                } catch (RuntimeException ex) {
+                    // Already logged, the failure of a receiver does not abort the other tasks of the cell
+                } finally {
+                    availableSubProcess.addFirst(subProcess);
                 }
-                throw ex;
+            } else {
+                // Find the index where the cost of the two parts are equal
+                double halfCost = (cumulativeCost[start] + cumulativeCost[end]) / 2;
+                int middle = Arrays.binarySearch(cumulativeCost, start + 1, end, halfCost);
+                if (middle < 0) {
+                    middle = -middle - 1;
+                }
+                middle = Math.max(start + 1, Math.min(end - 1, middle));
+                invokeAll(new ReceiversComputation(propagationProcess, receiverOrder, cumulativeCost, start, middle,
+                                batchSize, visitor, dataOut, availableSubProcess),
+                        new ReceiversComputation(propagationProcess, receiverOrder, cumulativeCost, middle, end,
+                                batchSize, visitor, dataOut, availableSubProcess));
             }
         }
     }
@@ -1757,6 +2232,26 @@ public class ComputeCnossosRays {
         }
     }
 
+    /**
+     * Growable array of indexes, reused between the receivers of a thread
+     */
+    private static final class IndexBuffer implements IntConsumer {
+        private int[] values = new int[64];
+        private int size = 0;
+
+        @Override
+        public void accept(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
     private static final class SourcePointInfo implements Comparable<SourcePointInfo> {
         private final double li;
         private final int sourcePrimaryKey;
@@ -1803,7 +2298,7 @@ public class ComputeCnossosRays {
         }
     }
 
-    enum ComputationSide {LEFT, RIGHT}
+    public enum ComputationSide {LEFT, RIGHT}
 
 
     public static final class AbsoluteCoordinateSequenceFilter implements CoordinateSequenceFilter {
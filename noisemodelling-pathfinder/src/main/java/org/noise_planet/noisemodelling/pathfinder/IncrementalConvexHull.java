@@ -0,0 +1,149 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.algorithm.Orientation;
+import org.locationtech.jts.geom.Coordinate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 2D convex hull updated point by point. The vertices are the same as the ones of
+ * {@link org.locationtech.jts.algorithm.ConvexHull}: clockwise, without collinear vertices and without duplicate,
+ * the first inserted point being kept when several points share the same location. The provided coordinates
+ * instances are kept as vertices.
+ */
+final class IncrementalConvexHull {
+    /** Clockwise vertices */
+    private final List<Coordinate> vertices = new ArrayList<>();
+    /** Orientation of the point for each edge of the hull */
+    private int[] edgeOrientation = new int[16];
+
+    /**
+     * @param point Point to include in the hull
+     * @return True if the hull has changed
+     */
+    boolean add(Coordinate point) {
+        final int size = vertices.size();
+        if(size == 0) {
+            vertices.add(point);
+            return true;
+        } else if(size == 1) {
+            if(vertices.get(0).equals2D(point)) {
+                return false;
+            }
+            vertices.add(point);
+            return true;
+        } else if(size == 2) {
+            return addToSegment(point);
+        }
+        if(edgeOrientation.length < size) {
+            edgeOrientation = new int[size * 2];
+        }
+        // The interior is on the right side of the clockwise edges
+        boolean outside = false;
+        for(int i = 0; i < size; i++) {
+            edgeOrientation[i] = Orientation.index(vertices.get(i), vertices.get((i + 1) % size), point);
+            outside |= edgeOrientation[i] == Orientation.COUNTERCLOCKWISE;
+        }
+        if(!outside) {
+            return false;
+        }
+        // Find the chain of the edges seen by the point, including the collinear ones, and replace its inner vertices
+        int first = 0;
+        while (!(edgeOrientation[first] != Orientation.CLOCKWISE &&
+                edgeOrientation[(first + size - 1) % size] == Orientation.CLOCKWISE)) {
+            first++;
+        }
+        int removed = 0;
+        while (edgeOrientation[(first + removed + 1) % size] != Orientation.CLOCKWISE) {
+            removed++;
+        }
+        for(int i = 0; i < removed; i++) {
+            int index = (first + 1) % vertices.size();
+            vertices.remove(index);
+            if(index <= first) {
+                first--;
+            }
+        }
+        vertices.add(first + 1, point);
+        return true;
+    }
+
+    /**
+     * The hull is a segment, the point extends the segment or creates a triangle
+     */
+    private boolean addToSegment(Coordinate point) {
+        Coordinate a = vertices.get(0);
+        Coordinate b = vertices.get(1);
+        int orientation = Orientation.index(a, b, point);
+        if(orientation == Orientation.COLLINEAR) {
+            final double dx = b.x - a.x;
+            final double dy = b.y - a.y;
+            final double t = ((point.x - a.x) * dx + (point.y - a.y) * dy) / (dx * dx + dy * dy);
+            if(t > 1) {
+                vertices.set(1, point);
+                return true;
+            } else if(t < 0) {
+                vertices.set(0, point);
+                return true;
+            }
+            return false;
+        } else if(orientation == Orientation.CLOCKWISE) {
+            vertices.add(point);
+        } else {
+            vertices.add(1, point);
+        }
+        return true;
+    }
+
+    /**
+     * @return True if the hull has an area
+     */
+    boolean isPolygon() {
+        return vertices.size() > 2;
+    }
+
+    /**
+     * @return Perimeter of the hull, or length of the segment if the points are collinear
+     */
+    double getLength() {
+        final int size = vertices.size();
+        if(size < 2) {
+            return 0;
+        }
+        double length = 0;
+        for(int i = 0; i < size - 1; i++) {
+            length += vertices.get(i).distance(vertices.get(i + 1));
+        }
+        if(size > 2) {
+            length += vertices.get(size - 1).distance(vertices.get(0));
+        }
+        return length;
+    }
+
+    /**
+     * @return Vertices, the ring is closed if the hull is a polygon
+     */
+    Coordinate[] getCoordinates() {
+        final int size = vertices.size();
+        Coordinate[] coordinates = new Coordinate[size > 2 ? size + 1 : size];
+        for(int i = 0; i < size; i++) {
+            coordinates[i] = vertices.get(i);
+        }
+        if(size > 2) {
+            coordinates[size] = vertices.get(0);
+        }
+        return coordinates;
+    }
+}
@@ -0,0 +1,297 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.LineSegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Image receivers shared by all the receivers located in the same area (for example the receivers of a building
+ * facade). The sequences of walls and the visibility area of the images are evaluated once for the cluster area, as a
+ * mirror image is an isometry of the receiver each receiver derives its own images by applying the transformation of
+ * the sequence of walls to its position and by filtering the images that are not valid for this position.
+ * The result of {@link MirrorReceiverResultIndex#findCloseMirrorReceivers(Coordinate)} is the same as the one of an
+ * index built for the receiver only, except for the order of the images.
+ * If the cluster needs more images than the mirror receiver capacity, the images are not shared and each receiver
+ * computes its own images, up to the same capacity.
+ */
+public class MirrorReceiverClusterIndex {
+    /** Tolerance on the visibility area of the images */
+    private static final double EPSILON = 1e-6;
+    private final List<ProfileBuilder.Wall> walls;
+    private final Envelope clusterEnvelope;
+    private final double maximumPropagationDistance;
+    private final double maximumDistanceFromWall;
+    private final int reflectionOrder;
+    private final int mirrorReceiverCapacity;
+    private final PackedEnvelopeTree imageTree;
+    private int imageCount = 0;
+    /** True if the capacity has been reached, the images of the cluster are then incomplete */
+    private boolean truncated = false;
+    /** Parent image of each image, -1 for the first reflection */
+    private int[] parents = new int[16];
+    /** Index of the mirror wall of each image in the walls list */
+    private int[] imageWalls = new int[16];
+    /** Isometry of each image, 6 values per image (a00, a01, a10, a11, bx, by) image = A.receiver + b */
+    private double[] transforms = new double[16 * 6];
+
+    /**
+     * Generate the sequences of walls that can produce an image for at least one receiver of the cluster
+     * @param walls Walls in the propagation area of all the receivers of the cluster
+     * @param clusterEnvelope Area of the receivers of the cluster
+     * @param reflectionOrder Maximum number of reflections
+     * @param maximumPropagationDistance Maximum distance between the receiver image and the wall
+     * @param maximumDistanceFromWall Maximum distance between the source and the reflection wall
+     */
+    public MirrorReceiverClusterIndex(List<ProfileBuilder.Wall> walls, Envelope clusterEnvelope,
+                                      int reflectionOrder, double maximumPropagationDistance,
+                                      double maximumDistanceFromWall) {
+        this(walls, clusterEnvelope, reflectionOrder, maximumPropagationDistance, maximumDistanceFromWall,
+                MirrorReceiverResultIndex.DEFAULT_MIRROR_RECEIVER_CAPACITY);
+    }
+
+    /**
+     * Generate the sequences of walls that can produce an image for at least one receiver of the cluster
+     * @param walls Walls in the propagation area of all the receivers of the cluster
+     * @param clusterEnvelope Area of the receivers of the cluster
+     * @param reflectionOrder Maximum number of reflections
+     * @param maximumPropagationDistance Maximum distance between the receiver image and the wall
+     * @param maximumDistanceFromWall Maximum distance between the source and the reflection wall
+     * @param mirrorReceiverCapacity Maximum number of images of a receiver
+     */
+    public MirrorReceiverClusterIndex(List<ProfileBuilder.Wall> walls, Envelope clusterEnvelope,
+                                      int reflectionOrder, double maximumPropagationDistance,
+                                      double maximumDistanceFromWall, int mirrorReceiverCapacity) {
+        this.walls = walls;
+        this.clusterEnvelope = new Envelope(clusterEnvelope);
+        this.maximumPropagationDistance = maximumPropagationDistance;
+        this.maximumDistanceFromWall = maximumDistanceFromWall;
+        this.reflectionOrder = reflectionOrder;
+        this.mirrorReceiverCapacity = mirrorReceiverCapacity;
+        this.imageTree = new PackedEnvelopeTree(walls.size());
+        Coordinate center = clusterEnvelope.centre();
+        // Any receiver of the cluster is closer than this distance to the center, so are their images
+        double radius = Math.sqrt(clusterEnvelope.getWidth() * clusterEnvelope.getWidth() +
+                clusterEnvelope.getHeight() * clusterEnvelope.getHeight()) / 2;
+        int levelStart = 0;
+        int levelEnd = 0;
+        for(int currentDepth = 0; currentDepth < reflectionOrder; currentDepth++) {
+            for(int parent = currentDepth == 0 ? -1 : levelStart; parent < levelEnd; parent++) {
+                for (int idWall = 0; idWall < walls.size(); idWall++) {
+                    if(parent >= 0 && imageWalls[parent] == idWall) {
+                        continue;
+                    }
+                    LineSegment wallSegment = walls.get(idWall).getLineSegment();
+                    Coordinate centerImage = parent >= 0 ? getImage(parent, center) : center;
+                    // The distance of the image to the wall is the one of the parent image
+                    if(wallSegment.distance(centerImage) > maximumPropagationDistance + radius) {
+                        continue;
+                    }
+                    if(imageCount >= mirrorReceiverCapacity) {
+                        // Some receivers may have fewer images than the cluster, the capacity is applied by receiver
+                        truncated = true;
+                        imageTree.build();
+                        return;
+                    }
+                    int image = addImage(parent, idWall, wallSegment);
+                    // Every point of the visibility cone is closer than maximumDistanceFromWall to the wall and closer
+                    // than the maximum propagation distance to the receiver image
+                    Envelope visibilityEnvelope = new Envelope(wallSegment.p0, wallSegment.p1);
+                    visibilityEnvelope.expandBy(maximumDistanceFromWall + EPSILON);
+                    Coordinate image0 = getImage(image, center);
+                    Envelope propagationEnvelope = new Envelope(image0);
+                    propagationEnvelope.expandBy(maximumPropagationDistance + radius + EPSILON);
+                    visibilityEnvelope = visibilityEnvelope.intersection(propagationEnvelope);
+                    if(!visibilityEnvelope.isNull()) {
+                        imageTree.add(image, visibilityEnvelope.getMinX(), visibilityEnvelope.getMinY(),
+                                visibilityEnvelope.getMaxX(), visibilityEnvelope.getMaxY());
+                    }
+                }
+            }
+            levelStart = levelEnd;
+            levelEnd = imageCount;
+        }
+        imageTree.build();
+    }
+
+    private int addImage(int parent, int idWall, LineSegment wallSegment) {
+        if(imageCount == parents.length) {
+            parents = Arrays.copyOf(parents, imageCount * 2);
+            imageWalls = Arrays.copyOf(imageWalls, imageCount * 2);
+            transforms = Arrays.copyOf(transforms, imageCount * 2 * 6);
+        }
+        // Reflection over the wall line, a symmetry through p0 if the wall has no length
+        final double dx = wallSegment.p1.x - wallSegment.p0.x;
+        final double dy = wallSegment.p1.y - wallSegment.p0.y;
+        final double length2 = dx * dx + dy * dy;
+        double m00 = -1;
+        double m01 = 0;
+        double m11 = -1;
+        if(length2 > 0) {
+            m00 = (dx * dx - dy * dy) / length2;
+            m01 = 2 * dx * dy / length2;
+            m11 = -m00;
+        }
+        double a00 = 1, a01 = 0, a10 = 0, a11 = 1, bx = 0, by = 0;
+        if(parent >= 0) {
+            final int p = parent * 6;
+            a00 = transforms[p];
+            a01 = transforms[p + 1];
+            a10 = transforms[p + 2];
+            a11 = transforms[p + 3];
+            bx = transforms[p + 4];
+            by = transforms[p + 5];
+        }
+        final int t = imageCount * 6;
+        transforms[t] = m00 * a00 + m01 * a10;
+        transforms[t + 1] = m00 * a01 + m01 * a11;
+        transforms[t + 2] = m01 * a00 + m11 * a10;
+        transforms[t + 3] = m01 * a01 + m11 * a11;
+        final double ox = bx - wallSegment.p0.x;
+        final double oy = by - wallSegment.p0.y;
+        transforms[t + 4] = m00 * ox + m01 * oy + wallSegment.p0.x;
+        transforms[t + 5] = m01 * ox + m11 * oy + wallSegment.p0.y;
+        parents[imageCount] = parent;
+        imageWalls[imageCount] = idWall;
+        return imageCount++;
+    }
+
+    /**
+     * @param image Image index
+     * @param receiver Receiver position
+     * @return Position of the image of the receiver
+     */
+    Coordinate getImage(int image, Coordinate receiver) {
+        return new Coordinate(getImageX(image, receiver), getImageY(image, receiver), receiver.z);
+    }
+
+    /**
+     * @param image Image index
+     * @param receiver Receiver position
+     * @return X of the image of the receiver
+     */
+    double getImageX(int image, Coordinate receiver) {
+        final int t = image * 6;
+        return transforms[t] * receiver.x + transforms[t + 1] * receiver.y + transforms[t + 4];
+    }
+
+    /**
+     * @param image Image index
+     * @param receiver Receiver position
+     * @return Y of the image of the receiver
+     */
+    double getImageY(int image, Coordinate receiver) {
+        final int t = image * 6;
+        return transforms[t + 2] * receiver.x + transforms[t + 3] * receiver.y + transforms[t + 5];
+    }
+
+    /**
+     * @param image Image index
+     * @return Parent image index, -1 for the first reflection
+     */
+    int getParent(int image) {
+        return parents[image];
+    }
+
+    /**
+     * @param image Image index
+     * @return Wall index of the image
+     */
+    int getImageWall(int image) {
+        return imageWalls[image];
+    }
+
+    /**
+     * Visit the images having a visibility area that may contain the provided position
+     * @param x Source X
+     * @param y Source Y
+     * @param visitor Receive the index of the images
+     */
+    void query(double x, double y, IntConsumer visitor) {
+        imageTree.query(x, y, visitor);
+    }
+
+    /**
+     * @param receiver Receiver position
+     * @return True if the images of this receiver can be derived from this cluster
+     */
+    public boolean contains(Coordinate receiver) {
+        return clusterEnvelope.contains(receiver);
+    }
+
+    /**
+     * @param receiver Receiver position, must be located in the cluster area
+     * @return Image receivers of the provided receiver
+     */
+    public MirrorReceiverResultIndex getReceiverIndex(Coordinate receiver) {
+        if(!contains(receiver)) {
+            throw new IllegalArgumentException("The receiver is not in the cluster area");
+        }
+        if(truncated) {
+            // Same walls as the index of the receiver, see MirrorReceiverResultIndex#isClusterImageValid
+            Envelope receiverPropagationEnvelope = new Envelope(receiver);
+            receiverPropagationEnvelope.expandBy(maximumPropagationDistance);
+            List<ProfileBuilder.Wall> receiverWalls = new ArrayList<>();
+            for(ProfileBuilder.Wall wall : walls) {
+                if(receiverPropagationEnvelope.intersects(new Envelope(wall.p0, wall.p1))) {
+                    receiverWalls.add(wall);
+                }
+            }
+            return new MirrorReceiverResultIndex(receiverWalls, receiver, reflectionOrder,
+                    maximumPropagationDistance, maximumDistanceFromWall, mirrorReceiverCapacity);
+        }
+        return new MirrorReceiverResultIndex(this, receiver);
+    }
+
+    public List<ProfileBuilder.Wall> getWalls() {
+        return walls;
+    }
+
+    public Envelope getClusterEnvelope() {
+        return clusterEnvelope;
+    }
+
+    public double getMaximumPropagationDistance() {
+        return maximumPropagationDistance;
+    }
+
+    public double getMaximumDistanceFromWall() {
+        return maximumDistanceFromWall;
+    }
+
+    /**
+     * @return Maximum number of images of a receiver
+     */
+    public int getMirrorReceiverCapacity() {
+        return mirrorReceiverCapacity;
+    }
+
+    /**
+     * @return True if the cluster reached the mirror receiver capacity, the receivers compute their own images
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * @return Number of wall sequences shared by the receivers of the cluster
+     */
+    public int getImageCount() {
+        return imageCount;
+    }
+}
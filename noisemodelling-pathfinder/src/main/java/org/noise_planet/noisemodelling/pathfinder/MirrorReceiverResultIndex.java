@@ -42,16 +42,18 @@ import org.locationtech.jts.geom.GeometryFactory;
 import org.locationtech.jts.geom.LineSegment;
 import org.locationtech.jts.geom.Polygon;
 import org.locationtech.jts.index.ItemVisitor;
-import org.locationtech.jts.index.strtree.STRtree;
 import org.locationtech.jts.math.Vector2D;
 import org.locationtech.jts.triangulate.quadedge.Vertex;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class MirrorReceiverResultIndex {
     private static final double DEFAULT_CIRCLE_POINT_ANGLE = Math.PI / 24;
-    STRtree mirrorReceiverTree;
+    /** Image receivers indexed by the envelope of their visibility cone */
+    PackedEnvelopeTree mirrorReceiverTree;
+    private MirrorReceiverResult[] mirrorReceivers;
     public static final int DEFAULT_MIRROR_RECEIVER_CAPACITY = 50000;
     private int mirrorReceiverCapacity = DEFAULT_MIRROR_RECEIVER_CAPACITY;
     private final Coordinate receiverCoordinate;
@@ -59,7 +61,139 @@ public class MirrorReceiverResultIndex {
     private final double maximumDistanceFromWall;
     private final double maximumPropagationDistance;
     int numberOfImageReceivers = 0;
+    /** Shared images of the receivers close to this one, null if the images are computed for this receiver only */
+    private final MirrorReceiverClusterIndex cluster;
+    /** Validity of the cluster images for this receiver, 0 not evaluated, 1 valid, 2 not valid */
+    private byte[] clusterImageState;
+    /** Walls of the cluster located in the propagation area of this receiver */
+    private boolean[] clusterWallInRange;
 
+    /**
+     * Compute an envelope that contains the visibility cone of a receiver image. The cone is the area behind the wall
+     * where a source can see the receiver image through the wall, up to maximumDistanceFromWall from the wall and
+     * up to maximumPropagationDistance from the receiver image. See {@link #isInVisibilityCone}.
+     * @param imageX Receiver image X
+     * @param imageY Receiver image Y
+     * @param wall Reflection wall
+     * @param maximumPropagationDistance Maximum distance from the receiver image
+     * @param maximumDistanceFromWall Maximum distance from the wall, along the propagation line
+     * @param envelope minX, minY, maxX and maxY of the envelope
+     * @return False if the cone is empty
+     */
+    static boolean visibilityConeEnvelope(double imageX, double imageY, LineSegment wall,
+                                          double maximumPropagationDistance, double maximumDistanceFromWall,
+                                          double[] envelope) {
+        final double ax = wall.p0.x - imageX;
+        final double ay = wall.p0.y - imageY;
+        final double bx = wall.p1.x - imageX;
+        final double by = wall.p1.y - imageY;
+        final double sign = Math.signum(ax * by - ay * bx);
+        if(sign == 0 || segmentDistance(ax, ay, bx, by) >= maximumPropagationDistance) {
+            return false;
+        }
+        // Range of the propagation directions inside the cone
+        final double la = Math.sqrt(ax * ax + ay * ay);
+        final double lb = Math.sqrt(bx * bx + by * by);
+        double uMinX = Math.min(ax / la, bx / lb);
+        double uMaxX = Math.max(ax / la, bx / lb);
+        double uMinY = Math.min(ay / la, by / lb);
+        double uMaxY = Math.max(ay / la, by / lb);
+        if(isInSector(ax, ay, bx, by, sign, 1, 0)) {
+            uMaxX = 1;
+        }
+        if(isInSector(ax, ay, bx, by, sign, -1, 0)) {
+            uMinX = -1;
+        }
+        if(isInSector(ax, ay, bx, by, sign, 0, 1)) {
+            uMaxY = 1;
+        }
+        if(isInSector(ax, ay, bx, by, sign, 0, -1)) {
+            uMinY = -1;
+        }
+        uMinX = Math.min(0, uMinX);
+        uMinY = Math.min(0, uMinY);
+        uMaxX = Math.max(0, uMaxX);
+        uMaxY = Math.max(0, uMaxY);
+        // The points of the cone are the wall plus a displacement up to maximumDistanceFromWall along a direction
+        // of the cone, and the receiver image plus a displacement up to maximumPropagationDistance
+        envelope[0] = Math.max(Math.min(wall.p0.x, wall.p1.x) + maximumDistanceFromWall * uMinX,
+                imageX + maximumPropagationDistance * uMinX);
+        envelope[1] = Math.max(Math.min(wall.p0.y, wall.p1.y) + maximumDistanceFromWall * uMinY,
+                imageY + maximumPropagationDistance * uMinY);
+        envelope[2] = Math.min(Math.max(wall.p0.x, wall.p1.x) + maximumDistanceFromWall * uMaxX,
+                imageX + maximumPropagationDistance * uMaxX);
+        envelope[3] = Math.min(Math.max(wall.p0.y, wall.p1.y) + maximumDistanceFromWall * uMaxY,
+                imageY + maximumPropagationDistance * uMaxY);
+        return true;
+    }
+
+    /**
+     * Test if a source is in the visibility cone of a receiver image. The source must be located in the angular
+     * sector of the wall seen from the receiver image, behind the wall, at less than maximumDistanceFromWall from
+     * the wall along the propagation line and at less than maximumPropagationDistance from the receiver image.
+     * @param imageX Receiver image X
+     * @param imageY Receiver image Y
+     * @param wall Reflection wall
+     * @param maximumPropagationDistance Maximum distance from the receiver image
+     * @param maximumDistanceFromWall Maximum distance from the wall, along the propagation line
+     * @param x Source X
+     * @param y Source Y
+     * @return True if the source is in the cone
+     */
+    static boolean isInVisibilityCone(double imageX, double imageY, LineSegment wall,
+                                      double maximumPropagationDistance, double maximumDistanceFromWall,
+                                      double x, double y) {
+        final double ax = wall.p0.x - imageX;
+        final double ay = wall.p0.y - imageY;
+        final double bx = wall.p1.x - imageX;
+        final double by = wall.p1.y - imageY;
+        final double sign = Math.signum(ax * by - ay * bx);
+        final double sx = x - imageX;
+        final double sy = y - imageY;
+        if(sign == 0 || !isInSector(ax, ay, bx, by, sign, sx, sy)) {
+            return false;
+        }
+        // Intersection of the propagation line with the wall line at imageToWall * (sx, sy)
+        final double dx = bx - ax;
+        final double dy = by - ay;
+        final double denominator = sx * dy - sy * dx;
+        if(denominator == 0) {
+            return false;
+        }
+        final double imageToWall = (ax * dy - ay * dx) / denominator;
+        if(!(imageToWall > 0 && imageToWall <= 1)) {
+            return false;
+        }
+        final double sourceDistance = Math.sqrt(sx * sx + sy * sy);
+        final double wallDistance = imageToWall * sourceDistance;
+        return wallDistance < maximumPropagationDistance &&
+                sourceDistance <= Math.min(wallDistance + maximumDistanceFromWall, maximumPropagationDistance);
+    }
+
+    /**
+     * @return True if the direction (x, y) is between the directions a and b
+     */
+    private static boolean isInSector(double ax, double ay, double bx, double by, double sign, double x, double y) {
+        return sign * (ax * y - ay * x) >= 0 && sign * (x * by - y * bx) >= 0;
+    }
+
+    /**
+     * @return Distance between the origin and the segment ab
+     */
+    private static double segmentDistance(double ax, double ay, double bx, double by) {
+        final double dx = bx - ax;
+        final double dy = by - ay;
+        final double length2 = dx * dx + dy * dy;
+        double r = length2 > 0 ? Math.max(0, Math.min(1, -(ax * dx + ay * dy) / length2)) : 0;
+        final double px = ax + r * dx;
+        final double py = ay + r * dy;
+        return Math.sqrt(px * px + py * py);
+    }
+
+    /**
+     * Polygon approximation of the visibility cone of a receiver image, used for display purpose.
+     * See {@link #isInVisibilityCone}
+     */
     public static Polygon createWallReflectionVisibilityCone(Coordinate receiverImage, LineSegment wall,
                                                              double maximumPropagationDistance,
                                                              double maximumDistanceFromWall) {
@@ -116,12 +250,31 @@ public class MirrorReceiverResultIndex {
     public MirrorReceiverResultIndex(List<ProfileBuilder.Wall> buildWalls, Coordinate receiverCoordinates,
                                      int reflectionOrder, double maximumPropagationDistance,
                                      double maximumDistanceFromWall) {
+        this(buildWalls, receiverCoordinates, reflectionOrder, maximumPropagationDistance, maximumDistanceFromWall,
+                DEFAULT_MIRROR_RECEIVER_CAPACITY);
+    }
+
+    /**
+     * Generate the image receivers from the provided list of walls, up to the given number of images
+     * @param buildWalls
+     * @param receiverCoordinates
+     * @param reflectionOrder
+     * @param mirrorReceiverCapacity Maximum number of image receivers
+     */
+    public MirrorReceiverResultIndex(List<ProfileBuilder.Wall> buildWalls, Coordinate receiverCoordinates,
+                                     int reflectionOrder, double maximumPropagationDistance,
+                                     double maximumDistanceFromWall, int mirrorReceiverCapacity) {
+        this.mirrorReceiverCapacity = mirrorReceiverCapacity;
         this.receiverCoordinate = receiverCoordinates;
         this.buildWalls = buildWalls;
         this.maximumDistanceFromWall = maximumDistanceFromWall;
         this.maximumPropagationDistance = maximumPropagationDistance;
-        mirrorReceiverTree = new STRtree();
+        this.cluster = null;
+        mirrorReceiverTree = new PackedEnvelopeTree(buildWalls.size());
+        mirrorReceivers = new MirrorReceiverResult[Math.max(1, buildWalls.size())];
+        double[] envelope = new double[4];
         ArrayList<MirrorReceiverResult> parentsToProcess = new ArrayList<>();
+        generation:
         for(int currentDepth = 0; currentDepth < reflectionOrder; currentDepth++) {
             if(currentDepth == 0) {
                 parentsToProcess.add(null);
@@ -139,24 +292,32 @@ public class MirrorReceiverResultIndex {
                     } else {
                         receiverImage = receiverCoordinates;
                     }
+                    // The mirror has the same distance to the wall as the receiver image
+                    if(segmentDistance(wall.p0.x - receiverImage.x, wall.p0.y - receiverImage.y,
+                            wall.p1.x - receiverImage.x, wall.p1.y - receiverImage.y) > maximumPropagationDistance) {
+                        // wall is too far from the receiver image, there is no receiver image
+                        continue;
+                    }
                     //Calculate the coordinate of projection
                     Coordinate proj = wall.getLineSegment().project(receiverImage);
                     Coordinate rcvMirror = new Coordinate(2 * proj.x - receiverImage.x,
                             2 * proj.y - receiverImage.y, receiverImage.z);
-                    if(wall.getLineSegment().distance(rcvMirror) > maximumPropagationDistance) {
-                        // wall is too far from the receiver image, there is no receiver image
-                        continue;
-                    }
                     MirrorReceiverResult receiverResult = new MirrorReceiverResult(rcvMirror, parent, wall,
                             wall.getOriginId(), wall.getType());
-                    // create the visibility cone of this receiver image
-                    Polygon imageReceiverVisibilityCone = createWallReflectionVisibilityCone(rcvMirror,
-                            wall.getLineSegment(), maximumPropagationDistance, maximumDistanceFromWall);
-                    mirrorReceiverTree.insert(imageReceiverVisibilityCone.getEnvelopeInternal(), receiverResult);
+                    // index the visibility cone of this receiver image
+                    if(visibilityConeEnvelope(rcvMirror.x, rcvMirror.y, wall.getLineSegment(),
+                            maximumPropagationDistance, maximumDistanceFromWall, envelope)) {
+                        mirrorReceiverTree.add(numberOfImageReceivers, envelope[0], envelope[1], envelope[2],
+                                envelope[3]);
+                    }
+                    if(numberOfImageReceivers == mirrorReceivers.length) {
+                        mirrorReceivers = Arrays.copyOf(mirrorReceivers, numberOfImageReceivers * 2);
+                    }
+                    mirrorReceivers[numberOfImageReceivers] = receiverResult;
                     nextParentsToProcess.add(receiverResult);
                     numberOfImageReceivers++;
                     if(numberOfImageReceivers >= mirrorReceiverCapacity) {
-                        return;
+                        break generation;
                     }
                 }
             }
@@ -165,6 +326,20 @@ public class MirrorReceiverResultIndex {
         mirrorReceiverTree.build();
     }
 
+    /**
+     * Derive the image receivers from the images shared by a cluster of receivers
+     * @param cluster Images of the cluster
+     * @param receiverCoordinates Receiver position, located in the cluster area
+     */
+    MirrorReceiverResultIndex(MirrorReceiverClusterIndex cluster, Coordinate receiverCoordinates) {
+        this.receiverCoordinate = receiverCoordinates;
+        this.buildWalls = cluster.getWalls();
+        this.maximumDistanceFromWall = cluster.getMaximumDistanceFromWall();
+        this.maximumPropagationDistance = cluster.getMaximumPropagationDistance();
+        this.mirrorReceiverCapacity = cluster.getMirrorReceiverCapacity();
+        this.cluster = cluster;
+    }
+
     public int getMirrorReceiverCapacity() {
         return mirrorReceiverCapacity;
     }
@@ -177,13 +352,86 @@ public class MirrorReceiverResultIndex {
         if(Double.isNaN(sourcePosition.z)) {
             throw new IllegalArgumentException("Not supported NaN z value");
         }
-        Envelope env = new Envelope(sourcePosition);
         ReceiverImageVisitor receiverImageVisitor = new ReceiverImageVisitor(buildWalls, sourcePosition,
                 receiverCoordinate, maximumDistanceFromWall, maximumPropagationDistance);
-        mirrorReceiverTree.query(env, receiverImageVisitor);
+        if(cluster != null) {
+            cluster.query(sourcePosition.x, sourcePosition.y, image -> {
+                MirrorReceiverResult receiverImage = getClusterImage(image, sourcePosition);
+                if(receiverImage != null) {
+                    receiverImageVisitor.visitItem(receiverImage);
+                }
+            });
+        } else {
+            mirrorReceiverTree.query(sourcePosition.x, sourcePosition.y, image -> {
+                MirrorReceiverResult receiverImage = mirrorReceivers[image];
+                if(isInVisibilityCone(receiverImage.getReceiverPos().x, receiverImage.getReceiverPos().y,
+                        receiverImage.getWall().getLineSegment(), maximumPropagationDistance,
+                        maximumDistanceFromWall, sourcePosition.x, sourcePosition.y)) {
+                    receiverImageVisitor.visitItem(receiverImage);
+                }
+            });
+        }
         return receiverImageVisitor.result;
     }
 
+    /**
+     * @param image Image index in the cluster
+     * @param sourcePosition Source position
+     * @return The image of this receiver if the source is in its visibility cone, null otherwise
+     */
+    private MirrorReceiverResult getClusterImage(int image, Coordinate sourcePosition) {
+        if(!isClusterImageValid(image)) {
+            return null;
+        }
+        ProfileBuilder.Wall wall = buildWalls.get(cluster.getImageWall(image));
+        if(!isInVisibilityCone(cluster.getImageX(image, receiverCoordinate),
+                cluster.getImageY(image, receiverCoordinate), wall.getLineSegment(), maximumPropagationDistance,
+                maximumDistanceFromWall, sourcePosition.x, sourcePosition.y)) {
+            return null;
+        }
+        return getClusterImage(image);
+    }
+
+    private MirrorReceiverResult getClusterImage(int image) {
+        ProfileBuilder.Wall wall = buildWalls.get(cluster.getImageWall(image));
+        int parent = cluster.getParent(image);
+        return new MirrorReceiverResult(cluster.getImage(image, receiverCoordinate),
+                parent >= 0 ? getClusterImage(parent) : null, wall, wall.getOriginId(), wall.getType());
+    }
+
+    /**
+     * Same conditions as the image generation of the constructor, evaluated for this receiver only
+     * @param image Image index in the cluster
+     * @return True if this image exists for this receiver
+     */
+    private boolean isClusterImageValid(int image) {
+        if(clusterImageState == null) {
+            clusterImageState = new byte[cluster.getImageCount()];
+            clusterWallInRange = new boolean[buildWalls.size()];
+            Envelope receiverPropagationEnvelope = new Envelope(receiverCoordinate);
+            receiverPropagationEnvelope.expandBy(maximumPropagationDistance);
+            for(int idWall = 0; idWall < clusterWallInRange.length; idWall++) {
+                ProfileBuilder.Wall wall = buildWalls.get(idWall);
+                clusterWallInRange[idWall] = receiverPropagationEnvelope.intersects(
+                        new Envelope(wall.p0, wall.p1));
+            }
+        }
+        if(clusterImageState[image] == 0) {
+            int parent = cluster.getParent(image);
+            boolean valid = clusterWallInRange[cluster.getImageWall(image)] && (parent < 0 ||
+                    isClusterImageValid(parent));
+            if(valid) {
+                LineSegment wallSegment = buildWalls.get(cluster.getImageWall(image)).getLineSegment();
+                final double imageX = cluster.getImageX(image, receiverCoordinate);
+                final double imageY = cluster.getImageY(image, receiverCoordinate);
+                valid = segmentDistance(wallSegment.p0.x - imageX, wallSegment.p0.y - imageY,
+                        wallSegment.p1.x - imageX, wallSegment.p1.y - imageY) <= maximumPropagationDistance;
+            }
+            clusterImageState[image] = (byte) (valid ? 1 : 2);
+        }
+        return clusterImageState[image] == 1;
+    }
+
     private static class ReceiverImageVisitor implements ItemVisitor {
         List<MirrorReceiverResult> result = new ArrayList<>();
         List<ProfileBuilder.Wall> buildWalls;
@@ -0,0 +1,242 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Static R-tree of envelopes identified by an integer, stored in primitive arrays. The envelopes are sorted along a
+ * Hilbert curve then grouped by nodes of {@link #NODE_CAPACITY} children, level by level up to the root.
+ * Envelopes must be added before the call to {@link #build()}, queries do not allocate memory.
+ */
+final class PackedEnvelopeTree {
+    static final int NODE_CAPACITY = 16;
+    static final int HILBERT_MAX = (1 << 15) - 1;
+    private int count = 0;
+    private int[] items;
+    /** minX, minY, maxX, maxY of the leaves then of the nodes of each level */
+    private double[] bounds;
+    /** Index of the first node of each level, the last value is the number of nodes */
+    private int[] levelStart;
+    private boolean built = false;
+
+    PackedEnvelopeTree(int initialCapacity) {
+        items = new int[Math.max(1, initialCapacity)];
+        bounds = new double[items.length * 4];
+    }
+
+    /**
+     * @param item Item identifier
+     * @param minX Envelope min X
+     * @param minY Envelope min Y
+     * @param maxX Envelope max X
+     * @param maxY Envelope max Y
+     */
+    void add(int item, double minX, double minY, double maxX, double maxY) {
+        if(built) {
+            throw new IllegalStateException("Items cannot be added after the tree is built");
+        }
+        if(count == items.length) {
+            items = Arrays.copyOf(items, count * 2);
+            bounds = Arrays.copyOf(bounds, count * 2 * 4);
+        }
+        items[count] = item;
+        bounds[count * 4] = minX;
+        bounds[count * 4 + 1] = minY;
+        bounds[count * 4 + 2] = maxX;
+        bounds[count * 4 + 3] = maxY;
+        count++;
+    }
+
+    int size() {
+        return count;
+    }
+
+    void build() {
+        if(built) {
+            return;
+        }
+        built = true;
+        // Sort leaves along the Hilbert curve of the envelope centers
+        double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+        for(int i = 0; i < count; i++) {
+            minX = Math.min(minX, bounds[i * 4]);
+            minY = Math.min(minY, bounds[i * 4 + 1]);
+            maxX = Math.max(maxX, bounds[i * 4 + 2]);
+            maxY = Math.max(maxY, bounds[i * 4 + 3]);
+        }
+        final double width = maxX - minX;
+        final double height = maxY - minY;
+        long[] keys = new long[count];
+        for(int i = 0; i < count; i++) {
+            final double centerX = (bounds[i * 4] + bounds[i * 4 + 2]) / 2;
+            final double centerY = (bounds[i * 4 + 1] + bounds[i * 4 + 3]) / 2;
+            int hx = width > 0 ? (int) (HILBERT_MAX * (centerX - minX) / width) : 0;
+            int hy = height > 0 ? (int) (HILBERT_MAX * (centerY - minY) / height) : 0;
+            keys[i] = ((long) hilbert(hx, hy) << 32) | i;
+        }
+        Arrays.sort(keys);
+        // Count the nodes of each level
+        int levels = 1;
+        int total = count;
+        for(int levelSize = count; levelSize > 1; levels++) {
+            levelSize = (levelSize + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            total += levelSize;
+        }
+        levelStart = new int[levels + 1];
+        int[] sortedItems = new int[count];
+        double[] sortedBounds = new double[Math.max(1, total) * 4];
+        for(int i = 0; i < count; i++) {
+            int source = (int) keys[i];
+            sortedItems[i] = items[source];
+            System.arraycopy(bounds, source * 4, sortedBounds, i * 4, 4);
+        }
+        levelStart[1] = count;
+        for(int level = 1; level < levels; level++) {
+            int childStart = levelStart[level - 1];
+            int childEnd = levelStart[level];
+            int node = childEnd;
+            for(int child = childStart; child < childEnd; child += NODE_CAPACITY) {
+                double nodeMinX = Double.POSITIVE_INFINITY, nodeMinY = Double.POSITIVE_INFINITY;
+                double nodeMaxX = Double.NEGATIVE_INFINITY, nodeMaxY = Double.NEGATIVE_INFINITY;
+                for(int i = child; i < Math.min(childEnd, child + NODE_CAPACITY); i++) {
+                    nodeMinX = Math.min(nodeMinX, sortedBounds[i * 4]);
+                    nodeMinY = Math.min(nodeMinY, sortedBounds[i * 4 + 1]);
+                    nodeMaxX = Math.max(nodeMaxX, sortedBounds[i * 4 + 2]);
+                    nodeMaxY = Math.max(nodeMaxY, sortedBounds[i * 4 + 3]);
+                }
+                sortedBounds[node * 4] = nodeMinX;
+                sortedBounds[node * 4 + 1] = nodeMinY;
+                sortedBounds[node * 4 + 2] = nodeMaxX;
+                sortedBounds[node * 4 + 3] = nodeMaxY;
+                node++;
+            }
+            levelStart[level + 1] = node;
+        }
+        items = sortedItems;
+        bounds = sortedBounds;
+    }
+
+    /**
+     * Visit the items having an envelope that contains the provided point
+     * @param x Point X
+     * @param y Point Y
+     * @param visitor Receive the item identifiers
+     */
+    void query(double x, double y, IntConsumer visitor) {
+        if(!built) {
+            build();
+        }
+        if(count == 0) {
+            return;
+        }
+        int rootLevel = levelStart.length - 2;
+        visit(rootLevel, levelStart[rootLevel], x, y, visitor);
+    }
+
+    private void visit(int level, int node, double x, double y, IntConsumer visitor) {
+        final int b = node * 4;
+        if(x < bounds[b] || y < bounds[b + 1] || x > bounds[b + 2] || y > bounds[b + 3]) {
+            return;
+        }
+        if(level == 0) {
+            visitor.accept(items[node]);
+        } else {
+            final int childStart = levelStart[level - 1] + (node - levelStart[level]) * NODE_CAPACITY;
+            final int childEnd = Math.min(levelStart[level], childStart + NODE_CAPACITY);
+            for(int child = childStart; child < childEnd; child++) {
+                visit(level - 1, child, x, y, visitor);
+            }
+        }
+    }
+
+    /**
+     * Visit the items having an envelope that intersects the provided envelope, in the order of the Hilbert curve
+     * @param minX Query min X
+     * @param minY Query min Y
+     * @param maxX Query max X
+     * @param maxY Query max Y
+     * @param visitor Receive the item identifiers
+     */
+    void query(double minX, double minY, double maxX, double maxY, IntConsumer visitor) {
+        anyMatch(minX, minY, maxX, maxY, item -> {
+            visitor.accept(item);
+            return false;
+        });
+    }
+
+    /**
+     * Visit the items having an envelope that intersects the provided envelope, until the predicate returns true
+     * @param minX Query min X
+     * @param minY Query min Y
+     * @param maxX Query max X
+     * @param maxY Query max Y
+     * @param predicate Receive the item identifiers, return true to stop the query
+     * @return True if the predicate has returned true for one item
+     */
+    boolean anyMatch(double minX, double minY, double maxX, double maxY, IntPredicate predicate) {
+        if(!built) {
+            build();
+        }
+        if(count == 0) {
+            return false;
+        }
+        int rootLevel = levelStart.length - 2;
+        return anyMatch(rootLevel, levelStart[rootLevel], minX, minY, maxX, maxY, predicate);
+    }
+
+    private boolean anyMatch(int level, int node, double minX, double minY, double maxX, double maxY,
+                             IntPredicate predicate) {
+        final int b = node * 4;
+        if(maxX < bounds[b] || maxY < bounds[b + 1] || minX > bounds[b + 2] || minY > bounds[b + 3]) {
+            return false;
+        }
+        if(level == 0) {
+            return predicate.test(items[node]);
+        }
+        final int childStart = levelStart[level - 1] + (node - levelStart[level]) * NODE_CAPACITY;
+        final int childEnd = Math.min(levelStart[level], childStart + NODE_CAPACITY);
+        for(int child = childStart; child < childEnd; child++) {
+            if(anyMatch(level - 1, child, minX, minY, maxX, maxY, predicate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param x X in [0, 32767]
+     * @param y Y in [0, 32767]
+     * @return Position on the Hilbert curve of order 15
+     */
+    static int hilbert(int x, int y) {
+        int d = 0;
+        for(int s = 1 << 14; s > 0; s >>= 1) {
+            int rx = (x & s) > 0 ? 1 : 0;
+            int ry = (y & s) > 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            if(ry == 0) {
+                if(rx == 1) {
+                    x = HILBERT_MAX - x;
+                    y = HILBERT_MAX - y;
+                }
+                int t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return d;
+    }
+}
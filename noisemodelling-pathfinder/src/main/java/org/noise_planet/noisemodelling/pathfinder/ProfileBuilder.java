@@ -34,7 +34,6 @@
 package org.noise_planet.noisemodelling.pathfinder;
 
 import org.locationtech.jts.algorithm.Angle;
-import org.locationtech.jts.algorithm.CGAlgorithms3D;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateSequence;
 import org.locationtech.jts.geom.CoordinateSequenceFilter;
@@ -66,7 +65,6 @@ import java.util.Objects;
 import java.util.Set;
 import java.util.Stack;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import static java.lang.Double.NaN;
@@ -95,6 +93,10 @@ public class ProfileBuilder {
     /** {@link Geometry} factory. */
     private static final GeometryFactory FACTORY = new GeometryFactory();
     private static final double DELTA = 1e-3;
+    /** Working profile of the threads using {@link #getProfile(Coordinate, Coordinate, double)} */
+    private static final ThreadLocal<CompactCutProfile> CUT_PROFILE_BUFFER = ThreadLocal.withInitial(CompactCutProfile::new);
+    /** Working buffer of the threads walking through the topographic triangles */
+    private static final ThreadLocal<TopographicIndex.Walk> TOPOGRAPHIC_WALK = ThreadLocal.withInitial(TopographicIndex.Walk::new);
 
     /** If true, no more data can be add. */
     private boolean isFeedingFinished = false;
@@ -134,8 +136,10 @@ public class ProfileBuilder {
     private List<Triangle> topoNeighbors = new ArrayList<>();
     /** Topographic Vertices .*/
     private List<Coordinate> vertices = new ArrayList<>();
-    /** Topographic RTree. */
-    private STRtree topoTree;
+    /** Topographic grid index. */
+    private TopographicIndex topoIndex;
+    /** Topographic raster, replaces the triangulation of the topographic points and lines if set. */
+    private TopographicRaster topoRaster;
 
     /** List of ground effects. */
     private final List<GroundEffect> groundEffects = new ArrayList<>();
@@ -563,6 +567,25 @@ public class ProfileBuilder {
         return this;
     }
 
+    /**
+     * Use a regular grid of heights as topography. The topographic points and lines are then ignored and no
+     * triangulation is done in {@link #finishFeeding()}.
+     * @param topographicRaster Topographic raster, may be shared with other builders.
+     */
+    public ProfileBuilder setTopographicRaster(TopographicRaster topographicRaster) {
+        if(!isFeedingFinished) {
+            this.topoRaster = topographicRaster;
+        }
+        return this;
+    }
+
+    /**
+     * @return The topographic raster, null if the topography is triangulated.
+     */
+    public TopographicRaster getTopographicRaster() {
+        return topoRaster;
+    }
+
     /**
      * Add the topographic line in the data, to complete the topographic data.
      */
@@ -756,7 +779,8 @@ public class ProfileBuilder {
      * Finish the data feeding. Once called, no more data can be added and process it in order to prepare the
      * profile retrieving.
      * The building are processed to include each facets into a RTree
-     * The topographic points and lines are meshed using delaunay and triangles facets are included into a RTree
+     * The topographic points and lines are meshed using delaunay and triangles facets are included into a grid index,
+     * unless a topographic raster has been set
      *
      * @return True if the finishing has been successfully done, false otherwise.
      */
@@ -764,7 +788,7 @@ public class ProfileBuilder {
         isFeedingFinished = true;
 
         //Process topographic points and lines
-        if(topoPoints.size()+topoLines.size() > 1) {
+        if(topoRaster == null && topoPoints.size()+topoLines.size() > 1) {
             //Feed the Delaunay layer
             LayerDelaunay layerDelaunay = new LayerTinfour();
             layerDelaunay.setRetrieveNeighbors(true);
@@ -805,8 +829,6 @@ public class ProfileBuilder {
                 LOGGER.error("Error while getting triangles", e);
                 return null;
             }
-            //Feed the RTree
-            topoTree = new STRtree(topoNodeCapacity);
             try {
                 vertices = layerDelaunay.getVertices();
             } catch (LayerDelaunayError e) {
@@ -820,14 +842,9 @@ public class ProfileBuilder {
                 wallIndex.add(new IntegerTuple(tri.getA(), tri.getB(), i));
                 wallIndex.add(new IntegerTuple(tri.getB(), tri.getC(), i));
                 wallIndex.add(new IntegerTuple(tri.getC(), tri.getA(), i));
-                // Insert triangle in rtree
-                Coordinate vA = vertices.get(tri.getA());
-                Coordinate vB = vertices.get(tri.getB());
-                Coordinate vC = vertices.get(tri.getC());
-                Envelope env = FACTORY.createLineString(new Coordinate[]{vA, vB, vC}).getEnvelopeInternal();
-                topoTree.insert(env, i);
-            }
-            topoTree.build();
+            }
+            //Feed the grid index
+            topoIndex = new TopographicIndex(vertices, topoTriangles, topoNeighbors);
             //TODO : Seems to be useless, to check
             /*for (IntegerTuple wallId : wallIndex) {
                 Coordinate vA = vertices.get(wallId.nodeIndexA);
@@ -837,7 +854,7 @@ public class ProfileBuilder {
             }*/
         }
         //Update building z
-        if(topoTree != null) {
+        if(hasTopography()) {
             for (Building b : buildings) {
                 if(isNaN(b.poly.getCoordinate().z) || b.poly.getCoordinate().z == 0.0 || !zBuildings) {
                     b.poly2D_3D();
@@ -1029,6 +1046,29 @@ public class ProfileBuilder {
         return profile;
     }
 
+    /**
+     * Retrieve the cutting profile following the line build from the given cut points.
+     * @param c0 Starting point.
+     * @param c1 Ending point.
+     * @param gS Ground factor of the source area.
+     * @param profile Profile to fill, its previous content is cleared.
+     * @return The given profile.
+     */
+    public CompactCutProfile getProfile(CutPoint c0, CutPoint c1, double gS, CompactCutProfile profile) {
+        getProfile(c0.getCoordinate(), c1.getCoordinate(), gS, profile);
+        int source = profile.getSourceIndex();
+        profile.buildingId[source] = c0.buildingId;
+        profile.groundCoef[source] = c0.groundCoef;
+        profile.wallAlpha[source] = c0.wallAlpha;
+
+        int receiver = profile.getReceiverIndex();
+        profile.buildingId[receiver] = c1.buildingId;
+        profile.groundCoef[receiver] = c1.groundCoef;
+        profile.wallAlpha[receiver] = c1.wallAlpha;
+
+        return profile;
+    }
+
     public static List<LineSegment> splitSegment(Coordinate c0, Coordinate c1, double maxLineLength) {
         List<LineSegment> lines = new ArrayList<>();
         LineSegment fullLine = new LineSegment(c0, c1);
@@ -1057,10 +1097,23 @@ public class ProfileBuilder {
      * @return Cutting profile.
      */
     public CutProfile getProfile(Coordinate c0, Coordinate c1, double gS) {
-        CutProfile profile = new CutProfile();
+        return getProfile(c0, c1, gS, CUT_PROFILE_BUFFER.get()).toCutProfile();
+    }
+
+    /**
+     * Retrieve the cutting profile following the line build from the given coordinates, without creating the cut
+     * point instances.
+     * @param c0 Starting point.
+     * @param c1 Ending point.
+     * @param gS Ground factor of the source area.
+     * @param profile Profile to fill, its previous content is cleared.
+     * @return The given profile.
+     */
+    public CompactCutProfile getProfile(Coordinate c0, Coordinate c1, double gS, CompactCutProfile profile) {
+        profile.clear();
 
         //Topography
-        if(topoTree != null) {
+        if(hasTopography()) {
             addTopoCutPts(c0, c1, profile);
         }
         // Split line into segments for structures based on RTree in order to limit the number of queries
@@ -1075,31 +1128,17 @@ public class ProfileBuilder {
 
         //Sort all the cut point in order to set the ground coefficients.
         profile.sort(c0, c1);
-        //Add base cut for buildings
+        //Add base cut for buildings, source and receiver
         addBuildingBaseCutPts(profile, c0, c1);
 
-
-        //If ordering puts source at last position, reverse the list
-        if(profile.pts.get(0) != profile.source) {
-            if(profile.pts.get(profile.pts.size()-1) != profile.source && profile.pts.get(0) != profile.source) {
-                LOGGER.error("The source have to be first or last cut point");
-            }
-            if(profile.pts.get(profile.pts.size()-1) != profile.receiver && profile.pts.get(0) != profile.receiver) {
-                LOGGER.error("The receiver have to be first or last cut point");
-            }
-            profile.reverse();
-        }
-
-
         //Sets the ground effects
         //Check is source is inside ground
         setGroundEffects(profile, c0, gS);
 
-
         return profile;
     }
 
-    private void setGroundEffects(CutProfile profile, Coordinate c0, double gS) {
+    private void setGroundEffects(CompactCutProfile profile, Coordinate c0, double gS) {
         Stack<List<Integer>> stack = new Stack<>();
         GroundEffect currentGround = null;
         int currGrdI = -1;
@@ -1115,37 +1154,37 @@ public class ProfileBuilder {
         List<Integer> currGrounds = new ArrayList<>();
         List<Integer> nextGrounds = new ArrayList<>();
         boolean first = true;
-        List<CutPoint> pts = profile.pts;
+        final int size = profile.size();
+        final byte groundEffectType = (byte) GROUND_EFFECT.ordinal();
         //Loop on each cut points
-        for (int i = 0; i < pts.size(); i++) {
-            CutPoint cut = pts.get(i);
+        for (int i = 0; i < size; i++) {
             //If the cut point is not a Ground effect, simply apply the current ground coef
-            if (cut.type != GROUND_EFFECT) {
-                cut.groundCoef = currentGround != null ? currentGround.coef : gS;
+            if (profile.type[i] != groundEffectType) {
+                profile.groundCoef[i] = currentGround != null ? currentGround.coef : gS;
             } else {
                 int j=i;
-                CutPoint next = pts.get(j);
+                int next = j;
                 //Pass all the cut points located at the same position as the current point.
-                while(cut.coordinate.equals2D(next.coordinate)){
+                while(profile.equals2D(i, next)){
                     //If the current ground effect list has never been filled, fill it.
-                    if(first && next.type == GROUND_EFFECT){
-                        currGrounds.add(next.id);
+                    if(first && profile.type[next] == groundEffectType){
+                        currGrounds.add(profile.id[next]);
                     }
                     //Apply the current ground effect tfor the case that the current cut point is at the same position as the receiver point.
-                    next.groundCoef = currentGround != null ? currentGround.coef : gS;
-                    if(j+1==pts.size()){
+                    profile.groundCoef[next] = currentGround != null ? currentGround.coef : gS;
+                    if(j+1==size){
                         break;
                     }
-                    next = pts.get(++j);
+                    next = ++j;
                 }
                 first = false;
                 //Try to find the next ground effect cut point
-                while((next = pts.get(j)).type != GROUND_EFFECT && j<pts.size()-1){
-                    next.groundCoef = currentGround != null ? currentGround.coef : gS;
+                while(profile.type[next = j] != groundEffectType && j<size-1){
+                    profile.groundCoef[next] = currentGround != null ? currentGround.coef : gS;
                     j++;
                 }
                 //If there is no more ground effect, exit loop
-                if(j==pts.size()-1){
+                if(j==size-1){
                     //Use the current ground effect for the remaining cut point
                     for(int idx : currGrounds) {
                         if(currentGround != null && currentGround.coef != groundEffects.get(idx).coef){
@@ -1154,18 +1193,18 @@ public class ProfileBuilder {
                     }
                     continue;
                 }
-                CutPoint nextNext = pts.get(j);
+                int nextNext = j;
                 //Fill the next ground effect list
-                while(next.coordinate.equals2D(nextNext.coordinate)){
-                    if(nextNext.type == GROUND_EFFECT){
-                        nextGrounds.add(nextNext.id);
+                while(profile.equals2D(next, nextNext)){
+                    if(profile.type[nextNext] == groundEffectType){
+                        nextGrounds.add(profile.id[nextNext]);
                     }
-                    if(j+1==pts.size()){
+                    if(j+1==size){
                         break;
                     }
-                    nextNext = pts.get(++j);
+                    nextNext = ++j;
                 }
-                nextNext = pts.get(j-1);
+                nextNext = j-1;
 
                 boolean found = false;
                 //Find the ground effect which will be applied from current position to next
@@ -1185,17 +1224,17 @@ public class ProfileBuilder {
                 if(currGrdI != -1) {
                     currentGround = groundEffects.get(currGrdI);
                 }
-                CutPoint cutPt = pts.get(i);
+                int cutPt = i;
                 //Apply the ground effect after the current coint up to the next ground effect
-                while(!nextNext.coordinate.equals2D(cutPt.coordinate)){
+                while(!profile.equals2D(nextNext, cutPt)){
                     if(found){
-                        cutPt.groundCoef = currentGround != null ? currentGround.coef : gS;
+                        profile.groundCoef[cutPt] = currentGround != null ? currentGround.coef : gS;
                     }
                     i++;
-                    if(i==pts.size()){
+                    if(i==size){
                         break;
                     }
-                    cutPt = pts.get(i);
+                    cutPt = i;
                 }
                 i--;
                 currGrounds = nextGrounds;
@@ -1225,59 +1264,61 @@ public class ProfileBuilder {
         }
     }
 
-    private void addBuildingBaseCutPts(CutProfile profile, Coordinate c0, Coordinate c1) {
-        ArrayList<CutPoint> pts = new ArrayList<>(profile.pts.size());
+    /**
+     * Insert a ground cut point before the first and after the last cut point of each crossed building, then add the
+     * source and the receiver.
+     * @param profile Sorted cut points
+     */
+    private void addBuildingBaseCutPts(CompactCutProfile profile, Coordinate c0, Coordinate c1) {
+        final int size = profile.size();
+        // References to the cut points, ~i for the ground copy of the cut point i
+        int[] pts = profile.getOrderBuffer(3 * size);
+        int ptsCount = 0;
         int buildId = -1;
-        CutPoint lastBuild = null;
-        for(int i=0; i<profile.pts.size(); i++) {
-            ProfileBuilder.CutPoint cut = profile.pts.get(i);
-            if(cut.getType().equals(BUILDING)) {
+        int lastBuild = -1;
+        int lastBuildPosition = -1;
+        for(int i=0; i<size; i++) {
+            if(profile.type[i] == BUILDING.ordinal()) {
                 if (buildId == -1) {
-                    buildId = cut.getId();
-                    CutPoint grd = new CutPoint(cut);
-                    grd.getCoordinate().z = getZGround(cut);
-                    pts.add(grd);
-                    pts.add(cut);
+                    buildId = profile.id[i];
+                    getZGround(profile, i);
+                    pts[ptsCount++] = ~i;
+                    pts[ptsCount++] = i;
                 }
-                else if(buildId == cut.getId()) {
-                    pts.add(cut);
+                else if(buildId == profile.id[i]) {
+                    pts[ptsCount++] = i;
                 }
                 else {
-                    CutPoint grd0 = new CutPoint(lastBuild);
-                    grd0.getCoordinate().z = getZGround(grd0);
-                    pts.add(pts.indexOf(lastBuild)+1, grd0);
-                    CutPoint grd1 = new CutPoint(cut);
-                    grd1.getCoordinate().z = getZGround(grd1);
-                    pts.add(grd1);
-                    pts.add(cut);
-                    buildId = cut.getId();
+                    getZGround(profile, lastBuild);
+                    ptsCount = insert(pts, ptsCount, lastBuildPosition + 1, ~lastBuild);
+                    getZGround(profile, i);
+                    pts[ptsCount++] = ~i;
+                    pts[ptsCount++] = i;
+                    buildId = profile.id[i];
                 }
-                lastBuild = cut;
-            }
-            else if(cut.getType().equals(RECEIVER)) {
-                if(buildId != -1) {
-                    buildId = -1;
-                    CutPoint grd0 = new CutPoint(pts.get(pts.size()-1));
-                    grd0.getCoordinate().z = getZGround(grd0);
-                    pts.add(grd0);
-                }
-                pts.add(cut);
+                lastBuild = i;
+                lastBuildPosition = ptsCount - 1;
             }
             else {
-                pts.add(cut);
+                pts[ptsCount++] = i;
             }
         }
         if(buildId != -1) {
-            CutPoint grd0 = new CutPoint(lastBuild);
-            grd0.getCoordinate().z = getZGround(grd0);
-            pts.add(pts.indexOf(lastBuild)+1, grd0);
+            getZGround(profile, lastBuild);
+            ptsCount = insert(pts, ptsCount, lastBuildPosition + 1, ~lastBuild);
         }
-        profile.pts = pts;
+        profile.reorder(pts, ptsCount);
         profile.addSource(c0);
         profile.addReceiver(c1);
     }
 
-    private void addGroundBuildingCutPts(List<LineSegment> lines, LineSegment fullLine, CutProfile profile) {
+    private static int insert(int[] values, int length, int position, int value) {
+        System.arraycopy(values, position, values, position + 1, length - position);
+        values[position] = value;
+        return length + 1;
+    }
+
+    private void addGroundBuildingCutPts(List<LineSegment> lines, LineSegment fullLine, CompactCutProfile profile) {
         List<Integer> indexes = new ArrayList<>();
         for (LineSegment line : lines) {
             indexes.addAll(rtree.query(new Envelope(line.p0, line.p1)));
@@ -1297,7 +1338,7 @@ public class ProfileBuilder {
                         intersection.z = facetLine.p0.z + ((intersection.x - facetLine.p0.x) / (facetLine.p1.x - facetLine.p0.x) * (facetLine.p1.z - facetLine.p0.z));
                     }
                 }
-                else if(topoTree == null) {
+                else if(!hasTopography()) {
                     intersection.z = NaN;
                 }
                 else {
@@ -1333,90 +1374,6 @@ public class ProfileBuilder {
         }
     }
 
-    /**
-     * Compute the next triangle index.Find the shortest intersection point of
-     * triIndex segments to the p1 coordinate
-     *
-     * @param triIndex        Triangle index
-     * @param propagationLine Propagation line
-     * @return Next triangle to the specified direction, -1 if there is no
-     * triangle neighbor.
-     */
-    private int getNextTri(final int triIndex,
-                           final LineSegment propagationLine,
-                           HashSet<Integer> navigationHistory, final Coordinate segmentIntersection) {
-        final Triangle tri = topoTriangles.get(triIndex);
-        final Triangle triNeighbors = topoNeighbors.get(triIndex);
-        int nearestIntersectionSide = -1;
-        int idNeighbor;
-
-        double nearestIntersectionPtDist = Double.MAX_VALUE;
-        // Find intersection pt
-        final Coordinate aTri = this.vertices.get(tri.getA());
-        final Coordinate bTri = this.vertices.get(tri.getB());
-        final Coordinate cTri = this.vertices.get(tri.getC());
-        double distline_line;
-        // Intersection First Side
-        idNeighbor = triNeighbors.get(2);
-        if (!navigationHistory.contains(idNeighbor)) {
-            LineSegment triSegment = new LineSegment(aTri, bTri);
-            Coordinate[] closestPoints = propagationLine.closestPoints(triSegment);
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < JTSUtility.TRIANGLE_INTERSECTION_EPSILON) {
-                intersectionTest = new Coordinate(closestPoints[0].x, closestPoints[0].y, Vertex.interpolateZ(closestPoints[0], triSegment.p0, triSegment.p1));
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
-                if (distline_line < nearestIntersectionPtDist) {
-                    segmentIntersection.setCoordinate(intersectionTest);
-                    nearestIntersectionPtDist = distline_line;
-                    nearestIntersectionSide = 2;
-                }
-            }
-        }
-        // Intersection Second Side
-        idNeighbor = triNeighbors.get(0);
-        if (!navigationHistory.contains(idNeighbor)) {
-            LineSegment triSegment = new LineSegment(bTri, cTri);
-            Coordinate[] closestPoints = propagationLine.closestPoints(triSegment);
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < JTSUtility.TRIANGLE_INTERSECTION_EPSILON) {
-                intersectionTest = new Coordinate(closestPoints[0].x, closestPoints[0].y, Vertex.interpolateZ(closestPoints[0], triSegment.p0, triSegment.p1));
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
-                if (distline_line < nearestIntersectionPtDist) {
-                    segmentIntersection.setCoordinate(intersectionTest);
-                    nearestIntersectionPtDist = distline_line;
-                    nearestIntersectionSide = 0;
-                }
-            }
-        }
-        // Intersection Third Side
-        idNeighbor = triNeighbors.get(1);
-        if (!navigationHistory.contains(idNeighbor)) {
-            LineSegment triSegment = new LineSegment(cTri, aTri);
-            Coordinate[] closestPoints = propagationLine.closestPoints(triSegment);
-            Coordinate intersectionTest = null;
-            if(closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < JTSUtility.TRIANGLE_INTERSECTION_EPSILON) {
-                intersectionTest = new Coordinate(closestPoints[0].x, closestPoints[0].y, Vertex.interpolateZ(closestPoints[0], triSegment.p0, triSegment.p1));
-            }
-            if(intersectionTest != null) {
-                distline_line = propagationLine.p1.distance(intersectionTest);
-                if (distline_line < nearestIntersectionPtDist) {
-                    segmentIntersection.setCoordinate(intersectionTest);
-                    nearestIntersectionSide = 1;
-                }
-            }
-        }
-        if(nearestIntersectionSide > -1) {
-            return triNeighbors.get(nearestIntersectionSide);
-        } else {
-            return -1;
-        }
-    }
-
-
     /**
      * Get coordinates of triangle vertices
      * @param triIndex Index of triangle
@@ -1437,53 +1394,41 @@ public class ProfileBuilder {
      */
 
     public int getTriangleIdByCoordinate(Coordinate pt) {
-        Envelope ptEnv = new Envelope(pt);
-        ptEnv.expandBy(1);
-        List res = topoTree.query(new Envelope(ptEnv));
-        double minDistance = Double.MAX_VALUE;
-        int minDistanceTriangle = -1;
-        for(Object objInd : res) {
-            int triId = (Integer) objInd;
-            Coordinate[] tri = getTriangle(triId);
-            AtomicReference<Double> err = new AtomicReference<>(0.);
-            JTSUtility.dotInTri(pt, tri[0], tri[1], tri[2], err);
-            if (err.get() < minDistance) {
-                minDistance = err.get();
-                minDistanceTriangle = triId;
-            }
+        if(topoIndex == null) {
+            return -1;
         }
-        return minDistanceTriangle;
+        return topoIndex.findNearestTriangle(pt.x, pt.y, 1);
     }
 
     public void addTopoCutPts(Coordinate p1, Coordinate p2, CutProfile profile) {
-        List<Coordinate> coordinates = getTopographicProfile(p1, p2);
-        // Remove unnecessary points
-        ArrayList<Coordinate> retainedCoordinates = new ArrayList<>(coordinates.size());
-        for(int i =0; i < coordinates.size(); i++) {
-            // Always add first and last points
-            Coordinate previous;
-            Coordinate current = coordinates.get(i);
-            Coordinate next;
-            if(retainedCoordinates.isEmpty()) {
-                previous = new Coordinate(p1.x, p1.y, getZGround(p1));
-            } else {
-                previous = retainedCoordinates.get(retainedCoordinates.size() - 1);
-            }
-            if(i == coordinates.size() - 1) {
-                next = new Coordinate(p2.x, p2.y, getZGround(p2));
-            } else {
-                next = coordinates.get(i + 1);
-            }
-            // Do not add topographic points which are simply the linear interpolation between two points
-            if(CGAlgorithms3D.distancePointSegment(current, previous, next) >= DELTA) {
-                retainedCoordinates.add(coordinates.get(i));
-            }
+        TopographicIndex.Walk walk = getSimplifiedTopographicProfile(p1, p2);
+        // Feed profile
+        profile.reservePoints(walk.size);
+        for(int i =0; i < walk.size; i++) {
+            profile.addTopoCutPt(new Coordinate(walk.x[i], walk.y[i], walk.z[i]), i);
         }
+    }
+
+    public void addTopoCutPts(Coordinate p1, Coordinate p2, CompactCutProfile profile) {
+        TopographicIndex.Walk walk = getSimplifiedTopographicProfile(p1, p2);
         // Feed profile
-        profile.reservePoints(retainedCoordinates.size());
-        for(int i =0; i < retainedCoordinates.size(); i++) {
-            profile.addTopoCutPt(retainedCoordinates.get(i), i);
+        profile.ensureCapacity(profile.size() + walk.size);
+        for(int i =0; i < walk.size; i++) {
+            profile.addTopoCutPt(walk.x[i], walk.y[i], walk.z[i], i);
+        }
+    }
+
+    /**
+     * Walk through the topography and remove the points that are simply the linear interpolation between two points.
+     * @return The thread working buffer holding the retained points
+     */
+    private TopographicIndex.Walk getSimplifiedTopographicProfile(Coordinate p1, Coordinate p2) {
+        TopographicIndex.Walk walk = TOPOGRAPHIC_WALK.get();
+        walkTopography(p1, p2, walk);
+        if(walk.size > 0) {
+            walk.simplify(p1.x, p1.y, getZGround(p1.x, p1.y, 0.0), p2.x, p2.y, getZGround(p2.x, p2.y, 0.0), DELTA);
         }
+        return walk;
     }
 
     /**
@@ -1499,14 +1444,13 @@ public class ProfileBuilder {
         if(queryEnvelope.getHeight() < 1.0 || queryEnvelope.getWidth() < 1) {
             queryEnvelope.expandBy(1.0);
         }
-        List res = topoTree.query(queryEnvelope);
+        List<Integer> res = topoIndex.query(queryEnvelope);
         double minDistance = Double.MAX_VALUE;
         int minDistanceTriangle = -1;
         GeometryFactory factory = new GeometryFactory();
         LineString lineString = factory.createLineString(new Coordinate[]{segment.p0, segment.p1});
         Coordinate intersectionPt = null;
-        for(Object objInd : res) {
-            int triId = (Integer) objInd;
+        for(int triId : res) {
             Coordinate[] tri = getTriangle(triId);
             Geometry triangleGeometry = factory.createPolygon(new Coordinate[]{ tri[0], tri[1], tri[2], tri[0]});
             if(triangleGeometry.intersects(lineString)) {
@@ -1534,39 +1478,45 @@ public class ProfileBuilder {
     }
 
     public List<Coordinate> getTopographicProfile(Coordinate p1, Coordinate p2) {
-        if(topoTree == null) {
-            return new ArrayList<>();
+        TopographicIndex.Walk walk = TOPOGRAPHIC_WALK.get();
+        walkTopography(p1, p2, walk);
+        List<Coordinate> outputPoints = new ArrayList<>(walk.size);
+        for(int i = 0; i < walk.size; i++) {
+            outputPoints.add(new Coordinate(walk.x[i], walk.y[i], walk.z[i]));
+        }
+        return outputPoints;
+    }
+
+    /**
+     * Fill the walk buffer with the intersections of the segment p1 p2 with the topographic triangles sides
+     * @param p1 Start of the segment
+     * @param p2 End of the segment
+     * @param walk Working buffer, cleared before the walk
+     */
+    private void walkTopography(Coordinate p1, Coordinate p2, TopographicIndex.Walk walk) {
+        walk.clear();
+        if(topoRaster != null) {
+            topoRaster.walk(p1.x, p1.y, p2.x, p2.y, walk);
+            return;
+        }
+        if(topoIndex == null) {
+            return;
         }
-        List<Coordinate> outputPoints = new ArrayList<>();
         //get origin triangle id
         int curTriP1 = getTriangleIdByCoordinate(p1);
-        LineSegment propaLine = new LineSegment(p1, p2);
         if(curTriP1 == -1) {
             // we are outside the bounds of the triangles
             // Find the closest triangle to p1
             Coordinate intersectionPt = new Coordinate();
             AtomicInteger minDistanceTriangle = new AtomicInteger();
-            if(findClosestTriangleIntersection(propaLine, intersectionPt, minDistanceTriangle)) {
-                outputPoints.add(intersectionPt);
+            if(findClosestTriangleIntersection(new LineSegment(p1, p2), intersectionPt, minDistanceTriangle)) {
+                walk.add(intersectionPt.x, intersectionPt.y, intersectionPt.z);
                 curTriP1 = minDistanceTriangle.get();
             } else {
-                return outputPoints;
+                return;
             }
         }
-        HashSet<Integer> navigationHistory = new HashSet<Integer>();
-        int navigationTri = curTriP1;
-        while (navigationTri != -1) {
-            navigationHistory.add(navigationTri);
-            Coordinate intersectionPt = new Coordinate();
-            int propaTri = this.getNextTri(navigationTri, propaLine, navigationHistory, intersectionPt);
-            // Found next triangle (if propaTri >= 0)
-            // extract X,Y,Z values of intersection with triangle segment
-            if(!Double.isNaN(intersectionPt.z)) {
-                outputPoints.add(intersectionPt);
-            }
-            navigationTri = propaTri;
-        }
-        return outputPoints;
+        topoIndex.walk(curTriP1, p1.x, p1.y, p2.x, p2.y, walk);
     }
 
     /**
@@ -1583,32 +1533,58 @@ public class ProfileBuilder {
      * @return True if digital elevation model has been added
      */
     public boolean hasDem() {
-        return topoTree != null && topoTree.size() > 0;
+        return topoRaster != null || (topoIndex != null && topoIndex.getTriangleCount() > 0);
+    }
+
+    /**
+     * @return True if the topography has been triangulated or a topographic raster is set
+     */
+    private boolean hasTopography() {
+        return topoRaster != null || topoIndex != null;
+    }
+
+    /**
+     * Get the topographic height of a cut point, the value is cached in the profile.
+     * @param profile Cutting profile
+     * @param i Index of the cut point
+     * @return Topographic height of the point, 0 if there is no topography at this location.
+     */
+    public double getZGround(CompactCutProfile profile, int i) {
+        if(!Double.isNaN(profile.zGround[i])) {
+            return profile.zGround[i];
+        }
+        double z = getZGround(profile.x[i], profile.y[i], NaN);
+        if(isNaN(z)) {
+            return 0.0;
+        }
+        profile.zGround[i] = z;
+        return z;
     }
 
     public double getZGround(CutPoint cut) {
         if(!Double.isNaN(cut.zGround)) {
             return cut.zGround;
         }
-        if(topoTree == null) {
-            cut.zGround = NaN;
-            return 0.0;
+        cut.zGround = getZGround(cut.coordinate.x, cut.coordinate.y, NaN);
+        return isNaN(cut.zGround) ? 0.0 : cut.zGround;
+    }
+
+    /**
+     * @param x Point X
+     * @param y Point Y
+     * @param defaultValue Returned value if there is no topography at this location
+     * @return Topographic height of the point.
+     */
+    private double getZGround(double x, double y, double defaultValue) {
+        if(topoRaster != null) {
+            double z = topoRaster.getZ(x, y);
+            return isNaN(z) ? defaultValue : z;
         }
-        Envelope env = new Envelope(cut.coordinate);
-        List<Integer> list = (List<Integer>)topoTree.query(env);
-        for (int i : list) {
-            final Triangle tri = topoTriangles.get(i);
-            final Coordinate p1 = vertices.get(tri.getA());
-            final Coordinate p2 = vertices.get(tri.getB());
-            final Coordinate p3 = vertices.get(tri.getC());
-            if(JTSUtility.dotInTri(cut.coordinate, p1, p2, p3)) {
-                double z = Vertex.interpolateZ(cut.coordinate, p1, p2, p3);
-                cut.zGround = z;
-                return z;
-            }
+        if(topoIndex == null) {
+            return defaultValue;
         }
-        cut.zGround = NaN;
-        return 0.0;
+        int triangle = topoIndex.findTriangle(x, y);
+        return triangle == -1 ? defaultValue : topoIndex.interpolateZ(triangle, x, y);
     }
 
     /**
@@ -1650,6 +1626,32 @@ public class ProfileBuilder {
         private double distanceToSR = 0;
         private Orientation srcOrientation;
 
+        public CutProfile() {
+        }
+
+        /**
+         * Create the cut points of a compact profile.
+         * @param profile Compact profile filled by {@link ProfileBuilder#getProfile(Coordinate, Coordinate, double, CompactCutProfile)}
+         */
+        public CutProfile(CompactCutProfile profile) {
+            pts = new ArrayList<>(profile.size());
+            for(int i = 0; i < profile.size(); i++) {
+                pts.add(new CutPoint(profile, i));
+            }
+            if(!pts.isEmpty()) {
+                source = pts.get(profile.getSourceIndex());
+                receiver = pts.get(profile.getReceiverIndex());
+            }
+            hasBuildingInter = profile.intersectBuilding();
+            hasTopographyInter = profile.intersectTopography();
+            hasGroundEffectInter = profile.intersectGroundEffect();
+            srcOrientation = profile.getSrcOrientation();
+            if(profile.isFreeFieldComputed()) {
+                isFreeField = profile.isFreeField();
+                distanceToSR = profile.getDistanceToSR();
+            }
+        }
+
         /**
          * Add the source point.
          * @param coord Coordinate of the source point.
@@ -1996,6 +1998,24 @@ public class ProfileBuilder {
             coordinate = new Coordinate();
         }
 
+        /**
+         * Create the cut point of a compact profile
+         * @param profile Compact profile
+         * @param i Index of the cut point
+         */
+        CutPoint(CompactCutProfile profile, int i) {
+            this.coordinate = new Coordinate(profile.x[i], profile.y[i], profile.z[i]);
+            this.type = profile.getType(i);
+            this.id = profile.id[i];
+            this.buildingId = profile.buildingId[i];
+            this.wallId = profile.wallId[i];
+            this.groundCoef = profile.groundCoef[i];
+            this.wallAlpha = profile.getWallAlpha(i);
+            this.height = 0;
+            this.zGround = profile.zGround[i];
+            this.corner = profile.corner[i];
+        }
+
         /**
          * Copy constructor
          * @param cut
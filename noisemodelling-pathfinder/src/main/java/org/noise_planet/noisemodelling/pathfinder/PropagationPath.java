@@ -66,6 +66,8 @@ import static org.noise_planet.noisemodelling.pathfinder.utils.GeometryUtils.pro
 public class PropagationPath {
     public static final int FOOTER_RESERVED_SIZE = 120; // reserved size for geojson footer
     private List<ProfileBuilder.CutPoint> cutPoints = new ArrayList<>();
+    // cut points not created yet, see getCutPoints
+    private CompactCutProfile compactCutPoints = null;
     // given by user
     private SegmentPath srSegment; // list of source-receiver path (including prime path)
     private List<PointPath> pointList; // list of points (source, receiver or diffraction and reflection points)
@@ -133,11 +135,25 @@ public class PropagationPath {
      * @return
      */
     public List<ProfileBuilder.CutPoint> getCutPoints() {
+        if(compactCutPoints != null) {
+            cutPoints = compactCutPoints.getCutPoints();
+            compactCutPoints = null;
+        }
         return cutPoints;
     }
 
     public void setCutPoints(List<ProfileBuilder.CutPoint> cutPoints) {
         this.cutPoints = cutPoints;
+        this.compactCutPoints = null;
+    }
+
+    /**
+     * @param cutPoints 3D intersections points of the ray, the {@link ProfileBuilder.CutPoint} instances are only
+     *                  created if {@link #getCutPoints()} is called. The profile must not be modified afterwards.
+     */
+    public void setCutPoints(CompactCutProfile cutPoints) {
+        this.cutPoints = new ArrayList<>();
+        this.compactCutPoints = cutPoints;
     }
 
     /**
@@ -190,6 +206,7 @@ public class PropagationPath {
         this.deltaRetroH = other.deltaRetroH;
         this.deltaRetroF = other.deltaRetroF;
         this.cutPoints = new ArrayList<>(other.cutPoints);
+        this.compactCutPoints = other.compactCutPoints;
         this.timePeriod = other.timePeriod;
     }
 
@@ -249,6 +266,7 @@ public class PropagationPath {
         int i=0;
         double cutPointDistance = 0;
         int cutPointCursor = 0;
+        List<ProfileBuilder.CutPoint> cutPoints = getCutPoints();
         if(cutPoints.isEmpty() || coordinates.length <= 1) {
             return geometryFactory.createLineString();
         }
@@ -284,7 +302,7 @@ public class PropagationPath {
         ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
         GeoJSONDocument geoJSONDocument = new GeoJSONDocument(byteArrayOutputStream);
         geoJSONDocument.writeHeader();
-        for (ProfileBuilder.CutPoint cutPoint : cutPoints) {
+        for (ProfileBuilder.CutPoint cutPoint : getCutPoints()) {
             if(sizeLimitation > 0 && byteArrayOutputStream.size() + FOOTER_RESERVED_SIZE > sizeLimitation) {
                 break;
             }
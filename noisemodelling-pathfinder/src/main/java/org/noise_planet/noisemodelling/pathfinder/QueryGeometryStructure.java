@@ -36,6 +36,7 @@ package org.noise_planet.noisemodelling.pathfinder;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.Geometry;
 import java.util.Iterator;
+import java.util.function.IntConsumer;
 
 /**
  * QueryGeometryStructure aims to speed up the query of a geometry collection
@@ -50,4 +51,16 @@ public interface QueryGeometryStructure {
 
 	Iterator<Integer> query(Envelope queryEnv);
 
+	/**
+	 * Query without boxing of the identifiers
+	 * @param queryEnv Query envelope
+	 * @param visitor Receive the identifiers of the geometries intersecting the envelope
+	 */
+	default void query(Envelope queryEnv, IntConsumer visitor) {
+		Iterator<Integer> it = query(queryEnv);
+		while (it.hasNext()) {
+			visitor.accept(it.next());
+		}
+	}
+
 }
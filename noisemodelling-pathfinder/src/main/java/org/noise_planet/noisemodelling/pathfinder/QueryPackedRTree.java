@@ -0,0 +1,84 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Geometry index stored in primitive arrays. The envelopes are packed along a Hilbert curve into a static R-tree on
+ * the first query, and packed again if geometries are appended later. The identifiers are returned in the order of
+ * the Hilbert curve, so close geometries are visited consecutively.
+ */
+public class QueryPackedRTree implements QueryGeometryStructure {
+    private int count = 0;
+    private int[] ids = new int[16];
+    /** minX, minY, maxX, maxY of each geometry */
+    private double[] envelopes = new double[16 * 4];
+    private volatile PackedEnvelopeTree tree = null;
+
+    @Override
+    public void appendGeometry(Geometry newGeom, Integer externalId) {
+        Envelope envelope = newGeom.getEnvelopeInternal();
+        if(count == ids.length) {
+            ids = Arrays.copyOf(ids, count * 2);
+            envelopes = Arrays.copyOf(envelopes, count * 2 * 4);
+        }
+        ids[count] = externalId;
+        envelopes[count * 4] = envelope.getMinX();
+        envelopes[count * 4 + 1] = envelope.getMinY();
+        envelopes[count * 4 + 2] = envelope.getMaxX();
+        envelopes[count * 4 + 3] = envelope.getMaxY();
+        count++;
+        tree = null;
+    }
+
+    private PackedEnvelopeTree getTree() {
+        PackedEnvelopeTree packedTree = tree;
+        if(packedTree == null) {
+            synchronized (this) {
+                if(tree == null) {
+                    packedTree = new PackedEnvelopeTree(count);
+                    for(int i = 0; i < count; i++) {
+                        packedTree.add(ids[i], envelopes[i * 4], envelopes[i * 4 + 1], envelopes[i * 4 + 2],
+                                envelopes[i * 4 + 3]);
+                    }
+                    packedTree.build();
+                    tree = packedTree;
+                }
+                packedTree = tree;
+            }
+        }
+        return packedTree;
+    }
+
+    @Override
+    public Iterator<Integer> query(Envelope queryEnv) {
+        List<Integer> result = new ArrayList<>();
+        query(queryEnv, result::add);
+        return result.iterator();
+    }
+
+    @Override
+    public void query(Envelope queryEnv, IntConsumer visitor) {
+        if(queryEnv.isNull()) {
+            return;
+        }
+        getTree().query(queryEnv.getMinX(), queryEnv.getMinY(), queryEnv.getMaxX(), queryEnv.getMaxY(), visitor);
+    }
+}
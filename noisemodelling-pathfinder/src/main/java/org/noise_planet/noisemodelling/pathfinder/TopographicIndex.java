@@ -0,0 +1,514 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.algorithm.CGAlgorithms3D;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.LineSegment;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.noise_planet.noisemodelling.pathfinder.JTSUtility.TRIANGLE_INTERSECTION_EPSILON;
+
+/**
+ * Acceleration structure of the topographic triangulation built by {@link ProfileBuilder#finishFeeding()}.
+ * Vertices, triangles and triangle neighbors are stored in primitive arrays and the triangles are registered in a
+ * uniform grid, the cells are sized in order to hold about one triangle each. It gives a constant time lookup of the
+ * triangle under a point and a line walk through the triangle neighbors that does not allocate objects.
+ */
+class TopographicIndex {
+    /** Segments are considered as parallel below this sinus of the angle between the segments */
+    private static final double PARALLEL_EPSILON = 1e-12;
+
+    private final double[] vx;
+    private final double[] vy;
+    private final double[] vz;
+    /** Vertex indices, 3 per triangle */
+    private final int[] triangles;
+    /** Neighbor triangle indices, 3 per triangle. Neighbor k is on the side opposite to the vertex k, -1 if none */
+    private final int[] neighbors;
+    private final int triangleCount;
+
+    private final double minX;
+    private final double minY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int columns;
+    private final int rows;
+    /** Start offset of each cell into {@link #cellTriangles}, the last value is the total length */
+    private final int[] cellStart;
+    private final int[] cellTriangles;
+
+    /**
+     * @param vertices Triangulation vertices
+     * @param triangleList Triangles
+     * @param neighborList Neighbors of the triangles
+     */
+    TopographicIndex(List<Coordinate> vertices, List<Triangle> triangleList, List<Triangle> neighborList) {
+        vx = new double[vertices.size()];
+        vy = new double[vertices.size()];
+        vz = new double[vertices.size()];
+        Envelope envelope = new Envelope();
+        for (int i = 0; i < vertices.size(); i++) {
+            Coordinate v = vertices.get(i);
+            vx[i] = v.x;
+            vy[i] = v.y;
+            vz[i] = v.z;
+            envelope.expandToInclude(v);
+        }
+        triangleCount = triangleList.size();
+        triangles = new int[triangleCount * 3];
+        neighbors = new int[triangleCount * 3];
+        Arrays.fill(neighbors, -1);
+        for (int i = 0; i < triangleCount; i++) {
+            Triangle tri = triangleList.get(i);
+            triangles[i * 3] = tri.getA();
+            triangles[i * 3 + 1] = tri.getB();
+            triangles[i * 3 + 2] = tri.getC();
+            if(i < neighborList.size()) {
+                Triangle neighbor = neighborList.get(i);
+                neighbors[i * 3] = neighbor.get(0);
+                neighbors[i * 3 + 1] = neighbor.get(1);
+                neighbors[i * 3 + 2] = neighbor.get(2);
+            }
+        }
+        // Grid dimension, about one triangle per cell
+        minX = envelope.isNull() ? 0 : envelope.getMinX();
+        minY = envelope.isNull() ? 0 : envelope.getMinY();
+        double width = envelope.isNull() ? 0 : envelope.getWidth();
+        double height = envelope.isNull() ? 0 : envelope.getHeight();
+        double cellSize = Math.sqrt(Math.max(width, 1e-6) * Math.max(height, 1e-6) / Math.max(1, triangleCount));
+        columns = (int)Math.max(1, Math.min(Math.ceil(width / cellSize), Math.max(1, triangleCount)));
+        rows = (int)Math.max(1, Math.min(Math.ceil(height / cellSize), Math.max(1, triangleCount)));
+        cellWidth = width > 0 ? width / columns : 1;
+        cellHeight = height > 0 ? height / rows : 1;
+        // Compressed cell content, first count the triangles of each cell then fill
+        cellStart = new int[columns * rows + 1];
+        for (int tri = 0; tri < triangleCount; tri++) {
+            int minCol = getColumn(triangleMinX(tri));
+            int maxCol = getColumn(triangleMaxX(tri));
+            int minRow = getRow(triangleMinY(tri));
+            int maxRow = getRow(triangleMaxY(tri));
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    cellStart[row * columns + col + 1]++;
+                }
+            }
+        }
+        for (int i = 1; i < cellStart.length; i++) {
+            cellStart[i] += cellStart[i - 1];
+        }
+        cellTriangles = new int[cellStart[cellStart.length - 1]];
+        int[] cellFill = Arrays.copyOf(cellStart, cellStart.length - 1);
+        for (int tri = 0; tri < triangleCount; tri++) {
+            int minCol = getColumn(triangleMinX(tri));
+            int maxCol = getColumn(triangleMaxX(tri));
+            int minRow = getRow(triangleMinY(tri));
+            int maxRow = getRow(triangleMaxY(tri));
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    cellTriangles[cellFill[row * columns + col]++] = tri;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Number of triangles
+     */
+    int getTriangleCount() {
+        return triangleCount;
+    }
+
+    private int getColumn(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) ((x - minX) / cellWidth)));
+    }
+
+    private int getRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) ((y - minY) / cellHeight)));
+    }
+
+    private double triangleMinX(int tri) {
+        return Math.min(vx[triangles[tri * 3]], Math.min(vx[triangles[tri * 3 + 1]], vx[triangles[tri * 3 + 2]]));
+    }
+
+    private double triangleMaxX(int tri) {
+        return Math.max(vx[triangles[tri * 3]], Math.max(vx[triangles[tri * 3 + 1]], vx[triangles[tri * 3 + 2]]));
+    }
+
+    private double triangleMinY(int tri) {
+        return Math.min(vy[triangles[tri * 3]], Math.min(vy[triangles[tri * 3 + 1]], vy[triangles[tri * 3 + 2]]));
+    }
+
+    private double triangleMaxY(int tri) {
+        return Math.max(vy[triangles[tri * 3]], Math.max(vy[triangles[tri * 3 + 1]], vy[triangles[tri * 3 + 2]]));
+    }
+
+    private boolean triangleIntersects(int tri, double minX, double minY, double maxX, double maxY) {
+        return !(triangleMinX(tri) > maxX || triangleMaxX(tri) < minX || triangleMinY(tri) > maxY ||
+                triangleMaxY(tri) < minY);
+    }
+
+    /**
+     * Barycentric test, same as {@link JTSUtility#dotInTri(Coordinate, Coordinate, Coordinate, Coordinate)}
+     * @param tri Triangle index
+     * @param x Point X
+     * @param y Point Y
+     * @return Distance to the triangle in barycentric coordinates, 0 if the point is inside the triangle or NaN if the
+     * triangle is flat
+     */
+    private double barycentricError(int tri, double x, double y) {
+        final int a = triangles[tri * 3];
+        final int b = triangles[tri * 3 + 1];
+        final int c = triangles[tri * 3 + 2];
+        final double v0x = vx[c] - vx[a], v0y = vy[c] - vy[a];
+        final double v1x = vx[b] - vx[a], v1y = vy[b] - vy[a];
+        final double v2x = x - vx[a], v2y = y - vy[a];
+        final double dot00 = v0x * v0x + v0y * v0y;
+        final double dot01 = v0x * v1x + v0y * v1y;
+        final double dot02 = v0x * v2x + v0y * v2y;
+        final double dot11 = v1x * v1x + v1y * v1y;
+        final double dot12 = v1x * v2x + v1y * v2y;
+        final double invDenom = 1 / (dot00 * dot11 - dot01 * dot01);
+        final double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
+        final double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
+        if(Double.isNaN(u) || Double.isNaN(v)) {
+            return Double.NaN;
+        }
+        return Math.max(0, -u) + Math.max(0, -v) + Math.max(0, (u + v) - 1);
+    }
+
+    /**
+     * @param tri Triangle index
+     * @param x Point X
+     * @param y Point Y
+     * @return True if the point is inside the triangle (with {@link JTSUtility#TRIANGLE_INTERSECTION_EPSILON} tolerance)
+     */
+    boolean contains(int tri, double x, double y) {
+        final int a = triangles[tri * 3];
+        final int b = triangles[tri * 3 + 1];
+        final int c = triangles[tri * 3 + 2];
+        final double v0x = vx[c] - vx[a], v0y = vy[c] - vy[a];
+        final double v1x = vx[b] - vx[a], v1y = vy[b] - vy[a];
+        final double v2x = x - vx[a], v2y = y - vy[a];
+        final double dot00 = v0x * v0x + v0y * v0y;
+        final double dot01 = v0x * v1x + v0y * v1y;
+        final double dot02 = v0x * v2x + v0y * v2y;
+        final double dot11 = v1x * v1x + v1y * v1y;
+        final double dot12 = v1x * v2x + v1y * v2y;
+        final double invDenom = 1 / (dot00 * dot11 - dot01 * dot01);
+        final double u = (dot11 * dot02 - dot01 * dot12) * invDenom;
+        final double v = (dot00 * dot12 - dot01 * dot02) * invDenom;
+        return u > -TRIANGLE_INTERSECTION_EPSILON && v > -TRIANGLE_INTERSECTION_EPSILON &&
+                u + v < 1 + TRIANGLE_INTERSECTION_EPSILON;
+    }
+
+    /**
+     * @param x Point X
+     * @param y Point Y
+     * @return Index of a triangle that contains the point, -1 if there is none
+     */
+    int findTriangle(double x, double y) {
+        if(triangleCount == 0) {
+            return -1;
+        }
+        final int cell = getRow(y) * columns + getColumn(x);
+        for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+            if (contains(cellTriangles[i], x, y)) {
+                return cellTriangles[i];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the triangle containing the point or the closest one in barycentric distance
+     * @param x Point X
+     * @param y Point Y
+     * @param radius Search radius of the triangles envelope
+     * @return Triangle index or -1 if there is no triangle within the radius
+     */
+    int findNearestTriangle(double x, double y, double radius) {
+        if(triangleCount == 0) {
+            return -1;
+        }
+        final int cell = getRow(y) * columns + getColumn(x);
+        for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+            if (barycentricError(cellTriangles[i], x, y) == 0) {
+                return cellTriangles[i];
+            }
+        }
+        double minError = Double.MAX_VALUE;
+        int minErrorTriangle = -1;
+        final int maxRow = getRow(y + radius);
+        final int maxCol = getColumn(x + radius);
+        for (int row = getRow(y - radius); row <= maxRow; row++) {
+            for (int col = getColumn(x - radius); col <= maxCol; col++) {
+                final int queryCell = row * columns + col;
+                for (int i = cellStart[queryCell]; i < cellStart[queryCell + 1]; i++) {
+                    final int tri = cellTriangles[i];
+                    if (triangleIntersects(tri, x - radius, y - radius, x + radius, y + radius)) {
+                        double error = barycentricError(tri, x, y);
+                        if (error < minError) {
+                            minError = error;
+                            minErrorTriangle = tri;
+                        }
+                    }
+                }
+            }
+        }
+        return minErrorTriangle;
+    }
+
+    /**
+     * @param envelope Query envelope
+     * @return Index of the triangles whose envelope intersects the query envelope
+     */
+    List<Integer> query(Envelope envelope) {
+        List<Integer> result = new ArrayList<>();
+        if(triangleCount == 0 || envelope.isNull()) {
+            return result;
+        }
+        BitSet found = new BitSet(triangleCount);
+        final int maxRow = getRow(envelope.getMaxY());
+        final int maxCol = getColumn(envelope.getMaxX());
+        for (int row = getRow(envelope.getMinY()); row <= maxRow; row++) {
+            for (int col = getColumn(envelope.getMinX()); col <= maxCol; col++) {
+                final int cell = row * columns + col;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    final int tri = cellTriangles[i];
+                    if (!found.get(tri) && triangleIntersects(tri, envelope.getMinX(), envelope.getMinY(),
+                            envelope.getMaxX(), envelope.getMaxY())) {
+                        found.set(tri);
+                        result.add(tri);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Interpolate the height of the point on the triangle plane, same as
+     * {@link org.locationtech.jts.triangulate.quadedge.Vertex#interpolateZ(Coordinate, Coordinate, Coordinate, Coordinate)}
+     * @param tri Triangle index
+     * @param x Point X
+     * @param y Point Y
+     * @return Interpolated height
+     */
+    double interpolateZ(int tri, double x, double y) {
+        final int p0 = triangles[tri * 3];
+        final int p1 = triangles[tri * 3 + 1];
+        final int p2 = triangles[tri * 3 + 2];
+        final double a = vx[p1] - vx[p0];
+        final double b = vx[p2] - vx[p0];
+        final double c = vy[p1] - vy[p0];
+        final double d = vy[p2] - vy[p0];
+        final double det = a * d - b * c;
+        final double dx = x - vx[p0];
+        final double dy = y - vy[p0];
+        final double t = (d * dx - b * dy) / det;
+        final double u = (-c * dx + a * dy) / det;
+        return vz[p0] + t * (vz[p1] - vz[p0]) + u * (vz[p2] - vz[p0]);
+    }
+
+    /**
+     * @param tri Triangle index
+     * @return Triangle vertices
+     */
+    Coordinate[] getTriangle(int tri) {
+        return new Coordinate[] {getVertex(triangles[tri * 3]), getVertex(triangles[tri * 3 + 1]),
+                getVertex(triangles[tri * 3 + 2])};
+    }
+
+    private Coordinate getVertex(int vertex) {
+        return new Coordinate(vx[vertex], vy[vertex], vz[vertex]);
+    }
+
+    /**
+     * Walk through the triangles crossed by the segment p0 p1, starting from the given triangle. The intersections of
+     * the segment with the triangle sides are appended to the walk buffer.
+     * @param startTriangle Triangle of p0
+     * @param x0 p0 X
+     * @param y0 p0 Y
+     * @param x1 p1 X
+     * @param y1 p1 Y
+     * @param walk Thread working buffer
+     */
+    void walk(int startTriangle, double x0, double y0, double x1, double y1, Walk walk) {
+        final int stamp = walk.nextStamp(triangleCount);
+        final int[] visited = walk.visited;
+        int tri = startTriangle;
+        while (tri != -1) {
+            visited[tri] = stamp;
+            int nearestSide = -1;
+            double nearestDistance = Double.MAX_VALUE;
+            double nearestX = 0, nearestY = 0, nearestZ = Double.NaN;
+            // Same side order as the historical walk, ab (side 2) then bc (side 0) then ca (side 1)
+            for (int s = 0; s < 3; s++) {
+                final int side = (s + 2) % 3;
+                final int neighbor = neighbors[tri * 3 + side];
+                if (neighbor != -1 && visited[neighbor] == stamp) {
+                    continue;
+                }
+                final int va = triangles[tri * 3 + (side + 1) % 3];
+                final int vb = triangles[tri * 3 + (side + 2) % 3];
+                if (intersectSide(x0, y0, x1, y1, va, vb, walk)) {
+                    final double distance = Math.sqrt((x1 - walk.ix) * (x1 - walk.ix) + (y1 - walk.iy) * (y1 - walk.iy));
+                    if (distance < nearestDistance) {
+                        nearestDistance = distance;
+                        nearestSide = side;
+                        nearestX = walk.ix;
+                        nearestY = walk.iy;
+                        nearestZ = walk.iz;
+                    }
+                }
+            }
+            if (nearestSide == -1) {
+                break;
+            }
+            if (!Double.isNaN(nearestZ)) {
+                walk.add(nearestX, nearestY, nearestZ);
+            }
+            tri = neighbors[tri * 3 + nearestSide];
+        }
+    }
+
+    /**
+     * Intersection of the segment p0 p1 with the triangle side va vb, the result is stored in walk.ix, walk.iy, walk.iz
+     * @return True if the segments intersect
+     */
+    private boolean intersectSide(double x0, double y0, double x1, double y1, int va, int vb, Walk walk) {
+        final double rx = x1 - x0, ry = y1 - y0;
+        final double sx = vx[vb] - vx[va], sy = vy[vb] - vy[va];
+        final double rLength = Math.sqrt(rx * rx + ry * ry);
+        final double sLength = Math.sqrt(sx * sx + sy * sy);
+        final double denominator = rx * sy - ry * sx;
+        if (Math.abs(denominator) <= PARALLEL_EPSILON * rLength * sLength) {
+            // Parallel or degenerated segments, rare case left to JTS
+            LineSegment propagationLine = new LineSegment(x0, y0, x1, y1);
+            LineSegment triSegment = new LineSegment(getVertex(va), getVertex(vb));
+            Coordinate[] closestPoints = propagationLine.closestPoints(triSegment);
+            if (closestPoints.length == 2 && closestPoints[0].distance(closestPoints[1]) < TRIANGLE_INTERSECTION_EPSILON) {
+                walk.ix = closestPoints[0].x;
+                walk.iy = closestPoints[0].y;
+            } else {
+                return false;
+            }
+        } else {
+            final double qx = vx[va] - x0, qy = vy[va] - y0;
+            final double t = (qx * sy - qy * sx) / denominator;
+            final double u = (qx * ry - qy * rx) / denominator;
+            final double tTolerance = TRIANGLE_INTERSECTION_EPSILON / rLength;
+            final double uTolerance = TRIANGLE_INTERSECTION_EPSILON / sLength;
+            if (t < -tTolerance || t > 1 + tTolerance || u < -uTolerance || u > 1 + uTolerance) {
+                return false;
+            }
+            final double tClamped = Math.max(0, Math.min(1, t));
+            walk.ix = x0 + tClamped * rx;
+            walk.iy = y0 + tClamped * ry;
+        }
+        // Linear interpolation of the height along the triangle side
+        final double ptLength = Math.sqrt((walk.ix - vx[va]) * (walk.ix - vx[va]) + (walk.iy - vy[va]) * (walk.iy - vy[va]));
+        walk.iz = vz[va] + (vz[vb] - vz[va]) * (ptLength / sLength);
+        return true;
+    }
+
+    /**
+     * Working buffer of a thread for the triangle walk, it can be reused with any index.
+     */
+    static final class Walk {
+        /** Triangle visit stamps */
+        private int[] visited = new int[0];
+        private int stamp = 0;
+        /** Last intersection */
+        private double ix, iy, iz;
+        // Output points
+        int size = 0;
+        double[] x = new double[16];
+        double[] y = new double[16];
+        double[] z = new double[16];
+        // Scratch coordinates used for the simplification
+        private final Coordinate previous = new Coordinate();
+        private final Coordinate current = new Coordinate();
+        private final Coordinate next = new Coordinate();
+
+        void clear() {
+            size = 0;
+        }
+
+        private int nextStamp(int triangleCount) {
+            if (visited.length < triangleCount) {
+                visited = new int[triangleCount];
+                stamp = 0;
+            }
+            if (stamp == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                stamp = 0;
+            }
+            return ++stamp;
+        }
+
+        void add(double px, double py, double pz) {
+            if (size == x.length) {
+                int capacity = size * 2;
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                z = Arrays.copyOf(z, capacity);
+            }
+            x[size] = px;
+            y[size] = py;
+            z[size] = pz;
+            size++;
+        }
+
+        /**
+         * Remove in place the points that are the linear interpolation of their neighbors
+         * @param startZ Height of the ground at the start of the segment
+         * @param endZ Height of the ground at the end of the segment
+         * @param delta Minimal 3D distance of a retained point to the line joining its neighbors
+         */
+        void simplify(double startX, double startY, double startZ, double endX, double endY, double endZ, double delta) {
+            int retained = 0;
+            for (int i = 0; i < size; i++) {
+                if (retained == 0) {
+                    set(previous, startX, startY, startZ);
+                } else {
+                    set(previous, x[retained - 1], y[retained - 1], z[retained - 1]);
+                }
+                if (i == size - 1) {
+                    set(next, endX, endY, endZ);
+                } else {
+                    set(next, x[i + 1], y[i + 1], z[i + 1]);
+                }
+                set(current, x[i], y[i], z[i]);
+                if (CGAlgorithms3D.distancePointSegment(current, previous, next) >= delta) {
+                    x[retained] = x[i];
+                    y[retained] = y[i];
+                    z[retained] = z[i];
+                    retained++;
+                }
+            }
+            size = retained;
+        }
+
+        private static void set(Coordinate coordinate, double x, double y, double z) {
+            coordinate.x = x;
+            coordinate.y = y;
+            coordinate.z = z;
+        }
+    }
+}
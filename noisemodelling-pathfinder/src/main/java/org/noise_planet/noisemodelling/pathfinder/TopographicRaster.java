@@ -0,0 +1,267 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+
+import java.util.Collection;
+
+/**
+ * Digital elevation model stored as a regular grid of heights.
+ * It can replace the triangulation of the topographic points in {@link ProfileBuilder}, the height between the samples
+ * is computed with a bilinear interpolation and the topographic cut points are located where the propagation line
+ * crosses the rows and columns of the grid. The instance is immutable and can be shared by several builders.
+ */
+public class TopographicRaster {
+    /** Tolerance on the grid bounds, in cell size unit */
+    private static final double EPSILON = 1e-9;
+    /** Two grid lines crossings are merged below this distance, in segment length unit */
+    private static final double CROSSING_EPSILON = 1e-12;
+
+    private final double minX;
+    private final double minY;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    /** Heights, row by row from the south to the north. NaN if no data */
+    private final float[] z;
+
+    /**
+     * @param minX X of the south west sample
+     * @param minY Y of the south west sample
+     * @param cellSize Distance between two samples
+     * @param columns Number of samples from the west to the east, at least 2
+     * @param rows Number of samples from the south to the north, at least 2
+     * @param z Heights, row by row from the south to the north. NaN if no data
+     */
+    public TopographicRaster(double minX, double minY, double cellSize, int columns, int rows, float[] z) {
+        if(columns < 2 || rows < 2) {
+            throw new IllegalArgumentException("The raster must have at least 2 columns and 2 rows");
+        }
+        if(!(cellSize > 0)) {
+            throw new IllegalArgumentException("The cell size must be greater than 0");
+        }
+        if(z.length != (long) columns * rows) {
+            throw new IllegalArgumentException(String.format("Expected %d heights, got %d", (long) columns * rows,
+                    z.length));
+        }
+        this.minX = minX;
+        this.minY = minY;
+        this.cellSize = cellSize;
+        this.columns = columns;
+        this.rows = rows;
+        this.z = z;
+    }
+
+    /**
+     * Build a raster from points located on a regular grid, like the points of an imported ASC file. The height of
+     * each sample is the average of the points closest to the sample.
+     * @param points Topographic points
+     * @param cellSize Distance between two samples
+     * @return The raster or null if there is no points
+     */
+    public static TopographicRaster fromPoints(Collection<Coordinate> points, double cellSize) {
+        Envelope envelope = new Envelope();
+        for(Coordinate point : points) {
+            envelope.expandToInclude(point);
+        }
+        if(envelope.isNull()) {
+            return null;
+        }
+        int columns = Math.max(2, (int) Math.round(envelope.getWidth() / cellSize) + 1);
+        int rows = Math.max(2, (int) Math.round(envelope.getHeight() / cellSize) + 1);
+        if((long) columns * rows > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(String.format("Raster of %d x %d cells is too large", columns, rows));
+        }
+        float[] z = new float[columns * rows];
+        int[] count = new int[columns * rows];
+        for(Coordinate point : points) {
+            if(Double.isNaN(point.z)) {
+                continue;
+            }
+            int column = (int) Math.round((point.x - envelope.getMinX()) / cellSize);
+            int row = (int) Math.round((point.y - envelope.getMinY()) / cellSize);
+            z[row * columns + column] += (float) point.z;
+            count[row * columns + column]++;
+        }
+        for(int i = 0; i < z.length; i++) {
+            z[i] = count[i] > 0 ? z[i] / count[i] : Float.NaN;
+        }
+        return new TopographicRaster(envelope.getMinX(), envelope.getMinY(), cellSize, columns, rows, z);
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getCellSize() {
+        return cellSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return Envelope of the samples
+     */
+    public Envelope getEnvelope() {
+        return new Envelope(minX, minX + (columns - 1) * cellSize, minY, minY + (rows - 1) * cellSize);
+    }
+
+    /**
+     * @param column Column index, from the west to the east
+     * @param row Row index, from the south to the north
+     * @return Height of the sample, NaN if no data
+     */
+    public double getZ(int column, int row) {
+        return z[row * columns + column];
+    }
+
+    /**
+     * Bilinear interpolation of the height. Samples without data are ignored.
+     * @param x Point X
+     * @param y Point Y
+     * @return Interpolated height or NaN if the point is outside of the raster or without data
+     */
+    public double getZ(double x, double y) {
+        double fx = (x - minX) / cellSize;
+        double fy = (y - minY) / cellSize;
+        if(!(fx >= -EPSILON && fx <= columns - 1 + EPSILON && fy >= -EPSILON && fy <= rows - 1 + EPSILON)) {
+            return Double.NaN;
+        }
+        fx = Math.max(0, Math.min(columns - 1, fx));
+        fy = Math.max(0, Math.min(rows - 1, fy));
+        final int column = Math.min((int) fx, columns - 2);
+        final int row = Math.min((int) fy, rows - 2);
+        final double u = fx - column;
+        final double v = fy - row;
+        final int i = row * columns + column;
+        double weightSum = 0;
+        double sum = 0;
+        double weight = (1 - u) * (1 - v);
+        if(weight > 0 && !Float.isNaN(z[i])) {
+            weightSum += weight;
+            sum += weight * z[i];
+        }
+        weight = u * (1 - v);
+        if(weight > 0 && !Float.isNaN(z[i + 1])) {
+            weightSum += weight;
+            sum += weight * z[i + 1];
+        }
+        weight = (1 - u) * v;
+        if(weight > 0 && !Float.isNaN(z[i + columns])) {
+            weightSum += weight;
+            sum += weight * z[i + columns];
+        }
+        weight = u * v;
+        if(weight > 0 && !Float.isNaN(z[i + columns + 1])) {
+            weightSum += weight;
+            sum += weight * z[i + columns + 1];
+        }
+        return weightSum > 0 ? sum / weightSum : Double.NaN;
+    }
+
+    /**
+     * Traverse the grid along the segment p0 p1 and append to the walk buffer the points where the segment enters the
+     * raster and crosses the rows and columns of the grid.
+     * @param x0 p0 X
+     * @param y0 p0 Y
+     * @param x1 p1 X
+     * @param y1 p1 Y
+     * @param walk Thread working buffer
+     */
+    void walk(double x0, double y0, double x1, double y1, TopographicIndex.Walk walk) {
+        final double dx = x1 - x0;
+        final double dy = y1 - y0;
+        final double maxX = minX + (columns - 1) * cellSize;
+        final double maxY = minY + (rows - 1) * cellSize;
+        // Clip the segment with the raster bounds
+        double tStart = 0;
+        double tEnd = 1;
+        if(dx == 0) {
+            if(x0 < minX || x0 > maxX) {
+                return;
+            }
+        } else {
+            final double ta = (minX - x0) / dx;
+            final double tb = (maxX - x0) / dx;
+            tStart = Math.max(tStart, Math.min(ta, tb));
+            tEnd = Math.min(tEnd, Math.max(ta, tb));
+        }
+        if(dy == 0) {
+            if(y0 < minY || y0 > maxY) {
+                return;
+            }
+        } else {
+            final double ta = (minY - y0) / dy;
+            final double tb = (maxY - y0) / dy;
+            tStart = Math.max(tStart, Math.min(ta, tb));
+            tEnd = Math.min(tEnd, Math.max(ta, tb));
+        }
+        if(tStart > tEnd) {
+            return;
+        }
+        if(tStart > 0) {
+            addPoint(x0 + tStart * dx, y0 + tStart * dy, walk);
+        }
+        // Next column and row lines crossed by the segment
+        final int stepX = dx > 0 ? 1 : -1;
+        final int stepY = dy > 0 ? 1 : -1;
+        int lineX = 0;
+        int lineY = 0;
+        double tNextX = Double.POSITIVE_INFINITY;
+        double tNextY = Double.POSITIVE_INFINITY;
+        if(dx != 0) {
+            final double fx = (x0 + tStart * dx - minX) / cellSize;
+            lineX = dx > 0 ? (int) Math.floor(fx) + 1 : (int) Math.ceil(fx) - 1;
+            tNextX = (minX + lineX * cellSize - x0) / dx;
+        }
+        if(dy != 0) {
+            final double fy = (y0 + tStart * dy - minY) / cellSize;
+            lineY = dy > 0 ? (int) Math.floor(fy) + 1 : (int) Math.ceil(fy) - 1;
+            tNextY = (minY + lineY * cellSize - y0) / dy;
+        }
+        while (true) {
+            final double t = Math.min(tNextX, tNextY);
+            if(t > tEnd) {
+                break;
+            }
+            addPoint(x0 + t * dx, y0 + t * dy, walk);
+            // Both lines are crossed at once on the grid nodes
+            if(tNextX <= t + CROSSING_EPSILON) {
+                lineX += stepX;
+                tNextX = (minX + lineX * cellSize - x0) / dx;
+            }
+            if(tNextY <= t + CROSSING_EPSILON) {
+                lineY += stepY;
+                tNextY = (minY + lineY * cellSize - y0) / dy;
+            }
+        }
+    }
+
+    private void addPoint(double x, double y, TopographicIndex.Walk walk) {
+        double pz = getZ(x, y);
+        if(!Double.isNaN(pz)) {
+            walk.add(x, y, pz);
+        }
+    }
+}
@@ -46,6 +46,14 @@ public class JVMMemoryMetric implements ProfilerThread.Metric {
                 Long.toString(r.totalMemory() / 1048576L)};
     }
 
+    /**
+     * @return Ratio [0-1] of the heap currently used compared to the maximum heap size of the JVM
+     */
+    public double getUsedMemoryRatio() {
+        Runtime r = Runtime.getRuntime();
+        return (r.totalMemory() - r.freeMemory()) / (double) r.maxMemory();
+    }
+
     @Override
     public void tick(long currentMillis) {
 
@@ -35,6 +35,7 @@ package org.noise_planet.noisemodelling.pathfinder.utils;
 
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 
+import java.util.Locale;
 import java.util.concurrent.ConcurrentLinkedDeque;
 
 /**
@@ -43,8 +44,12 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 public class ReceiverStatsMetric implements ProfilerThread.Metric {
     private ConcurrentLinkedDeque<ReceiverComputationTime> receiverComputationTimes = new ConcurrentLinkedDeque<>();
     private ConcurrentLinkedDeque<ReceiverRays> receiverRaysDeque = new ConcurrentLinkedDeque<>();
+    private ConcurrentLinkedDeque<ReceiverSources> receiverSourcesDeque = new ConcurrentLinkedDeque<>();
     private DescriptiveStatistics computationTime = new DescriptiveStatistics();
     private DescriptiveStatistics computationRays = new DescriptiveStatistics();
+    private DescriptiveStatistics skippedSources = new DescriptiveStatistics();
+    private long computedSourcesCount = 0;
+    private long skippedSourcesCount = 0;
 
     public ReceiverStatsMetric() {
     }
@@ -59,11 +64,18 @@ public class ReceiverStatsMetric implements ProfilerThread.Metric {
             ReceiverRays receiverProfile = receiverRaysDeque.pop();
             computationRays.addValue(receiverProfile.numberOfRays);
         }
+        while (!receiverSourcesDeque.isEmpty()) {
+            ReceiverSources receiverProfile = receiverSourcesDeque.pop();
+            skippedSources.addValue(receiverProfile.skippedSources);
+            computedSourcesCount += receiverProfile.computedSources;
+            skippedSourcesCount += receiverProfile.skippedSources;
+        }
     }
 
     @Override
     public String[] getColumnNames() {
-        return new String[] {"receiver_min","receiver_median","receiver_mean","receiver_max", "receiver_median_rays", "receiver_max_rays"};
+        return new String[] {"receiver_min","receiver_median","receiver_mean","receiver_max", "receiver_median_rays", "receiver_max_rays",
+                "receiver_median_skipped_sources", "receiver_max_skipped_sources", "skipped_sources_ratio"};
     }
 
     public void onEndComputation(int receiverId, int computationTime) {
@@ -74,6 +86,16 @@ public class ReceiverStatsMetric implements ProfilerThread.Metric {
         receiverRaysDeque.add(new ReceiverRays(receiverId, receiverRays));
     }
 
+    /**
+     * @param receiverId Receiver identifier
+     * @param computedSources Number of sources where the propagation has been computed
+     * @param skippedSources Number of sources in range discarded because their contribution could not reach the
+     *                       error or noise floor thresholds
+     */
+    public void onReceiverSources(int receiverId, int computedSources, int skippedSources) {
+        receiverSourcesDeque.add(new ReceiverSources(receiverId, computedSources, skippedSources));
+    }
+
     @Override
     public String[] getCurrentValues() {
         String[] res = new String[] {
@@ -82,10 +104,17 @@ public class ReceiverStatsMetric implements ProfilerThread.Metric {
                 Integer.toString((int) computationTime.getMean()),
                 Integer.toString((int) computationTime.getMax()),
                 Integer.toString((int) computationRays.getPercentile(50)),
-                Integer.toString((int) computationRays.getMax())
+                Integer.toString((int) computationRays.getMax()),
+                Integer.toString((int) skippedSources.getPercentile(50)),
+                Integer.toString((int) skippedSources.getMax()),
+                String.format(Locale.ROOT, "%.3f", computedSourcesCount + skippedSourcesCount > 0 ?
+                        skippedSourcesCount / (double) (computedSourcesCount + skippedSourcesCount) : 0)
         };
         computationTime.clear();
         computationRays.clear();
+        skippedSources.clear();
+        computedSourcesCount = 0;
+        skippedSourcesCount = 0;
         return res;
     }
 
@@ -108,4 +137,16 @@ public class ReceiverStatsMetric implements ProfilerThread.Metric {
             this.numberOfRays = numberOfRays;
         }
     }
-}
\ No newline at end of file
+
+    private static class ReceiverSources {
+        public int receiverId;
+        public int computedSources;
+        public int skippedSources;
+
+        public ReceiverSources(int receiverId, int computedSources, int skippedSources) {
+            this.receiverId = receiverId;
+            this.computedSources = computedSources;
+            this.skippedSources = skippedSources;
+        }
+    }
+}
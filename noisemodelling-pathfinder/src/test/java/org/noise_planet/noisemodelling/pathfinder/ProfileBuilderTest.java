@@ -7,6 +7,7 @@ import org.locationtech.jts.geom.*;
 import org.locationtech.jts.io.ParseException;
 import org.locationtech.jts.io.WKTReader;
 import org.locationtech.jts.io.WKTWriter;
+import org.locationtech.jts.triangulate.quadedge.Vertex;
 import org.noise_planet.noisemodelling.pathfinder.utils.GeoJSONDocument;
 import org.noise_planet.noisemodelling.pathfinder.utils.KMLDocument;
 import org.slf4j.Logger;
@@ -19,8 +20,10 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
+import java.util.Random;
 
 import static org.junit.Assert.*;
+import static org.noise_planet.noisemodelling.pathfinder.ProfileBuilder.IntersectionType.*;
 
 /**
  * Test class dedicated to {@link ProfileBuilder}.
@@ -255,6 +258,75 @@ public class ProfileBuilderTest {
 
     }
 
+    private static void assertCutPoints(double[][] expectedCoordinates, ProfileBuilder.IntersectionType[] expectedTypes,
+                                        CompactCutProfile profile) {
+        assertEquals(expectedTypes.length, profile.size());
+        for(int i = 0; i < expectedTypes.length; i++) {
+            assertEquals(expectedTypes[i], profile.getType(i));
+            assertEquals(expectedCoordinates[i][0], profile.getX(i), 1e-4);
+            assertEquals(expectedCoordinates[i][1], profile.getY(i), 1e-4);
+            assertEquals(expectedCoordinates[i][2], profile.getZ(i), 1e-4);
+        }
+    }
+
+    /**
+     * Test that a reused compact profile contains the cut points computed by the list based profile builder.
+     * @throws ParseException JTS WKT parsing exception.
+     */
+    @Test
+    public void compactCutProfileTest() throws ParseException {
+        ProfileBuilder profileBuilder = new ProfileBuilder(3, 3, 3, 2);
+
+        profileBuilder.addBuilding(READER.read("POLYGON((2 2 10, 1 3 15, 2 4 10, 3 3 12, 2 2 10))"), 10);
+        profileBuilder.addBuilding(READER.read("POLYGON((4.5 7, 4.5 8.5, 6.5 8.5, 4.5 7))"), 3.3);
+        profileBuilder.addBuilding(READER.read("POLYGON((7 6, 10 6, 10 2, 7 2, 7 6))"), 5.6);
+
+        profileBuilder.addTopographicLine((LineString) READER.read("LINESTRING (4 1 1.5, 5 7 1.0, 8 9 1.5)"));
+        profileBuilder.addTopographicPoint(new Coordinate(7, 9, 2.5));
+        profileBuilder.addTopographicPoint(new Coordinate(2, 4, 2.5));
+        profileBuilder.addTopographicPoint(new Coordinate(6, 1, 3.0));
+        profileBuilder.addTopographicPoint(new Coordinate(4, 4, 3.0));
+
+        profileBuilder.addGroundEffect(READER.read("POLYGON((-1 -1, -1 2, 2 2, 2 -1, -1 -1))"), 0.6);
+        profileBuilder.addGroundEffect(READER.read("POLYGON((8 1, 7 2, 7 4.5, 8 5, 9 4.5, 10 3.5, 9.5 2, 8 1))"), 0.25);
+        profileBuilder.finishFeeding();
+
+        CompactCutProfile compactProfile = new CompactCutProfile(2);
+        profileBuilder.getProfile(new Coordinate(0, 1, 0.1), new Coordinate(8, 10, 0.3), 0.0, compactProfile);
+        double[][] coordinates = new double[][] {{0, 1, 0.1}, {0.8889, 2, 0}, {1.4118, 2.5882, 0},
+                {1.4118, 2.5882, 0}, {1.4118, 2.5882, 12.9412}, {2.2857, 3.5714, 2.3571}, {2.3529, 3.6471, 10.7059},
+                {2.3529, 3.6471, 2.4118}, {2.3529, 3.6471, 2.4118}, {2.6667, 4, 2.6667}, {4.8, 6.4, 1.4},
+                {4.9231, 6.5385, 1.0385}, {5.0526, 6.6842, 1.1053}, {5.8182, 7.5455, 1.1364}, {7.1111, 9, 2.3889},
+                {8, 10, 0.3}};
+        ProfileBuilder.IntersectionType[] types = new ProfileBuilder.IntersectionType[] {SOURCE, GROUND_EFFECT,
+                BUILDING, BUILDING, GROUND_EFFECT, TOPOGRAPHY, GROUND_EFFECT, BUILDING, BUILDING, TOPOGRAPHY, TOPOGRAPHY,
+                TOPOGRAPHY, TOPOGRAPHY, TOPOGRAPHY, TOPOGRAPHY, RECEIVER};
+        assertCutPoints(coordinates, types, compactProfile);
+        assertEquals(0.6, compactProfile.getGroundCoef(0), DELTA);
+        assertEquals(0.0, compactProfile.getGroundCoef(2), DELTA);
+        assertEquals(0, compactProfile.getBuildingId(2));
+        assertFalse(compactProfile.isFreeField());
+        assertEquals(0.5294117647058822, compactProfile.getGPath(), DELTA);
+        assertTrue(compactProfile.intersectBuilding());
+        assertTrue(compactProfile.intersectTopography());
+
+        // Reuse the same instance with a longer profile in the other direction
+        profileBuilder.getProfile(new Coordinate(9, 9, 0.5), new Coordinate(0.5, 0.5, 0.2), 0.0, compactProfile);
+        assertCutPoints(new double[][] {{9, 9, 0.5}, {5.2857, 5.2857, 1.5714}, {4.6, 4.6, 1.2}, {4, 4, 3},
+                {3, 3, 2.25}, {3, 3, 2.25}, {3, 3, 2.25}, {2.8, 2.8, 2.1}, {2, 2, 0}, {2, 2, 0}, {0.5, 0.5, 0.2}},
+                new ProfileBuilder.IntersectionType[] {SOURCE, TOPOGRAPHY, TOPOGRAPHY, TOPOGRAPHY, BUILDING, BUILDING,
+                        BUILDING, TOPOGRAPHY, BUILDING, BUILDING, RECEIVER}, compactProfile);
+        assertFalse(compactProfile.isFreeField());
+        assertEquals(0.0, compactProfile.getGPath(), DELTA);
+
+        // Same cut points than the first profile, the source and the receiver are above the obstacles
+        profileBuilder.getProfile(new Coordinate(0, 1, 20), new Coordinate(8, 10, 20), 0.0, compactProfile);
+        coordinates[0][2] = 20;
+        coordinates[coordinates.length - 1][2] = 20;
+        assertCutPoints(coordinates, types, compactProfile);
+        assertTrue(compactProfile.isFreeField());
+    }
+
     @Test
     public void testComplexTopographic() throws IOException, XMLStreamException, CRSException, CoordinateOperationException {
         ProfileBuilder profileBuilder = new ProfileBuilder(3, 3, 3, 2);
@@ -317,6 +389,99 @@ public class ProfileBuilderTest {
 //        }
     }
 
+    @Test
+    public void topographicIndexTest() {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        long seed = 5289231824766894L;
+        for(int x = 0; x < 500; x += 10) {
+            for(int y = 0; y < 300; y += 10) {
+                double z = 50 + OpenSimplex2S.noise2(seed, x / 500.0 * 5, y / 300.0 * 5) * 100;
+                profileBuilder.addTopographicPoint(new Coordinate(x, y, z));
+            }
+        }
+        profileBuilder.finishFeeding();
+        List<Triangle> triangles = profileBuilder.getTriangles();
+        List<Coordinate> vertices = profileBuilder.getVertices();
+        // Compare the grid index lookup with a scan of all triangles
+        Random random = new Random(seed);
+        for(int i = 0; i < 500; i++) {
+            Coordinate pt = new Coordinate(random.nextDouble() * 490, random.nextDouble() * 290);
+            double expectedZ = Double.NaN;
+            for(Triangle triangle : triangles) {
+                Coordinate a = vertices.get(triangle.getA());
+                Coordinate b = vertices.get(triangle.getB());
+                Coordinate c = vertices.get(triangle.getC());
+                if(JTSUtility.dotInTri(pt, a, b, c)) {
+                    expectedZ = Vertex.interpolateZ(pt, a, b, c);
+                    break;
+                }
+            }
+            assertFalse(Double.isNaN(expectedZ));
+            assertEquals(expectedZ, profileBuilder.getZGround(new ProfileBuilder.CutPoint(pt, ProfileBuilder.IntersectionType.TOPOGRAPHY, 0)), 1e-6);
+        }
+        assertEquals(0.0, profileBuilder.getZGround(new ProfileBuilder.CutPoint(new Coordinate(-50, -50), ProfileBuilder.IntersectionType.TOPOGRAPHY, 0)), 0);
+        // Walked points are on the segment and on the ground
+        Coordinate p0 = new Coordinate(15, 12);
+        Coordinate p1 = new Coordinate(470, 260);
+        List<Coordinate> topoPoints = profileBuilder.getTopographicProfile(p0, p1);
+        assertTrue(topoPoints.size() > 40);
+        LineSegment segment = new LineSegment(p0, p1);
+        double lastDistance = 0;
+        for(Coordinate topoPoint : topoPoints) {
+            assertEquals(0, segment.distance(topoPoint), 1e-6);
+            assertEquals(profileBuilder.getZGround(new ProfileBuilder.CutPoint(topoPoint, ProfileBuilder.IntersectionType.TOPOGRAPHY, 0)), topoPoint.z, 1e-6);
+            assertTrue(p0.distance(topoPoint) >= lastDistance - 1e-6);
+            lastDistance = p0.distance(topoPoint);
+        }
+    }
+
+    @Test
+    public void topographicRasterTest() {
+        // Same regular grid of heights triangulated or stored as a raster
+        long seed = 5289231824766894L;
+        double cellSize = 10;
+        int columns = 51;
+        int rows = 31;
+        float[] heights = new float[columns * rows];
+        ProfileBuilder tinBuilder = new ProfileBuilder();
+        for(int row = 0; row < rows; row++) {
+            for(int column = 0; column < columns; column++) {
+                double z = 50 + OpenSimplex2S.noise2(seed, column / 10.0, row / 6.0) * 100;
+                heights[row * columns + column] = (float) z;
+                tinBuilder.addTopographicPoint(new Coordinate(column * cellSize, row * cellSize, heights[row * columns + column]));
+            }
+        }
+        tinBuilder.finishFeeding();
+        TopographicRaster raster = new TopographicRaster(0, 0, cellSize, columns, rows, heights);
+        ProfileBuilder rasterBuilder = new ProfileBuilder().setTopographicRaster(raster).finishFeeding();
+        assertTrue(rasterBuilder.hasDem());
+        assertTrue(rasterBuilder.getTriangles().isEmpty());
+        assertEquals(heights[3 * columns + 7], raster.getZ(70.0, 30.0), 1e-6);
+        assertEquals(0.5 * (heights[3 * columns + 7] + heights[3 * columns + 8]), raster.getZ(75.0, 30.0), 1e-4);
+        assertTrue(Double.isNaN(raster.getZ(-5.0, 30.0)));
+        assertEquals(0.0, rasterBuilder.getZGround(new ProfileBuilder.CutPoint(new Coordinate(-5, 30), ProfileBuilder.IntersectionType.TOPOGRAPHY, 0)), 0);
+        // Along the grid lines the triangulation and the bilinear interpolation are both linear between the samples
+        Coordinate source = new Coordinate(12, 7, 1);
+        Coordinate receiver = new Coordinate(483, 271, 4);
+        ProfileBuilder.CutProfile rasterProfile = rasterBuilder.getProfile(source, receiver, 0);
+        int topographyPoints = 0;
+        LineSegment segment = new LineSegment(source, receiver);
+        for(ProfileBuilder.CutPoint cutPoint : rasterProfile.getCutPoints()) {
+            if(cutPoint.getType() == ProfileBuilder.IntersectionType.TOPOGRAPHY) {
+                topographyPoints++;
+                assertEquals(0, segment.distance(cutPoint.getCoordinate()), 1e-6);
+                assertEquals(tinBuilder.getZGround(new ProfileBuilder.CutPoint(cutPoint.getCoordinate(),
+                        ProfileBuilder.IntersectionType.TOPOGRAPHY, 0)), cutPoint.getCoordinate().z, 1e-3);
+            }
+        }
+        assertTrue(topographyPoints > 30);
+        assertTrue(rasterProfile.intersectTopography());
+        // Segment entering the raster from the outside
+        List<Coordinate> topoPoints = rasterBuilder.getTopographicProfile(new Coordinate(-20, 15), new Coordinate(120, 15));
+        assertEquals(0, topoPoints.get(0).x, 1e-9);
+        assertEquals(13, topoPoints.size());
+    }
+
     @Test
     public void testProfileTopographicGroundEffectWall() throws Exception {
 
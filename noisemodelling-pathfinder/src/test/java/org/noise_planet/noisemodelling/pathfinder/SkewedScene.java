@@ -0,0 +1,56 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * Scene where the buildings and sources are concentrated on one side of the receivers area.
+ * Receivers near the dense part are far more expensive than the others. Used by the receiver scheduler tests and
+ * by the ReceiverSchedulerBenchmark of the benchmark module.
+ */
+public final class SkewedScene {
+    private SkewedScene() {
+    }
+
+    /**
+     * @return Propagation data of the scene, with a reflection order of 1
+     */
+    public static CnossosPropagationData create() {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        for(int i = 0; i < 8; i++) {
+            for(int j = 0; j < 8; j++) {
+                double x = i * 25;
+                double y = j * 25;
+                profileBuilder.addBuilding(new Coordinate[]{new Coordinate(x, y), new Coordinate(x + 10, y),
+                        new Coordinate(x + 10, y + 10), new Coordinate(x, y + 10), new Coordinate(x, y)}, 10);
+            }
+        }
+        profileBuilder.finishFeeding();
+        PropagationDataBuilder builder = new PropagationDataBuilder(profileBuilder);
+        for(int i = 0; i < 8; i++) {
+            for(int j = 0; j < 8; j++) {
+                builder.addSource(i * 25 + 18, j * 25 + 18, 0.05);
+            }
+        }
+        for(int x = 5; x < 1200; x += 30) {
+            for(int y = 5; y < 200; y += 30) {
+                builder.addReceiver(x, y, 4);
+            }
+        }
+        CnossosPropagationData data = builder.setGs(0.5).build();
+        data.setReflexionOrder(1);
+        data.maxSrcDist = 250;
+        data.maxRefDist = 250;
+        return data;
+    }
+}
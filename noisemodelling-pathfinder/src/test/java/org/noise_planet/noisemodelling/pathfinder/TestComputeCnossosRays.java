@@ -18,7 +18,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -2055,4 +2059,130 @@ public class TestComputeCnossosRays {
         Assert.assertTrue(ray.isEmpty());
 
     }
-}
\ No newline at end of file
+
+    /**
+     * Count the processed receivers
+     */
+    private static class ReceiverCountRaysOut extends ComputeCnossosRaysOut {
+        final AtomicInteger receiverCount = new AtomicInteger();
+
+        public ReceiverCountRaysOut() {
+            super(false);
+        }
+
+        @Override
+        public void finalizeReceiver(long receiverId) {
+            receiverCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Check that the multi-thread scheduler produce the same rays than the single thread evaluation
+     */
+    @Test
+    public void testReceiverSchedulerSameRays() {
+        CnossosPropagationData data = SkewedScene.create();
+        ReceiverCountRaysOut singleThreadOut = new ReceiverCountRaysOut();
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(1);
+        computeRays.run(singleThreadOut);
+
+        ReceiverCountRaysOut multiThreadOut = new ReceiverCountRaysOut();
+        computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(4);
+        computeRays.setReceiverBatchSize(3);
+        computeRays.run(multiThreadOut);
+
+        assertEquals(data.receivers.size(), singleThreadOut.receiverCount.get());
+        assertEquals(data.receivers.size(), multiThreadOut.receiverCount.get());
+        assertEquals(singleThreadOut.rayCount.get(), multiThreadOut.rayCount.get());
+    }
+
+    /**
+     * The failure of a receiver is logged, the other receivers of the cell are still computed
+     */
+    @Test
+    public void testReceiverSchedulerFailure() {
+        CnossosPropagationData data = SkewedScene.create();
+        ReceiverCountRaysOut out = new ReceiverCountRaysOut() {
+            @Override
+            public void finalizeReceiver(long receiverId) {
+                if(receiverId == 0) {
+                    throw new IllegalStateException("Receiver failure");
+                }
+                super.finalizeReceiver(receiverId);
+            }
+        };
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(4);
+        computeRays.setReceiverBatchSize(1);
+        computeRays.run(out);
+        assertEquals(data.receivers.size() - 1, out.receiverCount.get());
+    }
+
+    /**
+     * Keep the points and segments of the propagation paths of each receiver
+     */
+    private static class ReceiverPathsOut implements IComputeRaysOut {
+        final Map<Long, List<String>> receiverPaths = new ConcurrentHashMap<>();
+
+        @Override
+        public double[] addPropagationPaths(long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
+            List<String> paths = receiverPaths.computeIfAbsent(receiverId, k -> new ArrayList<>());
+            for(PropagationPath path : propagationPath) {
+                StringBuilder key = new StringBuilder().append(sourceId).append(path.isFavorable());
+                for(PointPath pointPath : path.getPointList()) {
+                    key.append(pointPath.coordinate).append(pointPath.altitude).append(pointPath.type)
+                            .append(pointPath.buildingId);
+                }
+                List<SegmentPath> segments = new ArrayList<>(path.getSegmentList());
+                segments.add(path.getSRSegment());
+                for(SegmentPath segmentPath : segments) {
+                    key.append(segmentPath.gPath).append(segmentPath.d).append(segmentPath.dp)
+                            .append(segmentPath.zsH).append(segmentPath.zrH);
+                }
+                paths.add(key.toString());
+            }
+            return new double[0];
+        }
+
+        @Override
+        public void finalizeReceiver(long receiverId) {
+        }
+
+        @Override
+        public IComputeRaysOut subProcess() {
+            return this;
+        }
+    }
+
+    /**
+     * Check that the cost ordered work-stealing scheduler gives the same paths for each receiver than the sequential
+     * evaluation of the receivers
+     */
+    @Test
+    public void testReceiverSchedulerSameReceiverPaths() {
+        CnossosPropagationData data = SkewedScene.create();
+        ReceiverPathsOut sequentialOut = new ReceiverPathsOut();
+        ComputeCnossosRays computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(1);
+        computeRays.run(sequentialOut);
+
+        ReceiverPathsOut scheduledOut = new ReceiverPathsOut();
+        computeRays = new ComputeCnossosRays(data);
+        computeRays.setThreadCount(4);
+        computeRays.setReceiverBatchSize(3);
+        computeRays.setSortReceiversByCost(true);
+        computeRays.run(scheduledOut);
+
+        Assert.assertFalse(sequentialOut.receiverPaths.isEmpty());
+        assertEquals(sequentialOut.receiverPaths.keySet(), scheduledOut.receiverPaths.keySet());
+        for(Map.Entry<Long, List<String>> entry : sequentialOut.receiverPaths.entrySet()) {
+            List<String> expected = new ArrayList<>(entry.getValue());
+            List<String> actual = new ArrayList<>(scheduledOut.receiverPaths.get(entry.getKey()));
+            Collections.sort(expected);
+            Collections.sort(actual);
+            assertEquals("Receiver " + entry.getKey(), expected, actual);
+        }
+    }
+}
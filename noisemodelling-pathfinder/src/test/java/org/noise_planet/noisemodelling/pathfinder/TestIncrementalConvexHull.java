@@ -0,0 +1,75 @@
+/**
+ * NoiseModelling is an open-source tool designed to produce environmental noise maps on very large urban areas. It can be used as a Java library or be controlled through a user friendly web interface.
+ *
+ * This version is developed by the DECIDE team from the Lab-STICC (CNRS) and by the Mixt Research Unit in Environmental Acoustics (Université Gustave Eiffel).
+ * <http://noise-planet.org/noisemodelling.html>
+ *
+ * NoiseModelling is distributed under GPL 3 license. You can read a copy of this License in the file LICENCE provided with this software.
+ *
+ * Contact: contact@noise-planet.org
+ *
+ */
+package org.noise_planet.noisemodelling.pathfinder;
+
+import org.junit.Test;
+import org.locationtech.jts.algorithm.ConvexHull;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class TestIncrementalConvexHull {
+
+    /**
+     * @return Vertices of the closed ring starting from the lowest vertex
+     */
+    private static List<Coordinate> normalize(Coordinate[] ring) {
+        List<Coordinate> vertices = new ArrayList<>(Arrays.asList(ring).subList(0, Math.max(1, ring.length - 1)));
+        int lowest = 0;
+        for(int i = 1; i < vertices.size(); i++) {
+            if(vertices.get(i).compareTo(vertices.get(lowest)) < 0) {
+                lowest = i;
+            }
+        }
+        List<Coordinate> result = new ArrayList<>(vertices.subList(lowest, vertices.size()));
+        result.addAll(vertices.subList(0, lowest));
+        return result;
+    }
+
+    @Test
+    public void testSameAsJtsHull() {
+        GeometryFactory factory = new GeometryFactory();
+        Random random = new Random(42);
+        for(int idTest = 0; idTest < 500; idTest++) {
+            IncrementalConvexHull hull = new IncrementalConvexHull();
+            List<Coordinate> points = new ArrayList<>();
+            int pointCount = 1 + random.nextInt(30);
+            for(int i = 0; i < pointCount; i++) {
+                // Points on a small grid in order to have collinear and duplicate points
+                Coordinate point = idTest % 2 == 0 ?
+                        new Coordinate(random.nextInt(6), random.nextInt(6), i) :
+                        new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100, i);
+                points.add(point);
+                hull.add(point);
+                Geometry expected = new ConvexHull(points.toArray(new Coordinate[0]), factory).getConvexHull();
+                assertEquals(expected.getLength(), hull.getLength(), 1e-9);
+                assertEquals(expected.getDimension() == 2, hull.isPolygon());
+                if(hull.isPolygon()) {
+                    List<Coordinate> expectedVertices = normalize(expected.getCoordinates());
+                    List<Coordinate> vertices = normalize(hull.getCoordinates());
+                    assertEquals(expectedVertices, vertices);
+                    // Same instances, so the same z
+                    for(int v = 0; v < vertices.size(); v++) {
+                        assertEquals(expectedVertices.get(v).z, vertices.get(v).z, 0);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -48,8 +48,10 @@ import java.io.FileWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class TestWallReflection {
@@ -84,6 +86,231 @@ public class TestWallReflection {
         assertTrue(polygon.intersects(factory.createPoint(new Coordinate(100, 145, 0))));
     }
 
+    @Test
+    public void testVisibilityCone() {
+        GeometryFactory factory = new GeometryFactory();
+        Random random = new Random(42);
+        double[] envelope = new double[4];
+        int insideCount = 0;
+        for(int idCone = 0; idCone < 50; idCone++) {
+            Coordinate image = new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100);
+            LineSegment wall = new LineSegment(new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100),
+                    new Coordinate(random.nextDouble() * 100, random.nextDouble() * 100));
+            double maximumPropagationDistance = 40 + random.nextDouble() * 80;
+            double maximumDistanceFromWall = 5 + random.nextDouble() * 50;
+            Polygon cone = MirrorReceiverResultIndex.createWallReflectionVisibilityCone(image, wall,
+                    maximumPropagationDistance, maximumDistanceFromWall);
+            boolean hasEnvelope = MirrorReceiverResultIndex.visibilityConeEnvelope(image.x, image.y, wall,
+                    maximumPropagationDistance, maximumDistanceFromWall, envelope);
+            assertEquals(!cone.isEmpty(), hasEnvelope);
+            // The polygon is an approximation of the cone, the sampled directions cover the whole cone only if the
+            // ends of the wall are in the propagation range
+            boolean comparePolygon = !cone.isEmpty() && wall.p0.distance(image) < maximumPropagationDistance &&
+                    wall.p1.distance(image) < maximumPropagationDistance;
+            for(int idPoint = 0; idPoint < 500; idPoint++) {
+                Coordinate p = new Coordinate(-100 + random.nextDouble() * 300, -100 + random.nextDouble() * 300);
+                boolean inside = MirrorReceiverResultIndex.isInVisibilityCone(image.x, image.y, wall,
+                        maximumPropagationDistance, maximumDistanceFromWall, p.x, p.y);
+                if(inside) {
+                    insideCount++;
+                    assertTrue(p.x >= envelope[0] && p.y >= envelope[1] && p.x <= envelope[2] && p.y <= envelope[3]);
+                }
+                if(comparePolygon && cone.getExteriorRing().distance(factory.createPoint(p)) > 1) {
+                    assertEquals(cone.contains(factory.createPoint(p)), inside);
+                }
+            }
+        }
+        assertTrue(insideCount > 0);
+    }
+
+    @Test
+    public void testPackedEnvelopeTree() {
+        Random random = new Random(42);
+        int count = 1000;
+        double[][] envelopes = new double[count][];
+        PackedEnvelopeTree tree = new PackedEnvelopeTree(4);
+        for(int i = 0; i < count; i++) {
+            double x = random.nextDouble() * 1000;
+            double y = random.nextDouble() * 1000;
+            envelopes[i] = new double[]{x, y, x + random.nextDouble() * 50, y + random.nextDouble() * 50};
+            tree.add(i * 2, envelopes[i][0], envelopes[i][1], envelopes[i][2], envelopes[i][3]);
+        }
+        tree.build();
+        for(int idQuery = 0; idQuery < 200; idQuery++) {
+            double x = random.nextDouble() * 1000;
+            double y = random.nextDouble() * 1000;
+            List<Integer> expected = new ArrayList<>();
+            for(int i = 0; i < count; i++) {
+                if(x >= envelopes[i][0] && y >= envelopes[i][1] && x <= envelopes[i][2] && y <= envelopes[i][3]) {
+                    expected.add(i * 2);
+                }
+            }
+            List<Integer> got = new ArrayList<>();
+            tree.query(x, y, got::add);
+            Collections.sort(got);
+            assertEquals(expected, got);
+        }
+    }
+
+    @Test
+    public void testQueryPackedRTree() {
+        Random random = new Random(42);
+        GeometryFactory factory = new GeometryFactory();
+        List<Envelope> envelopes = new ArrayList<>();
+        QueryPackedRTree packedIndex = new QueryPackedRTree();
+        for(int step = 0; step < 2; step++) {
+            // Geometries appended after a query are packed with the others
+            for(int i = 0; i < 500; i++) {
+                double x = random.nextDouble() * 1000;
+                double y = random.nextDouble() * 1000;
+                Envelope envelope = new Envelope(x, x + random.nextDouble() * 50, y, y + random.nextDouble() * 50);
+                envelopes.add(envelope);
+                packedIndex.appendGeometry(factory.toGeometry(envelope), step * 500 + i);
+            }
+            for(int idQuery = 0; idQuery < 200; idQuery++) {
+                double x = random.nextDouble() * 1000;
+                double y = random.nextDouble() * 1000;
+                Envelope query = new Envelope(x, x + random.nextDouble() * 100, y, y + random.nextDouble() * 100);
+                List<Integer> expected = new ArrayList<>();
+                for(int i = 0; i < envelopes.size(); i++) {
+                    if(envelopes.get(i).intersects(query)) {
+                        expected.add(i);
+                    }
+                }
+                List<Integer> got = new ArrayList<>();
+                packedIndex.query(query, got::add);
+                Collections.sort(got);
+                assertEquals(expected, got);
+            }
+        }
+    }
+
+    private static List<String> imageChains(List<MirrorReceiverResult> results) {
+        List<String> chains = new ArrayList<>();
+        for(MirrorReceiverResult result : results) {
+            StringBuilder chain = new StringBuilder();
+            for(MirrorReceiverResult image = result; image != null; image = image.getParentMirror()) {
+                chain.append(String.format(java.util.Locale.ROOT, "%d(%.6f %.6f) ",
+                        image.getWall().getProcessedWallIndex(), image.getReceiverPos().x,
+                        image.getReceiverPos().y));
+            }
+            chains.add(chain.toString());
+        }
+        Collections.sort(chains);
+        return chains;
+    }
+
+    private static ProfileBuilder createClusterScene() {
+        ProfileBuilder profileBuilder = new ProfileBuilder();
+        for(int i = 0; i < 4; i++) {
+            for(int j = 0; j < 4; j++) {
+                double x = i * 25;
+                double y = j * 25 + i * 3;
+                profileBuilder.addBuilding(new Coordinate[]{new Coordinate(x, y), new Coordinate(x + 15, y),
+                        new Coordinate(x + 15, y + 12), new Coordinate(x, y + 12), new Coordinate(x, y)}, 10 + i + j);
+            }
+        }
+        profileBuilder.finishFeeding();
+        return profileBuilder;
+    }
+
+    @Test
+    public void testMirrorReceiverCluster() {
+        double maxPropagationDistance = 60;
+        double maxPropagationDistanceFromWall = 20;
+        int reflectionOrder = 2;
+        ProfileBuilder profileBuilder = createClusterScene();
+        Envelope clusterEnvelope = new Envelope(16, 24, 13, 21);
+        Envelope clusterPropagationEnvelope = new Envelope(clusterEnvelope);
+        clusterPropagationEnvelope.expandBy(maxPropagationDistance);
+        MirrorReceiverClusterIndex cluster = new MirrorReceiverClusterIndex(
+                profileBuilder.getWallsIn(clusterPropagationEnvelope), clusterEnvelope, reflectionOrder,
+                maxPropagationDistance, maxPropagationDistanceFromWall);
+        Random random = new Random(42);
+        int reflectionCount = 0;
+        for(int idReceiver = 0; idReceiver < 10; idReceiver++) {
+            Coordinate receiver = new Coordinate(16 + random.nextDouble() * 8, 13 + random.nextDouble() * 8, 4);
+            Envelope receiverPropagationEnvelope = new Envelope(receiver);
+            receiverPropagationEnvelope.expandBy(maxPropagationDistance);
+            MirrorReceiverResultIndex expectedIndex = new MirrorReceiverResultIndex(
+                    profileBuilder.getWallsIn(receiverPropagationEnvelope), receiver, reflectionOrder,
+                    maxPropagationDistance, maxPropagationDistanceFromWall);
+            MirrorReceiverResultIndex clusterReceiverIndex = cluster.getReceiverIndex(receiver);
+            for(int idSource = 0; idSource < 50; idSource++) {
+                Coordinate source = new Coordinate(-20 + random.nextDouble() * 130, -20 + random.nextDouble() * 130,
+                        0.5);
+                List<String> expected = imageChains(expectedIndex.findCloseMirrorReceivers(source));
+                reflectionCount += expected.size();
+                assertEquals(expected, imageChains(clusterReceiverIndex.findCloseMirrorReceivers(source)));
+            }
+        }
+        assertTrue(reflectionCount > 0);
+    }
+
+    /**
+     * The capacity of the cluster is applied to the images of each receiver, not to the images shared by the cluster
+     */
+    @Test
+    public void testMirrorReceiverClusterCapacity() {
+        double maxPropagationDistance = 60;
+        double maxPropagationDistanceFromWall = 20;
+        int reflectionOrder = 2;
+        ProfileBuilder profileBuilder = createClusterScene();
+        Envelope clusterEnvelope = new Envelope(16, 24, 13, 21);
+        Envelope clusterPropagationEnvelope = new Envelope(clusterEnvelope);
+        clusterPropagationEnvelope.expandBy(maxPropagationDistance);
+        List<ProfileBuilder.Wall> clusterWalls = profileBuilder.getWallsIn(clusterPropagationEnvelope);
+        final int clusterImageCount = new MirrorReceiverClusterIndex(clusterWalls, clusterEnvelope, reflectionOrder,
+                maxPropagationDistance, maxPropagationDistanceFromWall).getImageCount();
+        // Exactly at the capacity, the images are shared
+        MirrorReceiverClusterIndex cluster = new MirrorReceiverClusterIndex(clusterWalls, clusterEnvelope,
+                reflectionOrder, maxPropagationDistance, maxPropagationDistanceFromWall, clusterImageCount);
+        assertFalse(cluster.isTruncated());
+        assertEquals(clusterImageCount, cluster.getImageCount());
+        // Just below the number of images of the cluster
+        final int capacity = clusterImageCount - 1;
+        MirrorReceiverClusterIndex truncatedCluster = new MirrorReceiverClusterIndex(clusterWalls, clusterEnvelope,
+                reflectionOrder, maxPropagationDistance, maxPropagationDistanceFromWall, capacity);
+        assertTrue(truncatedCluster.isTruncated());
+        // Far below the number of images of each receiver
+        final int smallCapacity = 20;
+        MirrorReceiverClusterIndex smallCluster = new MirrorReceiverClusterIndex(clusterWalls, clusterEnvelope,
+                reflectionOrder, maxPropagationDistance, maxPropagationDistanceFromWall, smallCapacity);
+        assertTrue(smallCluster.isTruncated());
+        Random random = new Random(42);
+        int reflectionCount = 0;
+        for(int idReceiver = 0; idReceiver < 10; idReceiver++) {
+            Coordinate receiver = new Coordinate(16 + random.nextDouble() * 8, 13 + random.nextDouble() * 8, 4);
+            Envelope receiverPropagationEnvelope = new Envelope(receiver);
+            receiverPropagationEnvelope.expandBy(maxPropagationDistance);
+            List<ProfileBuilder.Wall> receiverWalls = profileBuilder.getWallsIn(receiverPropagationEnvelope);
+            MirrorReceiverResultIndex expectedIndex = new MirrorReceiverResultIndex(receiverWalls, receiver,
+                    reflectionOrder, maxPropagationDistance, maxPropagationDistanceFromWall);
+            MirrorReceiverResultIndex expectedCapacityIndex = new MirrorReceiverResultIndex(receiverWalls, receiver,
+                    reflectionOrder, maxPropagationDistance, maxPropagationDistanceFromWall, capacity);
+            MirrorReceiverResultIndex expectedSmallIndex = new MirrorReceiverResultIndex(receiverWalls, receiver,
+                    reflectionOrder, maxPropagationDistance, maxPropagationDistanceFromWall, smallCapacity);
+            assertEquals(smallCapacity, expectedSmallIndex.numberOfImageReceivers);
+            MirrorReceiverResultIndex clusterReceiverIndex = cluster.getReceiverIndex(receiver);
+            MirrorReceiverResultIndex truncatedReceiverIndex = truncatedCluster.getReceiverIndex(receiver);
+            assertEquals(expectedCapacityIndex.numberOfImageReceivers, truncatedReceiverIndex.numberOfImageReceivers);
+            MirrorReceiverResultIndex smallReceiverIndex = smallCluster.getReceiverIndex(receiver);
+            assertEquals(smallCapacity, smallReceiverIndex.numberOfImageReceivers);
+            for(int idSource = 0; idSource < 50; idSource++) {
+                Coordinate source = new Coordinate(-20 + random.nextDouble() * 130, -20 + random.nextDouble() * 130,
+                        0.5);
+                List<String> expected = imageChains(expectedIndex.findCloseMirrorReceivers(source));
+                reflectionCount += expected.size();
+                assertEquals(expected, imageChains(clusterReceiverIndex.findCloseMirrorReceivers(source)));
+                assertEquals(imageChains(expectedCapacityIndex.findCloseMirrorReceivers(source)),
+                        imageChains(truncatedReceiverIndex.findCloseMirrorReceivers(source)));
+                assertEquals(imageChains(expectedSmallIndex.findCloseMirrorReceivers(source)),
+                        imageChains(smallReceiverIndex.findCloseMirrorReceivers(source)));
+            }
+        }
+        assertTrue(reflectionCount > 0);
+    }
+
 //
 //    @Test
 //    public void testExportVisibilityCones() throws Exception {
@@ -91,6 +91,10 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
     public AtomicLong nb_diffraction_path = new AtomicLong();
     public AtomicInteger cellComputed = new AtomicInteger();
     private static final double angle_section = (2 * Math.PI) / PropagationProcessPathData.DEFAULT_WIND_ROSE.length;
+    private static final int MAXIMUM_EVALUATORS_PER_THREAD = 8;
+    /** Attenuation evaluators of the current thread, one for each atmospheric settings */
+    private final ThreadLocal<List<EvaluateAttenuationCnossos>> attenuationEvaluators =
+            ThreadLocal.withInitial(ArrayList::new);
 
     /**
      * get the rose index to search the mean occurrence p of favourable conditions in the direction of the path (S,R):
@@ -160,10 +164,71 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
         }
     }
 
+    /**
+     * @param data Atmospheric settings
+     * @return Attenuation evaluator of the current thread for these settings
+     */
+    protected EvaluateAttenuationCnossos getAttenuationEvaluator(PropagationProcessPathData data) {
+        List<EvaluateAttenuationCnossos> evaluators = attenuationEvaluators.get();
+        for (EvaluateAttenuationCnossos evaluator : evaluators) {
+            if(evaluator.isValidFor(data)) {
+                return evaluator;
+            }
+        }
+        if(evaluators.size() >= MAXIMUM_EVALUATORS_PER_THREAD) {
+            evaluators.remove(0);
+        }
+        EvaluateAttenuationCnossos evaluator = new EvaluateAttenuationCnossos(data);
+        evaluators.add(evaluator);
+        return evaluator;
+    }
+
     public double[] computeAttenuation(PropagationProcessPathData data, long sourceId, double sourceLi, long receiverId, List<PropagationPath> propagationPath) {
         if (data == null) {
             return new double[0];
         }
+        return computeAttenuation(new PropagationProcessPathData[] {data}, sourceId, sourceLi, receiverId,
+                propagationPath)[0];
+    }
+
+    /**
+     * Compute the attenuation of the propagation paths for multiple atmospheric settings (ex. day, evening, night).
+     * Terms that do not depend on the atmospheric settings are evaluated only once per path. Ground and
+     * boundary attenuation are shared between settings having the same sound celerity, atmospheric absorption
+     * between settings having the same alpha_atmo.
+     * @param periodsData Atmospheric settings, all settings must have the same frequencies
+     * @param sourceId Source index
+     * @param sourceLi Line source li coefficient
+     * @param receiverId Receiver index
+     * @param propagationPath Propagation paths between the source and the receiver
+     * @return Attenuation spectrum for each atmospheric settings, empty array if there is no path
+     */
+    public double[][] computeAttenuation(PropagationProcessPathData[] periodsData, long sourceId, double sourceLi,
+                                         long receiverId, List<PropagationPath> propagationPath) {
+        final int periodCount = periodsData.length;
+        final int frequencyCount = periodsData[0].freq_lvl.size();
+        // Identify settings that share the same celerity or the same atmospheric absorption
+        int[] sameCelerity = new int[periodCount];
+        int[] sameAlphaAtmo = new int[periodCount];
+        for (int idPeriod = 0; idPeriod < periodCount; idPeriod++) {
+            if(!periodsData[idPeriod].freq_lvl.equals(periodsData[0].freq_lvl)) {
+                throw new IllegalArgumentException("All propagation path data must have the same frequencies");
+            }
+            sameCelerity[idPeriod] = idPeriod;
+            sameAlphaAtmo[idPeriod] = idPeriod;
+            for (int idOther = 0; idOther < idPeriod; idOther++) {
+                if(periodsData[idOther].getCelerity() == periodsData[idPeriod].getCelerity()) {
+                    sameCelerity[idPeriod] = sameCelerity[idOther];
+                    break;
+                }
+            }
+            for (int idOther = 0; idOther < idPeriod; idOther++) {
+                if(Arrays.equals(periodsData[idOther].getAlpha_atmo(), periodsData[idPeriod].getAlpha_atmo())) {
+                    sameAlphaAtmo[idPeriod] = sameAlphaAtmo[idOther];
+                    break;
+                }
+            }
+        }
         // cache frequencies
         double[] frequencies = new double[0];
         if(inputData != null) {
@@ -172,34 +237,53 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
                 frequencies[idFrequency] = inputData.freq_lvl.get(idFrequency);
             }
         }
+        EvaluateAttenuationCnossos[] evaluators = new EvaluateAttenuationCnossos[periodCount];
+        for (int idPeriod = 0; idPeriod < periodCount; idPeriod++) {
+            evaluators[idPeriod] = getAttenuationEvaluator(periodsData[idPeriod]);
+        }
         // Compute receiver/source attenuation
-        double[] propagationAttenuationSpectrum = null;
+        // Arrays are reused for each path
+        double[][] propagationAttenuationSpectrum = new double[periodCount][];
+        double[][] aAtmPeriod = new double[periodCount][frequencyCount];
+        double[][] aBoundaryHPeriod = new double[periodCount][frequencyCount];
+        double[][] aBoundaryFPeriod = new double[periodCount][frequencyCount];
+        boolean[] aAtmComputed = new boolean[periodCount];
+        boolean[] aBoundaryHComputed = new boolean[periodCount];
+        boolean[] aBoundaryFComputed = new boolean[periodCount];
+        double[] aDiv = new double[frequencyCount];
+        double[] aRef = new double[frequencyCount];
+        double[] aRetroDiff = new double[frequencyCount];
+        double[] noBodyScreen = new double[frequencyCount];
+        double[] aGlobalMeteoHom = new double[frequencyCount];
+        double[] aGlobalMeteoFav = new double[frequencyCount];
         for (PropagationPath proPath : propagationPath) {
+            // Terms that does not depend on the atmospheric settings are evaluated using the first settings
+            PropagationProcessPathData data = periodsData[0];
+            EvaluateAttenuationCnossos evaluator = evaluators[0];
             if(keepAbsorption) {
                 proPath.keepAbsorption = true;
-                proPath.groundAttenuation.init(data.freq_lvl.size());
-                proPath.absorptionData.init(data.freq_lvl.size());
+                proPath.groundAttenuation.init(frequencyCount);
+                proPath.absorptionData.init(frequencyCount);
             }
-            EvaluateAttenuationCnossos.init(data);
             //ADiv computation
-            double[] aDiv = EvaluateAttenuationCnossos.aDiv(proPath, data);
-            //AAtm computation
-            double[] aAtm = EvaluateAttenuationCnossos.aAtm(data, proPath.getSRSegment().d);
+            evaluator.aDiv(proPath, aDiv);
             //Reflexion computation
-            double[] aRef = EvaluateAttenuationCnossos.evaluateAref(proPath, data);
-            double[] aRetroDiff;
-            //ABoundary computation
-            double[] aBoundary;
-            double[] aGlobalMeteoHom = new double[data.freq_lvl.size()];
-            double[] aGlobalMeteoFav = new double[data.freq_lvl.size()];
-            double[] deltaBodyScreen = new double[data.freq_lvl.size()];
+            evaluator.aRef(proPath, aRef);
+            boolean aRetroDiffComputed = false;
+            double[] deltaBodyScreen = noBodyScreen;
 
             List<PointPath> ptList = proPath.getPointList();
 
             // todo get hRail from input data
             double hRail = 0.5;
             Coordinate src = ptList.get(0).coordinate;
-            PointPath pDif = ptList.stream().filter(p -> p.type.equals(DIFH)).findFirst().orElse(null);
+            PointPath pDif = null;
+            for (PointPath p : ptList) {
+                if(p.type.equals(DIFH)) {
+                    pDif = p;
+                    break;
+                }
+            }
 
             if (pDif != null && pDif.alphaWall.size()>0) {
                 if (pDif.bodyBarrier){
@@ -304,80 +388,115 @@ public class ComputeRaysOutAttenuation implements IComputeRaysOut {
             Vector3D fieldVectorPropagation = Orientation.rotate(proPath.getSourceOrientation(),
                     Orientation.toVector(proPath.raySourceReceiverDirectivity), false);
             int roseIndex = getRoseIndex(Math.atan2(fieldVectorPropagation.getY(), fieldVectorPropagation.getX()));
-            // Homogenous conditions
-            if (data.getWindRose()[roseIndex] != 1) {
-                proPath.setFavorable(false);
-
-                aBoundary = EvaluateAttenuationCnossos.aBoundary(proPath, data);
-                aRetroDiff = EvaluateAttenuationCnossos.deltaRetrodif(proPath, data);
-                for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-                    aGlobalMeteoHom[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq] + aRef[idfreq] + aRetroDiff[idfreq] - deltaBodyScreen[idfreq]); // Eq. 2.5.6
+
+            // Apply attenuation due to sound direction
+            double[] attSource = null;
+            if(inputData != null && !inputData.isOmnidirectional((int)sourceId)) {
+                Orientation directivityToPick = proPath.raySourceReceiverDirectivity;
+                attSource = inputData.getSourceAttenuation((int) sourceId,
+                        frequencies, Math.toRadians(directivityToPick.yaw),
+                        Math.toRadians(directivityToPick.pitch));
+            }
+
+            Arrays.fill(aAtmComputed, false);
+            Arrays.fill(aBoundaryHComputed, false);
+            Arrays.fill(aBoundaryFComputed, false);
+            for (int idPeriod = 0; idPeriod < periodCount; idPeriod++) {
+                PropagationProcessPathData periodData = periodsData[idPeriod];
+                //AAtm computation
+                if(!aAtmComputed[sameAlphaAtmo[idPeriod]]) {
+                    evaluators[idPeriod].aAtm(proPath.getSRSegment().d, aAtmPeriod[sameAlphaAtmo[idPeriod]]);
+                    aAtmComputed[sameAlphaAtmo[idPeriod]] = true;
                 }
-                //For testing purpose
-                if(keepAbsorption) {
-                    proPath.absorptionData.aBoundaryH = aBoundary.clone();
-                    proPath.absorptionData.aGlobalH = aGlobalMeteoHom.clone();
+                double[] aAtm = aAtmPeriod[sameAlphaAtmo[idPeriod]];
+                //ABoundary computation
+                double[] aBoundary;
+                Arrays.fill(aGlobalMeteoHom, 0);
+                Arrays.fill(aGlobalMeteoFav, 0);
+                // Homogenous conditions
+                if (periodData.getWindRose()[roseIndex] != 1) {
+                    if(!aBoundaryHComputed[sameCelerity[idPeriod]]) {
+                        proPath.setFavorable(false);
+                        evaluators[idPeriod].aBoundary(proPath, aBoundaryHPeriod[sameCelerity[idPeriod]]);
+                        aBoundaryHComputed[sameCelerity[idPeriod]] = true;
+                    }
+                    aBoundary = aBoundaryHPeriod[sameCelerity[idPeriod]];
+                    if(!aRetroDiffComputed) {
+                        evaluator.deltaRetrodif(proPath, aRetroDiff);
+                        aRetroDiffComputed = true;
+                    }
+                    for (int idfreq = 0; idfreq < frequencyCount; idfreq++) {
+                        aGlobalMeteoHom[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq] + aRef[idfreq] + aRetroDiff[idfreq] - deltaBodyScreen[idfreq]); // Eq. 2.5.6
+                    }
+                    //For testing purpose
+                    if(keepAbsorption) {
+                        proPath.absorptionData.aBoundaryH = aBoundary.clone();
+                        proPath.absorptionData.aGlobalH = aGlobalMeteoHom.clone();
+                    }
                 }
-            }
-            // Favorable conditions
-            if (data.getWindRose()[roseIndex] != 0) {
-                proPath.setFavorable(true);
-                aBoundary = EvaluateAttenuationCnossos.aBoundary(proPath, data);
-                aRetroDiff = EvaluateAttenuationCnossos.deltaRetrodif(proPath, data);
-                for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-                    aGlobalMeteoFav[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq]+ aRef[idfreq] + aRetroDiff[idfreq] -deltaBodyScreen[idfreq]); // Eq. 2.5.8
+                // Favorable conditions
+                if (periodData.getWindRose()[roseIndex] != 0) {
+                    if(!aBoundaryFComputed[sameCelerity[idPeriod]]) {
+                        proPath.setFavorable(true);
+                        evaluators[idPeriod].aBoundary(proPath, aBoundaryFPeriod[sameCelerity[idPeriod]]);
+                        aBoundaryFComputed[sameCelerity[idPeriod]] = true;
+                    }
+                    aBoundary = aBoundaryFPeriod[sameCelerity[idPeriod]];
+                    if(!aRetroDiffComputed) {
+                        evaluator.deltaRetrodif(proPath, aRetroDiff);
+                        aRetroDiffComputed = true;
+                    }
+                    for (int idfreq = 0; idfreq < frequencyCount; idfreq++) {
+                        aGlobalMeteoFav[idfreq] = -(aDiv[idfreq] + aAtm[idfreq] + aBoundary[idfreq]+ aRef[idfreq] + aRetroDiff[idfreq] -deltaBodyScreen[idfreq]); // Eq. 2.5.8
+                    }
+                    //For testing purpose
+                    if(keepAbsorption) {
+                        proPath.absorptionData.aBoundaryF = aBoundary.clone();
+                        proPath.absorptionData.aGlobalF = aGlobalMeteoFav.clone();
+                    }
                 }
+
                 //For testing purpose
                 if(keepAbsorption) {
-                    proPath.absorptionData.aBoundaryF = aBoundary.clone();
-                    proPath.absorptionData.aGlobalF = aGlobalMeteoFav.clone();
+                    proPath.keepAbsorption = true;
+                    proPath.absorptionData.aDiv = aDiv.clone();
+                    proPath.absorptionData.aAtm = aAtm.clone();
                 }
-            }
 
-            //For testing purpose
-            if(keepAbsorption) {
-                proPath.keepAbsorption = true;
-                proPath.absorptionData.aDiv = aDiv.clone();
-                proPath.absorptionData.aAtm = aAtm.clone();
-            }
+                // Compute attenuation under the wind conditions using the ray direction
+                double[] aGlobalMeteoRay = sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom, periodData.getWindRose()[roseIndex]);
 
-            // Compute attenuation under the wind conditions using the ray direction
-            double[] aGlobalMeteoRay = sumArrayWithPonderation(aGlobalMeteoFav, aGlobalMeteoHom, data.getWindRose()[roseIndex]);
+                if(attSource != null) {
+                    if(keepAbsorption) {
+                        proPath.absorptionData.aSource = attSource;
+                    }
+                    aGlobalMeteoRay = sumArray(aGlobalMeteoRay, attSource);
+                }
 
-            // Apply attenuation due to sound direction
-            if(inputData != null && !inputData.isOmnidirectional((int)sourceId)) {
-                Orientation directivityToPick = proPath.raySourceReceiverDirectivity;
-                double[] attSource = inputData.getSourceAttenuation((int) sourceId,
-                        frequencies, Math.toRadians(directivityToPick.yaw),
-                        Math.toRadians(directivityToPick.pitch));
+                // For line source, take account of li coefficient
+                if(sourceLi > 1.0) {
+                    for (int i = 0; i < aGlobalMeteoRay.length; i++) {
+                        aGlobalMeteoRay[i] = wToDba(dbaToW(aGlobalMeteoRay[i]) * sourceLi);
+                    }
+                }
+                // Keep global attenuation
                 if(keepAbsorption) {
-                    proPath.absorptionData.aSource = attSource;
+                    proPath.absorptionData.aGlobal = aGlobalMeteoRay.clone();
                 }
-                aGlobalMeteoRay = sumArray(aGlobalMeteoRay, attSource);
-            }
 
-            // For line source, take account of li coefficient
-            if(sourceLi > 1.0) {
-                for (int i = 0; i < aGlobalMeteoRay.length; i++) {
-                    aGlobalMeteoRay[i] = wToDba(dbaToW(aGlobalMeteoRay[i]) * sourceLi);
+                if (propagationAttenuationSpectrum[idPeriod] != null) {
+                    propagationAttenuationSpectrum[idPeriod] = sumDbArray(aGlobalMeteoRay, propagationAttenuationSpectrum[idPeriod]);
+                } else {
+                    propagationAttenuationSpectrum[idPeriod] = aGlobalMeteoRay;
                 }
             }
-            // Keep global attenuation
-            if(keepAbsorption) {
-                proPath.absorptionData.aGlobal = aGlobalMeteoRay.clone();
-            }
-
-            if (propagationAttenuationSpectrum != null) {
-                propagationAttenuationSpectrum = sumDbArray(aGlobalMeteoRay, propagationAttenuationSpectrum);
-            } else {
-                propagationAttenuationSpectrum = aGlobalMeteoRay;
-            }
         }
-        if (propagationAttenuationSpectrum != null) {
-            return propagationAttenuationSpectrum;
-        } else {
-            return new double[0];
+        for (int idPeriod = 0; idPeriod < periodCount; idPeriod++) {
+            if (propagationAttenuationSpectrum[idPeriod] == null) {
+                propagationAttenuationSpectrum[idPeriod] = new double[0];
+            }
         }
+        return propagationAttenuationSpectrum;
     }
 
     @Override
@@ -40,7 +40,6 @@ import org.noise_planet.noisemodelling.pathfinder.SegmentPath;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -51,18 +50,130 @@ import static org.noise_planet.noisemodelling.pathfinder.PointPath.POINT_TYPE.*;
  * Return the dB value corresponding to the parameters
  * Following Directive 2015/996/EN
  * https://circabc.europa.eu/sd/a/9566c5b9-8607-4118-8427-906dab7632e2/Directive_2015_996_EN.pdf
+ *
+ * An instance holds the frequency dependent values of a {@link PropagationProcessPathData} and the working
+ * buffers of the evaluation. Instance methods write into the array given by the caller and do not allocate,
+ * an instance must not be shared between threads. Static methods are kept for convenience and create a new
+ * instance on each call.
  * @author Pierre Aumond
  */
 
 public class EvaluateAttenuationCnossos {
-    private static double[] freq_lambda;
-    private static double[] aGlobal;
+    private static final Logger LOGGER = LoggerFactory.getLogger(EvaluateAttenuationCnossos.class);
+    /** Last result of the static {@link #evaluate(PropagationPath, PropagationProcessPathData)} for this thread */
+    private static final ThreadLocal<double[]> LAST_A_GLOBAL = new ThreadLocal<>();
+
+    private static final byte NO_DIFFRACTION_BAND = 0;
+    private static final byte DIFFRACTION_BAND = 1;
+    private static final byte NO_DIFFRACTION_LIMIT_BAND = 2;
+
+    private final PropagationProcessPathData data;
+    // Values of data used to build this instance
+    private final List<Integer> freqLvl;
+    private final double celerity;
+    private final double[] alphaAtmo;
+    private final int frequencyCount;
+    private final int[] frequencies;
+    /** Wave length using the celerity of data */
+    private final double[] freqLambda;
+    /** Wave length using a celerity of 340 m/s */
+    private final double[] lambda;
+    /** Wave number 2 pi f / c */
+    private final double[] waveNumber;
+    // Frequency terms of eq 2.5.17
+    private final double[] freqPow25;
+    private final double[] freqPow15;
+    private final double[] freqPow075;
+
+    // Working buffers
+    private final double[] aGroundBuffer;
+    private final double[] aDifBuffer;
+    private final double[] aRefBuffer;
+    private final double[] deltaDifSRBuffer;
+    private final double[] deltaDifSpRBuffer;
+    private final double[] deltaDifSRpBuffer;
+    private final double[] aGroundSOBuffer;
+    private final double[] aGroundORBuffer;
+    private final byte[] diffractionBands;
+    // cf, k, w of the last call to computeCfKValues
+    private double cf;
+    private double k;
+    private double w;
 
-    public static double[] getaGlobal() {
-        return aGlobal;
+    /**
+     * @param data Atmospheric settings, values are copied, a new instance must be created if data is modified
+     */
+    public EvaluateAttenuationCnossos(PropagationProcessPathData data) {
+        this.data = data;
+        this.freqLvl = data.freq_lvl;
+        this.celerity = data.getCelerity();
+        this.alphaAtmo = data.getAlpha_atmo();
+        frequencyCount = data.freq_lvl.size();
+        frequencies = new int[frequencyCount];
+        freqLambda = new double[frequencyCount];
+        lambda = new double[frequencyCount];
+        waveNumber = new double[frequencyCount];
+        freqPow25 = new double[frequencyCount];
+        freqPow15 = new double[frequencyCount];
+        freqPow075 = new double[frequencyCount];
+        for (int idf = 0; idf < frequencyCount; idf++) {
+            int fm = data.freq_lvl.get(idf);
+            frequencies[idf] = fm;
+            // Init wave length for each frequency
+            if (fm > 0) {
+                freqLambda[idf] = celerity / fm;
+            } else {
+                freqLambda[idf] = 1;
+            }
+            lambda[idf] = 340.0 / fm;
+            //NF S 31-133 page 41 c
+            waveNumber[idf] = 2 * PI * fm / celerity;
+            freqPow25[idf] = pow(fm, 2.5);
+            freqPow15[idf] = pow(fm, 1.5);
+            freqPow075[idf] = pow(fm, 0.75);
+        }
+        aGroundBuffer = new double[frequencyCount];
+        aDifBuffer = new double[frequencyCount];
+        aRefBuffer = new double[frequencyCount];
+        deltaDifSRBuffer = new double[frequencyCount];
+        deltaDifSpRBuffer = new double[frequencyCount];
+        deltaDifSRpBuffer = new double[frequencyCount];
+        aGroundSOBuffer = new double[frequencyCount];
+        aGroundORBuffer = new double[frequencyCount];
+        diffractionBands = new byte[frequencyCount];
     }
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(EvaluateAttenuationCnossos.class);
+    /**
+     * @return Atmospheric settings used to build this instance
+     */
+    public PropagationProcessPathData getData() {
+        return data;
+    }
+
+    /**
+     * @return Number of frequency bands, expected length of the output arrays
+     */
+    public int getFrequencyCount() {
+        return frequencyCount;
+    }
+
+    /**
+     * @param data Atmospheric settings
+     * @return True if this instance can be used to evaluate the attenuation with the provided settings
+     */
+    public boolean isValidFor(PropagationProcessPathData data) {
+        return this.data == data && freqLvl == data.freq_lvl && celerity == data.getCelerity() &&
+                alphaAtmo == data.getAlpha_atmo();
+    }
+
+    /**
+     * @return Last result of {@link #evaluate(PropagationPath, PropagationProcessPathData)} in the current thread
+     * @deprecated Use the value returned by evaluate
+     */
+    @Deprecated
+    public static double[] getaGlobal() {
+        return LAST_A_GLOBAL.get();
+    }
 
     /**
      * Eq 2.5.21
@@ -71,29 +182,38 @@ public class EvaluateAttenuationCnossos {
      * @return
      */
     public static double[] getDeltaDif(SegmentPath srpath, PropagationProcessPathData data) {
-        double[] DeltaDif = new double[data.freq_lvl.size()];
+        return new EvaluateAttenuationCnossos(data).getDeltaDif(srpath, new double[data.freq_lvl.size()]);
+    }
+
+    /**
+     * Eq 2.5.21
+     * @param srpath
+     * @param deltaDif Output array
+     * @return deltaDif
+     */
+    public double[] getDeltaDif(SegmentPath srpath, double[] deltaDif) {
         double cprime;
 
-        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
+        for (int idfreq = 0; idfreq < frequencyCount; idfreq++) {
             double Ch = 1; // Eq 2.5.21
             if (srpath.eLength > 0.3) {
-                double gammaPart = pow((5 * freq_lambda[idfreq]) / srpath.eLength, 2);
+                double gammaPart = pow((5 * freqLambda[idfreq]) / srpath.eLength, 2);
                 cprime = (1. + gammaPart) / (1./3. + gammaPart); // Eq. 2.5.23
             } else {
                 cprime = 1.;
             }
 
             //(7.11) NMP2008 P.32
-            double testForm = (40 / freq_lambda[idfreq])
+            double testForm = (40 / freqLambda[idfreq])
                     * cprime * srpath.getDelta();
 
-            double deltaDif = 0.;
+            double dif = 0.;
             if (testForm >= -2.) {
-                deltaDif = 10 * Ch * log10(Math.max(0, 3 + testForm));
+                dif = 10 * Ch * log10(Math.max(0, 3 + testForm));
             }
-            DeltaDif[idfreq] = Math.max(0, deltaDif);
+            deltaDif[idfreq] = Math.max(0, dif);
         }
-        return DeltaDif;
+        return deltaDif;
     }
 
     /**
@@ -125,22 +245,29 @@ public class EvaluateAttenuationCnossos {
      * @return
      */
     public static double[] getAGroundCore(PropagationPath path, SegmentPath segmentPath, PropagationProcessPathData data) {
+        return new EvaluateAttenuationCnossos(data).getAGroundCore(path, segmentPath, new double[data.freq_lvl.size()]);
+    }
 
-        double[] aGround = new double[data.freq_lvl.size()];
+    /**
+     * Eq. 2.5.15
+     * Compute Aground
+     * @param aGround Output array
+     * @return aGround
+     */
+    public double[] getAGroundCore(PropagationPath path, SegmentPath segmentPath, double[] aGround) {
         double aGroundMin;
         double AGround;
 
-        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
-            int fm = data.freq_lvl.get(idfreq);
+        for (int idfreq = 0; idfreq < frequencyCount; idfreq++) {
             double gw = segmentPath.gw;
             double dp = segmentPath.dp;
 
             //NF S 31-133 page 41 c
-            double k = 2 * Math.PI * fm / data.getCelerity();
+            double k = waveNumber[idfreq];
             //NF S 31-113 page 41 w
             //eq 2.5.17
-            double w = 0.0185 * pow(fm, 2.5) * pow(gw, 2.6) /
-                    (pow(fm, 1.5) * pow(gw, 2.6) + 1.3e3 * pow(fm, 0.75) * pow(gw, 1.3) + 1.16e6);
+            double w = 0.0185 * freqPow25[idfreq] * pow(gw, 2.6) /
+                    (freqPow15[idfreq] * pow(gw, 2.6) + 1.3e3 * freqPow075[idfreq] * pow(gw, 1.3) + 1.16e6);
             //NF S 31-113 page 41 Cf
             //eq 2.5.16
             double cf = dp * (1 + 3 * w * dp * pow(Math.E, -sqrt(w * dp))) / (1 + w * dp);
@@ -213,16 +340,15 @@ public class EvaluateAttenuationCnossos {
     /**
      *
      * @param path
-     * @param data
-     * @return
+     * @param aRef Output array
+     * @return aRef
      */
-    private static double[] getARef(PropagationPath path, PropagationProcessPathData data) {
-        double[] aRef = new double[data.freq_lvl.size()];
-        Arrays.fill(aRef, 0.0);
-        for (int idf = 0; idf < data.freq_lvl.size(); idf++) {
-            for (int idRef = 0; idRef < path.refPoints.size(); idRef++) {
-                List<Double> alpha = path.getPointList().get(path.refPoints.get(idRef)).alphaWall;
-                if(alpha != null && !alpha.isEmpty()) {
+    public double[] aRef(PropagationPath path, double[] aRef) {
+        Arrays.fill(aRef, 0, frequencyCount, 0.0);
+        for (int idRef = 0; idRef < path.refPoints.size(); idRef++) {
+            List<Double> alpha = path.getPointList().get(path.refPoints.get(idRef)).alphaWall;
+            if(alpha != null && !alpha.isEmpty()) {
+                for (int idf = 0; idf < frequencyCount; idf++) {
                     aRef[idf] += -10 * log10(1 - alpha.get(idf));
                 }
             }
@@ -234,20 +360,20 @@ public class EvaluateAttenuationCnossos {
      *
      * @param segmentPath
      * @param path
-     * @param data
-     * @return
+     * @param aGround Output array
+     * @return aGround
      */
-    private static double[] aGround(SegmentPath segmentPath, PropagationPath path, PropagationProcessPathData data) {
+    private double[] aGround(SegmentPath segmentPath, PropagationPath path, double[] aGround) {
         // Here there is a debate if use the condition isgDisc or not
         // In Directive 2015-2019, isgDisc == true because the term – 3(1 – Gm) takes into account the fact that when the source and the receiver are far apart, the first reflection source side is no longer on the platform but on natural land.
         if (!(segmentPath.gPath == 0 && data.isgDisc())) {
-            return getAGroundCore(path, segmentPath, data);
+            return getAGroundCore(path, segmentPath, aGround);
         } else {
             double aGroundMin;
             //For testing purpose
             if(path.keepAbsorption) {
                 //Used to calculate value ignored like Cf
-                getAGroundCore(path, segmentPath, data);
+                getAGroundCore(path, segmentPath, aGround);
             }
 
             if (path.isFavorable()) {
@@ -261,16 +387,15 @@ public class EvaluateAttenuationCnossos {
                 aGroundMin = -3;
             }
 
-            double[] aGround = new double[data.freq_lvl.size()];
-            Arrays.fill(aGround, aGroundMin);
+            Arrays.fill(aGround, 0, frequencyCount, aGroundMin);
 
             //For testing purpose
             if(path.keepAbsorption) {
                 if(path.isFavorable()) {
-                    path.groundAttenuation.aGroundF = aGround;
+                    path.groundAttenuation.aGroundF = Arrays.copyOf(aGround, frequencyCount);
                 }
                 else{
-                    path.groundAttenuation.aGroundH = aGround;
+                    path.groundAttenuation.aGroundH = Arrays.copyOf(aGround, frequencyCount);
                 }
             }
             return aGround;
@@ -280,18 +405,16 @@ public class EvaluateAttenuationCnossos {
     /**
      *
      * @param path
-     * @param data
-     * @return
+     * @param aBoundary Output array
+     * @return aBoundary
      */
-    private static double[] getABoundary(PropagationPath path, PropagationProcessPathData data) {
+    private double[] getABoundary(PropagationPath path, double[] aBoundary) {
 
         SegmentPath srPath = path.getSRSegment();
         List<SegmentPath> segments = path.getSegmentList();
 
-        double[] aGround;
-        double[] aDif = new double[data.freq_lvl.size()];
-
-        double[] aBoundary;
+        double[] aDif = aDifBuffer;
+        Arrays.fill(aDif, 0.0);
 
         // Set Gm and Gw for AGround SR - Table 2.5.b
         if (path.isFavorable()) {
@@ -301,18 +424,16 @@ public class EvaluateAttenuationCnossos {
         }
         srPath.setGm(srPath.gPathPrime);
 
-        List<Integer> difBands = new ArrayList<>();
-        List<Integer> noDifBands = new ArrayList<>();
         double deltaD = srPath.d - (segments.get(0).d + segments.get(1).dp);
         double deltaDPrime = -srPath.dPrime + segments.get(0).dPrime + segments.get(1).dPrime;
-        for(int freq : data.freq_lvl) {
-            double lambda = 340.0 / freq;
-            if(deltaD > -lambda/20) {
-                if(deltaD > (lambda/4 - deltaDPrime)) {
-                    difBands.add(data.freq_lvl.indexOf(freq));
+        for (int idf = 0; idf < frequencyCount; idf++) {
+            diffractionBands[idf] = NO_DIFFRACTION_BAND;
+            if(deltaD > -lambda[idf]/20) {
+                if(deltaD > (lambda[idf]/4 - deltaDPrime)) {
+                    diffractionBands[idf] = DIFFRACTION_BAND;
                 }
                 else {
-                    noDifBands.add(data.freq_lvl.indexOf(freq));
+                    diffractionBands[idf] = NO_DIFFRACTION_LIMIT_BAND;
                 }
             }
         }
@@ -327,9 +448,9 @@ public class EvaluateAttenuationCnossos {
             double[] aGroundSO; // is the attenuation due to the ground effect on the source side, weighted by the diffraction on the source side; where it is understood that O = O1 in case of multiple diffractions as in Figure 2.5.f
             double[] aGroundOR; // is the attenuation due to the ground effect on the receiver side, weighted by the diffraction on the receiver side.
 
-            deltaDifSR = getDeltaDif(srPath, data);
-            DeltaDifSpR = getDeltaDif(segments.get(segments.size() - 2), data);
-            deltaDifSRp = getDeltaDif(segments.get(segments.size() - 1), data);
+            deltaDifSR = getDeltaDif(srPath, deltaDifSRBuffer);
+            DeltaDifSpR = getDeltaDif(segments.get(segments.size() - 2), deltaDifSpRBuffer);
+            deltaDifSRp = getDeltaDif(segments.get(segments.size() - 1), deltaDifSRpBuffer);
 
             // Set Gm and Gw for AGround SO - Table 2.5.b
             if (path.isFavorable()) {
@@ -338,42 +459,45 @@ public class EvaluateAttenuationCnossos {
                 segmentPath.get(0).setGw(segmentPath.get(0).gPathPrime);
             }
             segmentPath.get(0).setGm(segmentPath.get(0).gPathPrime);
-            aGroundSO = aGround(segmentPath.get(0), path, data);
+            aGroundSO = aGround(segmentPath.get(0), path, aGroundSOBuffer);
 
             // Set Gm and Gw for AGround OR - Table 2.5.b
             segmentPath.get(segmentPath.size() - 1).setGw(segmentPath.get(segmentPath.size() - 1).gPath);
             segmentPath.get(segmentPath.size() - 1).setGm(segmentPath.get(segmentPath.size() - 1).gPath);
-            aGroundOR = aGround(segmentPath.get(segmentPath.size() - 1), path, data);
+            aGroundOR = aGround(segmentPath.get(segmentPath.size() - 1), path, aGroundORBuffer);
 
-            double[] deltaGroundSO = new double[data.freq_lvl.size()];
-            double[] deltaGroundOR = new double[data.freq_lvl.size()];
             // Eq 2.5.30 - Eq. 2.5.31 - Eq. 2.5.32
-            for (int idf : difBands) {
+            for (int idf = 0; idf < frequencyCount; idf++) {
+                if(diffractionBands[idf] != DIFFRACTION_BAND) {
+                    continue;
+                }
+                double deltaGroundSO;
+                double deltaGroundOR;
                 // if Deltadif > 25: Deltadif = 25 dB for a diffraction on a horizontal edge and only on the term Deltadif which figures in the calculation of Adif. This upper bound shall not be applied in the Deltadif terms that intervene in the calculation of Deltaground, or for a diffraction on a vertical edge (lateral diffraction) in the case of industrial noise mapping
                 if (segmentPath.get(segmentPath.size() - 1).zrH > 0.0000001) {// see 5.3 Equivalent heights from AFNOR document
-                    deltaGroundSO[idf]  = getDeltaGround(aGroundSO[idf], DeltaDifSpR[idf],deltaDifSR[idf]);
-                    deltaGroundOR[idf] = getDeltaGround(aGroundOR[idf], deltaDifSRp[idf], deltaDifSR[idf]);
+                    deltaGroundSO  = getDeltaGround(aGroundSO[idf], DeltaDifSpR[idf],deltaDifSR[idf]);
+                    deltaGroundOR = getDeltaGround(aGroundOR[idf], deltaDifSRp[idf], deltaDifSR[idf]);
                 }else{
-                    deltaGroundSO[idf]  = getDeltaGround(aGroundSO[idf], DeltaDifSpR[idf],deltaDifSR[idf]);
-                    deltaGroundOR[idf]  = aGroundOR[idf];
+                    deltaGroundSO  = getDeltaGround(aGroundSO[idf], DeltaDifSpR[idf],deltaDifSR[idf]);
+                    deltaGroundOR  = aGroundOR[idf];
                 }
-                aDif[idf] = Math.min(25, deltaDifSR[idf]) + deltaGroundSO[idf] + deltaGroundOR[idf]; // Eq. 2.5.30
+                aDif[idf] = Math.min(25, deltaDifSR[idf]) + deltaGroundSO + deltaGroundOR; // Eq. 2.5.30
             }
 
-            aBoundary = aDif;
         //} else {
             // Aground is calculated with no diffraction (Adif = 0 dB) and Aboundary = Aground;
             // In addition, Aatm and Aground shall be calculated from the total length of the propagation path.
-            aGround = aGround(srPath, path, data);
-            aBoundary = aGround;
+            aGround(srPath, path, aBoundary);
 
             if (path.difVPoints.size() > 0 ) {
 
-                aDif = getDeltaDif(srPath, data);
+                aDif = getDeltaDif(srPath, aDif);
 
                 // Eq. 2.5.33 - Eq. 2.5.34
-                for (int idf : noDifBands) {
-                    aBoundary[idf] = aDif[idf] + aGround[idf];
+                for (int idf = 0; idf < frequencyCount; idf++) {
+                    if(diffractionBands[idf] == NO_DIFFRACTION_LIMIT_BAND) {
+                        aBoundary[idf] = aDif[idf] + aBoundary[idf];
+                    }
                 }
 
             }
@@ -383,22 +507,12 @@ public class EvaluateAttenuationCnossos {
     }
 
     /**
-     *
      * @param data
+     * @deprecated The wave lengths are now computed by each method, use an instance of this class in order to
+     * compute them only once
      */
+    @Deprecated
     public static void init(PropagationProcessPathData data) {
-        // init
-        aGlobal = new double[data.freq_lvl.size()];
-
-        // Init wave length for each frequency
-        freq_lambda = new double[data.freq_lvl.size()];
-        for (int idf = 0; idf < data.freq_lvl.size(); idf++) {
-            if (data.freq_lvl.get(idf) > 0) {
-                freq_lambda[idf] = data.getCelerity() / data.freq_lvl.get(idf);
-            } else {
-                freq_lambda[idf] = 1;
-            }
-        }
     }
 
     public static double[] aDiv(PropagationPath path, PropagationProcessPathData data) {
@@ -407,6 +521,17 @@ public class EvaluateAttenuationCnossos {
         return aDiv;
     }
 
+    /**
+     * @param path
+     * @param aDiv Output array
+     * @return aDiv
+     */
+    public double[] aDiv(PropagationPath path, double[] aDiv) {
+        Arrays.fill(aDiv, 0, frequencyCount, getADiv(path.difVPoints.isEmpty() ? path.getSRSegment().d :
+                path.getSRSegment().dc));
+        return aDiv;
+    }
+
     /**
      *
      * @param data
@@ -425,6 +550,18 @@ public class EvaluateAttenuationCnossos {
         return aAtm;
     }
 
+    /**
+     * @param distance Propagation distance
+     * @param aAtm Output array
+     * @return aAtm
+     */
+    public double[] aAtm(double distance, double[] aAtm) {
+        for (int idfreq = 0; idfreq < frequencyCount; idfreq++) {
+            aAtm[idfreq] = getAAtm(distance, alphaAtmo[idfreq]);
+        }
+        return aAtm;
+    }
+
     /**
      *
      * @param path
@@ -432,7 +569,7 @@ public class EvaluateAttenuationCnossos {
      * @return
      */
     public static double[] evaluateAref(PropagationPath path, PropagationProcessPathData data) {
-        return getARef(path, data);
+        return new EvaluateAttenuationCnossos(data).aRef(path, new double[data.freq_lvl.size()]);
     }
 
     /**
@@ -443,24 +580,18 @@ public class EvaluateAttenuationCnossos {
      * @return
      */
     public static double[] evaluate(PropagationPath path, PropagationProcessPathData data) {
-        // init
-        aGlobal = new double[data.freq_lvl.size()];
-        double[] aBoundary;
-        double[] aRef;
-
-        // Init wave length for each frequency
-        freq_lambda = new double[data.freq_lvl.size()];
-        for (int idf = 0; idf < data.freq_lvl.size(); idf++) {
-            if (data.freq_lvl.get(idf) > 0) {
-                freq_lambda[idf] = data.getCelerity() / data.freq_lvl.get(idf);
-            } else {
-                freq_lambda[idf] = 1;
-            }
-        }
-
-        // init atmosphere
-        double[] alpha_atmo = data.getAlpha_atmo();
+        double[] aGlobal = new EvaluateAttenuationCnossos(data).evaluate(path, new double[data.freq_lvl.size()]);
+        LAST_A_GLOBAL.set(aGlobal);
+        return aGlobal;
+    }
 
+    /**
+     * Only for propagation Path Cnossos
+     * @param path
+     * @param aGlobal Output array
+     * @return aGlobal
+     */
+    public double[] evaluate(PropagationPath path, double[] aGlobal) {
         double aDiv;
         // divergence
         if (path.refPoints.size() > 0) {
@@ -469,20 +600,19 @@ public class EvaluateAttenuationCnossos {
             aDiv = getADiv(path.getSRSegment().d);
         }
 
-
         // boundary (ground + diffration)
-        aBoundary = getABoundary(path, data);
+        double[] aBoundary = getABoundary(path, aGroundBuffer);
 
         // reflections
-        aRef = getARef(path, data);
+        double[] aRef = aRef(path, aRefBuffer);
 
-        for (int idfreq = 0; idfreq < data.freq_lvl.size(); idfreq++) {
+        for (int idfreq = 0; idfreq < frequencyCount; idfreq++) {
             // atm
             double aAtm;
             if (path.difVPoints.size() > 0 || path.refPoints.size() > 0) {
-                aAtm = getAAtm(path.getSRSegment().dPath, alpha_atmo[idfreq]);
+                aAtm = getAAtm(path.getSRSegment().dPath, alphaAtmo[idfreq]);
             } else {
-                aAtm = getAAtm(path.getSRSegment().d, alpha_atmo[idfreq]);
+                aAtm = getAAtm(path.getSRSegment().d, alphaAtmo[idfreq]);
             }
 
             aGlobal[idfreq] = -(aDiv + aAtm + aBoundary[idfreq] + aRef[idfreq]);
@@ -491,39 +621,54 @@ public class EvaluateAttenuationCnossos {
         return aGlobal;
     }
 
-    private static boolean isValidRcrit(PropagationPath pp, int freq, boolean favorable) {
-        double lambda = 340.0/freq;
+    private boolean isValidRcrit(PropagationPath pp, int idFreq, boolean favorable) {
+        double lambda = this.lambda[idFreq];
         return favorable ?
                 pp.deltaF > -lambda / 20 && pp.deltaF > lambda / 4 - pp.deltaPrimeF || pp.deltaF > 0 :
                 pp.deltaH > -lambda / 20 && pp.deltaH > lambda / 4 - pp.deltaPrimeH || pp.deltaH > 0 ;
     }
 
-    public static double[] aBoundary(PropagationPath path, PropagationProcessPathData data) {
-        double[] aGround = new double[data.freq_lvl.size()];
-        double[] aDif = new double[data.freq_lvl.size()];
-        List<PointPath> diffPts = new ArrayList<>();
-        for(int i=0; i<path.getPointList().size(); i++) {
-            if(path.difHPoints.contains(i)) {
-                diffPts.add(path.getPointList().get(i));
-            }
-            else if(path.difVPoints.contains(i)) {
-                diffPts.add(path.getPointList().get(i));
+    /**
+     * @param path
+     * @param idFreq Frequency index
+     * @return The first diffraction point of the path to use at this frequency, null if there is none
+     */
+    private PointPath firstDiffractionPoint(PropagationPath path, int idFreq) {
+        List<PointPath> pointList = path.getPointList();
+        for(int i=0; i<pointList.size(); i++) {
+            if(path.difHPoints.contains(i) || path.difVPoints.contains(i)) {
+                PointPath pp = pointList.get(i);
+                if(pp.type.equals(DIFH) || pp.type.equals(DIFV) ||
+                        (pp.type.equals(DIFH_RCRIT) && isValidRcrit(path, idFreq, path.isFavorable()))) {
+                    return pp;
+                }
             }
         }
-        path.aBoundaryH.init(data.freq_lvl.size());
-        path.aBoundaryF.init(data.freq_lvl.size());
+        return null;
+    }
+
+    public static double[] aBoundary(PropagationPath path, PropagationProcessPathData data) {
+        return new EvaluateAttenuationCnossos(data).aBoundary(path, new double[data.freq_lvl.size()]);
+    }
+
+    /**
+     * @param path
+     * @param aBoundary Output array
+     * @return aBoundary
+     */
+    public double[] aBoundary(PropagationPath path, double[] aBoundary) {
+        double[] aGround = aGroundBuffer;
+        double[] aDif = aDifBuffer;
+        if(path.keepAbsorption) {
+            path.aBoundaryH.init(frequencyCount);
+            path.aBoundaryF.init(frequencyCount);
+        }
         // Without diff
-        for(int i=0; i<data.freq_lvl.size(); i++) {
-            int finalI = i;
-            PointPath first = diffPts.stream()
-                    .filter(pp -> pp.type.equals(PointPath.POINT_TYPE.DIFH) || pp.type.equals(DIFV) ||
-                            (pp.type.equals(DIFH_RCRIT) &&
-                                    isValidRcrit(path, data.freq_lvl.get(finalI), path.isFavorable())))
-                    .findFirst()
-                    .orElse(null);
+        for(int i=0; i<frequencyCount; i++) {
+            PointPath first = firstDiffractionPoint(path, i);
             aGround[i] = path.isFavorable() ?
-                    aGroundF(path, path.getSRSegment(), data, i) :
-                    aGroundH(path, path.getSRSegment(), data, i);
+                    aGroundF(path, path.getSRSegment(), i, false) :
+                    aGroundH(path, path.getSRSegment(), i, false);
             if(path.groundAttenuation != null && path.groundAttenuation.aGroundF != null) {
                 if (path.isFavorable()) {
                     path.groundAttenuation.aGroundF[i] = aGround[i];
@@ -532,7 +677,7 @@ public class EvaluateAttenuationCnossos {
                 }
             }
             if (first != null) {
-                aDif[i] = aDif(path, data, i, first.type);
+                aDif[i] = aDif(path, i, first.type);
                 if(!first.type.equals(DIFV)) {
                     aGround[i] = 0.;
                 }
@@ -545,54 +690,59 @@ public class EvaluateAttenuationCnossos {
         }
         if(path.keepAbsorption) {
             if (path.isFavorable()) {
-                path.absorptionData.aDifF = aDif;
+                path.absorptionData.aDifF = Arrays.copyOf(aDif, frequencyCount);
             } else {
-                path.absorptionData.aDifH = aDif;
+                path.absorptionData.aDifH = Arrays.copyOf(aDif, frequencyCount);
             }
         }
-        double[] aBoundary = new double[data.freq_lvl.size()];
-        for(int i=0; i<data.freq_lvl.size(); i++) {
+        for(int i=0; i<frequencyCount; i++) {
             aBoundary[i] = aGround[i] + aDif[i];
         }
         return aBoundary;
     }
 
     public static double[] deltaRetrodif(PropagationPath reflect, PropagationProcessPathData data) {
+        return new EvaluateAttenuationCnossos(data).deltaRetrodif(reflect, new double[data.freq_lvl.size()]);
+    }
 
-        double[] retroDiff = new double[data.freq_lvl.size()];
-        Arrays.fill(retroDiff, 0.);
+    /**
+     * @param reflect
+     * @param retroDiff Output array
+     * @return retroDiff
+     */
+    public double[] deltaRetrodif(PropagationPath reflect, double[] retroDiff) {
+        Arrays.fill(retroDiff, 0, frequencyCount, 0.);
         Coordinate s = reflect.getSRSegment().s;
         Coordinate r = reflect.getSRSegment().r;
-        for(int idx : reflect.refPoints) {
+        for(int idRef = 0; idRef < reflect.refPoints.size(); idRef++) {
             //Get the reflexion point
-            PointPath pp = reflect.getPointList().get(idx);
+            PointPath pp = reflect.getPointList().get(reflect.refPoints.get(idRef));
             //Get the point on the top of the obstacle
             Coordinate o = new Coordinate(pp.coordinate.x, pp.buildingHeight);
             //Compute de distance delta (2.5.36)
             double deltaPrime = -(s.distance(o) + o.distance(r) - reflect.getSRSegment().d);
             double ch = 1.;
-            for (int i = 0; i < data.freq_lvl.size(); i++) {
-                double lambda = 340.0 / data.freq_lvl.get(i);
-                double testForm = 40.0 / lambda * deltaPrime;
+            for (int i = 0; i < frequencyCount; i++) {
+                double testForm = 40.0 / lambda[i] * deltaPrime;
                 double dLRetro = testForm >= -2 ? 10 * ch * log10(3 + testForm) : 0;
                 retroDiff[i] = dLRetro;
             }
         }
         if (reflect.keepAbsorption) {
             if (reflect.reflectionAttenuation.dLRetro == null) {
-                reflect.reflectionAttenuation.init(data.freq_lvl.size());
+                reflect.reflectionAttenuation.init(frequencyCount);
             }
-            reflect.reflectionAttenuation.dLRetro = retroDiff;
+            reflect.reflectionAttenuation.dLRetro = Arrays.copyOf(retroDiff, frequencyCount);
         }
         return retroDiff;
     }
 
-    private static double aDif(PropagationPath proPath, PropagationProcessPathData data, int i, PointPath.POINT_TYPE type) {
+    private double aDif(PropagationPath proPath, int i, PointPath.POINT_TYPE type) {
         SegmentPath first = proPath.getSegmentList().get(0);
         SegmentPath last = proPath.getSegmentList().get(proPath.getSegmentList().size()-1);
 
         double ch = 1.;
-        double lambda = 340.0 / data.freq_lvl.get(i);
+        double lambda = this.lambda[i];
         double cSecond = (type.equals(DIFH) && proPath.difHPoints.size() <= 1) || (type.equals(DIFV) && proPath.difVPoints.size() <= 1) || proPath.e <= 0.3 ? 1. :
                 (1+pow(5*lambda/proPath.e, 2))/(1./3+pow(5*lambda/proPath.e, 2));
 
@@ -624,8 +774,8 @@ public class EvaluateAttenuationCnossos {
         testForm = 40/lambda*cSecond*_delta;
         double deltaDiffSRPrime = testForm>=-2 ? 10*ch*log10(3+testForm) : 0;
 
-        double aGroundSO = proPath.isFavorable() ? aGroundF(proPath, first, data, i) : aGroundH(proPath, first, data, i);
-        double aGroundOR = proPath.isFavorable() ? aGroundF(proPath, last, data, i, true) : aGroundH(proPath, last, data, i, true);
+        double aGroundSO = proPath.isFavorable() ? aGroundF(proPath, first, i, false) : aGroundH(proPath, first, i, false);
+        double aGroundOR = proPath.isFavorable() ? aGroundF(proPath, last, i, true) : aGroundH(proPath, last, i, true);
 
         //If the source or the receiver are under the mean plane, change the computation of deltaDffSR and deltaGround
         double deltaGroundSO = -20*log10(1+(pow(10, -aGroundSO/20)-1)*pow(10, -(deltaDiffSPrimeR-deltaDiffSR)/20));
@@ -670,19 +820,16 @@ public class EvaluateAttenuationCnossos {
         return aDiff;
     }
 
-    private static double[] computeCfKValues(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq) {
-        return computeCfKValues(proPath, path, data, idFreq, false);
-    }
-    private static double[] computeCfKValues(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
-        int fm = data.freq_lvl.get(idFreq);
-        double c = data.getCelerity();
+    /**
+     * Set the cf, k and w fields for the given segment and frequency
+     */
+    private void computeCfKValues(PropagationPath proPath, SegmentPath path, int idFreq, boolean forceGPath) {
         double dp = path.dp;
-        double k = 2*PI*fm/c;
         double gw = forceGPath ? path.gPath : proPath.isFavorable() ? path.gPath : path.gPathPrime;
-        double w = 0.0185 * pow(fm, 2.5) * pow(gw, 2.6) /
-                (pow(fm, 1.5) * pow(gw, 2.6) + 1.3e3 * pow(fm, 0.75) * pow(gw, 1.3) + 1.16e6);
-        double cf = dp * (1 + 3 * w * dp * exp(-sqrt(w * dp))) / (1 + w * dp);
-        return new double[]{cf, k, w};
+        k = waveNumber[idFreq];
+        w = 0.0185 * freqPow25[idFreq] * pow(gw, 2.6) /
+                (freqPow15[idFreq] * pow(gw, 2.6) + 1.3e3 * freqPow075[idFreq] * pow(gw, 1.3) + 1.16e6);
+        cf = dp * (1 + 3 * w * dp * exp(-sqrt(w * dp))) / (1 + w * dp);
     }
 
     public static double aGroundH(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq) {
@@ -690,10 +837,13 @@ public class EvaluateAttenuationCnossos {
     }
 
     public static double aGroundH(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
-        double[] values = computeCfKValues(proPath, path, data, idFreq, forceGPath);
-        double cf = values[0];
-        double k = values[1];
-        double w = values[2];
+        return new EvaluateAttenuationCnossos(data).aGroundH(proPath, path, idFreq, forceGPath);
+    }
+
+    public double aGroundH(PropagationPath proPath, SegmentPath path, int idFreq, boolean forceGPath) {
+        computeCfKValues(proPath, path, idFreq, forceGPath);
+        double cf = this.cf;
+        double k = this.k;
         if(proPath.keepAbsorption && path == proPath.getSRSegment()) {
             proPath.groundAttenuation.wH[idFreq] = w;
             proPath.groundAttenuation.cfH[idFreq] = cf;
@@ -717,10 +867,14 @@ public class EvaluateAttenuationCnossos {
         return aGroundF(proPath, path, data, idFreq, false);
     }
     public static double aGroundF(PropagationPath proPath, SegmentPath path, PropagationProcessPathData data, int idFreq, boolean forceGPath) {
-        double[] values = computeCfKValues(proPath, path, data, idFreq);
-        double cf = values[0];
-        double k = values[1];
-        double w = values[2];
+        return new EvaluateAttenuationCnossos(data).aGroundF(proPath, path, idFreq, forceGPath);
+    }
+
+    public double aGroundF(PropagationPath proPath, SegmentPath path, int idFreq, boolean forceGPath) {
+        // forceGPath is not applied to the ground factor of cf
+        computeCfKValues(proPath, path, idFreq, false);
+        double cf = this.cf;
+        double k = this.k;
         if(proPath.keepAbsorption && path == proPath.getSRSegment()) {
             proPath.groundAttenuation.wF[idFreq] = w;
             proPath.groundAttenuation.cfF[idFreq] = cf;
@@ -7,10 +7,27 @@ import org.noise_planet.noisemodelling.pathfinder.PointPath;
 import org.noise_planet.noisemodelling.pathfinder.PropagationPath;
 
 import java.io.IOException;
+import java.util.Collections;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 public class RayAttenuationTest {
+    private static PropagationPath loadSpecialRay() throws IOException {
+        JsonMapper.Builder builder = JsonMapper.builder();
+        JsonMapper mapper = builder.build();
+        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+        return mapper.readValue(RayAttenuationTest.class.getResourceAsStream("special_ray.json"),
+                PropagationPath.class);
+    }
 
 
 
@@ -32,4 +49,69 @@ public class RayAttenuationTest {
             assertFalse(Double.isNaN(value));
         }
     }
+
+    /**
+     * The evaluation of multiple time periods at once must give the same levels than evaluating each period
+     */
+    @Test
+    public void testMultiplePeriodsAttenuation() throws IOException {
+        JsonMapper.Builder builder = JsonMapper.builder();
+        JsonMapper mapper = builder.build();
+        mapper.setVisibility(mapper.getSerializationConfig().getDefaultVisibilityChecker()
+                .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
+                .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withIsGetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withSetterVisibility(JsonAutoDetect.Visibility.NONE)
+                .withCreatorVisibility(JsonAutoDetect.Visibility.NONE));
+        PropagationPath path = mapper.readValue(
+                RayAttenuationTest.class.getResourceAsStream("special_ray.json"), PropagationPath.class);
+        PropagationProcessPathData day = new PropagationProcessPathData(false);
+        day.setTemperature(20);
+        PropagationProcessPathData evening = new PropagationProcessPathData(false);
+        evening.setTemperature(20);
+        evening.setWindRose(new double[]{0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8, 0.9, 1.0, 0.0, 0.5, 0.5, 0.5, 0.5, 0.5, 0.5});
+        PropagationProcessPathData night = new PropagationProcessPathData(false);
+        night.setTemperature(10);
+        night.setHumidity(85);
+        PropagationProcessPathData[] periods = new PropagationProcessPathData[] {day, evening, night};
+        ComputeRaysOutAttenuation out = new ComputeRaysOutAttenuation(false, day);
+        double[][] levels = out.computeAttenuation(periods, 0, 1.0, 0, Collections.singletonList(path));
+        assertEquals(periods.length, levels.length);
+        for(int idPeriod = 0; idPeriod < periods.length; idPeriod++) {
+            double[] expected = out.computeAttenuation(periods[idPeriod], 0, 1.0, 0,
+                    Collections.singletonList(path));
+            assertArrayEquals(expected, levels[idPeriod], 1e-9);
+        }
+        // Night has another temperature so levels must not be the same as the evening
+        assertNotEquals(levels[1][0], levels[2][0], 1e-6);
+    }
+
+    /**
+     * An evaluator reused for several paths must give the same values than the static methods
+     */
+    @Test
+    public void testReusedEvaluatorSameAttenuation() throws IOException {
+        PropagationPath path = loadSpecialRay();
+        PropagationProcessPathData data = new PropagationProcessPathData(false);
+        EvaluateAttenuationCnossos evaluator = new EvaluateAttenuationCnossos(data);
+        double[] buffer = new double[evaluator.getFrequencyCount()];
+        for(int i = 0; i < 3; i++) {
+            for (boolean favorable : new boolean[]{false, true}) {
+                path.setFavorable(favorable);
+                assertArrayEquals(EvaluateAttenuationCnossos.aBoundary(path, data),
+                        evaluator.aBoundary(path, buffer), 0);
+                assertArrayEquals(EvaluateAttenuationCnossos.aDiv(path, data), evaluator.aDiv(path, buffer), 0);
+                assertArrayEquals(EvaluateAttenuationCnossos.evaluateAref(path, data),
+                        evaluator.aRef(path, buffer), 0);
+                assertArrayEquals(EvaluateAttenuationCnossos.aAtm(data, path.getSRSegment().d),
+                        evaluator.aAtm(path.getSRSegment().d, buffer), 0);
+                assertArrayEquals(EvaluateAttenuationCnossos.deltaRetrodif(path, data),
+                        evaluator.deltaRetrodif(path, buffer), 0);
+            }
+        }
+        assertTrue(evaluator.isValidFor(data));
+        // Atmospheric settings changed, the evaluator must be replaced
+        data.setTemperature(5);
+        assertFalse(evaluator.isValidFor(data));
+    }
 }
@@ -17,10 +17,9 @@ package org.noise_planet.noisemodelling.wps.Experimental_Matsim
 
 import geoserver.GeoServer
 import geoserver.catalog.Store
-import groovy.sql.GroovyRowResult
 import org.geotools.jdbc.JDBCDataStore
 import org.h2gis.utilities.wrapper.ConnectionWrapper
-import org.locationtech.jts.geom.Geometry
+import org.noise_planet.noisemodelling.jdbc.utils.AttenuationMatrix
 import org.slf4j.Logger
 import org.slf4j.LoggerFactory
 
@@ -137,103 +136,12 @@ def exec(Connection connection, input) {
         timeBinSize = input["timeBinSize"] as int;
     }
 
-    DatabaseMetaData dbMeta = connection.getMetaData();
-    ResultSet rs = dbMeta.getIndexInfo(null, null, attenuationTable, false, false);
-
-
-    sql.execute(String.format("DROP TABLE %s IF EXISTS", outTableName))
-    String query = "CREATE TABLE " + outTableName + '''(
-                        PK integer PRIMARY KEY AUTO_INCREMENT,
-                        IDRECEIVER integer,
-                        THE_GEOM geometry,
-                        HZ63 double precision,
-                        HZ125 double precision,
-                        HZ250 double precision,
-                        HZ500 double precision,
-                        HZ1000 double precision,
-                        HZ2000 double precision,
-                        HZ4000 double precision,
-                        HZ8000 double precision,
-                        TIME int
-                    )
-                '''
-    sql.execute(query)
-    PreparedStatement insert_stmt = connection.prepareStatement(
-            "INSERT INTO " + outTableName + " VALUES(DEFAULT, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
-    )
-
-    logger.info("searching indexes on attenuation matrix ... ")
-    ensureIndex(connection, attenuationTable, "IDSOURCE", false)
-    ensureIndex(connection, attenuationTable, "IDRECEIVER", false)
-    logger.info("searching indexes on traffic tables ... ")
-    ensureIndex(connection, matsimRoads, "LINK_ID", false)
-    ensureIndex(connection, matsimRoadsLw, "LINK_ID", false)
-    ensureIndex(connection, matsimRoadsLw, "TIME", false)
-
-    List<String> mrs_freqs = ["LW63", "LW125", "LW250", "LW500", "LW1000", "LW2000", "LW4000", "LW8000"]
-
-    long count = 0, do_print = 1
-    List<GroovyRowResult> receivers_res = sql.rows("SELECT * FROM " + receiversTable);
-    long nb_receivers = receivers_res.size()
+    logger.info("Compute the levels of the receivers for each time bin ...")
     long start = System.currentTimeMillis();
-    for (GroovyRowResult receiver: receivers_res) {
-        long receiver_id = receiver["PK"] as long;
-        Geometry receiver_geom = receiver["THE_GEOM"] as Geometry;
-        Map<Integer, List<Double>> levels = new HashMap<Integer, List<Double>>();
-        List<GroovyRowResult> sources_att_res = sql.rows(String.format("SELECT lg.* FROM %s lg WHERE lg.IDRECEIVER = %d", attenuationTable, receiver_id));
-        long nb_sources = sources_att_res.size();
-        if (nb_sources == 0) {
-            count++
-            continue
-        }
-        for (GroovyRowResult sources_att: sources_att_res) {
-            long source_id = sources_att["IDSOURCE"] as long;
-            List<Double> attenuation = [
-                    sources_att["HZ63"] as double,
-                    sources_att["HZ125"] as double,
-                    sources_att["HZ250"] as double,
-                    sources_att["HZ500"] as double,
-                    sources_att["HZ1000"] as double,
-                    sources_att["HZ2000"] as double,
-                    sources_att["HZ4000"] as double,
-                    sources_att["HZ8000"] as double,
-            ];
-            List<GroovyRowResult> roads_stats_res = sql.rows(String.format(
-                    "SELECT mrs.* FROM %s mrs INNER JOIN %s mr ON mr.LINK_ID = mrs.LINK_ID WHERE mr.PK = %d",
-                    matsimRoadsLw, matsimRoads, source_id));
-            for (GroovyRowResult roads_stats: roads_stats_res) {
-                int timeBin = roads_stats["TIME"] as int
-                if (!levels.containsKey(timeBin)) {
-                    levels[timeBin] = [-99.0, -99.0, -99.0, -99.0, -99.0, -99.0, -99.0, -99.0] as List<Double>
-                }
-                for (i in 0..<8) {
-                    double new_level = (roads_stats[mrs_freqs[i]] as double) + attenuation[i];
-                    levels[timeBin][i] = 10 * Math.log10( Math.pow(10, levels[timeBin][i] / 10) + Math.pow(10, new_level / 10))
-                }
-            }
-        }
-
-        for (int timeBin = 0; timeBin < 86400; timeBin += timeBinSize) {
-            if (!levels.containsKey(timeBin)) {
-                levels[timeBin] = [-99.0, -99.0, -99.0, -99.0, -99.0, -99.0, -99.0, -99.0] as List<Double>
-            }
-            List<Double> ts_levels = levels[timeBin]
-            insert_stmt.setLong(1, receiver_id)
-            insert_stmt.setString(2, receiver_geom.toText())
-            for (i in 0..<8) {
-                insert_stmt.setDouble(i+3, ts_levels[i])
-            }
-            insert_stmt.setInt(11, timeBin)
-            insert_stmt.execute()
-        }
-        if (count >= do_print) {
-            double elapsed = (System.currentTimeMillis() - start + 1) / 1000
-            logger.info(String.format("Processing Receiver %d (max:%d) - elapsed : %ss (%.1fit/s)",
-                    count, nb_receivers, elapsed, count/elapsed))
-            do_print *= 2
-        }
-        count ++
-    }
+    // The attenuation matrix and the traffic tables are read once, the receivers are computed in parallel
+    AttenuationMatrix.makeNoiseLevelTable(connection, matsimRoads, matsimRoadsLw, attenuationTable, receiversTable,
+            outTableName, timeBinSize, Runtime.getRuntime().availableProcessors())
+    logger.info(String.format("Levels computed in %.1fs", (System.currentTimeMillis() - start) / 1000.0))
 
     String prefix = "HZ"
     sql.execute("ALTER TABLE " + outTableName + " ADD COLUMN LEQA float as 10*log10((power(10,(" + prefix + "63-26.2)/10)+power(10,(" + prefix + "125-16.1)/10)+power(10,(" + prefix + "250-8.6)/10)+power(10,(" + prefix + "500-3.2)/10)+power(10,(" + prefix + "1000)/10)+power(10,(" + prefix + "2000+1.2)/10)+power(10,(" + prefix + "4000+1)/10)+power(10,(" + prefix + "8000-1.1)/10)))")
@@ -264,24 +172,3 @@ static boolean columnExists(Connection connection, String table, String column_n
     }
     return col_found
 }
-
-static boolean indexExists(Connection connection, String table, String column_name) {
-    DatabaseMetaData dbMeta = connection.getMetaData();
-    ResultSet rs = dbMeta.getIndexInfo(null, null, table, false, false);
-    boolean index_found = false;
-    while (rs.next()) {
-        String column = rs.getString("COLUMN_NAME");
-        String pos = rs.getString("ORDINAL_POSITION");
-        if (column == column_name && pos == "1") {
-            index_found = true;
-        }
-    }
-    return index_found
-}
-
-static void ensureIndex(Connection connection, String table, String column_name, boolean spatial) {
-    if (!indexExists(connection, table, column_name)) {
-        Sql sql = new Sql(connection)
-        sql.execute("CREATE " + (spatial ? "SPATIAL " : "") + "INDEX ON " + table + " (" + column_name + ")");
-    }
-}
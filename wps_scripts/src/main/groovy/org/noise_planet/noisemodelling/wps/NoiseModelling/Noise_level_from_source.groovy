@@ -562,13 +562,6 @@ def exec(Connection connection, input) {
         confExportSourceId = input['confExportSourceId']
     }
 
-    // -------------------------
-    // Initialize some variables
-    // -------------------------
-
-    // Set of already processed receivers
-    Set<Long> receivers = new HashSet<>()
-
     // --------------------------------------------
     // Initialize NoiseModelling propagation part
     // --------------------------------------------
@@ -719,14 +712,11 @@ def exec(Connection connection, input) {
         int k = 0
         Map cells = pointNoiseMap.searchPopulatedCells(connection);
         ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size());
-        new TreeSet<>(cells.keySet()).each { cellIndex ->
-            Envelope cellEnvelope = pointNoiseMap.getCellEnv(pointNoiseMap.getMainEnvelope(),
-                    cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), pointNoiseMap.getCellWidth(),
-                    pointNoiseMap.getCellHeight());
+        // The next cells are fetched while the current one is computed
+        pointNoiseMap.run(connection, new ArrayList<>(new TreeSet<>(cells.keySet())), progressVisitor, { cellIndex, out ->
+            Envelope cellEnvelope = pointNoiseMap.getCellEnvelope(cellIndex)
             logger.info("Compute domain is " + new GeometryFactory().toGeometry(cellEnvelope))
-            logger.info(String.format("Compute... %.3f %% (%d receivers in this cell)", 100 * k++ / cells.size(), cells.get(cellIndex)))
-            // Run ray propagation
-            IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers)
+            logger.info(String.format("Computed... %.3f %% (%d receivers in this cell)", 100 * ++k / cells.size(), cells.get(cellIndex)))
             // Export as a Google Earth 3d scene
             if (out instanceof ComputeRaysOutAttenuation && folderExportKML != null) {
                 ComputeRaysOutAttenuation cellStorage = (ComputeRaysOutAttenuation) out;
@@ -736,7 +726,7 @@ def exec(Connection connection, input) {
                 cellStorage.inputData.profileBuilder, cellStorage, sridSources)
             }
 
-        }
+        } as PointNoiseMap.CellResultListener)
     } finally {
         profilerThread.stop();
         ldenProcessing.stop()
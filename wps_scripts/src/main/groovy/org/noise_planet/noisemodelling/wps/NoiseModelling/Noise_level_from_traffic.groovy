@@ -555,12 +555,6 @@ def exec(Connection connection, input) {
         confExportSourceId = input['confExportSourceId']
     }
 
-    // -------------------------
-    // Initialize some variables
-    // -------------------------
-
-    // Set of already processed receivers
-    Set<Long> receivers = new HashSet<>()
     // --------------------------------------------
     // Initialize NoiseModelling propagation part
     // --------------------------------------------
@@ -703,10 +697,9 @@ def exec(Connection connection, input) {
         int k = 0
         Map cells = pointNoiseMap.searchPopulatedCells(connection)
         ProgressVisitor progressVisitor = progressLogger.subProcess(cells.size())
-        new TreeSet<>(cells.keySet()).each { cellIndex ->
-            // Run ray propagation
-            logger.info(String.format("Compute... %.3f %% (%d receivers in this cell)", 100 * k++ / cells.size(), cells.get(cellIndex)))
-            IComputeRaysOut out = pointNoiseMap.evaluateCell(connection, cellIndex.getLatitudeIndex(), cellIndex.getLongitudeIndex(), progressVisitor, receivers)
+        // The next cells are fetched while the current one is computed
+        pointNoiseMap.run(connection, new ArrayList<>(new TreeSet<>(cells.keySet())), progressVisitor, { cellIndex, out ->
+            logger.info(String.format("Computed... %.3f %% (%d receivers in this cell)", 100 * ++k / cells.size(), cells.get(cellIndex)))
             // Export as a Google Earth 3d scene
             if (out instanceof ComputeRaysOutAttenuation && folderExportKML != null) {
                 ComputeRaysOutAttenuation cellStorage = (ComputeRaysOutAttenuation) out;
@@ -715,7 +708,7 @@ def exec(Connection connection, input) {
                                 cellIndex.getLongitudeIndex())).getPath(),
                         cellStorage.inputData.profileBuilder, cellStorage, sridSources)
             }
-        }
+        } as PointNoiseMap.CellResultListener)
     } catch(IllegalArgumentException | IllegalStateException ex) {
         System.err.println(ex);
         throw ex;